@@ -1,13 +1,25 @@
 package com.example;
 
+import com.example.constant.MatchingPhase;
 import com.example.exception.FileHandlingException;
 import com.example.exception.InvalidDataException;
+import com.example.processor.CompiledPatternProcessor;
+import com.example.processor.DedupProcessor;
 import com.example.processor.InputProcessor;
+import com.example.processor.MatchServer;
+import com.example.processor.MetricsRegistry;
 import com.example.processor.OutputProcessor;
+import com.example.processor.ParallelMatchProcessor;
+import com.example.processor.PatternMatcher;
+import com.example.processor.PatternMatcherFactory;
 import com.example.processor.PatternProcessor;
+import com.example.processor.RunMetrics;
+import com.example.processor.SnapshotProcessor;
+import com.example.processor.StreamingProcessor;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -15,6 +27,7 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import java.io.IOException;
 import java.util.List;
 
+import static com.google.common.collect.Lists.newArrayList;
 import static org.apache.commons.lang3.ArrayUtils.isNotEmpty;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static org.slf4j.LoggerFactory.getLogger;
@@ -32,10 +45,10 @@ public class PatternMatchingApplication implements CommandLineRunner {
     private static final Logger LOG = getLogger(PatternMatchingApplication.class);
 
     /**
-     * The Pattern processor.
+     * The Pattern matcher factory.
      */
     @Autowired
-    private PatternProcessor patProcessor;
+    private PatternMatcherFactory matcherFactory;
 
     /**
      * The Input processor.
@@ -49,6 +62,90 @@ public class PatternMatchingApplication implements CommandLineRunner {
     @Autowired
     private OutputProcessor outProcessor;
 
+    /**
+     * The Streaming processor.
+     */
+    @Autowired
+    private StreamingProcessor streamProcessor;
+
+    /**
+     * The Dedup processor.
+     */
+    @Autowired
+    private DedupProcessor dedupProcessor;
+
+    /**
+     * The Parallel match processor.
+     */
+    @Autowired
+    private ParallelMatchProcessor parallelProcessor;
+
+    /**
+     * The Pattern processor.
+     */
+    @Autowired
+    private PatternProcessor patProcessor;
+
+    /**
+     * The Compiled pattern processor.
+     */
+    @Autowired
+    private CompiledPatternProcessor compiledProcessor;
+
+    /**
+     * The Snapshot processor.
+     */
+    @Autowired
+    private SnapshotProcessor snapshotProcessor;
+
+    /**
+     * The Match server.
+     */
+    @Autowired
+    private MatchServer matchServer;
+
+    /**
+     * The Metrics registry.
+     */
+    @Autowired
+    private MetricsRegistry metricsRegistry;
+
+    /**
+     * Whether the paths are matched and written while reading the input file.
+     */
+    @Value("${matching.streaming:true}")
+    private boolean streaming;
+
+    /**
+     * Whether every distinct path is matched only once.
+     */
+    @Value("${matching.dedup:false}")
+    private boolean dedup;
+
+    /**
+     * Whether to serve path lookups over a local socket instead of matching a file.
+     */
+    @Value("${matching.server:false}")
+    private boolean server;
+
+    /**
+     * Whether to write a pattern snapshot instead of matching a file.
+     */
+    @Value("${matching.write-snapshot:false}")
+    private boolean writeSnapshot;
+
+    /**
+     * Whether the latency of every path is counted, and the slowest ones traced.
+     */
+    @Value("${matching.latency-tracing:false}")
+    private boolean latencyTracing;
+
+    /**
+     * The number of slowest paths traced.
+     */
+    @Value("${matching.slow-paths:10}")
+    private int slowPaths;
+
     /**
      * Main Method to start Spring Boot application.
      *
@@ -61,31 +158,38 @@ public class PatternMatchingApplication implements CommandLineRunner {
     /**
      * Run void.
      *
-     * @param args the args
+     * @param commandLine the command line arguments
      */
     @Override
-    public void run(final String... args) {
+    public void run(final String... commandLine) {
 
         LOG.info("Start-----------------------------------------");
-        if (isNotEmpty(args) && args.length == 2) {
+        String[] args = fileArguments(commandLine);
+        if (server) {
+            serve(args);
+        } else if (writeSnapshot) {
+            writeSnapshot(args);
+        } else if (isNotEmpty(args) && args.length == 2) {
             String inputFile = args[0];
             String outputFile = args[1];
             if (isNotBlank(inputFile) && isNotBlank(outputFile)) {
+                RunMetrics metrics = new RunMetrics(patProcessor);
+                if (latencyTracing) {
+                    metrics.traceLatencies(slowPaths);
+                }
                 try {
-                    // Get the patterns and Paths
-                    Pair<List<String>, List<String>> input =
-                            inProcessor.processInputFile(inputFile);
-
-                    List<String> patterns = input.getLeft();
-                    List<String> paths = input.getRight();
-
-                    // Find the matches
-                    List<String> matches = patProcessor.
-                            getMatchingPatterns(patterns, paths);
-
-                    // Dump the result to the output file.
-                    outProcessor.processOutput(outputFile, matches);
-
+                    if (dedup) {
+                        // Match the distinct paths once, spilling to disk when many.
+                        dedupProcessor.process(inputFile, outputFile, metrics);
+                    } else if (streaming) {
+                        // Read, match and dump every path in one pass.
+                        streamProcessor.process(inputFile, outputFile, metrics);
+                    } else {
+                        matchInMemory(inputFile, outputFile, metrics);
+                    }
+                    metrics.finish();
+                    LOG.info("Run summary " + metrics.summary());
+                    metrics.report(metricsRegistry);
                 } catch (InvalidDataException | FileHandlingException | IOException ex) {
                     LOG.error("Unknown exception occured.");
                 }
@@ -100,5 +204,105 @@ public class PatternMatchingApplication implements CommandLineRunner {
 
     }
 
+    /**
+     * Reads all the patterns and paths, matches the paths, then writes all
+     * the matches, timing every phase.
+     *
+     * @param inputFile  the input file
+     * @param outputFile the output file
+     * @param metrics    the metrics of the run
+     *
+     * @throws IOException the iO exception
+     */
+    private void matchInMemory(final String inputFile, final String outputFile,
+                               final RunMetrics metrics) throws IOException {
+        // Get the patterns and Paths
+        long start = System.nanoTime();
+        Pair<List<String>, List<String>> input = inProcessor.processInputFile(inputFile);
+        List<String> patterns = input.getLeft();
+        List<String> paths = input.getRight();
+
+        long buildStart = System.nanoTime();
+        PatternMatcher matcher = matcherFactory.build(patterns);
+        long matchStart = System.nanoTime();
+        metrics.measure(matcher);
+
+        // Find the matches
+        long measured = System.nanoTime();
+        List<String> matches = parallelProcessor.getMatchingPatterns(matcher, paths);
+
+        // Dump the result to the output file.
+        long writeStart = System.nanoTime();
+        outProcessor.processOutput(outputFile, matches);
+        long end = System.nanoTime();
+
+        metrics.addTime(MatchingPhase.READ, buildStart - start);
+        metrics.addTime(MatchingPhase.BUILD, matchStart - buildStart);
+        metrics.addTime(MatchingPhase.MATCH, writeStart - measured);
+        metrics.addTime(MatchingPhase.WRITE, end - writeStart);
+        for (int index = 0; index < matches.size(); index++) {
+            metrics.countMatch(matches.get(index));
+            metrics.sampleAlternates(paths.get(index));
+        }
+    }
+
+    /**
+     * Serves the path lookups against the patterns of the pattern file.
+     *
+     * @param args the args
+     */
+    private void serve(final String[] args) {
+        if (isNotEmpty(args) && args.length == 1 && isNotBlank(args[0])) {
+            try {
+                matchServer.serve(args[0]);
+            } catch (InvalidDataException | FileHandlingException | IOException ex) {
+                LOG.error("Unknown exception occured.");
+            }
+        } else {
+            LOG.error("Server mode expects exactly one argument. "
+                    + "Pattern file path.");
+        }
+    }
+
+    /**
+     * Builds the patterns of the pattern file, and writes them to a snapshot file.
+     *
+     * @param args the args
+     */
+    private void writeSnapshot(final String[] args) {
+        if (isNotEmpty(args) && args.length == 2 && isNotBlank(args[0])
+                && isNotBlank(args[1])) {
+            try {
+                List<String> patterns = inProcessor.processPatternFile(args[0]);
+                snapshotProcessor.write(compiledProcessor.compile(
+                        patProcessor.buildPatternTree(patterns)), args[1]);
+            } catch (InvalidDataException | FileHandlingException | IOException ex) {
+                LOG.error("Unknown exception occured.");
+            }
+        } else {
+            LOG.error("Writing a snapshot expects exactly two arguments. "
+                    + "Pattern file and Snapshot file path.");
+        }
+    }
+
+    /**
+     * Drops the "--" options, which Spring Boot reads as configuration properties.
+     *
+     * @param commandLine the command line arguments
+     *
+     * @return the file arguments
+     */
+    private String[] fileArguments(final String[] commandLine) {
+        List<String> args = newArrayList();
+        if (commandLine != null) {
+            for (String arg : commandLine) {
+                if (!arg.startsWith("--")) {
+                    args.add(arg);
+                }
+            }
+        }
+        return args.toArray(new String[args.size()]);
+    }
+
 
 }
@@ -0,0 +1,17 @@
+package com.example.constant;
+
+/**
+ * The ways the match cache picks the entries to evict once full.
+ */
+public enum CacheEviction {
+
+    /**
+     * Evicts the least recently used paths.
+     */
+    LRU,
+
+    /**
+     * Evicts the least frequently used paths, among a few sampled ones.
+     */
+    LFU
+}
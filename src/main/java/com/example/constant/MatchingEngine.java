@@ -0,0 +1,33 @@
+package com.example.constant;
+
+/**
+ * The engines the paths can be matched with.
+ */
+public enum MatchingEngine {
+
+    /**
+     * Matches against the pattern tree, as it is built.
+     */
+    TREE,
+
+    /**
+     * Matches against the compact read only layout compiled from the pattern tree.
+     */
+    COMPILED,
+
+    /**
+     * Matches against the compiled layout, held in a mapped file outside of the heap.
+     */
+    OFF_HEAP,
+
+    /**
+     * Matches against pattern trees split by number of blocks, and by first block.
+     */
+    SHARDED,
+
+    /**
+     * Matches against a deterministic automaton over the path blocks, compiled from
+     * the pattern tree, or against the pattern tree when the automaton is too large.
+     */
+    AUTOMATON
+}
@@ -0,0 +1,27 @@
+package com.example.constant;
+
+/**
+ * The phases of a matching run, timed on their own.
+ */
+public enum MatchingPhase {
+
+    /**
+     * Reads the input file.
+     */
+    READ,
+
+    /**
+     * Builds or loads the pattern index.
+     */
+    BUILD,
+
+    /**
+     * Matches the paths.
+     */
+    MATCH,
+
+    /**
+     * Writes the output file.
+     */
+    WRITE
+}
@@ -24,6 +24,11 @@ public final class Messages {
             + "foo/bar/\n"
             + "foo/bar/baz/";
 
+    /**
+     * The constant NO_MATCH, written for the paths without any matching pattern.
+     */
+    public static final String NO_MATCH = "NO MATCH";
+
     /**
      * Instantiates a new Messages.
      */
@@ -0,0 +1,18 @@
+package com.example.constant;
+
+/**
+ * The ways the match server reads and answers its connections.
+ */
+public enum ServerIo {
+
+    /**
+     * Serves every connection on a thread of its own, blocked while the client is idle.
+     */
+    BLOCKING,
+
+    /**
+     * Reads and writes every connection from a single selector thread,
+     * and matches the lines received on a bounded pool of workers.
+     */
+    EVENT_LOOP
+}
@@ -0,0 +1,391 @@
+package com.example.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A compact, read only layout of the pattern tree.
+ * The nodes are numbered breadth first, the root being 0.
+ * The literal children of a node are held in a range of two parallel int arrays,
+ * sorted by segment id, and the wildcard child is held in a dedicated slot.
+ * <p>
+ * For "a,b,c" and "*,b"
+ * <p>
+ * root 0                   childOffsets     [0, 1, 2, 3, 4, 4, 4]
+ *      - a   1             childSegments    [a, b, b, c]
+ *           - b  3         childNodes       [1, 3, 4, 5]
+ *               -c 5       wildcardChildren [2, -1, -1, -1, -1, -1]
+ *      - *   2
+ *           - b  4
+ */
+public class CompiledPatternTree implements PatternTreeLayout {
+
+    /**
+     * The interned segments.
+     */
+    private final SegmentDictionary segments;
+
+    /**
+     * The start of the literal children of each node, plus the end of the last one.
+     */
+    private final int[] childOffsets;
+
+    /**
+     * The segment ids of the literal children.
+     */
+    private final int[] childSegments;
+
+    /**
+     * The node ids of the literal children.
+     */
+    private final int[] childNodes;
+
+    /**
+     * The wildcard child of each node, NO_NODE if none.
+     */
+    private final int[] wildcardChildren;
+
+    /**
+     * The position of each node from the root.
+     */
+    private final int[] positions;
+
+    /**
+     * The pattern of each node, null if no pattern ends there
+     * or if it is not decoded from the pattern text yet.
+     */
+    private final String[] patterns;
+
+    /**
+     * The UTF-8 text of the patterns, when loaded from a snapshot, else null.
+     */
+    private final ByteBuffer patternText;
+
+    /**
+     * The start of the pattern of each node in the pattern text,
+     * plus the end of the last one. Empty for the nodes without pattern.
+     */
+    private final int[] patternOffsets;
+
+    /**
+     * The number of wildcards in the pattern of each node.
+     */
+    private final int[] wildcards;
+
+    /**
+     * The position of the leftmost wildcard in the pattern of each node, 0 if none.
+     */
+    private final int[] firstWildcards;
+
+    /**
+     * Instantiates a new Compiled pattern tree.
+     *
+     * @param segments         the interned segments
+     * @param childOffsets     the start of the literal children of each node
+     * @param childSegments    the segment ids of the literal children
+     * @param childNodes       the node ids of the literal children
+     * @param wildcardChildren the wildcard child of each node
+     * @param positions        the position of each node
+     * @param patterns         the pattern of each node
+     * @param wildcards        the number of wildcards in the pattern of each node
+     * @param firstWildcards   the position of the leftmost wildcard of each node
+     */
+    public CompiledPatternTree(final SegmentDictionary segments, final int[] childOffsets,
+                               final int[] childSegments, final int[] childNodes,
+                               final int[] wildcardChildren, final int[] positions,
+                               final String[] patterns, final int[] wildcards,
+                               final int[] firstWildcards) {
+        this.segments = segments;
+        this.childOffsets = childOffsets;
+        this.childSegments = childSegments;
+        this.childNodes = childNodes;
+        this.wildcardChildren = wildcardChildren;
+        this.positions = positions;
+        this.patterns = patterns;
+        this.patternText = null;
+        this.patternOffsets = null;
+        this.wildcards = wildcards;
+        this.firstWildcards = firstWildcards;
+    }
+
+    /**
+     * Instantiates a new Compiled pattern tree, whose patterns are decoded
+     * from their UTF-8 text when first needed.
+     *
+     * @param segments         the interned segments
+     * @param childOffsets     the start of the literal children of each node
+     * @param childSegments    the segment ids of the literal children
+     * @param childNodes       the node ids of the literal children
+     * @param wildcardChildren the wildcard child of each node
+     * @param positions        the position of each node
+     * @param patternText      the UTF-8 text of the patterns
+     * @param patternOffsets   the start of the pattern of each node in the text
+     * @param wildcards        the number of wildcards in the pattern of each node
+     * @param firstWildcards   the position of the leftmost wildcard of each node
+     */
+    public CompiledPatternTree(final SegmentDictionary segments, final int[] childOffsets,
+                               final int[] childSegments, final int[] childNodes,
+                               final int[] wildcardChildren, final int[] positions,
+                               final ByteBuffer patternText, final int[] patternOffsets,
+                               final int[] wildcards, final int[] firstWildcards) {
+        this.segments = segments;
+        this.childOffsets = childOffsets;
+        this.childSegments = childSegments;
+        this.childNodes = childNodes;
+        this.wildcardChildren = wildcardChildren;
+        this.positions = positions;
+        this.patterns = new String[positions.length];
+        this.patternText = patternText;
+        this.patternOffsets = patternOffsets;
+        this.wildcards = wildcards;
+        this.firstWildcards = firstWildcards;
+    }
+
+    /**
+     * Gets the child of a node for a segment.
+     * The wildcard segment id gives the wildcard child.
+     *
+     * @param node      the node
+     * @param segmentId the segment id
+     *
+     * @return the child, or NO_NODE
+     */
+    @Override
+    public int getChild(final int node, final int segmentId) {
+        if (segmentId == SegmentDictionary.WILDCARD_ID) {
+            return wildcardChildren[node];
+        }
+        int low = childOffsets[node];
+        int high = childOffsets[node + 1] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int segment = childSegments[middle];
+            if (segment < segmentId) {
+                low = middle + 1;
+            } else if (segment > segmentId) {
+                high = middle - 1;
+            } else {
+                return childNodes[middle];
+            }
+        }
+        return NO_NODE;
+    }
+
+    /**
+     * Gets the wildcard child of a node.
+     *
+     * @param node the node
+     *
+     * @return the wildcard child, or NO_NODE
+     */
+    @Override
+    public int getWildcardChild(final int node) {
+        return wildcardChildren[node];
+    }
+
+    /**
+     * Gets the position of a node from the root.
+     *
+     * @param node the node
+     *
+     * @return the position
+     */
+    @Override
+    public int getPosition(final int node) {
+        return positions[node];
+    }
+
+    /**
+     * Gets the pattern ending at a node.
+     *
+     * @param node the node
+     *
+     * @return the pattern, or null
+     */
+    @Override
+    public String getPattern(final int node) {
+        String pattern = patterns[node];
+        if (pattern == null && hasPatternText(node)) {
+            // Strings are immutable, a race only decodes the same pattern twice.
+            ByteBuffer text = patternText.duplicate();
+            text.position(patternOffsets[node]);
+            byte[] bytes = new byte[patternOffsets[node + 1] - patternOffsets[node]];
+            text.get(bytes);
+            pattern = new String(bytes, StandardCharsets.UTF_8);
+            patterns[node] = pattern;
+        }
+        return pattern;
+    }
+
+    /**
+     * Whether a pattern ends at a node.
+     *
+     * @param node the node
+     *
+     * @return true if a pattern ends there
+     */
+    @Override
+    public boolean hasPattern(final int node) {
+        return patterns[node] != null || hasPatternText(node);
+    }
+
+    /**
+     * Gets the start of the literal children of a node.
+     *
+     * @param node the node
+     *
+     * @return the index of the first literal child
+     */
+    public int getChildStart(final int node) {
+        return childOffsets[node];
+    }
+
+    /**
+     * Gets the end of the literal children of a node.
+     *
+     * @param node the node
+     *
+     * @return the index after the last literal child
+     */
+    public int getChildEnd(final int node) {
+        return childOffsets[node + 1];
+    }
+
+    /**
+     * Gets the segment id of a literal child.
+     *
+     * @param child the index of the literal child
+     *
+     * @return the segment id
+     */
+    public int getChildSegment(final int child) {
+        return childSegments[child];
+    }
+
+    /**
+     * Gets the node of a literal child.
+     *
+     * @param child the index of the literal child
+     *
+     * @return the node
+     */
+    public int getChildNode(final int child) {
+        return childNodes[child];
+    }
+
+    /**
+     * Gets the number of literal children of all the nodes.
+     *
+     * @return the literal child count
+     */
+    public int getChildCount() {
+        return childNodes.length;
+    }
+
+    /**
+     * Gets the number of wildcards in the pattern ending at a node.
+     *
+     * @param node the node
+     *
+     * @return the wildcards
+     */
+    @Override
+    public int getWildcards(final int node) {
+        return wildcards[node];
+    }
+
+    /**
+     * Gets the position of the leftmost wildcard in the pattern ending at a node.
+     *
+     * @param node the node
+     *
+     * @return the position, 0 if the pattern has no wildcard
+     */
+    @Override
+    public int getFirstWildcard(final int node) {
+        return firstWildcards[node];
+    }
+
+    /**
+     * Gets the interned segments.
+     *
+     * @return the segments
+     */
+    public SegmentDictionary getSegments() {
+        return segments;
+    }
+
+    @Override
+    public int getSegmentId(final String segment) {
+        return segments.getId(segment);
+    }
+
+    @Override
+    public int getSegmentId(final String source, final int from, final int to) {
+        return segments.getId(source, from, to);
+    }
+
+    @Override
+    public int getSegmentId(final ByteBuffer source, final int from, final int to) {
+        return segments.getId(source, from, to);
+    }
+
+    /**
+     * Gets the number of nodes.
+     *
+     * @return the node count
+     */
+    @Override
+    public int getNodeCount() {
+        return positions.length;
+    }
+
+    /**
+     * Estimates the heap taken by the tree, its arrays and its segments.
+     * The pattern text is left out when it is outside the heap, and
+     * the pattern strings are left out, being shared with the patterns read.
+     *
+     * @return the approximate heap bytes
+     */
+    @Override
+    public long getHeapBytes() {
+        long bytes = segments.getHeapBytes() + intArrayBytes(childOffsets)
+                + intArrayBytes(childSegments) + intArrayBytes(childNodes)
+                + intArrayBytes(wildcardChildren) + intArrayBytes(positions)
+                + intArrayBytes(patternOffsets) + intArrayBytes(wildcards)
+                + intArrayBytes(firstWildcards);
+        if (patterns != null) {
+            bytes += SegmentDictionary.ARRAY_BYTES
+                    + (long) SegmentDictionary.REFERENCE_BYTES * patterns.length;
+        }
+        if (patternText != null && !patternText.isDirect()) {
+            bytes += SegmentDictionary.ARRAY_BYTES + patternText.capacity();
+        }
+        return bytes;
+    }
+
+    /**
+     * Estimates the heap taken by an int array.
+     *
+     * @param array the array, may be null
+     *
+     * @return the approximate heap bytes
+     */
+    private static long intArrayBytes(final int[] array) {
+        if (array == null) {
+            return 0;
+        }
+        return SegmentDictionary.ARRAY_BYTES + (long) Integer.BYTES * array.length;
+    }
+
+    /**
+     * Whether the pattern of a node is in the pattern text.
+     *
+     * @param node the node
+     *
+     * @return true if the node has a pattern text
+     */
+    private boolean hasPatternText(final int node) {
+        return patternOffsets != null && patternOffsets[node] != patternOffsets[node + 1];
+    }
+}
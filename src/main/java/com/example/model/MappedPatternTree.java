@@ -0,0 +1,364 @@
+package com.example.model;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A compiled pattern tree held outside of the heap, in the buffers of a mapped
+ * pattern snapshot. The nodes, the children, the segments and the patterns are
+ * read in place, and the segment hash table is built in a direct buffer, so the
+ * heap only holds the buffer objects, whatever the number of patterns.
+ * <p>
+ * The layout is the one of CompiledPatternTree, as written in a snapshot.
+ * The segments are compared as UTF-8 bytes, and the patterns are decoded
+ * every time they are matched, without being kept.
+ */
+public class MappedPatternTree implements PatternTreeLayout {
+
+    /**
+     * The approximate heap bytes of a buffer object.
+     */
+    private static final int BUFFER_BYTES = 64;
+
+    /**
+     * The number of buffers held.
+     */
+    private static final int BUFFERS = 12;
+
+    /**
+     * The highest ASCII char.
+     */
+    private static final char MAX_ASCII = 0x7F;
+
+    /**
+     * The start of the literal children of each node, plus the end of the last one.
+     */
+    private final IntBuffer childOffsets;
+
+    /**
+     * The segment ids of the literal children.
+     */
+    private final IntBuffer childSegments;
+
+    /**
+     * The node ids of the literal children.
+     */
+    private final IntBuffer childNodes;
+
+    /**
+     * The wildcard child of each node, NO_NODE if none.
+     */
+    private final IntBuffer wildcardChildren;
+
+    /**
+     * The position of each node from the root.
+     */
+    private final IntBuffer positions;
+
+    /**
+     * The number of wildcards in the pattern of each node.
+     */
+    private final IntBuffer wildcards;
+
+    /**
+     * The position of the leftmost wildcard in the pattern of each node, 0 if none.
+     */
+    private final IntBuffer firstWildcards;
+
+    /**
+     * The start of each segment in the segment text, plus the end of the last one.
+     */
+    private final IntBuffer segmentOffsets;
+
+    /**
+     * The UTF-8 text of the segments.
+     */
+    private final ByteBuffer segmentText;
+
+    /**
+     * The start of the pattern of each node in the pattern text,
+     * plus the end of the last one. Empty for the nodes without pattern.
+     */
+    private final IntBuffer patternOffsets;
+
+    /**
+     * The UTF-8 text of the patterns.
+     */
+    private final ByteBuffer patternText;
+
+    /**
+     * The segment hash table, holding id + 1 per slot, 0 for an empty slot.
+     */
+    private final IntBuffer slots;
+
+    /**
+     * The mask of the segment hash table size.
+     */
+    private final int mask;
+
+    /**
+     * The number of nodes.
+     */
+    private final int nodeCount;
+
+    /**
+     * Instantiates a new Mapped pattern tree over the sections of a snapshot.
+     *
+     * @param childOffsets     the start of the literal children of each node
+     * @param childSegments    the segment ids of the literal children
+     * @param childNodes       the node ids of the literal children
+     * @param wildcardChildren the wildcard child of each node
+     * @param positions        the position of each node
+     * @param wildcards        the number of wildcards in the pattern of each node
+     * @param firstWildcards   the position of the leftmost wildcard of each node
+     * @param segmentOffsets   the start of each segment in the segment text
+     * @param segmentText      the UTF-8 text of the segments
+     * @param patternOffsets   the start of the pattern of each node in the text
+     * @param patternText      the UTF-8 text of the patterns
+     */
+    public MappedPatternTree(final IntBuffer childOffsets, final IntBuffer childSegments,
+                             final IntBuffer childNodes, final IntBuffer wildcardChildren,
+                             final IntBuffer positions, final IntBuffer wildcards,
+                             final IntBuffer firstWildcards, final IntBuffer segmentOffsets,
+                             final ByteBuffer segmentText, final IntBuffer patternOffsets,
+                             final ByteBuffer patternText) {
+        this.childOffsets = childOffsets;
+        this.childSegments = childSegments;
+        this.childNodes = childNodes;
+        this.wildcardChildren = wildcardChildren;
+        this.positions = positions;
+        this.wildcards = wildcards;
+        this.firstWildcards = firstWildcards;
+        this.segmentOffsets = segmentOffsets;
+        this.segmentText = segmentText;
+        this.patternOffsets = patternOffsets;
+        this.patternText = patternText;
+        this.nodeCount = positions.limit();
+
+        int segmentCount = segmentOffsets.limit() - 1;
+        int capacity = Integer.highestOneBit(Math.max(segmentCount, 1) * 2) * 2;
+        this.slots = ByteBuffer.allocateDirect(capacity * Integer.BYTES)
+                .order(ByteOrder.nativeOrder()).asIntBuffer();
+        this.mask = capacity - 1;
+        for (int id = 0; id < segmentCount; id++) {
+            int from = segmentOffsets.get(id);
+            int to = segmentOffsets.get(id + 1);
+            int hashCode = 0;
+            for (int index = from; index < to; index++) {
+                hashCode = 31 * hashCode + Byte.toUnsignedInt(segmentText.get(index));
+            }
+            int slot = hash(hashCode) & mask;
+            while (slots.get(slot) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots.put(slot, id + 1);
+        }
+    }
+
+    @Override
+    public int getChild(final int node, final int segmentId) {
+        if (segmentId == SegmentDictionary.WILDCARD_ID) {
+            return wildcardChildren.get(node);
+        }
+        int low = childOffsets.get(node);
+        int high = childOffsets.get(node + 1) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int segment = childSegments.get(middle);
+            if (segment < segmentId) {
+                low = middle + 1;
+            } else if (segment > segmentId) {
+                high = middle - 1;
+            } else {
+                return childNodes.get(middle);
+            }
+        }
+        return NO_NODE;
+    }
+
+    @Override
+    public int getWildcardChild(final int node) {
+        return wildcardChildren.get(node);
+    }
+
+    @Override
+    public int getPosition(final int node) {
+        return positions.get(node);
+    }
+
+    @Override
+    public String getPattern(final int node) {
+        if (!hasPattern(node)) {
+            return null;
+        }
+        int from = patternOffsets.get(node);
+        byte[] bytes = new byte[patternOffsets.get(node + 1) - from];
+        for (int index = 0; index < bytes.length; index++) {
+            bytes[index] = patternText.get(from + index);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean hasPattern(final int node) {
+        return patternOffsets.get(node) != patternOffsets.get(node + 1);
+    }
+
+    @Override
+    public int getWildcards(final int node) {
+        return wildcards.get(node);
+    }
+
+    @Override
+    public int getFirstWildcard(final int node) {
+        return firstWildcards.get(node);
+    }
+
+    @Override
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    @Override
+    public int getSegmentId(final String segment) {
+        return getSegmentId(segment, 0, segment.length());
+    }
+
+    /**
+     * Gets the id of the segment held by a range of a string.
+     * ASCII segments are compared in place, the other ones are encoded first.
+     *
+     * @param source the string holding the segment
+     * @param from   the start of the segment, inclusive
+     * @param to     the end of the segment, exclusive
+     *
+     * @return the id, or SegmentDictionary.NO_SEGMENT when the segment is unknown
+     */
+    @Override
+    public int getSegmentId(final String source, final int from, final int to) {
+        int hashCode = 0;
+        for (int index = from; index < to; index++) {
+            char current = source.charAt(index);
+            if (current > MAX_ASCII) {
+                byte[] bytes = source.substring(from, to).getBytes(StandardCharsets.UTF_8);
+                return getSegmentId(ByteBuffer.wrap(bytes), 0, bytes.length);
+            }
+            hashCode = 31 * hashCode + current;
+        }
+        int length = to - from;
+        int slot = hash(hashCode) & mask;
+        int entry = slots.get(slot);
+        while (entry != 0) {
+            if (segmentMatches(entry - 1, source, from, length)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+            entry = slots.get(slot);
+        }
+        return SegmentDictionary.NO_SEGMENT;
+    }
+
+    @Override
+    public int getSegmentId(final ByteBuffer source, final int from, final int to) {
+        int hashCode = 0;
+        for (int index = from; index < to; index++) {
+            hashCode = 31 * hashCode + Byte.toUnsignedInt(source.get(index));
+        }
+        int length = to - from;
+        int slot = hash(hashCode) & mask;
+        int entry = slots.get(slot);
+        while (entry != 0) {
+            if (segmentMatches(entry - 1, source, from, length)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+            entry = slots.get(slot);
+        }
+        return SegmentDictionary.NO_SEGMENT;
+    }
+
+    /**
+     * Estimates the heap taken by the tree, which is only its buffer objects.
+     *
+     * @return the approximate heap bytes
+     */
+    @Override
+    public long getHeapBytes() {
+        return (long) BUFFER_BYTES * BUFFERS;
+    }
+
+    /**
+     * Gets the bytes held outside of the heap, mapped or direct.
+     *
+     * @return the off heap bytes
+     */
+    public long getOffHeapBytes() {
+        long ints = (long) childOffsets.capacity() + childSegments.capacity()
+                + childNodes.capacity() + wildcardChildren.capacity() + positions.capacity()
+                + wildcards.capacity() + firstWildcards.capacity()
+                + segmentOffsets.capacity() + patternOffsets.capacity() + slots.capacity();
+        return ints * Integer.BYTES + segmentText.capacity() + patternText.capacity();
+    }
+
+    /**
+     * Whether a segment has the same bytes as the ASCII chars of a range.
+     *
+     * @param id     the segment id
+     * @param source the string
+     * @param from   the start of the range
+     * @param length the length of the range
+     *
+     * @return true if they match
+     */
+    private boolean segmentMatches(final int id, final String source, final int from,
+                                   final int length) {
+        int start = segmentOffsets.get(id);
+        if (segmentOffsets.get(id + 1) - start != length) {
+            return false;
+        }
+        for (int index = 0; index < length; index++) {
+            if (segmentText.get(start + index) != source.charAt(from + index)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether a segment has the same bytes as a range.
+     *
+     * @param id     the segment id
+     * @param source the bytes
+     * @param from   the start of the range
+     * @param length the length of the range
+     *
+     * @return true if they match
+     */
+    private boolean segmentMatches(final int id, final ByteBuffer source, final int from,
+                                   final int length) {
+        int start = segmentOffsets.get(id);
+        if (segmentOffsets.get(id + 1) - start != length) {
+            return false;
+        }
+        for (int index = 0; index < length; index++) {
+            if (segmentText.get(start + index) != source.get(from + index)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Spreads the hash code bits over the table.
+     *
+     * @param hashCode the hash code
+     *
+     * @return the spread hash
+     */
+    private static int hash(final int hashCode) {
+        int h = hashCode * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
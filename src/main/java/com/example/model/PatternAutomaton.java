@@ -0,0 +1,148 @@
+package com.example.model;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A deterministic automaton over the path blocks, compiled from the pattern tree.
+ * Every state stands for the set of pattern nodes matching the blocks read so far,
+ * and carries the best pattern ending at them, so a path is matched in a single
+ * pass, one transition per block, without following alternate nodes.
+ * <p>
+ * For "a,*" and "*,b"
+ * <p>
+ * state 0 {root}           a -&gt; 1, other -&gt; 2
+ * state 1 {a, *}           b -&gt; 3, other -&gt; 4
+ * state 2 {*}              b -&gt; 5, other -&gt; DEAD
+ * state 3 {a-*, *-b}       pattern "a,*"
+ * state 4 {a-*}            pattern "a,*"
+ * state 5 {*-b}            pattern "*,b"
+ */
+public class PatternAutomaton {
+
+    /**
+     * The start state, reached before reading any block.
+     */
+    public static final int START = 0;
+
+    /**
+     * The state reached once no pattern can match any more.
+     */
+    public static final int DEAD = -1;
+
+    /**
+     * The estimated bytes of a state, its arrays slots and its transition map.
+     */
+    private static final int STATE_BYTES = 88;
+
+    /**
+     * The estimated bytes of a transition, its map entry, table slot and boxed state.
+     */
+    private static final int TRANSITION_BYTES = 56;
+
+    /**
+     * The transitions of every state on the literal blocks, by block.
+     */
+    private final List<Map<String, Integer>> literalTransitions;
+
+    /**
+     * The transition of every state on any other block, DEAD if none.
+     */
+    private final int[] otherTransitions;
+
+    /**
+     * The best pattern of every state, null if no pattern ends there.
+     */
+    private final String[] patterns;
+
+    /**
+     * Instantiates a new Pattern automaton.
+     *
+     * @param literalTransitions the transitions of every state on the literal blocks
+     * @param otherTransitions   the transition of every state on any other block
+     * @param patterns           the best pattern of every state
+     */
+    public PatternAutomaton(final List<Map<String, Integer>> literalTransitions,
+                            final int[] otherTransitions, final String[] patterns) {
+        this.literalTransitions = literalTransitions;
+        this.otherTransitions = otherTransitions;
+        this.patterns = patterns;
+    }
+
+    /**
+     * Gets the state reached from a state by reading a block.
+     *
+     * @param state the state
+     * @param block the non blank path block
+     *
+     * @return the next state, DEAD if no pattern can match any more
+     */
+    public int next(final int state, final String block) {
+        Integer next = literalTransitions.get(state).get(block);
+        if (next == null) {
+            return otherTransitions[state];
+        }
+        return next;
+    }
+
+    /**
+     * Gets the best pattern of a state.
+     *
+     * @param state the state
+     *
+     * @return the pattern, null if no pattern ends there
+     */
+    public String getPattern(final int state) {
+        return patterns[state];
+    }
+
+    /**
+     * Gets the number of states.
+     *
+     * @return the number of states
+     */
+    public int getStateCount() {
+        return patterns.length;
+    }
+
+    /**
+     * Gets the number of transitions on literal blocks.
+     *
+     * @return the number of transitions
+     */
+    public int getTransitionCount() {
+        int transitions = 0;
+        for (Map<String, Integer> byBlock : literalTransitions) {
+            transitions += byBlock.size();
+        }
+        return transitions;
+    }
+
+    /**
+     * Gets the number of patterns which are the best pattern of some state.
+     *
+     * @return the number of patterns
+     */
+    public int getPatternCount() {
+        Set<String> distinct = new HashSet<>();
+        for (String pattern : patterns) {
+            if (pattern != null) {
+                distinct.add(pattern);
+            }
+        }
+        return distinct.size();
+    }
+
+    /**
+     * Estimates the heap bytes of the automaton, the blocks and patterns being shared
+     * with the pattern tree.
+     *
+     * @return the estimated bytes
+     */
+    public long getHeapBytes() {
+        return (long) STATE_BYTES * getStateCount()
+                + (long) TRANSITION_BYTES * getTransitionCount();
+    }
+}
@@ -1,23 +1,47 @@
 package com.example.model;
 
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.Map;
 
 import static com.google.common.collect.Maps.newHashMap;
 
 /**
  * A unique Node entity, a part of Pattern Tree.
+ * The pattern ending at a node is kept as its segments from the global segment pool,
+ * and its text is rebuilt every time it is asked for, never kept.
+ * Once frozen, a node and its children can no longer change, and can be shared
+ * by several versions of the tree and read by several threads.
  * Created by anarlawar on 3/7/16.
  */
 public class PatternNode {
 
     /**
-     * The Pattern.
+     * The segments of the pattern ending at this node, null if none.
      */
-    private String pattern;
+    private String[] patternSegments;
     /**
      * The Position from the origin node.
      */
     private int position;
+    /**
+     * The number of wildcards in the pattern ending at this node.
+     */
+    private int wildcards;
+    /**
+     * The position of the leftmost wildcard in the pattern ending at this node,
+     * 0 if it has none.
+     */
+    private int firstWildcard;
+    /**
+     * The number of times the pattern ending at this node was added.
+     */
+    private int references;
+    /**
+     * Whether the node is published, and can no longer change.
+     */
+    private boolean frozen;
     /**
      * The Child patterns.
      */
@@ -32,6 +56,22 @@ public class PatternNode {
         this.position = position;
     }
 
+    /**
+     * Copies the node, sharing its children with the original one.
+     * The copy can then be changed without changing the original node.
+     *
+     * @return the copy
+     */
+    public PatternNode copy() {
+        PatternNode copy = new PatternNode(position);
+        copy.patternSegments = patternSegments;
+        copy.wildcards = wildcards;
+        copy.firstWildcard = firstWildcard;
+        copy.references = references;
+        copy.childPatterns = newHashMap(childPatterns);
+        return copy;
+    }
+
     /**
      * Gets Child patterns.
      *
@@ -42,21 +82,59 @@ public class PatternNode {
     }
 
     /**
-     * Gets pattern.
+     * Gets the pattern ending at this node, rebuilt from its segments.
      *
-     * @return the pattern
+     * @return the pattern, null if none
      */
     public String getPattern() {
-        return pattern;
+        if (patternSegments == null) {
+            return null;
+        }
+        return SegmentPool.toPattern(patternSegments);
     }
 
     /**
-     * Sets pattern.
+     * Sets the pattern ending at this node, keeping its segments.
      *
-     * @param pattern the pattern
+     * @param pattern the pattern, null for none
      */
     public void setPattern(final String pattern) {
-        this.pattern = pattern;
+        checkNotFrozen();
+        if (pattern == null) {
+            this.patternSegments = null;
+        } else {
+            this.patternSegments = SegmentPool.global().toSegments(pattern);
+        }
+    }
+
+    /**
+     * Whether a pattern ends at this node.
+     *
+     * @return true if a pattern ends at this node
+     */
+    public boolean hasPattern() {
+        return patternSegments != null;
+    }
+
+    /**
+     * Gets the segments of the pattern ending at this node.
+     * The array is shared, and must not be changed.
+     *
+     * @return the segments, null if none
+     */
+    public String[] getPatternSegments() {
+        return patternSegments;
+    }
+
+    /**
+     * Sets the segments of the pattern ending at this node.
+     * The array is kept as is, and must not be changed afterwards.
+     *
+     * @param segments the segments from the global segment pool, null for none
+     */
+    public void setPatternSegments(final String[] segments) {
+        checkNotFrozen();
+        this.patternSegments = segments;
     }
 
     /**
@@ -74,6 +152,105 @@ public class PatternNode {
      * @param position the position
      */
     public void setPosition(final int position) {
+        checkNotFrozen();
         this.position = position;
     }
+
+    /**
+     * Gets the number of wildcards in the pattern ending at this node.
+     *
+     * @return the wildcards
+     */
+    public int getWildcards() {
+        return wildcards;
+    }
+
+    /**
+     * Sets the number of wildcards in the pattern ending at this node.
+     *
+     * @param wildcards the wildcards
+     */
+    public void setWildcards(final int wildcards) {
+        checkNotFrozen();
+        this.wildcards = wildcards;
+    }
+
+    /**
+     * Gets the position of the leftmost wildcard, 0 if the pattern has none.
+     *
+     * @return the first wildcard position
+     */
+    public int getFirstWildcard() {
+        return firstWildcard;
+    }
+
+    /**
+     * Sets the position of the leftmost wildcard, 0 if the pattern has none.
+     *
+     * @param firstWildcard the first wildcard position
+     */
+    public void setFirstWildcard(final int firstWildcard) {
+        checkNotFrozen();
+        this.firstWildcard = firstWildcard;
+    }
+
+    /**
+     * Gets the number of times the pattern ending at this node was added.
+     *
+     * @return the references
+     */
+    public int getReferences() {
+        return references;
+    }
+
+    /**
+     * Sets the number of times the pattern ending at this node was added.
+     *
+     * @param references the references
+     */
+    public void setReferences(final int references) {
+        checkNotFrozen();
+        this.references = references;
+    }
+
+    /**
+     * Whether the node is frozen.
+     *
+     * @return true if frozen
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Freezes the node and all its children, stopping at the already frozen ones.
+     * The tree is walked with an explicit stack, so deep patterns do not overflow
+     * the thread stack.
+     */
+    public void freeze() {
+        Deque<PatternNode> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            PatternNode node = pending.pop();
+            if (node.frozen) {
+                continue;
+            }
+            node.frozen = true;
+            node.childPatterns = Collections.unmodifiableMap(node.childPatterns);
+            for (PatternNode child : node.childPatterns.values()) {
+                if (!child.frozen) {
+                    pending.push(child);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fails on changing a frozen node.
+     */
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("The pattern node is frozen");
+        }
+    }
 }
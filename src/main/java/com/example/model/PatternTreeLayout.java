@@ -0,0 +1,134 @@
+package com.example.model;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The read side of a compiled pattern tree, whatever holds its nodes:
+ * int arrays on the heap, or buffers outside of it.
+ * The nodes are numbered breadth first, the root being ROOT, and the segments
+ * are looked up by id, the wildcard segment having the id WILDCARD_ID.
+ */
+public interface PatternTreeLayout {
+
+    /**
+     * The id of the root node.
+     */
+    int ROOT = 0;
+
+    /**
+     * The value of a missing node.
+     */
+    int NO_NODE = -1;
+
+    /**
+     * Gets the child of a node for a segment.
+     * The wildcard segment id gives the wildcard child.
+     *
+     * @param node      the node
+     * @param segmentId the segment id
+     *
+     * @return the child, or NO_NODE
+     */
+    int getChild(int node, int segmentId);
+
+    /**
+     * Gets the wildcard child of a node.
+     *
+     * @param node the node
+     *
+     * @return the wildcard child, or NO_NODE
+     */
+    int getWildcardChild(int node);
+
+    /**
+     * Gets the position of a node from the root.
+     *
+     * @param node the node
+     *
+     * @return the position
+     */
+    int getPosition(int node);
+
+    /**
+     * Gets the pattern ending at a node.
+     *
+     * @param node the node
+     *
+     * @return the pattern, or null
+     */
+    String getPattern(int node);
+
+    /**
+     * Whether a pattern ends at a node.
+     *
+     * @param node the node
+     *
+     * @return true if a pattern ends there
+     */
+    boolean hasPattern(int node);
+
+    /**
+     * Gets the number of wildcards in the pattern ending at a node.
+     *
+     * @param node the node
+     *
+     * @return the wildcards
+     */
+    int getWildcards(int node);
+
+    /**
+     * Gets the position of the leftmost wildcard in the pattern ending at a node.
+     *
+     * @param node the node
+     *
+     * @return the position, 0 if the pattern has no wildcard
+     */
+    int getFirstWildcard(int node);
+
+    /**
+     * Gets the number of nodes.
+     *
+     * @return the node count
+     */
+    int getNodeCount();
+
+    /**
+     * Gets the id of a segment.
+     *
+     * @param segment the segment
+     *
+     * @return the id, or SegmentDictionary.NO_SEGMENT when the segment is unknown
+     */
+    int getSegmentId(String segment);
+
+    /**
+     * Gets the id of the segment held by a range of a string,
+     * without creating the segment string.
+     *
+     * @param source the string holding the segment
+     * @param from   the start of the segment, inclusive
+     * @param to     the end of the segment, exclusive
+     *
+     * @return the id, or SegmentDictionary.NO_SEGMENT when the segment is unknown
+     */
+    int getSegmentId(String source, int from, int to);
+
+    /**
+     * Gets the id of the segment held by a range of ASCII bytes,
+     * without decoding the segment.
+     *
+     * @param source the bytes holding the segment, ASCII only
+     * @param from   the start of the segment, inclusive
+     * @param to     the end of the segment, exclusive
+     *
+     * @return the id, or SegmentDictionary.NO_SEGMENT when the segment is unknown
+     */
+    int getSegmentId(ByteBuffer source, int from, int to);
+
+    /**
+     * Estimates the heap taken by the tree.
+     *
+     * @return the approximate heap bytes
+     */
+    long getHeapBytes();
+}
@@ -0,0 +1,222 @@
+package com.example.model;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Interned pattern segments, every distinct segment gets an int id.
+ * The ids are looked up through an open addressing hash table,
+ * the wildcard segment "*" always has the id 0.
+ */
+public class SegmentDictionary {
+
+    /**
+     * The wildcard segment.
+     */
+    public static final String WILDCARD = "*";
+
+    /**
+     * The id of the wildcard segment.
+     */
+    public static final int WILDCARD_ID = 0;
+
+    /**
+     * The id returned for unknown segments.
+     */
+    public static final int NO_SEGMENT = -1;
+
+    /**
+     * The approximate heap bytes of an array header.
+     */
+    public static final int ARRAY_BYTES = 16;
+
+    /**
+     * The approximate heap bytes of an object reference.
+     */
+    public static final int REFERENCE_BYTES = 4;
+
+    /**
+     * The approximate heap bytes of a string, besides its chars.
+     */
+    private static final int STRING_BYTES = 40;
+
+    /**
+     * The segments, by id.
+     */
+    private final String[] segments;
+
+    /**
+     * The hash table, holding id + 1 per slot, 0 for an empty slot.
+     */
+    private final int[] slots;
+
+    /**
+     * The mask of the hash table size.
+     */
+    private final int mask;
+
+    /**
+     * Instantiates a new Segment dictionary.
+     *
+     * @param segmentList the distinct segments, the wildcard first
+     */
+    public SegmentDictionary(final List<String> segmentList) {
+        this.segments = segmentList.toArray(new String[segmentList.size()]);
+        int capacity = Integer.highestOneBit(Math.max(segments.length, 1) * 2) * 2;
+        this.slots = new int[capacity];
+        this.mask = capacity - 1;
+        for (int id = 0; id < segments.length; id++) {
+            int slot = hash(segments[id].hashCode()) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    /**
+     * Gets the id of a segment.
+     *
+     * @param segment the segment
+     *
+     * @return the id, or NO_SEGMENT when the segment is unknown
+     */
+    public int getId(final String segment) {
+        int slot = hash(segment.hashCode()) & mask;
+        int entry = slots[slot];
+        while (entry != 0) {
+            if (segments[entry - 1].equals(segment)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+            entry = slots[slot];
+        }
+        return NO_SEGMENT;
+    }
+
+    /**
+     * Gets the id of the segment held by a range of a string,
+     * without creating the segment string.
+     *
+     * @param source the string holding the segment
+     * @param from   the start of the segment, inclusive
+     * @param to     the end of the segment, exclusive
+     *
+     * @return the id, or NO_SEGMENT when the segment is unknown
+     */
+    public int getId(final String source, final int from, final int to) {
+        // Same hash as String.hashCode, over the range only.
+        int hashCode = 0;
+        for (int index = from; index < to; index++) {
+            hashCode = 31 * hashCode + source.charAt(index);
+        }
+        int length = to - from;
+        int slot = hash(hashCode) & mask;
+        int entry = slots[slot];
+        while (entry != 0) {
+            String segment = segments[entry - 1];
+            if (segment.length() == length
+                    && segment.regionMatches(0, source, from, length)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+            entry = slots[slot];
+        }
+        return NO_SEGMENT;
+    }
+
+    /**
+     * Gets the id of the segment held by a range of ASCII bytes,
+     * without decoding the segment. ASCII bytes hash and compare
+     * the same as their chars, so the same table is used.
+     *
+     * @param source the bytes holding the segment, ASCII only
+     * @param from   the start of the segment, inclusive
+     * @param to     the end of the segment, exclusive
+     *
+     * @return the id, or NO_SEGMENT when the segment is unknown
+     */
+    public int getId(final ByteBuffer source, final int from, final int to) {
+        int hashCode = 0;
+        for (int index = from; index < to; index++) {
+            hashCode = 31 * hashCode + source.get(index);
+        }
+        int length = to - from;
+        int slot = hash(hashCode) & mask;
+        int entry = slots[slot];
+        while (entry != 0) {
+            if (segments[entry - 1].length() == length
+                    && regionMatches(segments[entry - 1], source, from)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+            entry = slots[slot];
+        }
+        return NO_SEGMENT;
+    }
+
+    /**
+     * Gets the segment of an id.
+     *
+     * @param id the id
+     *
+     * @return the segment
+     */
+    public String getSegment(final int id) {
+        return segments[id];
+    }
+
+    /**
+     * Gets the number of segments.
+     *
+     * @return the size
+     */
+    public int size() {
+        return segments.length;
+    }
+
+    /**
+     * Estimates the heap taken by the segments and the hash table.
+     *
+     * @return the approximate heap bytes
+     */
+    public long getHeapBytes() {
+        long bytes = 2 * ARRAY_BYTES + (long) REFERENCE_BYTES * segments.length
+                + (long) Integer.BYTES * slots.length;
+        for (String segment : segments) {
+            bytes += STRING_BYTES + 2L * segment.length();
+        }
+        return bytes;
+    }
+
+    /**
+     * Whether a segment has the same chars as the ASCII bytes of a range.
+     *
+     * @param segment the segment
+     * @param source  the bytes
+     * @param from    the start of the range
+     *
+     * @return true if they match
+     */
+    private static boolean regionMatches(final String segment, final ByteBuffer source,
+                                         final int from) {
+        for (int index = 0; index < segment.length(); index++) {
+            if (segment.charAt(index) != source.get(from + index)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Spreads the hash code bits over the table.
+     *
+     * @param hashCode the hash code
+     *
+     * @return the spread hash
+     */
+    private static int hash(final int hashCode) {
+        int h = hashCode * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.model;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+/**
+ * The segments of all the pattern trees, every distinct segment gets a single string
+ * instance. Pattern trees share the segment strings as their child keys, and keep
+ * the segments of their patterns instead of the pattern text.
+ * The pool only holds its segments weakly: a segment no pattern tree refers to any
+ * more is reclaimed, so adding and removing patterns does not grow the pool forever,
+ * while the older versions of a tree keep the segments they refer to.
+ * Safe for several threads.
+ */
+public final class SegmentPool {
+
+    /**
+     * The pool shared by all the pattern trees.
+     */
+    private static final SegmentPool GLOBAL = new SegmentPool();
+
+    /**
+     * The pattern block separator.
+     */
+    private static final char SEPARATOR = ',';
+
+    /**
+     * The pooled segments.
+     */
+    private final Interner<String> segments = Interners.newWeakInterner();
+
+    /**
+     * Instantiates a new Segment pool.
+     */
+    SegmentPool() {
+    }
+
+    /**
+     * Gets the pool shared by all the pattern trees.
+     *
+     * @return the segment pool
+     */
+    public static SegmentPool global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Gets the pooled instance of a segment, adding it when new.
+     *
+     * @param segment the segment
+     *
+     * @return the pooled segment
+     */
+    public String intern(final String segment) {
+        return segments.intern(segment);
+    }
+
+    /**
+     * Gets the pooled instances of pattern blocks.
+     *
+     * @param blocks the pattern blocks
+     *
+     * @return the pooled segments, a new array
+     */
+    public String[] intern(final String[] blocks) {
+        String[] pooled = new String[blocks.length];
+        for (int index = 0; index < blocks.length; index++) {
+            pooled[index] = intern(blocks[index]);
+        }
+        return pooled;
+    }
+
+    /**
+     * Rebuilds the text of a pattern from its segments.
+     *
+     * @param patternSegments the segments
+     *
+     * @return the pattern
+     */
+    public static String toPattern(final String[] patternSegments) {
+        int length = patternSegments.length - 1;
+        for (String segment : patternSegments) {
+            length += segment.length();
+        }
+        StringBuilder pattern = new StringBuilder(length);
+        for (int index = 0; index < patternSegments.length; index++) {
+            if (index > 0) {
+                pattern.append(SEPARATOR);
+            }
+            pattern.append(patternSegments[index]);
+        }
+        return pattern.toString();
+    }
+
+    /**
+     * Gets the pooled segments of a pattern text.
+     *
+     * @param pattern the pattern
+     *
+     * @return the segments
+     */
+    public String[] toSegments(final String pattern) {
+        int blocks = 1;
+        for (int index = 0; index < pattern.length(); index++) {
+            if (pattern.charAt(index) == SEPARATOR) {
+                blocks++;
+            }
+        }
+        String[] patternSegments = new String[blocks];
+        int block = 0;
+        int blockStart = 0;
+        for (int index = 0; index <= pattern.length(); index++) {
+            if (index == pattern.length() || pattern.charAt(index) == SEPARATOR) {
+                patternSegments[block++] = intern(pattern.substring(blockStart, index));
+                blockStart = index + 1;
+            }
+        }
+        return patternSegments;
+    }
+}
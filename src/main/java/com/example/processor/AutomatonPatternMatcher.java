@@ -0,0 +1,53 @@
+package com.example.processor;
+
+import com.example.model.PatternAutomaton;
+
+/**
+ * Matches the paths against a pattern automaton, which never changes.
+ */
+public class AutomatonPatternMatcher implements PatternMatcher {
+
+    /**
+     * The Automaton processor.
+     */
+    private final AutomatonProcessor automatonProcessor;
+
+    /**
+     * The pattern automaton.
+     */
+    private final PatternAutomaton automaton;
+
+    /**
+     * Instantiates a new Automaton pattern matcher.
+     *
+     * @param processor        the automaton processor
+     * @param patternAutomaton the pattern automaton
+     */
+    public AutomatonPatternMatcher(final AutomatonProcessor processor,
+                                   final PatternAutomaton patternAutomaton) {
+        this.automatonProcessor = processor;
+        this.automaton = patternAutomaton;
+    }
+
+    /**
+     * This method returns the matching pattern for a single path.
+     * If No Match found, it returns "NO MATCH"
+     *
+     * @param path the path
+     *
+     * @return the matching pattern
+     */
+    @Override
+    public String getMatchingPattern(final String path) {
+        return automatonProcessor.getMatchingPattern(automaton, path);
+    }
+
+    /**
+     * Gets the pattern automaton.
+     *
+     * @return the automaton
+     */
+    public PatternAutomaton getAutomaton() {
+        return automaton;
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.processor;
+
+import com.example.constant.Messages;
+import com.example.model.PatternAutomaton;
+import com.example.model.PatternNode;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.example.model.PatternAutomaton.DEAD;
+import static com.example.model.SegmentDictionary.WILDCARD;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Sets.newLinkedHashSet;
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Compiles the pattern tree into a deterministic automaton over the path blocks,
+ * and matches the paths against it.
+ * <p>
+ * The states are built by subset construction: a state is the list of nodes
+ * the pattern tree keeps for the blocks read so far, in the order the tree
+ * matching keeps them, so the best pattern of a state is the one the tree finds.
+ * A state has a transition on every literal block of the children of its nodes,
+ * and one on any other block, following their wildcard children only.
+ * Wildcards in several branches can make the states grow exponentially with the
+ * patterns, so the compilation gives up past a maximum number of states.
+ */
+@Service
+public class AutomatonProcessor {
+
+    /**
+     * The state returned instead of a new one past the maximum number of states.
+     */
+    private static final int TOO_MANY = -2;
+
+    /**
+     * The Pattern processor.
+     */
+    @Autowired
+    private PatternProcessor patProcessor;
+
+    /**
+     * The most states of an automaton, past which the pattern tree is matched instead.
+     */
+    @Value("${matching.automaton-max-states:100000}")
+    private int maxStates;
+
+    /**
+     * Compiles the pattern tree into an automaton.
+     *
+     * @param rootNode the root of the pattern tree
+     *
+     * @return the automaton, null if it would have more than the maximum states,
+     *         found as soon as one state too many is reached
+     */
+    public PatternAutomaton compile(final PatternNode rootNode) {
+        Map<PatternNode, Integer> nodeIds = new IdentityHashMap<>();
+        Map<List<Integer>, Integer> stateIds = newHashMap();
+        List<List<PatternNode>> states = newArrayList();
+        List<Map<String, Integer>> literalTransitions = newArrayList();
+        List<Integer> otherTransitions = newArrayList();
+
+        List<PatternNode> start = newArrayList(rootNode);
+        stateOf(start, nodeIds, stateIds, states, maxStates);
+        for (int state = 0; state < states.size(); state++) {
+            List<PatternNode> nodes = states.get(state);
+            Set<String> literals = newLinkedHashSet();
+            for (PatternNode node : nodes) {
+                for (String block : node.getChildPatterns().keySet()) {
+                    if (!WILDCARD.equals(block)) {
+                        literals.add(block);
+                    }
+                }
+            }
+
+            Map<String, Integer> byBlock = newHashMap();
+            for (String block : literals) {
+                List<PatternNode> nextNodes = newArrayList();
+                PatternProcessor.matchBlock(nodes, block, nextNodes);
+                int next = stateOf(nextNodes, nodeIds, stateIds, states, maxStates);
+                if (next == TOO_MANY) {
+                    return null;
+                }
+                byBlock.put(block, next);
+            }
+            // A wildcard block is no literal of any child, so it only follows wildcards.
+            List<PatternNode> wildcardNodes = newArrayList();
+            PatternProcessor.matchBlock(nodes, WILDCARD, wildcardNodes);
+            int other = stateOf(wildcardNodes, nodeIds, stateIds, states, maxStates);
+            if (other == TOO_MANY) {
+                return null;
+            }
+            literalTransitions.add(byBlock);
+            otherTransitions.add(other);
+        }
+
+        int[] others = new int[states.size()];
+        String[] patterns = new String[states.size()];
+        for (int state = 0; state < states.size(); state++) {
+            others[state] = otherTransitions.get(state);
+            PatternNode matchingNode = patProcessor.bestMatch(states.get(state));
+            if (matchingNode != null && !isBlank(matchingNode.getPattern())) {
+                patterns[state] = matchingNode.getPattern();
+            }
+        }
+        return new PatternAutomaton(literalTransitions, others, patterns);
+    }
+
+    /**
+     * This method returns the matching pattern for a single path,
+     * with a single transition per non blank block.
+     * If No Match found, it returns "NO MATCH"
+     *
+     * @param automaton the pattern automaton
+     * @param path      the path
+     *
+     * @return the matching pattern
+     */
+    public String getMatchingPattern(final PatternAutomaton automaton,
+                                     final String path) {
+        String pattern = findTheNearestMatch(automaton, patProcessor.splitPath(path));
+        if (pattern == null) {
+            return Messages.NO_MATCH;
+        }
+        return pattern;
+    }
+
+    /**
+     * Find the pattern, skipping the blank blocks as the pattern tree does.
+     *
+     * @param automaton the pattern automaton
+     * @param pathList  the path list, may be null
+     *
+     * @return the matching pattern, null if no pattern matches
+     */
+    public String findTheNearestMatch(final PatternAutomaton automaton,
+                                      final String[] pathList) {
+        if (pathList == null) {
+            return null;
+        }
+        int state = PatternAutomaton.START;
+        for (String pathBlock : pathList) {
+            if (isBlank(pathBlock)) {
+                continue;
+            }
+            state = automaton.next(state, pathBlock);
+            if (state == DEAD) {
+                return null;
+            }
+        }
+        return automaton.getPattern(state);
+    }
+
+    /**
+     * Gets the state of a list of matching nodes, adding it when new.
+     *
+     * @param nodes    the matching nodes, in the order of the tree matching
+     * @param nodeIds  the ids of the nodes seen so far
+     * @param stateIds the states by the ids of their nodes
+     * @param states   the nodes of every state
+     * @param limit    the most states
+     *
+     * @return the state, DEAD without matching nodes, TOO_MANY if a new state
+     *         would be past the limit
+     */
+    private static int stateOf(final List<PatternNode> nodes,
+                               final Map<PatternNode, Integer> nodeIds,
+                               final Map<List<Integer>, Integer> stateIds,
+                               final List<List<PatternNode>> states, final int limit) {
+        if (nodes.isEmpty()) {
+            return DEAD;
+        }
+        List<Integer> key = newArrayList();
+        for (PatternNode node : nodes) {
+            key.add(nodeIds.computeIfAbsent(node, seen -> nodeIds.size()));
+        }
+        Integer state = stateIds.get(key);
+        if (state == null) {
+            if (states.size() >= limit) {
+                return TOO_MANY;
+            }
+            state = states.size();
+            stateIds.put(key, state);
+            states.add(nodes);
+        }
+        return state;
+    }
+}
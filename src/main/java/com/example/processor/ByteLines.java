@@ -0,0 +1,96 @@
+package com.example.processor;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Checks on the UTF-8 bytes of an input line, read straight from the file buffer.
+ * ASCII bytes are checked as they are, any other byte falls back to
+ * the decoded line, so the results are the same as on the line string.
+ */
+final class ByteLines {
+
+    /**
+     * The longest count line parsed from its digits.
+     */
+    private static final int MAX_DIGITS = 9;
+
+    /**
+     * The radix of the count lines.
+     */
+    private static final int RADIX = 10;
+
+    /**
+     * Not instantiated.
+     */
+    private ByteLines() {
+    }
+
+    /**
+     * Decodes a range of bytes into a string.
+     *
+     * @param buffer the buffer
+     * @param from   the start of the range, inclusive
+     * @param to     the end of the range, exclusive
+     *
+     * @return the string
+     */
+    static String decode(final ByteBuffer buffer, final int from, final int to) {
+        ByteBuffer range = buffer.duplicate();
+        range.position(from);
+        byte[] bytes = new byte[to - from];
+        range.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Whether a range of bytes is empty or holds whitespaces only.
+     *
+     * @param buffer the buffer
+     * @param from   the start of the range, inclusive
+     * @param to     the end of the range, exclusive
+     *
+     * @return true if blank
+     */
+    static boolean isBlankLine(final ByteBuffer buffer, final int from, final int to) {
+        for (int index = from; index < to; index++) {
+            byte current = buffer.get(index);
+            if (current < 0) {
+                return isBlank(decode(buffer, from, to));
+            }
+            if (!Character.isWhitespace(current)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses a count line made of plain digits, without decoding it.
+     *
+     * @param buffer the buffer
+     * @param from   the start of the line, inclusive
+     * @param to     the end of the line, exclusive
+     *
+     * @return the count, or -1 when the line is not plain digits,
+     *         with a leading zero or too long to be parsed this way
+     */
+    static int parseDigits(final ByteBuffer buffer, final int from, final int to) {
+        int length = to - from;
+        if (length == 0 || length > MAX_DIGITS
+                || length > 1 && buffer.get(from) == '0') {
+            return -1;
+        }
+        int count = 0;
+        for (int index = from; index < to; index++) {
+            int digit = buffer.get(index) - '0';
+            if (digit < 0 || digit >= RADIX) {
+                return -1;
+            }
+            count = count * RADIX + digit;
+        }
+        return count;
+    }
+}
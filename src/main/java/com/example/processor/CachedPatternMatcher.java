@@ -0,0 +1,100 @@
+package com.example.processor;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Matches the paths through a match cache, so a repeated path is only
+ * matched once against the patterns. The paths are cached once normalized,
+ * so "/a/b/" and "a//b" share the same entry. When the patterns of a
+ * versioned pattern index change, the matches of the previous version are dropped.
+ */
+public class CachedPatternMatcher implements PatternMatcher {
+
+    /**
+     * The cached pattern matcher.
+     */
+    private final PatternMatcher matcher;
+
+    /**
+     * The match cache.
+     */
+    private final MatchCache cache;
+
+    /**
+     * The latest version of the patterns seen by a lookup.
+     */
+    private final AtomicLong latestVersion = new AtomicLong();
+
+    /**
+     * Instantiates a new Cached pattern matcher.
+     *
+     * @param patternMatcher the cached pattern matcher
+     * @param matchCache     the match cache
+     */
+    public CachedPatternMatcher(final PatternMatcher patternMatcher,
+                                final MatchCache matchCache) {
+        this.matcher = patternMatcher;
+        this.cache = matchCache;
+    }
+
+    /**
+     * This method returns the matching pattern for a single path,
+     * from the cache when it was already matched against the current patterns.
+     * If No Match found, it returns "NO MATCH"
+     *
+     * @param path the path
+     *
+     * @return the matching pattern
+     */
+    @Override
+    public String getMatchingPattern(final String path) {
+        if (path == null) {
+            return matcher.getMatchingPattern(path);
+        }
+        // Read before matching, so the match is never older than its version.
+        long version = currentVersion();
+        String key = PathKeys.normalize(path);
+        String match = cache.get(key, version);
+        if (match == null) {
+            match = matcher.getMatchingPattern(path);
+            cache.put(key, version, match);
+        }
+        return match;
+    }
+
+    /**
+     * Gets the cached pattern matcher.
+     *
+     * @return the pattern matcher
+     */
+    public PatternMatcher getMatcher() {
+        return matcher;
+    }
+
+    /**
+     * Gets the match cache.
+     *
+     * @return the match cache
+     */
+    public MatchCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Gets the current version of the patterns, dropping the cached matches
+     * when it changed since the previous lookup.
+     *
+     * @return the version, always 0 for patterns which never change
+     */
+    private long currentVersion() {
+        if (!(matcher instanceof VersionedPatternIndex)) {
+            return 0;
+        }
+        long version = ((VersionedPatternIndex) matcher).getVersionNumber();
+        long latest = latestVersion.get();
+        if (version > latest && latestVersion.compareAndSet(latest, version)) {
+            cache.invalidateAll();
+        }
+        return version;
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.processor;
+
+import com.example.model.PatternTreeLayout;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Matches the paths against a compiled pattern tree, which never changes,
+ * held on the heap or mapped outside of it.
+ */
+public class CompiledPatternMatcher implements PatternMatcher {
+
+    /**
+     * The Compiled pattern processor.
+     */
+    private final CompiledPatternProcessor compiledProcessor;
+
+    /**
+     * The compiled pattern tree.
+     */
+    private final PatternTreeLayout tree;
+
+    /**
+     * Instantiates a new Compiled pattern matcher.
+     *
+     * @param processor    the compiled pattern processor
+     * @param compiledTree the compiled pattern tree
+     */
+    public CompiledPatternMatcher(final CompiledPatternProcessor processor,
+                                  final PatternTreeLayout compiledTree) {
+        this.compiledProcessor = processor;
+        this.tree = compiledTree;
+    }
+
+    /**
+     * This method returns the matching pattern for a single path.
+     * If No Match found, it returns "NO MATCH"
+     *
+     * @param path the path
+     *
+     * @return the matching pattern
+     */
+    @Override
+    public String getMatchingPattern(final String path) {
+        return compiledProcessor.getMatchingPattern(tree, path);
+    }
+
+    /**
+     * This method returns the matching pattern for a path held as UTF-8 bytes,
+     * matching the ASCII paths without decoding them.
+     *
+     * @param path the buffer holding the path
+     * @param from the start of the path, inclusive
+     * @param to   the end of the path, exclusive
+     *
+     * @return the matching pattern
+     */
+    @Override
+    public String getMatchingPattern(final ByteBuffer path, final int from,
+                                     final int to) {
+        return compiledProcessor.getMatchingPattern(tree, path, from, to);
+    }
+
+    /**
+     * Matches a path, recording the nodes reached and the alternates followed.
+     *
+     * @param pathList the path list
+     *
+     * @return the trace of the match
+     */
+    public MatchTrace traceMatch(final String[] pathList) {
+        return compiledProcessor.traceMatch(tree, pathList);
+    }
+
+    /**
+     * Gets the compiled pattern tree.
+     *
+     * @return the tree
+     */
+    public PatternTreeLayout getTree() {
+        return tree;
+    }
+}
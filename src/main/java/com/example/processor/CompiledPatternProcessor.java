@@ -0,0 +1,448 @@
+package com.example.processor;
+
+import com.example.constant.Messages;
+import com.example.model.CompiledPatternTree;
+import com.example.model.PatternNode;
+import com.example.model.PatternTreeLayout;
+import com.example.model.SegmentDictionary;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+import static com.example.model.PatternTreeLayout.NO_NODE;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Compiles the pattern tree into its compact read only layout,
+ * and matches the paths against it.
+ * The matching gives the same results as the pattern tree,
+ * without any map lookup or pointer chasing between the nodes.
+ */
+@Service
+public class CompiledPatternProcessor {
+
+    /**
+     * The initial room for the nodes matching a path, grown when needed.
+     */
+    private static final int INITIAL_NODES = 16;
+
+    /**
+     * The separator of the path blocks.
+     */
+    private static final char PATH_SEPARATOR = '/';
+
+    /**
+     * The matching nodes buffers of each matching thread.
+     */
+    private static final ThreadLocal<MatchScratch> SCRATCH =
+            ThreadLocal.withInitial(MatchScratch::new);
+
+    /**
+     * Compiles the pattern tree. The nodes are numbered breadth first,
+     * so the nodes close to the root, visited by every path, are close in memory.
+     *
+     * @param rootNode the root of the pattern tree
+     *
+     * @return the compiled pattern tree
+     */
+    public CompiledPatternTree compile(final PatternNode rootNode) {
+        int nodeCount = countNodes(rootNode);
+
+        int[] childOffsets = new int[nodeCount + 1];
+        int[] childSegments = new int[nodeCount];
+        int[] childNodes = new int[nodeCount];
+        int[] wildcardChildren = new int[nodeCount];
+        int[] positions = new int[nodeCount];
+        String[] patterns = new String[nodeCount];
+        int[] wildcards = new int[nodeCount];
+        int[] firstWildcards = new int[nodeCount];
+
+        List<String> segments = newArrayList();
+        Map<String, Integer> segmentIds = newHashMap();
+        segments.add(SegmentDictionary.WILDCARD);
+        segmentIds.put(SegmentDictionary.WILDCARD, SegmentDictionary.WILDCARD_ID);
+
+        Deque<PatternNode> queue = new ArrayDeque<>();
+        queue.add(rootNode);
+        int nextNode = 1;
+        int childCount = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            PatternNode patternNode = queue.poll();
+            positions[node] = patternNode.getPosition();
+            patterns[node] = patternNode.getPattern();
+            wildcards[node] = patternNode.getWildcards();
+            firstWildcards[node] = patternNode.getFirstWildcard();
+            wildcardChildren[node] = NO_NODE;
+            childOffsets[node] = childCount;
+
+            Map<String, PatternNode> children = patternNode.getChildPatterns();
+            PatternNode[] literalNodes = new PatternNode[children.size()];
+            long[] literals = new long[children.size()];
+            int literalCount = 0;
+            for (Map.Entry<String, PatternNode> child : children.entrySet()) {
+                String segment = child.getKey();
+                if (SegmentDictionary.WILDCARD.equals(segment)) {
+                    continue;
+                }
+                Integer segmentId = segmentIds.get(segment);
+                if (segmentId == null) {
+                    segmentId = segments.size();
+                    segments.add(segment);
+                    segmentIds.put(segment, segmentId);
+                }
+                // Sort the literal children by segment id, keeping their index.
+                literalNodes[literalCount] = child.getValue();
+                literals[literalCount] = ((long) segmentId << 32) | literalCount;
+                literalCount++;
+            }
+            Arrays.sort(literals, 0, literalCount);
+            for (int literal = 0; literal < literalCount; literal++) {
+                childSegments[childCount] = (int) (literals[literal] >>> 32);
+                childNodes[childCount++] = nextNode++;
+                queue.add(literalNodes[(int) literals[literal]]);
+            }
+            PatternNode wildcard = children.get(SegmentDictionary.WILDCARD);
+            if (wildcard != null) {
+                wildcardChildren[node] = nextNode++;
+                queue.add(wildcard);
+            }
+        }
+        childOffsets[nodeCount] = childCount;
+
+        return new CompiledPatternTree(new SegmentDictionary(segments), childOffsets,
+                Arrays.copyOf(childSegments, childCount),
+                Arrays.copyOf(childNodes, childCount),
+                wildcardChildren, positions, patterns, wildcards, firstWildcards);
+    }
+
+    /**
+     * This method returns the matching pattern for a single path.
+     * If No Match found, it returns "NO MATCH"
+     *
+     * @param tree the compiled pattern tree
+     * @param path the path
+     *
+     * @return the matching pattern
+     */
+    public String getMatchingPattern(final PatternTreeLayout tree, final String path) {
+        int node = findTheNearestMatch(tree, path);
+        if (node == NO_NODE) {
+            return Messages.NO_MATCH;
+        }
+        return tree.getPattern(node);
+    }
+
+    /**
+     * Find the node of the nearest matching pattern for a path.
+     * The path blocks are read in place and looked up by their range,
+     * and the matching nodes are held in per thread buffers,
+     * so nothing is allocated per path.
+     * The path is split the same way as splitPath does, on every "/".
+     *
+     * @param tree the compiled pattern tree
+     * @param path the path
+     *
+     * @return the node of the matching pattern, or NO_NODE
+     */
+    public int findTheNearestMatch(final PatternTreeLayout tree, final String path) {
+        MatchScratch scratch = SCRATCH.get();
+        scratch.start(PatternTreeLayout.ROOT);
+        if (path == null) {
+            return NO_NODE;
+        }
+        int length = path.length();
+        int from = 0;
+
+        while (from < length && scratch.matchingCount > 0) {
+            if (path.charAt(from) == PATH_SEPARATOR) {
+                from++;
+                continue;
+            }
+            int to = from;
+            boolean blank = true;
+            while (to < length && path.charAt(to) != PATH_SEPARATOR) {
+                if (blank && !Character.isWhitespace(path.charAt(to))) {
+                    blank = false;
+                }
+                to++;
+            }
+            if (!blank) {
+                advance(tree, tree.getSegmentId(path, from, to), scratch);
+            }
+            from = to;
+        }
+        return findTheBestNode(tree, scratch);
+    }
+
+    /**
+     * This method returns the matching pattern for a path held as UTF-8 bytes.
+     * If No Match found, it returns "NO MATCH"
+     *
+     * @param tree the compiled pattern tree
+     * @param path the buffer holding the path
+     * @param from the start of the path, inclusive
+     * @param to   the end of the path, exclusive
+     *
+     * @return the matching pattern
+     */
+    public String getMatchingPattern(final PatternTreeLayout tree,
+                                     final ByteBuffer path, final int from,
+                                     final int to) {
+        int node = findTheNearestMatch(tree, path, from, to);
+        if (node == NO_NODE) {
+            return Messages.NO_MATCH;
+        }
+        return tree.getPattern(node);
+    }
+
+    /**
+     * Find the node of the nearest matching pattern for a path held as UTF-8 bytes.
+     * ASCII paths are read in place, the same way as the string paths.
+     * A path with any other byte is decoded and matched as a string.
+     *
+     * @param tree the compiled pattern tree
+     * @param path the buffer holding the path
+     * @param from the start of the path, inclusive
+     * @param to   the end of the path, exclusive
+     *
+     * @return the node of the matching pattern, or NO_NODE
+     */
+    public int findTheNearestMatch(final PatternTreeLayout tree, final ByteBuffer path,
+                                   final int from, final int to) {
+        MatchScratch scratch = SCRATCH.get();
+        scratch.start(PatternTreeLayout.ROOT);
+        int blockStart = from;
+
+        while (blockStart < to && scratch.matchingCount > 0) {
+            if (path.get(blockStart) == PATH_SEPARATOR) {
+                blockStart++;
+                continue;
+            }
+            int blockEnd = blockStart;
+            boolean blank = true;
+            while (blockEnd < to && path.get(blockEnd) != PATH_SEPARATOR) {
+                byte current = path.get(blockEnd);
+                if (current < 0) {
+                    return findTheNearestMatch(tree, ByteLines.decode(path, from, to));
+                }
+                if (blank && !Character.isWhitespace(current)) {
+                    blank = false;
+                }
+                blockEnd++;
+            }
+            if (!blank) {
+                advance(tree, tree.getSegmentId(path, blockStart, blockEnd), scratch);
+            }
+            blockStart = blockEnd;
+        }
+        return findTheBestNode(tree, scratch);
+    }
+
+    /**
+     * Find the node of the nearest matching pattern, searching the compiled tree
+     * the same way the pattern tree is searched: block by block, keeping every node
+     * matching the blocks read so far, the literal child before the wildcard one.
+     *
+     * @param tree     the compiled pattern tree
+     * @param node     the node to start from
+     * @param pathList the path list
+     *
+     * @return the node of the matching pattern, or NO_NODE
+     */
+    public int findTheNearestMatch(final PatternTreeLayout tree, final int node,
+                                   final String[] pathList) {
+        MatchScratch scratch = SCRATCH.get();
+        scratch.start(node);
+
+        for (int index = tree.getPosition(node);
+             index < pathList.length && scratch.matchingCount > 0; index++) {
+            String pathBlock = pathList[index];
+            if (!isBlank(pathBlock)) {
+                advance(tree, tree.getSegmentId(pathBlock), scratch);
+            }
+        }
+        return findTheBestNode(tree, scratch);
+    }
+
+    /**
+     * Matches a path the same way as findTheNearestMatch, recording the nodes
+     * reached and the alternates followed. Meant for the paths worth looking into.
+     *
+     * @param tree     the compiled pattern tree
+     * @param pathList the path list
+     *
+     * @return the trace of the match
+     */
+    public MatchTrace traceMatch(final PatternTreeLayout tree,
+                                 final String[] pathList) {
+        MatchTrace trace = new MatchTrace();
+        MatchScratch scratch = SCRATCH.get();
+        scratch.start(PatternTreeLayout.ROOT);
+
+        for (int index = 0; index < pathList.length && scratch.matchingCount > 0;
+             index++) {
+            String pathBlock = pathList[index];
+            if (!isBlank(pathBlock)) {
+                advance(tree, tree.getSegmentId(pathBlock), scratch);
+                trace.visit(scratch.matchingCount);
+            }
+        }
+        int node = findTheBestNode(tree, scratch);
+        if (node != NO_NODE) {
+            trace.setPattern(tree.getPattern(node));
+        }
+        return trace;
+    }
+
+    /**
+     * Replaces the matching nodes by their children matching the next path block.
+     *
+     * @param tree    the compiled pattern tree
+     * @param segment the segment id of the path block
+     * @param scratch the matching nodes
+     */
+    private void advance(final PatternTreeLayout tree, final int segment,
+                         final MatchScratch scratch) {
+        int[] matchingNodes = scratch.matchingNodes;
+        int[] nextNodes = scratch.ensureNextCapacity(scratch.matchingCount * 2);
+        int nextCount = 0;
+        for (int matching = 0; matching < scratch.matchingCount; matching++) {
+            int current = matchingNodes[matching];
+            int literal = tree.getChild(current, segment);
+            int wildcard = tree.getWildcardChild(current);
+            if (literal != NO_NODE) {
+                nextNodes[nextCount++] = literal;
+            }
+            if (wildcard != NO_NODE && wildcard != literal) {
+                nextNodes[nextCount++] = wildcard;
+            }
+        }
+        scratch.swap(nextCount);
+    }
+
+    /**
+     * Find the best node ending a pattern among the matching nodes.
+     *
+     * @param tree    the compiled pattern tree
+     * @param scratch the matching nodes
+     *
+     * @return the node of the matching pattern, or NO_NODE
+     */
+    private int findTheBestNode(final PatternTreeLayout tree,
+                                final MatchScratch scratch) {
+        int matchingNode = NO_NODE;
+        for (int matching = 0; matching < scratch.matchingCount; matching++) {
+            int current = scratch.matchingNodes[matching];
+            if (tree.hasPattern(current) && (matchingNode == NO_NODE
+                    || isBetterMatch(tree, current, matchingNode))) {
+                matchingNode = current;
+            }
+        }
+        return matchingNode;
+    }
+
+    /**
+     * Whether a matching pattern is better than another one.
+     * Fewer wildcards are better, and for the same number of wildcards,
+     * the leftmost wildcard further to the right is better.
+     * Past that, the first matching node found stays the best one.
+     *
+     * @param tree      the compiled pattern tree
+     * @param candidate the candidate node
+     * @param best      the best node so far
+     *
+     * @return true if the candidate is better
+     */
+    private boolean isBetterMatch(final PatternTreeLayout tree, final int candidate,
+                                  final int best) {
+        if (tree.getWildcards(candidate) != tree.getWildcards(best)) {
+            return tree.getWildcards(candidate) < tree.getWildcards(best);
+        }
+        return tree.getFirstWildcard(candidate) > tree.getFirstWildcard(best);
+    }
+
+    /**
+     * Counts the nodes of the pattern tree.
+     *
+     * @param rootNode the root of the pattern tree
+     *
+     * @return the node count
+     */
+    private int countNodes(final PatternNode rootNode) {
+        int nodeCount = 0;
+        Deque<PatternNode> stack = new ArrayDeque<>();
+        stack.push(rootNode);
+        while (!stack.isEmpty()) {
+            PatternNode patternNode = stack.pop();
+            nodeCount++;
+            for (PatternNode child : patternNode.getChildPatterns().values()) {
+                stack.push(child);
+            }
+        }
+        return nodeCount;
+    }
+
+    /**
+     * The nodes matching the path blocks read so far, reused from path to path.
+     */
+    private static final class MatchScratch {
+
+        /**
+         * The nodes matching the blocks read so far.
+         */
+        private int[] matchingNodes = new int[INITIAL_NODES];
+
+        /**
+         * The nodes matching one more block.
+         */
+        private int[] nextNodes = new int[INITIAL_NODES];
+
+        /**
+         * The number of matching nodes.
+         */
+        private int matchingCount;
+
+        /**
+         * Starts matching a new path from a node.
+         *
+         * @param node the node to start from
+         */
+        private void start(final int node) {
+            matchingNodes[0] = node;
+            matchingCount = 1;
+        }
+
+        /**
+         * Makes room for the next matching nodes.
+         *
+         * @param capacity the number of next nodes
+         *
+         * @return the next nodes buffer
+         */
+        private int[] ensureNextCapacity(final int capacity) {
+            if (nextNodes.length < capacity) {
+                nextNodes = new int[Math.max(capacity, nextNodes.length * 2)];
+            }
+            return nextNodes;
+        }
+
+        /**
+         * Makes the next nodes the matching ones.
+         *
+         * @param nextCount the number of next nodes
+         */
+        private void swap(final int nextCount) {
+            int[] readNodes = matchingNodes;
+            matchingNodes = nextNodes;
+            nextNodes = readNodes;
+            matchingCount = nextCount;
+        }
+    }
+}
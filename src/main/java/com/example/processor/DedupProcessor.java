@@ -0,0 +1,780 @@
+package com.example.processor;
+
+import com.example.constant.MatchingPhase;
+import com.example.exception.FileHandlingException;
+import com.google.common.hash.HashFunction;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Sets.newHashSet;
+import static com.google.common.hash.Hashing.murmur3_32;
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Matches every distinct path of the input only once, for batch jobs whose
+ * inputs repeat the same paths. The paths are grouped by their canonical key,
+ * the key is matched once, and its match is written for every path, in order.
+ * <p>
+ * Up to a number of distinct keys, the keys and their matches are kept in memory
+ * and the matches written as the paths are read. Past it, the paths whose key is
+ * not known yet are spilled to partition files by the hash of their key. Every
+ * partition is then matched on its own, holding only its distinct keys, and the
+ * matches of the partitions are merged back in the order of the paths. A partition
+ * holding more distinct keys than fit in memory is split again the same way, with
+ * another hash of the keys.
+ */
+@Service
+public class DedupProcessor {
+
+    /**
+     * The constant LOG.
+     */
+    private static final Logger LOG = getLogger(DedupProcessor.class);
+
+    /**
+     * The buffer size of the spill files.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The name prefix of the spill directories.
+     */
+    private static final String SPILL_PREFIX = "matching-dedup";
+
+    /**
+     * The number of times a partition is split again at most, past it the partition
+     * is matched in memory whatever its keys.
+     */
+    private static final int MAX_SPLITS = 8;
+
+    /**
+     * The Pattern matcher factory.
+     */
+    @Autowired
+    private PatternMatcherFactory matcherFactory;
+
+    /**
+     * The Pattern processor.
+     */
+    @Autowired
+    private PatternProcessor patProcessor;
+
+    /**
+     * The Input processor.
+     */
+    @Autowired
+    private InputProcessor inProcessor;
+
+    /**
+     * The Output processor.
+     */
+    @Autowired
+    private OutputProcessor outProcessor;
+
+    /**
+     * The Parallel match processor.
+     */
+    @Autowired
+    private ParallelMatchProcessor parallelProcessor;
+
+    /**
+     * The number of distinct paths kept in memory before spilling to disk.
+     */
+    @Value("${matching.dedup-memory-paths:1048576}")
+    private int memoryPaths;
+
+    /**
+     * The number of partition files the paths are spilled to.
+     */
+    @Value("${matching.dedup-partitions:64}")
+    private int partitions;
+
+    /**
+     * The directory the spill files are created in, the temporary one when blank.
+     */
+    @Value("${matching.dedup-directory:}")
+    private String spillRoot;
+
+    /**
+     * Reads the input file, matches its distinct paths once, and writes
+     * the matching pattern of every path to the output file.
+     *
+     * @param inputFile  the input file
+     * @param outputFile the output file
+     *
+     * @throws IOException the iO exception
+     */
+    public void process(final String inputFile, final String outputFile)
+            throws IOException {
+        process(inputFile, outputFile, new RunMetrics(patProcessor));
+    }
+
+    /**
+     * Reads the input file, matches its distinct paths once, and writes
+     * the matching pattern of every path to the output file, measuring the run.
+     *
+     * @param inputFile  the input file
+     * @param outputFile the output file
+     * @param metrics    the metrics of the run
+     *
+     * @throws IOException the iO exception
+     */
+    public void process(final String inputFile, final String outputFile,
+                        final RunMetrics metrics) throws IOException {
+        DedupHandler handler = new DedupHandler(outputFile, metrics);
+        try {
+            inProcessor.processInputFile(inputFile, handler);
+            handler.finish();
+            handler.commit();
+        } finally {
+            handler.close();
+        }
+    }
+
+    /**
+     * Writes a record of a spill file.
+     *
+     * @param out   the spill file
+     * @param index the index of the path
+     * @param value the key or match of the path
+     *
+     * @throws IOException the iO exception
+     */
+    private static void writeRecord(final DataOutputStream out, final int index,
+                                    final String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(index);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads the value of a record of a spill file, once its index is read.
+     *
+     * @param in the spill file
+     *
+     * @return the key or match of the path
+     *
+     * @throws IOException the iO exception
+     */
+    private static String readValue(final DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Opens a spill file for writing.
+     *
+     * @param file the file
+     *
+     * @return the output stream
+     *
+     * @throws IOException the iO exception
+     */
+    private static DataOutputStream openWrite(final Path file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(file), BUFFER_SIZE));
+    }
+
+    /**
+     * Opens a spill file for reading.
+     *
+     * @param file the file
+     *
+     * @return the input stream
+     *
+     * @throws IOException the iO exception
+     */
+    private static DataInputStream openRead(final Path file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(file), BUFFER_SIZE));
+    }
+
+    /**
+     * Closes a stream, ignoring the errors.
+     *
+     * @param stream the stream, may be null
+     */
+    private static void closeQuietly(final Closeable stream) {
+        if (stream == null) {
+            return;
+        }
+        try {
+            stream.close();
+        } catch (IOException ex) {
+            LOG.info("Issues with closing a spill file" + ex.getMessage());
+        }
+    }
+
+    /**
+     * Builds the pattern index once the patterns are read, then matches
+     * the distinct paths in memory or spills them to disk.
+     */
+    private final class DedupHandler implements InputHandler {
+
+        /**
+         * The output file.
+         */
+        private final String outputFile;
+
+        /**
+         * The metrics of the run.
+         */
+        private final RunMetrics metrics;
+
+        /**
+         * The matches of the distinct paths kept in memory, by canonical key.
+         */
+        private final Map<String, String> matches = newHashMap();
+
+        /**
+         * The pattern matcher.
+         */
+        private PatternMatcher matcher;
+
+        /**
+         * The output writer, opened once the pattern block is valid.
+         */
+        private OutputWriter writer;
+
+        /**
+         * The number of paths read.
+         */
+        private int paths;
+
+        /**
+         * The directory of the spill files, once spilling.
+         */
+        private Path spillDirectory;
+
+        /**
+         * The paths whose key is not in memory, by partition.
+         */
+        private DataOutputStream[] spills;
+
+        /**
+         * The number of paths spilled to each partition.
+         */
+        private int[] spilled;
+
+        /**
+         * The matches of the paths read while spilling, whose key is in memory.
+         */
+        private DataOutputStream resolved;
+
+        /**
+         * The number of paths resolved in memory while spilling.
+         */
+        private int resolvedCount;
+
+        /**
+         * The number of distinct paths matched.
+         */
+        private long distinct;
+
+        /**
+         * Instantiates a new Dedup handler.
+         *
+         * @param output     the output file
+         * @param runMetrics the metrics of the run
+         */
+        private DedupHandler(final String output, final RunMetrics runMetrics) {
+            this.outputFile = output;
+            this.metrics = runMetrics;
+        }
+
+        /**
+         * Builds the pattern index and opens the output file.
+         *
+         * @param patterns the patterns
+         */
+        @Override
+        public void onPatterns(final List<String> patterns) {
+            long buildStart = System.nanoTime();
+            matcher = matcherFactory.build(patterns);
+            metrics.addTime(MatchingPhase.BUILD, System.nanoTime() - buildStart);
+            metrics.measure(matcher);
+            writer = outProcessor.openOutput(outputFile);
+        }
+
+        /**
+         * Loads the pattern snapshot and opens the output file.
+         *
+         * @param snapshotFile the snapshot file
+         */
+        @Override
+        public void onSnapshot(final String snapshotFile) {
+            long loadStart = System.nanoTime();
+            matcher = matcherFactory.load(snapshotFile);
+            metrics.addTime(MatchingPhase.BUILD, System.nanoTime() - loadStart);
+            metrics.measure(matcher);
+            writer = outProcessor.openOutput(outputFile);
+        }
+
+        /**
+         * Matches a path from memory, or spills it when its key is not known
+         * and the memory is full.
+         *
+         * @param path the path
+         */
+        @Override
+        public void onPath(final String path) {
+            String key = PathKeys.normalize(path);
+            String match = matches.get(key);
+            if (match == null && spillDirectory == null && matches.size() < memoryPaths) {
+                long matchStart = System.nanoTime();
+                match = matcher.getMatchingPattern(key);
+                long nanos = System.nanoTime() - matchStart;
+                metrics.addTime(MatchingPhase.MATCH, nanos);
+                metrics.recordLatency(key, nanos);
+                matches.put(key, match);
+                distinct++;
+            }
+            try {
+                if (match == null) {
+                    spill(key);
+                } else if (spillDirectory == null) {
+                    write(match);
+                    metrics.sampleAlternates(key);
+                } else {
+                    writeRecord(resolved, paths, match);
+                    resolvedCount++;
+                }
+            } catch (IOException ex) {
+                LOG.info("Issues with dealing spill file" + ex.getMessage());
+                throw new FileHandlingException();
+            }
+            paths++;
+        }
+
+        /**
+         * Matches the spilled partitions, and writes their matches in order.
+         *
+         * @throws IOException the iO exception
+         */
+        private void finish() throws IOException {
+            if (spillDirectory != null) {
+                closeQuietly(resolved);
+                for (DataOutputStream spill : spills) {
+                    closeQuietly(spill);
+                }
+                // The partitions are matched on their own, the memory is theirs.
+                matches.clear();
+                for (int partition = 0; partition < partitions; partition++) {
+                    matchPartition(String.valueOf(partition), spilled[partition], 0);
+                }
+                mergeMatches();
+            }
+            LOG.info("Matched " + distinct + " distinct paths out of " + paths);
+        }
+
+        /**
+         * Spills a path whose key is not in memory, to the partition of its key.
+         *
+         * @param key the canonical key of the path
+         *
+         * @throws IOException the iO exception
+         */
+        private void spill(final String key) throws IOException {
+            if (spillDirectory == null) {
+                startSpilling();
+            }
+            int partition = (key.hashCode() & Integer.MAX_VALUE) % partitions;
+            writeRecord(spills[partition], paths, key);
+            spilled[partition]++;
+        }
+
+        /**
+         * Creates the spill files.
+         *
+         * @throws IOException the iO exception
+         */
+        private void startSpilling() throws IOException {
+            if (isBlank(spillRoot)) {
+                spillDirectory = Files.createTempDirectory(SPILL_PREFIX);
+            } else {
+                spillDirectory = Files.createTempDirectory(Paths.get(spillRoot),
+                        SPILL_PREFIX);
+            }
+            LOG.info("Spilling the paths past " + paths + " to " + spillDirectory);
+            spills = new DataOutputStream[partitions];
+            spilled = new int[partitions];
+            resolved = openWrite(spillDirectory.resolve("resolved"));
+            for (int partition = 0; partition < partitions; partition++) {
+                spills[partition] = openWrite(partitionFile(String.valueOf(partition)));
+            }
+        }
+
+        /**
+         * Matches the distinct keys of a partition, then writes the match
+         * of every path of the partition, in order. A partition with more distinct
+         * keys than fit in memory is split again, and its parts matched instead.
+         *
+         * @param partition the name of the partition
+         * @param records   the number of paths in the partition
+         * @param splits    the number of times the partition was split already
+         *
+         * @throws IOException the iO exception
+         */
+        private void matchPartition(final String partition, final int records,
+                                    final int splits) throws IOException {
+            List<String> distinctKeys = readKeys(partition, records, splits);
+            if (distinctKeys == null) {
+                splitPartition(partition, records, splits + 1);
+                return;
+            }
+            long matchStart = System.nanoTime();
+            List<String> keyMatches = parallelProcessor.getMatchingPatterns(matcher,
+                    distinctKeys);
+            metrics.addTime(MatchingPhase.MATCH, System.nanoTime() - matchStart);
+            Map<String, String> partitionMatches = newHashMap();
+            for (int index = 0; index < distinctKeys.size(); index++) {
+                partitionMatches.put(distinctKeys.get(index), keyMatches.get(index));
+            }
+            distinct += distinctKeys.size();
+
+            try (DataInputStream in = openRead(partitionFile(partition));
+                 DataOutputStream out = openWrite(matchesFile(partition))) {
+                for (int record = 0; record < records; record++) {
+                    int index = in.readInt();
+                    writeRecord(out, index, partitionMatches.get(readValue(in)));
+                }
+            }
+            Files.delete(partitionFile(partition));
+        }
+
+        /**
+         * Reads the distinct keys of a partition, unless there are more
+         * than fit in memory and the partition can be split again.
+         *
+         * @param partition the name of the partition
+         * @param records   the number of paths in the partition
+         * @param splits    the number of times the partition was split already
+         *
+         * @return the distinct keys, null if the partition must be split
+         *
+         * @throws IOException the iO exception
+         */
+        private List<String> readKeys(final String partition, final int records,
+                                      final int splits) throws IOException {
+            boolean splittable = partitions > 1 && splits < MAX_SPLITS;
+            Set<String> keys = newHashSet();
+            try (DataInputStream in = openRead(partitionFile(partition))) {
+                for (int record = 0; record < records; record++) {
+                    in.readInt();
+                    keys.add(readValue(in));
+                    if (splittable && keys.size() > memoryPaths) {
+                        return null;
+                    }
+                }
+            }
+            if (keys.size() > memoryPaths) {
+                LOG.warn("Matching the " + keys.size() + " distinct paths of partition "
+                        + partition + " in memory, it can not be split further");
+            }
+            return newArrayList(keys);
+        }
+
+        /**
+         * Splits a partition by another hash of its keys, matches its parts,
+         * and merges their matches back into the matches of the partition.
+         *
+         * @param partition the name of the partition
+         * @param records   the number of paths in the partition
+         * @param splits    the number of times the parts are split, this one included
+         *
+         * @throws IOException the iO exception
+         */
+        private void splitPartition(final String partition, final int records,
+                                    final int splits) throws IOException {
+            String[] parts = new String[partitions];
+            int[] partRecords = new int[partitions];
+            DataOutputStream[] outs = new DataOutputStream[partitions];
+            // Seeded by the split, the keys of the partition spread again.
+            HashFunction hashing = murmur3_32(splits);
+            try (DataInputStream in = openRead(partitionFile(partition))) {
+                for (int part = 0; part < partitions; part++) {
+                    parts[part] = partition + "-" + part;
+                    outs[part] = openWrite(partitionFile(parts[part]));
+                }
+                for (int record = 0; record < records; record++) {
+                    int index = in.readInt();
+                    String key = readValue(in);
+                    int hash = hashing.hashString(key, StandardCharsets.UTF_8).asInt();
+                    int part = (hash & Integer.MAX_VALUE) % partitions;
+                    writeRecord(outs[part], index, key);
+                    partRecords[part]++;
+                }
+            } finally {
+                for (DataOutputStream out : outs) {
+                    closeQuietly(out);
+                }
+            }
+            Files.delete(partitionFile(partition));
+
+            List<SpilledMatches> all = newArrayList();
+            try (DataOutputStream out = openWrite(matchesFile(partition))) {
+                for (int part = 0; part < partitions; part++) {
+                    matchPartition(parts[part], partRecords[part], splits);
+                    all.add(new SpilledMatches(matchesFile(parts[part]),
+                            partRecords[part]));
+                }
+                merge(all, (index, match) -> writeRecord(out, index, match));
+            } finally {
+                for (SpilledMatches matchesOf : all) {
+                    closeQuietly(matchesOf);
+                }
+            }
+            for (String part : parts) {
+                Files.delete(matchesFile(part));
+            }
+        }
+
+        /**
+         * Writes the matches of the resolved paths and of the partitions,
+         * merged in the order of the paths. Each of them is in order already.
+         *
+         * @throws IOException the iO exception
+         */
+        private void mergeMatches() throws IOException {
+            List<SpilledMatches> all = newArrayList();
+            try {
+                all.add(new SpilledMatches(spillDirectory.resolve("resolved"),
+                        resolvedCount));
+                for (int partition = 0; partition < partitions; partition++) {
+                    all.add(new SpilledMatches(matchesFile(String.valueOf(partition)),
+                            spilled[partition]));
+                }
+                merge(all, (index, match) -> write(match));
+            } finally {
+                for (SpilledMatches matchesOf : all) {
+                    closeQuietly(matchesOf);
+                }
+            }
+        }
+
+        /**
+         * Merges matches files in the order of the paths, each of them is in order
+         * already.
+         *
+         * @param all  the matches files
+         * @param sink the receiver of the merged matches
+         *
+         * @throws IOException the iO exception
+         */
+        private void merge(final List<SpilledMatches> all, final MatchSink sink)
+                throws IOException {
+            PriorityQueue<SpilledMatches> heads = new PriorityQueue<>(all.size(),
+                    Comparator.comparingInt(SpilledMatches::getIndex));
+            for (SpilledMatches matchesOf : all) {
+                if (matchesOf.next()) {
+                    heads.add(matchesOf);
+                }
+            }
+            while (!heads.isEmpty()) {
+                SpilledMatches head = heads.poll();
+                sink.accept(head.getIndex(), head.getMatch());
+                if (head.next()) {
+                    heads.add(head);
+                }
+            }
+        }
+
+        /**
+         * Writes the match of a path, and measures it.
+         *
+         * @param match the matching pattern
+         */
+        private void write(final String match) {
+            long writeStart = System.nanoTime();
+            writer.write(match);
+            metrics.addTime(MatchingPhase.WRITE, System.nanoTime() - writeStart);
+            metrics.countMatch(match);
+        }
+
+        /**
+         * Gets the spill file of a partition.
+         *
+         * @param partition the name of the partition
+         *
+         * @return the file
+         */
+        private Path partitionFile(final String partition) {
+            return spillDirectory.resolve("paths-" + partition);
+        }
+
+        /**
+         * Gets the matches file of a partition.
+         *
+         * @param partition the name of the partition
+         *
+         * @return the file
+         */
+        private Path matchesFile(final String partition) {
+            return spillDirectory.resolve("matches-" + partition);
+        }
+
+        /**
+         * Replaces the output file with the lines written, once the whole input is valid.
+         *
+         * @throws IOException the iO exception
+         */
+        private void commit() throws IOException {
+            if (writer != null) {
+                writer.commit();
+            }
+        }
+
+        /**
+         * Closes the output file, if it was opened, dropping it unless committed,
+         * and deletes the spill files.
+         *
+         * @throws IOException the iO exception
+         */
+        private void close() throws IOException {
+            try {
+                if (writer != null) {
+                    writer.close();
+                }
+            } finally {
+                if (spillDirectory != null) {
+                    closeQuietly(resolved);
+                    for (DataOutputStream spill : spills) {
+                        closeQuietly(spill);
+                    }
+                    File[] files = spillDirectory.toFile().listFiles();
+                    if (files != null) {
+                        for (File file : files) {
+                            Files.deleteIfExists(file.toPath());
+                        }
+                    }
+                    Files.deleteIfExists(spillDirectory);
+                }
+            }
+        }
+    }
+
+    /**
+     * Receives the matches merged from the spill files, in the order of the paths.
+     */
+    @FunctionalInterface
+    private interface MatchSink {
+
+        /**
+         * Receives the match of a path.
+         *
+         * @param index the index of the path
+         * @param match the matching pattern
+         *
+         * @throws IOException the iO exception
+         */
+        void accept(int index, String match) throws IOException;
+    }
+
+    /**
+     * Reads the matches of a spill file, one path at a time.
+     */
+    private static final class SpilledMatches implements Closeable {
+
+        /**
+         * The spill file.
+         */
+        private final DataInputStream in;
+
+        /**
+         * The number of matches not read yet.
+         */
+        private int remaining;
+
+        /**
+         * The index of the current path.
+         */
+        private int index;
+
+        /**
+         * The match of the current path.
+         */
+        private String match;
+
+        /**
+         * Instantiates a new Spilled matches.
+         *
+         * @param file  the spill file
+         * @param count the number of matches in the file
+         *
+         * @throws IOException the iO exception
+         */
+        private SpilledMatches(final Path file, final int count) throws IOException {
+            this.in = openRead(file);
+            this.remaining = count;
+        }
+
+        /**
+         * Reads the next match.
+         *
+         * @return false if all the matches were read
+         *
+         * @throws IOException the iO exception
+         */
+        private boolean next() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            index = in.readInt();
+            match = readValue(in);
+            return true;
+        }
+
+        /**
+         * Gets the index of the current path.
+         *
+         * @return the index
+         */
+        private int getIndex() {
+            return index;
+        }
+
+        /**
+         * Gets the match of the current path.
+         *
+         * @return the match
+         */
+        private String getMatch() {
+            return match;
+        }
+
+        /**
+         * Closes the spill file.
+         *
+         * @throws IOException the iO exception
+         */
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
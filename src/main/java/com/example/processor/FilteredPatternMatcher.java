@@ -0,0 +1,196 @@
+package com.example.processor;
+
+import com.example.constant.Messages;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.collect.Lists.newArrayList;
+
+/**
+ * Rejects the paths no pattern can match with a no match filter, and matches
+ * the other ones with the filtered pattern matcher. The filter of a versioned
+ * pattern index is the one of its current version, built by the change publishing it,
+ * so a lookup never builds a filter nor waits for one.
+ */
+public class FilteredPatternMatcher implements PatternMatcher {
+
+    /**
+     * The filtered pattern matcher.
+     */
+    private final PatternMatcher matcher;
+
+    /**
+     * The pattern index whose changes the filter follows, null for fixed patterns.
+     */
+    private final VersionedPatternIndex index;
+
+    /**
+     * The number of paths checked by the filter.
+     */
+    private final LongAdder checked = new LongAdder();
+
+    /**
+     * The number of paths rejected by the filter.
+     */
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * The filter of fixed patterns, null when it follows a pattern index.
+     */
+    private final NoMatchFilter fixedFilter;
+
+    /**
+     * Instantiates a new Filtered pattern matcher, over fixed patterns.
+     *
+     * @param patternMatcher the filtered pattern matcher
+     * @param filter         the filter of its patterns
+     */
+    public FilteredPatternMatcher(final PatternMatcher patternMatcher,
+                                  final NoMatchFilter filter) {
+        this.matcher = patternMatcher;
+        this.index = null;
+        this.fixedFilter = filter;
+    }
+
+    /**
+     * Instantiates a new Filtered pattern matcher, following the changes of
+     * a pattern index with the filter of its current version.
+     *
+     * @param patternMatcher the filtered pattern matcher, over the pattern index
+     * @param patternIndex   the pattern index, keeping a no match filter
+     */
+    public FilteredPatternMatcher(final PatternMatcher patternMatcher,
+                                  final VersionedPatternIndex patternIndex) {
+        if (patternIndex.getFilter() == null) {
+            throw new IllegalArgumentException("The pattern index keeps no filter");
+        }
+        this.matcher = patternMatcher;
+        this.index = patternIndex;
+        this.fixedFilter = null;
+    }
+
+    /**
+     * This method returns the matching pattern for a single path,
+     * "NO MATCH" at once when the filter rejects it.
+     *
+     * @param path the path
+     *
+     * @return the matching pattern
+     */
+    @Override
+    public String getMatchingPattern(final String path) {
+        checked.increment();
+        if (!currentFilter().mayMatch(path)) {
+            rejected.increment();
+            return Messages.NO_MATCH;
+        }
+        return matcher.getMatchingPattern(path);
+    }
+
+    /**
+     * This method returns the matching pattern for a path held as UTF-8 bytes,
+     * "NO MATCH" at once when the filter rejects it.
+     *
+     * @param path the buffer holding the path
+     * @param from the start of the path, inclusive
+     * @param to   the end of the path, exclusive
+     *
+     * @return the matching pattern
+     */
+    @Override
+    public String getMatchingPattern(final ByteBuffer path, final int from,
+                                     final int to) {
+        checked.increment();
+        if (!currentFilter().mayMatch(path, from, to)) {
+            rejected.increment();
+            return Messages.NO_MATCH;
+        }
+        return matcher.getMatchingPattern(path, from, to);
+    }
+
+    /**
+     * This method returns the matching patterns for a batch of paths,
+     * in the order of the paths. The paths let through by the filter are matched
+     * together by the filtered pattern matcher, the other ones are "NO MATCH".
+     *
+     * @param paths the paths
+     *
+     * @return the list
+     */
+    @Override
+    public List<String> getMatchingPatterns(final List<String> paths) {
+        NoMatchFilter filter = currentFilter();
+        String[] matches = new String[paths.size()];
+        List<String> kept = newArrayList();
+        for (int position = 0; position < matches.length; position++) {
+            if (filter.mayMatch(paths.get(position))) {
+                kept.add(paths.get(position));
+            } else {
+                matches[position] = Messages.NO_MATCH;
+            }
+        }
+        checked.add(matches.length);
+        rejected.add(matches.length - kept.size());
+
+        List<String> keptMatches = matcher.getMatchingPatterns(kept);
+        int next = 0;
+        for (int position = 0; position < matches.length; position++) {
+            if (matches[position] == null) {
+                matches[position] = keptMatches.get(next);
+                next++;
+            }
+        }
+        return Arrays.asList(matches);
+    }
+
+    /**
+     * Gets the filtered pattern matcher.
+     *
+     * @return the pattern matcher
+     */
+    public PatternMatcher getMatcher() {
+        return matcher;
+    }
+
+    /**
+     * Gets the number of paths checked by the filter.
+     *
+     * @return the number of paths
+     */
+    public long getChecked() {
+        return checked.sum();
+    }
+
+    /**
+     * Gets the number of paths rejected by the filter, answered without matching.
+     *
+     * @return the number of paths
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Gets the filter statistics.
+     *
+     * @return the statistics
+     */
+    public String stats() {
+        return "checked=" + getChecked() + " rejected=" + getRejected();
+    }
+
+    /**
+     * Gets the filter of the current version of the patterns.
+     *
+     * @return the filter
+     */
+    private NoMatchFilter currentFilter() {
+        if (index == null) {
+            return fixedFilter;
+        }
+        return index.getFilter();
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.processor;
+
+import com.example.exception.InvalidDataException;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Receives the content of the input file while it is being read.
+ * The pattern block is handed over once, then every path one at a time,
+ * so the caller never needs to hold all the paths in memory.
+ */
+public interface InputHandler {
+
+    /**
+     * Called once, after the whole pattern block is read and validated.
+     *
+     * @param patterns the patterns
+     */
+    void onPatterns(List<String> patterns);
+
+    /**
+     * Called once instead of onPatterns, when the input file points at a pattern
+     * snapshot instead of holding the pattern block.
+     * By default, snapshots are not supported.
+     *
+     * @param snapshotFile the snapshot file
+     */
+    default void onSnapshot(final String snapshotFile) {
+        throw new InvalidDataException();
+    }
+
+    /**
+     * Called for every path in the order of the input file.
+     *
+     * @param path the path
+     */
+    void onPath(String path);
+
+    /**
+     * Called for every path in the order of the input file, with the UTF-8 bytes
+     * of the path as read from the file. The buffer is only valid during the call.
+     * By default, the path is decoded and handed to onPath(String).
+     *
+     * @param buffer the buffer holding the path
+     * @param from   the start of the path, inclusive
+     * @param to     the end of the path, exclusive
+     */
+    default void onPath(final ByteBuffer buffer, final int from, final int to) {
+        onPath(ByteLines.decode(buffer, from, to));
+    }
+}
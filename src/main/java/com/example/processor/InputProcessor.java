@@ -7,12 +7,8 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.nio.file.Paths;
 import java.util.List;
 
 import static com.google.common.collect.Lists.newArrayList;
@@ -29,6 +25,12 @@ import static org.slf4j.LoggerFactory.getLogger;
 @Service
 public class InputProcessor {
 
+    /**
+     * The first char of a line pointing at a pattern snapshot,
+     * in place of the pattern block.
+     */
+    public static final char SNAPSHOT_PREFIX = '@';
+
     /**
      * The constant LOG.
      */
@@ -46,44 +48,68 @@ public class InputProcessor {
     public Pair<List<String>, List<String>> processInputFile(final String inputFile)
             throws IOException {
 
-        List<String> patterns = newArrayList();
-        List<String> paths = newArrayList();
+        final List<String> patterns = newArrayList();
+        final List<String> paths = newArrayList();
 
-        BufferedReader bReader = null;
-        try {
+        processInputFile(inputFile, new InputHandler() {
+            @Override
+            public void onPatterns(final List<String> patternBlock) {
+                patterns.addAll(patternBlock);
+            }
 
-            File file = new File(inputFile);
-            Reader r = new InputStreamReader(new FileInputStream(file), "UTF-8");
-            bReader = new BufferedReader(r);
-            String numberOfPatterns = bReader.readLine();
-            if (!isNumber(numberOfPatterns)) {
-                LOG.error("Invalid data in the input file. "
-                        + "First line should be a "
-                        + "digit representing number of patterns."
-                        + Messages.STD_INPUT);
+            @Override
+            public void onSnapshot(final String snapshotFile) {
+                LOG.error("Pattern snapshots are only read in streaming mode.");
                 throw new InvalidDataException();
+            }
 
-
+            @Override
+            public void onPath(final String path) {
+                paths.add(path);
             }
-            int numPatterns = createInteger(numberOfPatterns);
-            for (int x = 0; x < numPatterns; x++) {
-                String pattern = bReader.readLine();
-                if (isBlank(pattern)) {
-                    LOG.error("One of the incoming pattern is blank."
-                            + "Please fix.");
-                    throw new InvalidDataException();
+        });
+        return Pair.of(patterns, paths);
+    }
+
+    /**
+     * Processes the input file and streams its content to the given handler.
+     * Only the pattern block is held in memory, every path is handed over
+     * as soon as it is read.
+     * The file is memory mapped and the lines are found in its bytes,
+     * the paths are handed over as byte ranges of the mapped file.
+     * The pattern block can be replaced by a line pointing at a pattern snapshot,
+     * "@" followed by the snapshot file, relative to the input file.
+     *
+     * @param inputFile the input file
+     * @param handler   the handler receiving patterns and paths
+     *
+     * @throws IOException the iO exception
+     */
+    public void processInputFile(final String inputFile, final InputHandler handler)
+            throws IOException {
+
+        MappedLineReader reader = null;
+        try {
+
+            reader = new MappedLineReader(Paths.get(inputFile),
+                    MappedLineReader.DEFAULT_WINDOW);
+            String snapshotFile = null;
+            Integer numPatterns = null;
+            if (reader.nextLine()) {
+                if (isSnapshotLine(reader)) {
+                    snapshotFile = Paths.get(inputFile).resolveSibling(
+                            reader.line().substring(1).trim()).toString();
+                } else {
+                    numPatterns = parseCount(reader);
                 }
-                patterns.add(pattern);
             }
-
-            if (isEmpty(patterns)) {
-                LOG.error("Invalid data in the input file. "
-                        + "There are no patterns.");
-                throw new InvalidDataException();
+            List<String> patterns = null;
+            if (snapshotFile == null) {
+                patterns = readPatterns(reader, numPatterns);
             }
 
-            String numberOfPaths = bReader.readLine();
-            if (!isNumber(numberOfPaths)) {
+            Integer numPaths = readCount(reader);
+            if (numPaths == null) {
                 LOG.error("Invalid data in the input file. "
                         + "The first line after the patterns should be "
                         + "digit representing number of paths."
@@ -92,26 +118,60 @@ public class InputProcessor {
                 throw new InvalidDataException(
                 );
             }
-            int numPaths = createInteger(numberOfPaths);
+            if (numPaths <= 0) {
+                LOG.error("Invalid data in the input file."
+                        + "There are no paths.");
+
+                throw new InvalidDataException();
+            }
+
+            if (snapshotFile != null) {
+                handler.onSnapshot(snapshotFile);
+            } else {
+                handler.onPatterns(patterns);
+            }
 
             for (int x = 0; x < numPaths; x++) {
-                String path = bReader.readLine();
-                if (isBlank(path)) {
+                if (!reader.nextLine() || ByteLines.isBlankLine(reader.buffer(),
+                        reader.lineStart(), reader.lineEnd())) {
                     LOG.error("One of the incoming path is blank. "
                             + "Please fix.");
 
                     throw new InvalidDataException();
                 }
-                paths.add(path);
+                handler.onPath(reader.buffer(), reader.lineStart(), reader.lineEnd());
             }
 
-            if (isEmpty(paths)) {
-                LOG.error("Invalid data in the input file."
-                        + "There are no paths.");
+        } catch (IOException ex) {
+            LOG.error("Issues with dealing input file"
+                    + ex.getMessage());
 
-                throw new InvalidDataException();
+            throw new FileHandlingException();
+
+        } finally {
+            if (reader != null) {
+                reader.close();
             }
+        }
+    }
 
+    /**
+     * Processes a file holding the pattern block only, the number of patterns
+     * followed by the patterns, and gets the list of patterns.
+     *
+     * @param patternFile the pattern file
+     *
+     * @return the patterns
+     *
+     * @throws IOException the iO exception
+     */
+    public List<String> processPatternFile(final String patternFile)
+            throws IOException {
+        MappedLineReader reader = null;
+        try {
+            reader = new MappedLineReader(Paths.get(patternFile),
+                    MappedLineReader.DEFAULT_WINDOW);
+            return readPatterns(reader, readCount(reader));
         } catch (IOException ex) {
             LOG.error("Issues with dealing input file"
                     + ex.getMessage());
@@ -119,13 +179,103 @@ public class InputProcessor {
             throw new FileHandlingException();
 
         } finally {
-            if (bReader != null) {
-                bReader.close();
+            if (reader != null) {
+                reader.close();
             }
         }
-        return Pair.of(patterns, paths);
     }
 
-}
+    /**
+     * Reads and validates the pattern block.
+     *
+     * @param reader      the line reader
+     * @param numPatterns the number of patterns, null if not a number
+     *
+     * @return the patterns
+     *
+     * @throws IOException the iO exception
+     */
+    private List<String> readPatterns(final MappedLineReader reader,
+                                      final Integer numPatterns) throws IOException {
+        List<String> patterns = newArrayList();
+
+        if (numPatterns == null) {
+            LOG.error("Invalid data in the input file. "
+                    + "First line should be a "
+                    + "digit representing number of patterns."
+                    + Messages.STD_INPUT);
+            throw new InvalidDataException();
+
+
+        }
+        for (int x = 0; x < numPatterns; x++) {
+            String pattern = null;
+            if (reader.nextLine()) {
+                pattern = reader.line();
+            }
+            if (isBlank(pattern)) {
+                LOG.error("One of the incoming pattern is blank."
+                        + "Please fix.");
+                throw new InvalidDataException();
+            }
+            patterns.add(pattern);
+        }
 
+        if (isEmpty(patterns)) {
+            LOG.error("Invalid data in the input file. "
+                    + "There are no patterns.");
+            throw new InvalidDataException();
+        }
+        return patterns;
+    }
 
+    /**
+     * Whether the current line points at a pattern snapshot.
+     *
+     * @param reader the line reader
+     *
+     * @return true for a snapshot line
+     */
+    private boolean isSnapshotLine(final MappedLineReader reader) {
+        return reader.lineEnd() > reader.lineStart()
+                && reader.buffer().get(reader.lineStart()) == SNAPSHOT_PREFIX;
+    }
+
+    /**
+     * Reads a count line.
+     *
+     * @param reader the line reader
+     *
+     * @return the count, or null when the line is not a number
+     *
+     * @throws IOException the iO exception
+     */
+    private Integer readCount(final MappedLineReader reader) throws IOException {
+        if (!reader.nextLine()) {
+            return null;
+        }
+        return parseCount(reader);
+    }
+
+    /**
+     * Parses the current line as a count. Plain digits are parsed from the bytes,
+     * anything else is checked the same way as the other lines of the file.
+     *
+     * @param reader the line reader
+     *
+     * @return the count, or null when the line is not a number
+     */
+    private Integer parseCount(final MappedLineReader reader) {
+        int count = ByteLines.parseDigits(reader.buffer(), reader.lineStart(),
+                reader.lineEnd());
+        if (count >= 0) {
+            return count;
+        }
+        String line = reader.line();
+        if (!isNumber(line)) {
+            return null;
+        }
+        return createInteger(line);
+    }
+
+}
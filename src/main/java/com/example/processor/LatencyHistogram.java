@@ -0,0 +1,145 @@
+package com.example.processor;
+
+import java.util.Arrays;
+
+/**
+ * Counts latencies in buckets whose width grows with the value, the way
+ * HDR histograms do: values below SUB_BUCKETS are counted exactly, and every
+ * power of two above is split into SUB_BUCKETS / 2 buckets, so a value is
+ * known within 1/64 of itself whatever its magnitude.
+ * Recording a value does not allocate. A histogram is used by a single thread.
+ */
+public class LatencyHistogram {
+
+    /**
+     * The bits of precision of a value.
+     */
+    private static final int SUB_BUCKET_BITS = 7;
+
+    /**
+     * The number of buckets below the first power of two split in buckets.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The number of buckets a power of two is split into.
+     */
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+
+    /**
+     * The number of buckets, up to Long.MAX_VALUE.
+     */
+    private static final int BUCKETS =
+            SUB_BUCKETS + (Long.SIZE - 1 - SUB_BUCKET_BITS) * HALF_SUB_BUCKETS;
+
+    /**
+     * The counts, by bucket.
+     */
+    private final long[] counts = new long[BUCKETS];
+
+    /**
+     * The number of values recorded.
+     */
+    private long count;
+
+    /**
+     * The highest value recorded.
+     */
+    private long max;
+
+    /**
+     * Records a value.
+     *
+     * @param value the value, negative values are counted as 0
+     */
+    public void record(final long value) {
+        long recorded = Math.max(value, 0);
+        counts[bucket(recorded)]++;
+        count++;
+        if (recorded > max) {
+            max = recorded;
+        }
+    }
+
+    /**
+     * Gets the number of values recorded.
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the highest value recorded.
+     *
+     * @return the highest value, 0 if none
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Gets the value a share of the recorded values are at or below.
+     * It is the highest value of its bucket, and never above the highest value.
+     *
+     * @param percentile the percentile, from 0 to 100
+     *
+     * @return the value, 0 if none was recorded
+     */
+    public long getValueAtPercentile(final double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max((long) Math.ceil(percentile / 100 * count), 1);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return Math.min(highestValue(bucket), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Clears the recorded values.
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        max = 0;
+    }
+
+    /**
+     * Gets the bucket of a value.
+     *
+     * @param value the value, not negative
+     *
+     * @return the bucket
+     */
+    static int bucket(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - HALF_SUB_BUCKETS;
+        return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Gets the highest value of a bucket.
+     *
+     * @param bucket the bucket
+     *
+     * @return the highest value counted in the bucket
+     */
+    static long highestValue(final int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+        long subBucket = (bucket - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.processor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the lines of a file through a memory mapped window.
+ * The lines are split the same way as BufferedReader.readLine does,
+ * on "\n", "\r" or "\r\n", and are found straight in the mapped bytes.
+ * The window moves along the file, so files larger than 2GB can be read,
+ * and grows when a single line does not fit in it.
+ */
+final class MappedLineReader implements Closeable {
+
+    /**
+     * The default size of the mapped window.
+     */
+    static final int DEFAULT_WINDOW = 1 << 28;
+
+    /**
+     * The file channel.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The file size.
+     */
+    private final long size;
+
+    /**
+     * The size of the mapped window.
+     */
+    private int window;
+
+    /**
+     * The mapped window.
+     */
+    private MappedByteBuffer buffer;
+
+    /**
+     * The offset of the mapped window in the file.
+     */
+    private long bufferStart;
+
+    /**
+     * The start of the next line in the window.
+     */
+    private int position;
+
+    /**
+     * The start of the current line in the window.
+     */
+    private int lineStart;
+
+    /**
+     * The end of the current line in the window, the line break excluded.
+     */
+    private int lineEnd;
+
+    /**
+     * Instantiates a new Mapped line reader.
+     *
+     * @param file       the file
+     * @param windowSize the size of the mapped window
+     *
+     * @throws IOException the iO exception
+     */
+    MappedLineReader(final Path file, final int windowSize) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.window = windowSize;
+        map(0);
+    }
+
+    /**
+     * Moves to the next line.
+     *
+     * @return false once the end of the file is reached
+     *
+     * @throws IOException the iO exception
+     */
+    boolean nextLine() throws IOException {
+        while (bufferStart + position < size) {
+            int limit = buffer.limit();
+            boolean lastWindow = bufferStart + limit == size;
+            int end = position;
+            while (end < limit && !isLineBreak(buffer.get(end))) {
+                end++;
+            }
+            if (end == limit && lastWindow) {
+                return setLine(limit, limit);
+            }
+            if (end < limit) {
+                int next = end + 1;
+                if (buffer.get(end) != '\r') {
+                    return setLine(end, next);
+                }
+                if (next < limit) {
+                    if (buffer.get(next) == '\n') {
+                        next++;
+                    }
+                    return setLine(end, next);
+                }
+                if (lastWindow) {
+                    return setLine(end, next);
+                }
+            }
+            // The line, or its line break, goes past the window.
+            remap();
+        }
+        return false;
+    }
+
+    /**
+     * Gets the buffer holding the current line. It is only valid until
+     * the next line is read.
+     *
+     * @return the buffer
+     */
+    ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * Gets the start of the current line in the buffer.
+     *
+     * @return the start, inclusive
+     */
+    int lineStart() {
+        return lineStart;
+    }
+
+    /**
+     * Gets the end of the current line in the buffer.
+     *
+     * @return the end, exclusive
+     */
+    int lineEnd() {
+        return lineEnd;
+    }
+
+    /**
+     * Decodes the current line.
+     *
+     * @return the line
+     */
+    String line() {
+        return ByteLines.decode(buffer, lineStart, lineEnd);
+    }
+
+    /**
+     * Closes the file.
+     *
+     * @throws IOException the iO exception
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Sets the current line.
+     *
+     * @param end  the end of the line
+     * @param next the start of the next line
+     *
+     * @return true
+     */
+    private boolean setLine(final int end, final int next) {
+        lineStart = position;
+        lineEnd = end;
+        position = next;
+        return true;
+    }
+
+    /**
+     * Maps the window again from the start of the next line,
+     * growing it if that line already starts the window.
+     *
+     * @throws IOException the iO exception
+     */
+    private void remap() throws IOException {
+        if (position == 0) {
+            if (window == Integer.MAX_VALUE) {
+                throw new IOException("Line longer than " + window + " bytes");
+            }
+            window = (int) Math.min(2L * window, Integer.MAX_VALUE);
+        }
+        map(bufferStart + position);
+    }
+
+    /**
+     * Maps the window.
+     *
+     * @param start the offset of the window in the file
+     *
+     * @throws IOException the iO exception
+     */
+    private void map(final long start) throws IOException {
+        bufferStart = start;
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                Math.min(window, size - start));
+        position = 0;
+    }
+
+    /**
+     * Whether a byte ends a line.
+     *
+     * @param current the byte
+     *
+     * @return true if it is a line break
+     */
+    private static boolean isLineBreak(final byte current) {
+        return current == '\n' || current == '\r';
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.processor;
+
+import com.example.constant.CacheEviction;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A size bounded cache of the matching patterns, by normalized path.
+ * Every match is cached with the version of the patterns it was found with,
+ * and is only returned for that version, so a change of the patterns never
+ * returns a stale match, even to a lookup racing with the change.
+ * The cache can be read and filled by several matching threads.
+ */
+public class MatchCache {
+
+    /**
+     * The entries sampled to pick the least frequently used one.
+     */
+    private static final int LFU_SAMPLES = 8;
+
+    /**
+     * The maximum number of cached paths.
+     */
+    private final int maximumSize;
+
+    /**
+     * The eviction policy.
+     */
+    private final CacheEviction eviction;
+
+    /**
+     * The cached matches, by normalized path.
+     */
+    private final ConcurrentMap<String, Entry> entries;
+
+    /**
+     * The lookups answered from the cache.
+     */
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * The lookups not answered from the cache.
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * The lock of the least frequently used eviction.
+     */
+    private final Object evictionLock = new Object();
+
+    /**
+     * Where the least frequently used eviction samples the entries next,
+     * going round the entries from one eviction to the next.
+     */
+    private Iterator<Map.Entry<String, Entry>> sampler;
+
+    /**
+     * Instantiates a new Match cache.
+     *
+     * @param size   the maximum number of cached paths
+     * @param policy the eviction policy
+     */
+    public MatchCache(final int size, final CacheEviction policy) {
+        this.maximumSize = size;
+        this.eviction = policy;
+        if (policy == CacheEviction.LRU) {
+            // Guava evicts the least recently used entries once the size is reached.
+            this.entries = CacheBuilder.newBuilder().maximumSize(size)
+                    .<String, Entry>build().asMap();
+        } else {
+            this.entries = new ConcurrentHashMap<>();
+        }
+    }
+
+    /**
+     * Gets the cached match of a path.
+     *
+     * @param path    the normalized path
+     * @param version the version of the patterns
+     *
+     * @return the match, or null when it is not cached for this version
+     */
+    public String get(final String path, final long version) {
+        Entry entry = entries.get(path);
+        if (entry == null || entry.version != version) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        if (eviction == CacheEviction.LFU && entry.uses < Integer.MAX_VALUE) {
+            // Racing increments can be lost, an approximate count is enough.
+            entry.uses++;
+        }
+        return entry.match;
+    }
+
+    /**
+     * Caches the match of a path, evicting another path when the cache is full.
+     *
+     * @param path    the normalized path
+     * @param version the version of the patterns the match was found with
+     * @param match   the match
+     */
+    public void put(final String path, final long version, final String match) {
+        entries.put(path, new Entry(version, match));
+        if (eviction == CacheEviction.LFU && entries.size() > maximumSize) {
+            evictLeastFrequentlyUsed();
+        }
+    }
+
+    /**
+     * Removes every cached match.
+     */
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * Gets the number of cached paths.
+     *
+     * @return the size
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the number of lookups answered from the cache.
+     *
+     * @return the hits
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of lookups not answered from the cache.
+     *
+     * @return the misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Gets the cache statistics.
+     *
+     * @return the statistics line
+     */
+    public String stats() {
+        return "size=" + size() + " hits=" + getHits() + " misses=" + getMisses();
+    }
+
+    /**
+     * Evicts the least frequently used entry among a few sampled ones,
+     * until the cache is back to its maximum size.
+     */
+    private void evictLeastFrequentlyUsed() {
+        synchronized (evictionLock) {
+            while (entries.size() > maximumSize) {
+                Map.Entry<String, Entry> victim = null;
+                for (int sample = 0; sample < LFU_SAMPLES; sample++) {
+                    if (sampler == null || !sampler.hasNext()) {
+                        sampler = entries.entrySet().iterator();
+                        if (!sampler.hasNext()) {
+                            // Emptied meanwhile.
+                            return;
+                        }
+                    }
+                    Map.Entry<String, Entry> candidate = sampler.next();
+                    if (victim == null
+                            || candidate.getValue().uses < victim.getValue().uses) {
+                        victim = candidate;
+                    }
+                }
+                entries.remove(victim.getKey(), victim.getValue());
+            }
+        }
+    }
+
+    /**
+     * A cached match.
+     */
+    private static final class Entry {
+
+        /**
+         * The version of the patterns the match was found with.
+         */
+        private final long version;
+
+        /**
+         * The match.
+         */
+        private final String match;
+
+        /**
+         * The number of times the match was read, counted for LFU only.
+         */
+        private int uses;
+
+        /**
+         * Instantiates a new Entry.
+         *
+         * @param patternsVersion the version of the patterns
+         * @param matchingPattern the match
+         */
+        Entry(final long patternsVersion, final String matchingPattern) {
+            this.version = patternsVersion;
+            this.match = matchingPattern;
+        }
+    }
+}
@@ -0,0 +1,564 @@
+package com.example.processor;
+
+import org.slf4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Serves the connections of the match server from a single selector thread,
+ * which accepts them, reads their lines and writes their answers without ever
+ * waiting on a client, so an idle connection only costs its buffers.
+ * <p>
+ * The lines are matched on the worker pool. The lines of the connections read
+ * at the same time are grouped into batches of about the batch size, so many
+ * small requests take a single hand-off to the workers. A connection has at most
+ * one batch in flight, which keeps its answers in order, and is no longer read
+ * while it has too many lines waiting, so a client sending faster than it is
+ * answered is held back by its own socket.
+ */
+public class MatchEventLoop implements Runnable {
+
+    /**
+     * The constant LOG.
+     */
+    private static final Logger LOG = getLogger(MatchEventLoop.class);
+
+    /**
+     * The initial size of the read buffer of a connection, grown for longer lines.
+     */
+    private static final int READ_BUFFER_SIZE = 1 << 12;
+
+    /**
+     * The number of batches of lines a connection can have waiting, before it is
+     * no longer read.
+     */
+    private static final int WAITING_BATCHES = 4;
+
+    /**
+     * The line end.
+     */
+    private static final byte LINE_END = '\n';
+
+    /**
+     * The carriage return, dropped before a line end.
+     */
+    private static final byte CARRIAGE_RETURN = '\r';
+
+    /**
+     * The match server answering the lines.
+     */
+    private final MatchServer server;
+
+    /**
+     * The server channel.
+     */
+    private final ServerSocketChannel serverChannel;
+
+    /**
+     * The workers matching the lines.
+     */
+    private final ExecutorService workers;
+
+    /**
+     * The number of lines a batch is filled up to.
+     */
+    private final int batchSize;
+
+    /**
+     * The longest line read, in bytes.
+     */
+    private final int maxLineBytes;
+
+    /**
+     * The selector of the server and client channels.
+     */
+    private final Selector selector;
+
+    /**
+     * The connections whose batch was answered, handed back by the workers.
+     */
+    private final Queue<Connection> handedBack = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The connections with lines waiting and no batch in flight, in arrival order.
+     */
+    private final Set<Connection> waiting = new LinkedHashSet<>();
+
+    /**
+     * Whether the loop keeps running.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Instantiates a new Match event loop.
+     *
+     * @param matchServer    the match server answering the lines
+     * @param channel        the bound server channel
+     * @param workerPool     the workers matching the lines
+     * @param batchLineCount the number of lines a batch is filled up to
+     * @param maxLineLength  the longest line read, in bytes, past which
+     *                       the connection is closed
+     *
+     * @throws IOException the iO exception
+     */
+    public MatchEventLoop(final MatchServer matchServer,
+                          final ServerSocketChannel channel,
+                          final ExecutorService workerPool, final int batchLineCount,
+                          final int maxLineLength)
+            throws IOException {
+        this.server = matchServer;
+        this.serverChannel = channel;
+        this.workers = workerPool;
+        this.batchSize = Math.max(batchLineCount, 1);
+        this.maxLineBytes = Math.max(maxLineLength, 1);
+        this.selector = Selector.open();
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Serves the connections until the loop is closed,
+     * then closes the server channel and the open connections.
+     */
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                for (SelectionKey key : selector.selectedKeys()) {
+                    handle(key);
+                }
+                selector.selectedKeys().clear();
+                Connection connection;
+                while ((connection = handedBack.poll()) != null) {
+                    answered(connection);
+                }
+                dispatch();
+            }
+        } catch (IOException ex) {
+            LOG.error("Issues with the event loop" + ex.getMessage());
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    close((Connection) key.attachment());
+                }
+            }
+            closeQuietly(serverChannel);
+            closeQuietly(selector);
+        }
+    }
+
+    /**
+     * Stops the loop. The connections are closed by the loop thread as it ends.
+     */
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Handles a selected channel.
+     *
+     * @param key the key of the channel
+     */
+    private void handle(final SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+        Connection connection = (Connection) key.attachment();
+        try {
+            if (key.isReadable()) {
+                read(connection);
+            }
+            if (key.isValid() && key.isWritable()) {
+                write(connection);
+            }
+        } catch (IOException ex) {
+            LOG.info("Connection closed " + ex.getMessage());
+            close(connection);
+        }
+    }
+
+    /**
+     * Accepts the pending connections.
+     */
+    private void accept() {
+        try {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                Connection connection = new Connection(channel, server.newSession());
+                connection.key = channel.register(selector, SelectionKey.OP_READ,
+                        connection);
+            }
+        } catch (IOException ex) {
+            LOG.error("Issues with accepting a connection" + ex.getMessage());
+        }
+    }
+
+    /**
+     * Reads what a connection received, and takes its whole lines.
+     *
+     * @param connection the connection
+     *
+     * @throws IOException the iO exception
+     */
+    private void read(final Connection connection) throws IOException {
+        if (connection.channel.read(connection.input) < 0) {
+            connection.inputEnded = true;
+        }
+        if (!takeLines(connection)) {
+            LOG.warn("Closing a connection sending a line longer than "
+                    + maxLineBytes + " bytes");
+            close(connection);
+            return;
+        }
+        if (!connection.lines.isEmpty() && !connection.inFlight) {
+            waiting.add(connection);
+        }
+        updateInterest(connection);
+        closeIfDone(connection);
+    }
+
+    /**
+     * Writes the answers of a connection, as much as its socket takes.
+     *
+     * @param connection the connection
+     *
+     * @throws IOException the iO exception
+     */
+    private void write(final Connection connection) throws IOException {
+        while (!connection.output.isEmpty()) {
+            ByteBuffer answers = connection.output.peek();
+            connection.channel.write(answers);
+            if (answers.hasRemaining()) {
+                break;
+            }
+            connection.output.poll();
+        }
+        updateInterest(connection);
+        closeIfDone(connection);
+    }
+
+    /**
+     * Takes a batch handed back by a worker, and starts writing its answers.
+     *
+     * @param connection the connection of the batch
+     */
+    private void answered(final Connection connection) {
+        connection.inFlight = false;
+        if (connection.closed) {
+            server.endSession(connection.session);
+            return;
+        }
+        if (connection.answers == null) {
+            close(connection);
+            return;
+        }
+        connection.output.add(connection.answers);
+        connection.answers = null;
+        if (!connection.lines.isEmpty()) {
+            waiting.add(connection);
+        }
+        try {
+            write(connection);
+        } catch (IOException ex) {
+            LOG.info("Connection closed " + ex.getMessage());
+            close(connection);
+        }
+    }
+
+    /**
+     * Hands the waiting lines to the workers. The lines of several connections
+     * go together until the batch size, and a connection gives at most
+     * the batch size at once.
+     */
+    private void dispatch() {
+        List<Connection> batch = newArrayList();
+        int lineCount = 0;
+        Iterator<Connection> iterator = waiting.iterator();
+        while (iterator.hasNext()) {
+            Connection connection = iterator.next();
+            iterator.remove();
+            connection.inFlight = true;
+            connection.batch = newArrayList();
+            while (!connection.lines.isEmpty() && connection.batch.size() < batchSize) {
+                connection.batch.add(connection.lines.poll());
+            }
+            lineCount += connection.batch.size();
+            batch.add(connection);
+            updateInterest(connection);
+            if (lineCount >= batchSize) {
+                submit(batch);
+                batch = newArrayList();
+                lineCount = 0;
+            }
+        }
+        if (!batch.isEmpty()) {
+            submit(batch);
+        }
+    }
+
+    /**
+     * Submits a batch to the workers.
+     *
+     * @param batch the connections of the batch, with their lines
+     */
+    private void submit(final List<Connection> batch) {
+        try {
+            workers.execute(() -> answer(batch));
+        } catch (RejectedExecutionException ex) {
+            // The server is stopping, the batch is never answered.
+            for (Connection connection : batch) {
+                connection.inFlight = false;
+                close(connection);
+            }
+        }
+    }
+
+    /**
+     * Answers the lines of a batch, on a worker, and hands them back to the loop.
+     *
+     * @param batch the connections of the batch, with their lines
+     */
+    private void answer(final List<Connection> batch) {
+        for (Connection connection : batch) {
+            try {
+                StringBuilder answers = new StringBuilder();
+                for (String line : connection.batch) {
+                    answers.append(server.answer(line, connection.session)).append('\n');
+                }
+                server.endBatch(connection.session);
+                connection.answers = StandardCharsets.UTF_8.encode(
+                        CharBuffer.wrap(answers));
+            } catch (RuntimeException ex) {
+                LOG.error("Issues with answering a connection" + ex.getMessage());
+                connection.answers = null;
+            }
+            connection.batch = null;
+            handedBack.add(connection);
+        }
+        selector.wakeup();
+    }
+
+    /**
+     * Takes the whole lines read by a connection, and the last line once
+     * its input ended. The read buffer is grown when a line does not fit,
+     * so up to twice the longest line read.
+     *
+     * @param connection the connection
+     *
+     * @return false if the line being read is longer than the longest line read
+     */
+    private boolean takeLines(final Connection connection) {
+        ByteBuffer input = connection.input;
+        input.flip();
+        int start = input.position();
+        for (int index = start; index < input.limit(); index++) {
+            if (input.get(index) == LINE_END) {
+                if (index - start > maxLineBytes) {
+                    return false;
+                }
+                connection.lines.add(decode(input, start, index));
+                start = index + 1;
+            }
+        }
+        if (connection.inputEnded && start < input.limit()) {
+            connection.lines.add(decode(input, start, input.limit()));
+            start = input.limit();
+        }
+        input.position(start);
+        input.compact();
+        if (input.position() > maxLineBytes) {
+            return false;
+        }
+        if (!input.hasRemaining()) {
+            ByteBuffer grown = ByteBuffer.allocate(input.capacity() * 2);
+            input.flip();
+            connection.input = grown.put(input);
+        }
+        return true;
+    }
+
+    /**
+     * Decodes a line, without its carriage return.
+     *
+     * @param input the read buffer
+     * @param from  the first byte of the line
+     * @param to    the line end
+     *
+     * @return the line
+     */
+    private static String decode(final ByteBuffer input, final int from, final int to) {
+        int end = to;
+        if (end > from && input.get(end - 1) == CARRIAGE_RETURN) {
+            end--;
+        }
+        return new String(input.array(), input.arrayOffset() + from, end - from,
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a connection while it has room for more lines,
+     * and writes it while it has answers left.
+     *
+     * @param connection the connection
+     */
+    private void updateInterest(final Connection connection) {
+        if (connection.closed) {
+            return;
+        }
+        int interest = 0;
+        if (!connection.inputEnded
+                && connection.lines.size() < batchSize * WAITING_BATCHES) {
+            interest |= SelectionKey.OP_READ;
+        }
+        if (!connection.output.isEmpty()) {
+            interest |= SelectionKey.OP_WRITE;
+        }
+        connection.key.interestOps(interest);
+    }
+
+    /**
+     * Closes a connection once its input ended and all its lines were answered.
+     *
+     * @param connection the connection
+     */
+    private void closeIfDone(final Connection connection) {
+        if (connection.inputEnded && !connection.inFlight && connection.lines.isEmpty()
+                && connection.output.isEmpty()) {
+            close(connection);
+        }
+    }
+
+    /**
+     * Closes a connection. Its session ends now, or once its batch in flight
+     * is handed back.
+     *
+     * @param connection the connection
+     */
+    private void close(final Connection connection) {
+        if (connection.closed) {
+            return;
+        }
+        connection.closed = true;
+        waiting.remove(connection);
+        connection.key.cancel();
+        closeQuietly(connection.channel);
+        if (!connection.inFlight) {
+            server.endSession(connection.session);
+        }
+    }
+
+    /**
+     * Closes a channel, ignoring the errors.
+     *
+     * @param closeable the channel
+     */
+    private static void closeQuietly(final Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ex) {
+            LOG.info("Issues with closing a connection" + ex.getMessage());
+        }
+    }
+
+    /**
+     * A client connection. Its buffers and lines belong to the loop thread,
+     * its batch and answers to the worker answering them while in flight.
+     */
+    private static final class Connection {
+
+        /**
+         * The client channel.
+         */
+        private final SocketChannel channel;
+
+        /**
+         * The session of the connection.
+         */
+        private final MatchSession session;
+
+        /**
+         * The lines read and not yet handed to a worker.
+         */
+        private final Queue<String> lines = new ArrayDeque<>();
+
+        /**
+         * The answers not yet written.
+         */
+        private final Queue<ByteBuffer> output = new ArrayDeque<>();
+
+        /**
+         * The bytes read and not yet taken as lines.
+         */
+        private ByteBuffer input = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+        /**
+         * The selection key of the channel.
+         */
+        private SelectionKey key;
+
+        /**
+         * The lines of the batch in flight.
+         */
+        private List<String> batch;
+
+        /**
+         * The answers of the batch in flight, null if it failed.
+         */
+        private ByteBuffer answers;
+
+        /**
+         * Whether a batch is in flight.
+         */
+        private boolean inFlight;
+
+        /**
+         * Whether the client closed its side of the connection.
+         */
+        private boolean inputEnded;
+
+        /**
+         * Whether the connection is closed.
+         */
+        private boolean closed;
+
+        /**
+         * Instantiates a new Connection.
+         *
+         * @param clientChannel the client channel
+         * @param matchSession  the session of the connection
+         */
+        Connection(final SocketChannel clientChannel, final MatchSession matchSession) {
+            this.channel = clientChannel;
+            this.session = matchSession;
+        }
+    }
+}
@@ -0,0 +1,659 @@
+package com.example.processor;
+
+import com.example.constant.MatchingPhase;
+import com.example.constant.ServerIo;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Keeps the pattern index in memory and answers path lookups over a local socket.
+ * The patterns are read and built once, then every client line is a path,
+ * answered by its matching pattern on a line of its own, in the same order.
+ * The clients can send many paths before reading the answers, the answers
+ * of the paths received together are written together.
+ * <p>
+ * The "#STATS" line is answered by the number of paths matched so far
+ * and the throughput since the server started, the "#METRICS" line by the
+ * summary of the metrics registry, which the server reports to as it goes.
+ * With the pattern tree and sharded engines, the "#ADD pattern" and
+ * "#REMOVE pattern" lines change the patterns, answered by "OK" once the change
+ * is seen by every lookup.
+ */
+@Service
+public class MatchServer implements DisposableBean {
+
+    /**
+     * The line asking for the server statistics.
+     */
+    public static final String STATS = "#STATS";
+
+    /**
+     * The line asking for the metrics summary.
+     */
+    public static final String METRICS = "#METRICS";
+
+    /**
+     * The line prefix adding a pattern.
+     */
+    public static final String ADD = "#ADD ";
+
+    /**
+     * The line prefix removing a pattern.
+     */
+    public static final String REMOVE = "#REMOVE ";
+
+    /**
+     * The answer to an applied change.
+     */
+    public static final String OK = "OK";
+
+    /**
+     * The answer to a change leaving the patterns as they were.
+     */
+    public static final String UNCHANGED = "UNCHANGED";
+
+    /**
+     * The answer to a change the pattern index does not support.
+     */
+    public static final String UNSUPPORTED = "UNSUPPORTED";
+
+    /**
+     * The line answered to a connection refused while too many wait to be served,
+     * before closing it.
+     */
+    public static final String BUSY = "#BUSY";
+
+    /**
+     * The constant LOG.
+     */
+    private static final Logger LOG = getLogger(MatchServer.class);
+
+    /**
+     * The size of the connection buffers.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The number of connections waiting to be accepted.
+     */
+    private static final int BACKLOG = 128;
+
+    /**
+     * Nanoseconds per millisecond.
+     */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /**
+     * Milliseconds per second.
+     */
+    private static final double MILLIS_PER_SECOND = 1e3;
+
+    /**
+     * The Pattern matcher factory.
+     */
+    @Autowired
+    private PatternMatcherFactory matcherFactory;
+
+    /**
+     * The Input processor.
+     */
+    @Autowired
+    private InputProcessor inProcessor;
+
+    /**
+     * The Pattern processor.
+     */
+    @Autowired
+    private PatternProcessor patProcessor;
+
+    /**
+     * The Metrics registry.
+     */
+    @Autowired
+    private MetricsRegistry metricsRegistry;
+
+    /**
+     * The Snapshot processor.
+     */
+    @Autowired
+    private SnapshotProcessor snapshotProcessor;
+
+    /**
+     * The local port to listen on, zero for any free port.
+     */
+    @Value("${matching.server-port:7070}")
+    private int port;
+
+    /**
+     * The number of connections served at the same time.
+     */
+    @Value("${matching.server-threads:4}")
+    private int threads;
+
+    /**
+     * How the connections are read and answered.
+     */
+    @Value("${matching.server-io:BLOCKING}")
+    private ServerIo io;
+
+    /**
+     * The number of connections waiting for a server thread with the blocking io,
+     * past which the new connections are refused.
+     */
+    @Value("${matching.server-max-pending:64}")
+    private int maxPending;
+
+    /**
+     * The number of lines the event loop batches together for a worker.
+     */
+    @Value("${matching.server-batch-size:256}")
+    private int batchSize;
+
+    /**
+     * The longest line the event loop reads, in bytes, past which the connection
+     * is closed.
+     */
+    @Value("${matching.server-max-line-bytes:65536}")
+    private int maxLineBytes;
+
+    /**
+     * The interval between the metrics reports of a connection, in milliseconds.
+     */
+    @Value("${matching.server-report-interval-ms:1000}")
+    private long reportIntervalMs;
+
+    /**
+     * Whether the latency of every lookup is counted, and the slowest ones traced.
+     */
+    @Value("${matching.latency-tracing:false}")
+    private boolean latencyTracing;
+
+    /**
+     * The number of slowest lookups traced on every connection.
+     */
+    @Value("${matching.slow-paths:10}")
+    private int slowPaths;
+
+    /**
+     * The number of paths matched since the server started.
+     */
+    private final AtomicLong matchedPaths = new AtomicLong();
+
+    /**
+     * The number of connections accepted since the server started.
+     */
+    private final AtomicLong acceptedConnections = new AtomicLong();
+
+    /**
+     * The open client connections.
+     */
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The pattern matcher.
+     */
+    private volatile PatternMatcher matcher;
+
+    /**
+     * The server socket.
+     */
+    private ServerSocket serverSocket;
+
+    /**
+     * The threads serving the connections.
+     */
+    private ExecutorService connections;
+
+    /**
+     * The thread accepting the connections, the event loop thread with the event loop.
+     */
+    private Thread acceptor;
+
+    /**
+     * The event loop serving the connections, null when they are served blocking.
+     */
+    private MatchEventLoop eventLoop;
+
+    /**
+     * When the server started, in nanoseconds.
+     */
+    private long startTime;
+
+    /**
+     * Reads the pattern file, then serves the path lookups until the server stops.
+     * The pattern file can also be a pattern snapshot.
+     *
+     * @param patternFile the pattern file
+     *
+     * @throws IOException the iO exception
+     */
+    public void serve(final String patternFile) throws IOException {
+        if (snapshotProcessor.isSnapshot(patternFile)) {
+            long loadStart = System.nanoTime();
+            PatternMatcher snapshot = matcherFactory.load(patternFile);
+            long loadTime = System.nanoTime() - loadStart;
+            LOG.info("Loaded the pattern snapshot in "
+                    + String.format("%.1f", millis(loadTime)) + " ms");
+            reportBuild(snapshot, loadTime);
+            start(snapshot);
+        } else {
+            start(inProcessor.processPatternFile(patternFile));
+        }
+        try {
+            acceptor.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Builds the pattern index and starts accepting connections
+     * on the loopback address.
+     *
+     * @param patterns the patterns
+     *
+     * @return the local port
+     *
+     * @throws IOException the iO exception
+     */
+    public int start(final List<String> patterns) throws IOException {
+        long buildStart = System.nanoTime();
+        PatternMatcher built = matcherFactory.build(patterns);
+        long buildTime = System.nanoTime() - buildStart;
+        LOG.info("Built " + patterns.size() + " patterns in "
+                + String.format("%.1f", millis(buildTime)) + " ms");
+        reportBuild(built, buildTime);
+        return start(built);
+    }
+
+    /**
+     * Starts accepting connections on the loopback address, matching the paths
+     * with an already built pattern index. With the blocking io, every connection
+     * is served by one of the server threads, with the event loop, the server threads
+     * are the workers matching the lines of all the connections.
+     *
+     * @param patternMatcher the pattern matcher
+     *
+     * @return the local port
+     *
+     * @throws IOException the iO exception
+     */
+    public synchronized int start(final PatternMatcher patternMatcher)
+            throws IOException {
+        matcher = patternMatcher;
+        int poolSize = Math.max(threads, 1);
+        ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("match-server-%d").setDaemon(true).build();
+        if (io == ServerIo.EVENT_LOOP) {
+            // The event loop stops reading the connections with too many lines waiting.
+            connections = Executors.newFixedThreadPool(poolSize, threadFactory);
+        } else {
+            // Every waiting connection holds a socket, so only a few of them can wait.
+            connections = new ThreadPoolExecutor(poolSize, poolSize, 0L,
+                    TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(Math.max(maxPending, 1)), threadFactory,
+                    new ThreadPoolExecutor.AbortPolicy());
+        }
+        matchedPaths.set(0);
+        acceptedConnections.set(0);
+        startTime = System.nanoTime();
+
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                BACKLOG);
+        serverSocket = channel.socket();
+        if (io == ServerIo.EVENT_LOOP) {
+            eventLoop = new MatchEventLoop(this, channel, connections, batchSize,
+                    maxLineBytes);
+            acceptor = new Thread(eventLoop, "match-server-event-loop");
+        } else {
+            // Accepted from a channel, a connection can be refused without blocking.
+            acceptor = new Thread(this::acceptConnections, "match-server-acceptor");
+        }
+        acceptor.start();
+        LOG.info("Serving path lookups on " + serverSocket.getLocalSocketAddress());
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops the server when the application context closes.
+     */
+    @Override
+    public void destroy() {
+        stop();
+    }
+
+    /**
+     * Stops accepting connections, and closes the open ones.
+     */
+    public synchronized void stop() {
+        if (serverSocket == null) {
+            return;
+        }
+        if (eventLoop != null) {
+            eventLoop.close();
+        } else {
+            closeQuietly(serverSocket);
+        }
+        for (Socket client : clients) {
+            closeQuietly(client);
+        }
+        try {
+            acceptor.join();
+            connections.shutdown();
+            connections.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        LOG.info(stats());
+        serverSocket = null;
+        eventLoop = null;
+    }
+
+    /**
+     * Gets the server statistics.
+     *
+     * @return the statistics line
+     */
+    public String stats() {
+        long uptime = System.nanoTime() - startTime;
+        long paths = matchedPaths.get();
+        String stats = "paths=" + paths
+                + " connections=" + acceptedConnections.get()
+                + " uptime=" + String.format("%.1f", millis(uptime) / MILLIS_PER_SECOND)
+                + "s throughput=" + throughput(paths, uptime) + " paths/s";
+        PatternMatcher current = matcher;
+        if (current instanceof FilteredPatternMatcher) {
+            stats += " filter " + ((FilteredPatternMatcher) current).stats();
+            current = ((FilteredPatternMatcher) current).getMatcher();
+        }
+        if (current instanceof CachedPatternMatcher) {
+            stats += " cache " + ((CachedPatternMatcher) current).getCache().stats();
+        }
+        return stats;
+    }
+
+    /**
+     * Accepts the connections until the server socket is closed.
+     */
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket client = serverSocket.accept();
+                clients.add(client);
+                try {
+                    connections.execute(() -> serve(client));
+                } catch (RejectedExecutionException ex) {
+                    refuse(client);
+                }
+            } catch (IOException ex) {
+                if (!serverSocket.isClosed()) {
+                    LOG.error("Issues with accepting a connection" + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Refuses a connection while too many wait for a server thread.
+     * The busy line is written without blocking, so a client not reading
+     * never holds the acceptor; whatever does not fit is dropped.
+     *
+     * @param client the client connection
+     */
+    private void refuse(final Socket client) {
+        LOG.warn("Refusing a connection, " + maxPending + " connections are waiting");
+        try {
+            SocketChannel channel = client.getChannel();
+            channel.configureBlocking(false);
+            channel.write(ByteBuffer.wrap(
+                    (BUSY + "\n").getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException ex) {
+            LOG.info("Issues with refusing a connection" + ex.getMessage());
+        } finally {
+            clients.remove(client);
+            closeQuietly(client);
+        }
+    }
+
+    /**
+     * Answers the lines of a client, until it closes the connection.
+     * The session starts once a server thread takes the connection,
+     * so a refused connection is never counted.
+     *
+     * @param client the client connection
+     */
+    private void serve(final Socket client) {
+        MatchSession session = newSession();
+        try (Socket socket = client;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(
+                     socket.getInputStream(), StandardCharsets.UTF_8), BUFFER_SIZE);
+             Writer writer = new BufferedWriter(new OutputStreamWriter(
+                     socket.getOutputStream(), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            socket.setTcpNoDelay(true);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                writer.write(answer(line, session));
+                writer.write('\n');
+                if (!reader.ready()) {
+                    // Nothing more received, answer what was read so far.
+                    writer.flush();
+                    endBatch(session);
+                }
+            }
+        } catch (IOException ex) {
+            LOG.info("Connection closed " + ex.getMessage());
+        } finally {
+            clients.remove(client);
+        }
+        endSession(session);
+    }
+
+    /**
+     * Counts an accepted connection, and starts its session.
+     *
+     * @return the session of the connection
+     */
+    MatchSession newSession() {
+        acceptedConnections.incrementAndGet();
+        RunMetrics metrics = new RunMetrics(patProcessor);
+        if (latencyTracing) {
+            metrics.traceLatencies(slowPaths);
+        }
+        metrics.sample(matcher);
+        return new MatchSession(metrics);
+    }
+
+    /**
+     * Answers a client line: a path, or a statistics, metrics or change request.
+     *
+     * @param line    the line
+     * @param session the session of the connection
+     *
+     * @return the answer, without its line end
+     */
+    String answer(final String line, final MatchSession session) {
+        RunMetrics metrics = session.getMetrics();
+        if (STATS.equals(line)) {
+            matchedPaths.addAndGet(session.takeUnreported());
+            return stats();
+        }
+        if (METRICS.equals(line)) {
+            metrics.report(metricsRegistry);
+            metrics.reset();
+            return metricsRegistry.summary();
+        }
+        if (line.startsWith(ADD) || line.startsWith(REMOVE)) {
+            return change(line);
+        }
+        if (!metrics.timesNextPath()) {
+            String match = matcher.getMatchingPattern(line);
+            metrics.countMatch(match);
+            session.countServed();
+            return match;
+        }
+        long matchStart = System.nanoTime();
+        String match = matcher.getMatchingPattern(line);
+        long nanos = System.nanoTime() - matchStart;
+        metrics.addPathTime(MatchingPhase.MATCH, nanos);
+        metrics.countMatch(match);
+        metrics.sampleAlternates(line);
+        metrics.recordLatency(line, nanos);
+        session.countServed();
+        return match;
+    }
+
+    /**
+     * Counts the paths of a session answered since its previous batch,
+     * and reports their metrics once per reporting interval.
+     *
+     * @param session the session of the connection
+     */
+    void endBatch(final MatchSession session) {
+        matchedPaths.addAndGet(session.takeUnreported());
+        if (session.takeReportDue(TimeUnit.MILLISECONDS.toNanos(reportIntervalMs))) {
+            report(session);
+        }
+    }
+
+    /**
+     * Reports the metrics of a session not reported yet.
+     *
+     * @param session the session of the connection
+     */
+    private void report(final MatchSession session) {
+        session.getMetrics().report(metricsRegistry);
+        session.getMetrics().reset();
+    }
+
+    /**
+     * Reports the metrics left of a closed connection, and logs its paths.
+     *
+     * @param session the session of the connection
+     */
+    void endSession(final MatchSession session) {
+        matchedPaths.addAndGet(session.takeUnreported());
+        report(session);
+        long elapsed = System.nanoTime() - session.getStartTime();
+        LOG.info("Served " + session.getServed() + " paths in "
+                + String.format("%.1f", millis(elapsed)) + " ms ("
+                + throughput(session.getServed(), elapsed) + " paths/s)");
+        if (latencyTracing) {
+            LOG.info("Connection latencies {"
+                    + session.getMetrics().latencySummary() + "}");
+        }
+    }
+
+    /**
+     * Reports the time the pattern index took to build or load, and its size.
+     *
+     * @param built the pattern matcher
+     * @param nanos the time it took, in nanoseconds
+     */
+    private void reportBuild(final PatternMatcher built, final long nanos) {
+        RunMetrics metrics = new RunMetrics(patProcessor);
+        metrics.addTime(MatchingPhase.BUILD, nanos);
+        metrics.measure(built);
+        metrics.report(metricsRegistry);
+    }
+
+    /**
+     * Applies a pattern change line.
+     *
+     * @param line the change line
+     *
+     * @return the answer
+     */
+    private String change(final String line) {
+        PatternMatcher current = matcher;
+        if (current instanceof FilteredPatternMatcher) {
+            current = ((FilteredPatternMatcher) current).getMatcher();
+        }
+        if (current instanceof CachedPatternMatcher) {
+            current = ((CachedPatternMatcher) current).getMatcher();
+        }
+        if (!(current instanceof VersionedPatternIndex)) {
+            return UNSUPPORTED;
+        }
+        VersionedPatternIndex index = (VersionedPatternIndex) current;
+        boolean changed;
+        if (line.startsWith(ADD)) {
+            changed = index.add(line.substring(ADD.length()));
+        } else {
+            changed = index.remove(line.substring(REMOVE.length()));
+        }
+        if (changed) {
+            return OK;
+        }
+        return UNCHANGED;
+    }
+
+    /**
+     * Closes a socket, ignoring the errors.
+     *
+     * @param socket the socket
+     */
+    private static void closeQuietly(final Closeable socket) {
+        try {
+            socket.close();
+        } catch (IOException ex) {
+            LOG.info("Issues with closing a connection" + ex.getMessage());
+        }
+    }
+
+    /**
+     * Computes a throughput.
+     *
+     * @param paths the number of paths
+     * @param nanos the time it took, in nanoseconds
+     *
+     * @return the paths per second
+     */
+    private static long throughput(final long paths, final long nanos) {
+        return Math.round(paths * MILLIS_PER_SECOND / Math.max(millis(nanos), 1e-3));
+    }
+
+    /**
+     * Converts nanoseconds to milliseconds.
+     *
+     * @param nanos the nanoseconds
+     *
+     * @return the milliseconds
+     */
+    private static double millis(final long nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+}
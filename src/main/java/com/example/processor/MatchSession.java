@@ -0,0 +1,104 @@
+package com.example.processor;
+
+/**
+ * The state of a client connection of the match server: the metrics of its lookups
+ * and the number of paths it was answered.
+ */
+public class MatchSession {
+
+    /**
+     * The metrics of the lookups.
+     */
+    private final RunMetrics metrics;
+
+    /**
+     * When the connection was accepted, in nanoseconds.
+     */
+    private final long startTime = System.nanoTime();
+
+    /**
+     * The number of paths answered.
+     */
+    private long served;
+
+    /**
+     * The number of paths answered and already counted by the server.
+     */
+    private long reported;
+
+    /**
+     * When the metrics were last reported, in nanoseconds.
+     */
+    private long lastReport = startTime;
+
+    /**
+     * Instantiates a new Match session.
+     *
+     * @param runMetrics the metrics of the lookups
+     */
+    public MatchSession(final RunMetrics runMetrics) {
+        this.metrics = runMetrics;
+    }
+
+    /**
+     * Gets the metrics of the lookups.
+     *
+     * @return the metrics
+     */
+    public RunMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Gets when the connection was accepted.
+     *
+     * @return the start time, in nanoseconds
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Gets the number of paths answered.
+     *
+     * @return the number of paths
+     */
+    public long getServed() {
+        return served;
+    }
+
+    /**
+     * Counts an answered path.
+     */
+    public void countServed() {
+        served++;
+    }
+
+    /**
+     * Takes the number of paths answered since the previous call.
+     *
+     * @return the number of paths
+     */
+    public long takeUnreported() {
+        long unreported = served - reported;
+        reported = served;
+        return unreported;
+    }
+
+    /**
+     * Whether the metrics are due to be reported, and if so,
+     * takes the current time as the time of the last report.
+     *
+     * @param interval the reporting interval, in nanoseconds
+     *
+     * @return true if due
+     */
+    public boolean takeReportDue(final long interval) {
+        long now = System.nanoTime();
+        if (now - lastReport < interval) {
+            return false;
+        }
+        lastReport = now;
+        return true;
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.processor;
+
+/**
+ * What matching a single path took: the nodes reached in the pattern index,
+ * and the most alternate nodes followed at once, which is 1 as long as
+ * a single pattern branch matches the path.
+ */
+public final class MatchTrace {
+
+    /**
+     * The number of nodes reached, the root included.
+     */
+    private long nodes = 1;
+
+    /**
+     * The most matching nodes followed at once.
+     */
+    private int alternates = 1;
+
+    /**
+     * The matching pattern, null if none.
+     */
+    private String pattern;
+
+    /**
+     * Records the nodes matching the next block of the path.
+     *
+     * @param matchingNodes the number of matching nodes
+     */
+    public void visit(final int matchingNodes) {
+        nodes += matchingNodes;
+        if (matchingNodes > alternates) {
+            alternates = matchingNodes;
+        }
+    }
+
+    /**
+     * Gets the number of nodes reached, the root included.
+     *
+     * @return the nodes
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Gets the most matching nodes followed at once.
+     *
+     * @return the alternates
+     */
+    public int getAlternates() {
+        return alternates;
+    }
+
+    /**
+     * Gets the matching pattern.
+     *
+     * @return the pattern, null if none
+     */
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Sets the matching pattern.
+     *
+     * @param matchingPattern the pattern, null if none
+     */
+    public void setPattern(final String matchingPattern) {
+        this.pattern = matchingPattern;
+    }
+}
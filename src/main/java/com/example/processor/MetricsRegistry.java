@@ -0,0 +1,50 @@
+package com.example.processor;
+
+/**
+ * Receives the metrics of the matching runs and of the server.
+ * The default registry keeps them in memory. To send them elsewhere, declare
+ * another MetricsRegistry bean marked as primary.
+ * Implementations are called from several matching threads.
+ */
+public interface MetricsRegistry {
+
+    /**
+     * Adds to a counter.
+     *
+     * @param name  the counter name
+     * @param delta the amount to add
+     */
+    void increment(String name, long delta);
+
+    /**
+     * Sets a gauge.
+     *
+     * @param name  the gauge name
+     * @param value the value
+     */
+    void gauge(String name, double value);
+
+    /**
+     * Records a timed event.
+     *
+     * @param name  the timer name
+     * @param nanos the time it took, in nanoseconds
+     */
+    void recordTime(String name, long nanos);
+
+    /**
+     * Records a value of a histogram a number of times.
+     *
+     * @param name  the histogram name
+     * @param value the value
+     * @param count the number of times it was seen
+     */
+    void recordValue(String name, long value, long count);
+
+    /**
+     * Gets a one line summary of the metrics recorded so far.
+     *
+     * @return the summary
+     */
+    String summary();
+}
@@ -0,0 +1,468 @@
+package com.example.processor;
+
+import com.example.model.PatternNode;
+import com.example.model.PatternTreeLayout;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.example.model.SegmentDictionary.WILDCARD;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Sets.newHashSet;
+import static org.apache.commons.lang3.StringUtils.split;
+
+/**
+ * Rejects the paths no pattern can match, without matching them.
+ * For every number of blocks, it knows the positions some pattern has a wildcard at,
+ * and keeps a bitset of the hashes of the literal blocks of the patterns at every
+ * other position. A path is rejected when no pattern has its number of blocks,
+ * or when one of its blocks is neither covered by a wildcard nor in the bitset
+ * of its position.
+ * <p>
+ * Every block of a matching pattern is a wildcard or the block of the path, so a path
+ * with a match is never rejected. The bitsets can let a path through which has no
+ * match, which is then matched as usual. The filter never changes once built,
+ * a new pattern giving a new filter sharing the unchanged positions.
+ */
+public final class NoMatchFilter {
+
+    /**
+     * The bits of a bitset per literal block, about 5% of the paths let through
+     * by a position whose literals are all different from the block of the path.
+     */
+    private static final int BITS_PER_LITERAL = 8;
+
+    /**
+     * The shift from a bit index to its word index.
+     */
+    private static final int WORD_SHIFT = 6;
+
+    /**
+     * The multiplier of the block hash, as String.hashCode.
+     */
+    private static final int HASH_MULTIPLIER = 31;
+
+    /**
+     * The multiplier giving the second bit of a block, from its hash.
+     */
+    private static final int PROBE_MULTIPLIER = 0x9E3779B9;
+
+    /**
+     * The rotation of the second bit of a block, bringing its high bits down.
+     */
+    private static final int PROBE_ROTATION = 16;
+
+    /**
+     * The first byte value which is not ASCII.
+     */
+    private static final int NON_ASCII = 0x80;
+
+    /**
+     * The path separator.
+     */
+    private static final char SEPARATOR = '/';
+
+    /**
+     * The positions of the patterns, by number of blocks, null without such patterns.
+     */
+    private final Position[][] levels;
+
+    /**
+     * Instantiates a new No match filter.
+     *
+     * @param positions the positions of the patterns, by number of blocks
+     */
+    private NoMatchFilter(final Position[][] positions) {
+        this.levels = positions;
+    }
+
+    /**
+     * Builds the filter of the patterns of pattern trees.
+     *
+     * @param roots the roots of the pattern trees
+     *
+     * @return the filter
+     */
+    public static NoMatchFilter of(final Collection<PatternNode> roots) {
+        List<String[]> patterns = newArrayList();
+        Deque<PatternNode> pending = new ArrayDeque<>(roots);
+        while (!pending.isEmpty()) {
+            PatternNode node = pending.pop();
+            if (node.hasPattern()) {
+                patterns.add(node.getPatternSegments());
+            }
+            for (PatternNode child : node.getChildPatterns().values()) {
+                pending.push(child);
+            }
+        }
+        return of(patterns);
+    }
+
+    /**
+     * Builds the filter of the patterns of a compiled pattern tree.
+     *
+     * @param tree the compiled pattern tree
+     *
+     * @return the filter
+     */
+    public static NoMatchFilter of(final PatternTreeLayout tree) {
+        List<String[]> patterns = newArrayList();
+        for (int node = 0; node < tree.getNodeCount(); node++) {
+            if (tree.hasPattern(node)) {
+                patterns.add(split(tree.getPattern(node), ','));
+            }
+        }
+        return of(patterns);
+    }
+
+    /**
+     * Builds the filter of patterns.
+     *
+     * @param patterns the blocks of the patterns, none of them blank
+     *
+     * @return the filter
+     */
+    private static NoMatchFilter of(final List<String[]> patterns) {
+        Map<Integer, List<Set<String>>> literals = newHashMap();
+        int maxBlocks = 0;
+        for (String[] blocks : patterns) {
+            maxBlocks = Math.max(maxBlocks, blocks.length);
+            List<Set<String>> level = literals.computeIfAbsent(blocks.length,
+                    count -> newArrayList());
+            for (int index = level.size(); index < blocks.length; index++) {
+                level.add(newHashSet());
+            }
+            for (int index = 0; index < blocks.length; index++) {
+                Set<String> position = level.get(index);
+                // A null set stands for a position covered by a wildcard.
+                if (position != null) {
+                    if (WILDCARD.equals(blocks[index])) {
+                        level.set(index, null);
+                    } else {
+                        position.add(blocks[index]);
+                    }
+                }
+            }
+        }
+
+        Position[][] levels = new Position[maxBlocks + 1][];
+        for (Map.Entry<Integer, List<Set<String>>> level : literals.entrySet()) {
+            Position[] positions = new Position[level.getKey()];
+            for (int index = 0; index < positions.length; index++) {
+                positions[index] = Position.of(level.getValue().get(index));
+            }
+            levels[level.getKey()] = positions;
+        }
+        return new NoMatchFilter(levels);
+    }
+
+    /**
+     * Gets the filter also letting through the paths a new pattern matches.
+     * Only the positions of its number of blocks are copied, the other ones
+     * are shared with this filter, which never changes.
+     * A removed pattern needs no new filter, the filter only letting more paths through.
+     *
+     * @param blocks the blocks of the new pattern, none of them blank
+     *
+     * @return the new filter
+     */
+    public NoMatchFilter with(final String[] blocks) {
+        Position[] positions = positions(blocks.length);
+        Position[] added = new Position[blocks.length];
+        for (int index = 0; index < blocks.length; index++) {
+            Position position = Position.EMPTY;
+            if (positions != null) {
+                position = positions[index];
+            }
+            added[index] = position.with(blocks[index]);
+        }
+        Position[][] addedLevels = Arrays.copyOf(levels,
+                Math.max(levels.length, blocks.length + 1));
+        addedLevels[blocks.length] = added;
+        return new NoMatchFilter(addedLevels);
+    }
+
+    /**
+     * Whether some pattern may match a path.
+     *
+     * @param path the path
+     *
+     * @return false if no pattern matches the path
+     */
+    public boolean mayMatch(final String path) {
+        if (path == null) {
+            return true;
+        }
+        Position[] positions = positions(countBlocks(path));
+        if (positions == null) {
+            return false;
+        }
+        int position = 0;
+        int hash = 0;
+        boolean blank = true;
+        for (int index = 0; index <= path.length(); index++) {
+            if (index == path.length() || path.charAt(index) == SEPARATOR) {
+                if (!blank) {
+                    if (!positions[position].mayHold(hash)) {
+                        return false;
+                    }
+                    position++;
+                }
+                hash = 0;
+                blank = true;
+            } else {
+                hash = HASH_MULTIPLIER * hash + path.charAt(index);
+                if (!Character.isWhitespace(path.charAt(index))) {
+                    blank = false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether some pattern may match a path held as UTF-8 bytes.
+     * Paths which are not all ASCII are decoded first.
+     *
+     * @param path the buffer holding the path
+     * @param from the start of the path, inclusive
+     * @param to   the end of the path, exclusive
+     *
+     * @return false if no pattern matches the path
+     */
+    public boolean mayMatch(final ByteBuffer path, final int from, final int to) {
+        int blocks = 0;
+        boolean blank = true;
+        for (int index = from; index <= to; index++) {
+            if (index == to || path.get(index) == SEPARATOR) {
+                if (!blank) {
+                    blocks++;
+                }
+                blank = true;
+            } else if ((path.get(index) & 0xFF) >= NON_ASCII) {
+                return mayMatch(ByteLines.decode(path, from, to));
+            } else if (!Character.isWhitespace(path.get(index))) {
+                blank = false;
+            }
+        }
+        Position[] positions = positions(blocks);
+        if (positions == null) {
+            return false;
+        }
+        int position = 0;
+        int hash = 0;
+        blank = true;
+        for (int index = from; index <= to; index++) {
+            if (index == to || path.get(index) == SEPARATOR) {
+                if (!blank) {
+                    if (!positions[position].mayHold(hash)) {
+                        return false;
+                    }
+                    position++;
+                }
+                hash = 0;
+                blank = true;
+            } else {
+                hash = HASH_MULTIPLIER * hash + path.get(index);
+                if (!Character.isWhitespace(path.get(index))) {
+                    blank = false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the positions of the patterns of a number of blocks.
+     *
+     * @param blocks the number of blocks
+     *
+     * @return the positions, null without such patterns
+     */
+    private Position[] positions(final int blocks) {
+        if (blocks >= levels.length) {
+            return null;
+        }
+        return levels[blocks];
+    }
+
+    /**
+     * Counts the non blank blocks of a path, the only ones matched.
+     *
+     * @param path the path
+     *
+     * @return the number of blocks
+     */
+    private static int countBlocks(final String path) {
+        int blocks = 0;
+        boolean blank = true;
+        for (int index = 0; index <= path.length(); index++) {
+            if (index == path.length() || path.charAt(index) == SEPARATOR) {
+                if (!blank) {
+                    blocks++;
+                }
+                blank = true;
+            } else if (!Character.isWhitespace(path.charAt(index))) {
+                blank = false;
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * The literal blocks the patterns of a number of blocks have at a position.
+     */
+    private static final class Position {
+
+        /**
+         * The position without literal blocks yet.
+         */
+        static final Position EMPTY = new Position(new int[0]);
+
+        /**
+         * The position covered by a wildcard.
+         */
+        static final Position COVERED = new Position(null);
+
+        /**
+         * The distinct hashes of the literal blocks, null when a pattern has
+         * a wildcard there. Kept to build the position with one more literal.
+         */
+        private final int[] hashes;
+
+        /**
+         * The bitset of the literal hashes, null when a pattern has a wildcard there.
+         */
+        private final long[] bits;
+
+        /**
+         * The mask of a bit index.
+         */
+        private final int mask;
+
+        /**
+         * Instantiates a new Position.
+         *
+         * @param literalHashes the distinct hashes of the literal blocks,
+         *                      null when a pattern has a wildcard there
+         */
+        private Position(final int[] literalHashes) {
+            this.hashes = literalHashes;
+            if (literalHashes == null) {
+                bits = null;
+                mask = 0;
+                return;
+            }
+            int size = Long.SIZE;
+            while (size < literalHashes.length * BITS_PER_LITERAL) {
+                size <<= 1;
+            }
+            bits = new long[size >>> WORD_SHIFT];
+            mask = size - 1;
+            for (int hash : literalHashes) {
+                set(hash);
+                set(probe(hash));
+            }
+        }
+
+        /**
+         * Gets the position of literal blocks.
+         *
+         * @param literals the literal blocks, null when a pattern has a wildcard there
+         *
+         * @return the position
+         */
+        static Position of(final Set<String> literals) {
+            if (literals == null) {
+                return COVERED;
+            }
+            Set<Integer> distinct = newHashSet();
+            for (String literal : literals) {
+                distinct.add(literal.hashCode());
+            }
+            int[] literalHashes = new int[distinct.size()];
+            int index = 0;
+            for (int hash : distinct) {
+                literalHashes[index] = hash;
+                index++;
+            }
+            return new Position(literalHashes);
+        }
+
+        /**
+         * Gets the position also holding a block.
+         *
+         * @param block the pattern block, a literal or the wildcard
+         *
+         * @return the new position, or this one when it already holds the block
+         */
+        Position with(final String block) {
+            if (hashes == null) {
+                return this;
+            }
+            if (WILDCARD.equals(block)) {
+                return COVERED;
+            }
+            int hash = block.hashCode();
+            for (int held : hashes) {
+                if (held == hash) {
+                    return this;
+                }
+            }
+            int[] literalHashes = Arrays.copyOf(hashes, hashes.length + 1);
+            literalHashes[hashes.length] = hash;
+            return new Position(literalHashes);
+        }
+
+        /**
+         * Whether a block with a hash may be at the position.
+         *
+         * @param hash the hash of the block
+         *
+         * @return false if no pattern has the block there
+         */
+        boolean mayHold(final int hash) {
+            return bits == null || isSet(hash) && isSet(probe(hash));
+        }
+
+        /**
+         * Sets the bit of a hash.
+         *
+         * @param hash the hash
+         */
+        private void set(final int hash) {
+            int bit = hash & mask;
+            bits[bit >>> WORD_SHIFT] |= 1L << bit;
+        }
+
+        /**
+         * Whether the bit of a hash is set.
+         *
+         * @param hash the hash
+         *
+         * @return true if set
+         */
+        private boolean isSet(final int hash) {
+            int bit = hash & mask;
+            return (bits[bit >>> WORD_SHIFT] & (1L << bit)) != 0;
+        }
+
+        /**
+         * Gets the second hash of a block, from its hash.
+         *
+         * @param hash the hash
+         *
+         * @return the second hash
+         */
+        private static int probe(final int hash) {
+            return Integer.rotateLeft(hash * PROBE_MULTIPLIER, PROBE_ROTATION);
+        }
+    }
+}
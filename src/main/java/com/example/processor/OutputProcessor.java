@@ -4,12 +4,14 @@ import com.example.exception.FileHandlingException;
 import org.slf4j.Logger;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
 import java.util.List;
 
 import static org.slf4j.LoggerFactory.getLogger;
@@ -26,6 +28,11 @@ public class OutputProcessor {
      */
     private static final Logger LOG = getLogger(OutputProcessor.class);
 
+    /**
+     * The name suffix of the part file written before replacing the output file.
+     */
+    private static final String PART_SUFFIX = ".part";
+
     /**
      * Process output.
      *
@@ -36,32 +43,136 @@ public class OutputProcessor {
      */
     public void processOutput(final String outputFile, final List<String> lines)
             throws IOException {
-        BufferedWriter bWriter = null;
+        OutputWriter writer = openOutput(outputFile);
         try {
+            for (String line : lines) {
+                writer.write(line);
+            }
+            writer.commit();
+        } finally {
             /**
-             * Creating output file.
+             * Cleaning up
              */
+            writer.close();
+        }
+    }
 
-            File file = new File(outputFile);
-            Writer w = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
-            bWriter = new BufferedWriter(w);
-
-            for (String line : lines) {
-                bWriter.write(line);
-                bWriter.newLine();
-            }
+    /**
+     * Opens the output file for writing the lines one by one.
+     * The lines go to a part file next to the output file, named after it,
+     * which only replaces the output file once the writer is committed.
+     * The part file is created with the usual permissions, and takes the ones of
+     * the output file when it exists. A symbolic link is followed, so the file it
+     * links to is replaced and the link stays.
+     * The caller is responsible for closing the returned writer.
+     *
+     * @param outputFile the output file
+     *
+     * @return the output writer
+     */
+    public OutputWriter openOutput(final String outputFile) {
+        try {
+            /**
+             * Creating the part file, next to the output file.
+             */
+            Path output = resolveOutput(outputFile);
+            Path part = partFile(output);
+            return new OutputWriter(openPart(output, part), part, output);
 
         } catch (IOException ex) {
 
             LOG.info("Issues with dealing output file" + ex.getMessage());
             throw new FileHandlingException();
-        } finally {
-            /**
-             * Cleaning up
-             */
-            if (bWriter != null) {
-                bWriter.close();
+        }
+    }
+
+    /**
+     * Resolves the file an output file name stands for, following a symbolic link
+     * to the file it links to.
+     *
+     * @param outputFile the output file
+     *
+     * @return the absolute output file
+     *
+     * @throws IOException the iO exception
+     */
+    static Path resolveOutput(final String outputFile) throws IOException {
+        Path output = Paths.get(outputFile).toAbsolutePath();
+        if (Files.isSymbolicLink(output) && Files.exists(output)) {
+            output = output.toRealPath();
+        }
+        return output;
+    }
+
+    /**
+     * Gets the part file written before replacing an output file, next to it.
+     *
+     * @param output the resolved output file
+     *
+     * @return the part file
+     */
+    static Path partFile(final Path output) {
+        return output.resolveSibling(output.getFileName() + PART_SUFFIX);
+    }
+
+    /**
+     * Creates the part file of an output file, with the permissions of the output
+     * file when it exists.
+     *
+     * @param output the resolved output file
+     * @param part   the part file
+     *
+     * @return the channel of the part file
+     *
+     * @throws IOException the iO exception
+     */
+    static FileChannel openPart(final Path output, final Path part) throws IOException {
+        // A part file left by a failed run keeps its own permissions.
+        Files.deleteIfExists(part);
+        FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            copyAttributes(output, part);
+        } catch (IOException ex) {
+            channel.close();
+            Files.deleteIfExists(part);
+            throw ex;
+        }
+        return channel;
+    }
+
+    /**
+     * Gives the part file the permissions of the output file, when it exists,
+     * and its owner and group when allowed to.
+     *
+     * @param output the output file
+     * @param part   the part file
+     *
+     * @throws IOException the iO exception
+     */
+    private static void copyAttributes(final Path output, final Path part)
+            throws IOException {
+        if (!Files.exists(output)) {
+            return;
+        }
+        PosixFileAttributeView outputView = Files.getFileAttributeView(output,
+                PosixFileAttributeView.class);
+        if (outputView == null) {
+            return;
+        }
+        PosixFileAttributes attributes = outputView.readAttributes();
+        PosixFileAttributeView partView = Files.getFileAttributeView(part,
+                PosixFileAttributeView.class);
+        partView.setPermissions(attributes.permissions());
+        try {
+            if (!attributes.group().equals(partView.readAttributes().group())) {
+                partView.setGroup(attributes.group());
             }
+            if (!attributes.owner().equals(partView.getOwner())) {
+                partView.setOwner(attributes.owner());
+            }
+        } catch (IOException ex) {
+            LOG.info("Could not keep the owner of the output file " + ex.getMessage());
         }
     }
 }
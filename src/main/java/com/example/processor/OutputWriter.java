@@ -0,0 +1,265 @@
+package com.example.processor;
+
+import com.example.exception.FileHandlingException;
+import org.slf4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
+import static com.google.common.collect.Maps.newHashMap;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Writes the output lines one at a time, as the matches get available.
+ * The output lines are mostly the same few patterns, so every distinct line
+ * is encoded once and its bytes are reused. The bytes are gathered in a large
+ * buffer, written to the file channel whenever it is full.
+ * <p>
+ * The lines go to a part file next to the output file, which only replaces
+ * the output file once committed. Closed without being committed, for instance
+ * when a path turns out invalid, the part file is deleted and the output file,
+ * if any, is left as it was.
+ */
+public class OutputWriter implements Closeable {
+
+    /**
+     * The constant LOG.
+     */
+    private static final Logger LOG = getLogger(OutputWriter.class);
+
+    /**
+     * The size of the output buffer.
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * The most distinct lines kept encoded, the other lines are encoded every time.
+     */
+    private static final int MAX_ENCODED_LINES = 1 << 14;
+
+    /**
+     * The line separator, as written by BufferedWriter.newLine.
+     */
+    private static final byte[] LINE_SEPARATOR =
+            System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * The first char that is not ASCII.
+     */
+    private static final char ASCII_LIMIT = 0x80;
+
+    /**
+     * The output file channel.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The part file the lines are written to.
+     */
+    private final Path partFile;
+
+    /**
+     * The output file, replaced by the part file once committed.
+     */
+    private final Path outputFile;
+
+    /**
+     * Whether the output file was committed.
+     */
+    private boolean committed;
+
+    /**
+     * The bytes not written to the file yet.
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    /**
+     * The encoded lines, with their line separator.
+     */
+    private final Map<String, byte[]> encodedLines = newHashMap();
+
+    /**
+     * The bytes of the last line that was not kept encoded.
+     */
+    private byte[] scratch = new byte[BUFFER_SIZE >> 8];
+
+    /**
+     * Instantiates a new Output writer.
+     *
+     * @param fileChannel the channel of the part file
+     * @param part        the part file
+     * @param output      the output file
+     */
+    OutputWriter(final FileChannel fileChannel, final Path part, final Path output) {
+        this.channel = fileChannel;
+        this.partFile = part;
+        this.outputFile = output;
+    }
+
+    /**
+     * Writes a single line to the output file.
+     *
+     * @param line the line
+     */
+    public void write(final String line) {
+        try {
+            byte[] bytes = encodedLines.get(line);
+            if (bytes != null) {
+                put(bytes, bytes.length);
+            } else if (encodedLines.size() < MAX_ENCODED_LINES) {
+                bytes = encode(line);
+                encodedLines.put(line, bytes);
+                put(bytes, bytes.length);
+            } else {
+                int length = encodeToScratch(line);
+                put(scratch, length);
+            }
+        } catch (IOException ex) {
+            LOG.info("Issues with dealing output file" + ex.getMessage());
+            throw new FileHandlingException();
+        }
+    }
+
+    /**
+     * Flushes the pending lines, closes the part file
+     * and moves it in place of the output file.
+     *
+     * @throws IOException the iO exception
+     */
+    public void commit() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+        replace(partFile, outputFile);
+        committed = true;
+    }
+
+    /**
+     * Moves a written part file in place of its output file, atomically
+     * when the file system allows it.
+     *
+     * @param part   the part file
+     * @param output the output file
+     *
+     * @throws IOException the iO exception
+     */
+    static void replace(final Path part, final Path output) throws IOException {
+        try {
+            Files.move(part, output, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(part, output, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Closes the output, deleting the part file unless it was committed.
+     *
+     * @throws IOException the iO exception
+     */
+    @Override
+    public void close() throws IOException {
+        if (committed) {
+            return;
+        }
+        try {
+            channel.close();
+        } finally {
+            Files.deleteIfExists(partFile);
+        }
+    }
+
+    /**
+     * Adds bytes to the buffer, writing the buffer to the file when they do not fit.
+     *
+     * @param bytes  the bytes
+     * @param length the number of bytes
+     *
+     * @throws IOException the iO exception
+     */
+    private void put(final byte[] bytes, final int length) throws IOException {
+        if (length > buffer.remaining()) {
+            flush();
+        }
+        if (length > buffer.remaining()) {
+            writeFully(ByteBuffer.wrap(bytes, 0, length));
+        } else {
+            buffer.put(bytes, 0, length);
+        }
+    }
+
+    /**
+     * Encodes a line and its line separator into the scratch bytes.
+     * ASCII lines are copied char by char, the other lines are encoded.
+     *
+     * @param line the line
+     *
+     * @return the number of bytes
+     */
+    private int encodeToScratch(final String line) {
+        int length = line.length();
+        if (scratch.length < length + LINE_SEPARATOR.length) {
+            scratch = new byte[Math.max(length + LINE_SEPARATOR.length,
+                    scratch.length * 2)];
+        }
+        for (int index = 0; index < length; index++) {
+            char current = line.charAt(index);
+            if (current >= ASCII_LIMIT) {
+                scratch = encode(line);
+                return scratch.length;
+            }
+            scratch[index] = (byte) current;
+        }
+        System.arraycopy(LINE_SEPARATOR, 0, scratch, length, LINE_SEPARATOR.length);
+        return length + LINE_SEPARATOR.length;
+    }
+
+    /**
+     * Writes the buffered bytes to the file.
+     *
+     * @throws IOException the iO exception
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Writes all the remaining bytes of a buffer to the file.
+     *
+     * @param bytes the bytes
+     *
+     * @throws IOException the iO exception
+     */
+    private void writeFully(final ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    /**
+     * Encodes a line and its line separator.
+     *
+     * @param line the line
+     *
+     * @return the bytes
+     */
+    private static byte[] encode(final String line) {
+        byte[] text = line.getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = new byte[text.length + LINE_SEPARATOR.length];
+        System.arraycopy(text, 0, bytes, 0, text.length);
+        System.arraycopy(LINE_SEPARATOR, 0, bytes, text.length, LINE_SEPARATOR.length);
+        return bytes;
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.processor;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Matches the paths on several cores.
+ * Once built, the pattern index is only read, so every path lookup can run
+ * on its own. The paths are split in chunks over a fork join pool,
+ * and the matches are kept in the order of the paths.
+ */
+@Service
+public class ParallelMatchProcessor implements InitializingBean, DisposableBean {
+
+    /**
+     * The number of worker threads. One means matching on the calling thread.
+     */
+    @Value("${matching.workers:1}")
+    private int workers;
+
+    /**
+     * The number of paths matched by a single task, without splitting it further.
+     */
+    @Value("${matching.chunk-size:1024}")
+    private int chunkSize;
+
+    /**
+     * Whether every chunk of paths is matched as a batch, sharing the walk of the
+     * pattern tree between the paths with the same first blocks.
+     */
+    @Value("${matching.prefix-batch:false}")
+    private boolean prefixBatch;
+
+    /**
+     * The worker pool, only created for more than one worker.
+     */
+    private ForkJoinPool pool;
+
+    /**
+     * Creates the worker pool.
+     */
+    @Override
+    public void afterPropertiesSet() {
+        if (isParallel()) {
+            pool = new ForkJoinPool(workers);
+        }
+    }
+
+    /**
+     * Shuts the worker pool down.
+     */
+    @Override
+    public void destroy() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Whether more than one worker is configured.
+     *
+     * @return true for parallel matching
+     */
+    public boolean isParallel() {
+        return workers > 1;
+    }
+
+    /**
+     * This method returns the list of matching pattern for the given paths,
+     * in the order of the paths.
+     * If No Match found, it returns "NO MATCH"
+     *
+     * @param matcher the pattern matcher
+     * @param paths   the paths
+     *
+     * @return the list
+     */
+    public List<String> getMatchingPatterns(final PatternMatcher matcher,
+                                            final List<String> paths) {
+        return submit(matcher, paths).join();
+    }
+
+    /**
+     * Starts matching the given paths, without waiting for the matches.
+     * With a single worker the paths are matched before returning.
+     *
+     * @param matcher the pattern matcher
+     * @param paths   the paths
+     *
+     * @return the task, joining it returns the matches in the order of the paths
+     */
+    public ForkJoinTask<List<String>> submit(final PatternMatcher matcher,
+                                             final List<String> paths) {
+        String[] matches = new String[paths.size()];
+        MatchTask task = new MatchTask(matcher, paths, matches, 0, paths.size());
+        if (pool == null) {
+            task.invoke();
+            return task;
+        }
+        return pool.submit(task);
+    }
+
+    /**
+     * Matches a range of paths, splitting it in halves down to the chunk size.
+     */
+    private final class MatchTask extends RecursiveTask<List<String>> {
+
+        /**
+         * The serial version uid.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The pattern matcher.
+         */
+        private final PatternMatcher matcher;
+
+        /**
+         * The paths.
+         */
+        private final List<String> paths;
+
+        /**
+         * The matches, at the index of their path.
+         */
+        private final String[] matches;
+
+        /**
+         * The first path index, inclusive.
+         */
+        private final int from;
+
+        /**
+         * The last path index, exclusive.
+         */
+        private final int to;
+
+        /**
+         * Instantiates a new Match task.
+         *
+         * @param index      the pattern matcher
+         * @param pathList   the paths
+         * @param matchArray the matches
+         * @param start      the first path index, inclusive
+         * @param end        the last path index, exclusive
+         */
+        private MatchTask(final PatternMatcher index, final List<String> pathList,
+                          final String[] matchArray, final int start, final int end) {
+            this.matcher = index;
+            this.paths = pathList;
+            this.matches = matchArray;
+            this.from = start;
+            this.to = end;
+        }
+
+        /**
+         * Matches the range, or splits it.
+         *
+         * @return all the matches, filled up to this range
+         */
+        @Override
+        protected List<String> compute() {
+            if (to - from <= Math.max(chunkSize, 1) && prefixBatch) {
+                List<String> chunkMatches = matcher.getMatchingPatterns(
+                        paths.subList(from, to));
+                for (int index = from; index < to; index++) {
+                    matches[index] = chunkMatches.get(index - from);
+                }
+            } else if (to - from <= Math.max(chunkSize, 1)) {
+                for (int index = from; index < to; index++) {
+                    matches[index] = matcher.getMatchingPattern(paths.get(index));
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new MatchTask(matcher, paths, matches, from, middle),
+                        new MatchTask(matcher, paths, matches, middle, to));
+            }
+            return Arrays.asList(matches);
+        }
+    }
+}
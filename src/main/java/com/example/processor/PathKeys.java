@@ -0,0 +1,85 @@
+package com.example.processor;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Canonical keys of the paths. The blocks of a path are split on "/",
+ * and the empty and blank blocks are skipped while matching, so
+ * "/w/x/y/z/", "w/x/y/z" and "//w// /x/y/z" all match as "w/x/y/z".
+ */
+final class PathKeys {
+
+    /**
+     * The path separator.
+     */
+    private static final char PATH_SEPARATOR = '/';
+
+    /**
+     * Not instantiated.
+     */
+    private PathKeys() {
+    }
+
+    /**
+     * Normalizes a path to its non blank blocks, separated by a single "/".
+     * A path which is already normalized is returned as it is.
+     *
+     * @param path the path
+     *
+     * @return the normalized path
+     */
+    static String normalize(final String path) {
+        int start = 0;
+        int end = path.length();
+        while (start < end && path.charAt(start) == PATH_SEPARATOR) {
+            start++;
+        }
+        while (end > start && path.charAt(end - 1) == PATH_SEPARATOR) {
+            end--;
+        }
+        if (isNormalized(path, start, end)) {
+            return path.substring(start, end);
+        }
+        StringBuilder key = new StringBuilder(end - start);
+        int blockStart = start;
+        for (int index = start; index <= end; index++) {
+            if (index == end || path.charAt(index) == PATH_SEPARATOR) {
+                String block = path.substring(blockStart, index);
+                if (!isBlank(block)) {
+                    if (key.length() > 0) {
+                        key.append(PATH_SEPARATOR);
+                    }
+                    key.append(block);
+                }
+                blockStart = index + 1;
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Whether a range of a path has no empty or blank block.
+     *
+     * @param path  the path
+     * @param start the start of the range, past the leading separators
+     * @param end   the end of the range, before the trailing separators
+     *
+     * @return true if the range is normalized
+     */
+    private static boolean isNormalized(final String path, final int start,
+                                        final int end) {
+        boolean blank = true;
+        for (int index = start; index < end; index++) {
+            char current = path.charAt(index);
+            if (current == PATH_SEPARATOR) {
+                if (blank) {
+                    return false;
+                }
+                blank = true;
+            } else if (!Character.isWhitespace(current)) {
+                blank = false;
+            }
+        }
+        return !blank || start == end;
+    }
+}
@@ -0,0 +1,269 @@
+package com.example.processor;
+
+import com.example.model.PatternNode;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * A pattern tree which can change while the paths are being matched.
+ * Every change builds a new version of the tree, sharing the unchanged nodes
+ * with the previous one, freezes its new nodes, and swaps it in at once.
+ * A lookup reads the current version once and only sees that version,
+ * without taking any lock. Concurrent changes retry on the newer version.
+ */
+public class PatternIndex implements VersionedPatternIndex {
+
+    /**
+     * The Pattern processor.
+     */
+    private final PatternProcessor patProcessor;
+
+    /**
+     * The current version of the pattern tree.
+     */
+    private final AtomicReference<Version> current;
+
+    /**
+     * Instantiates a new Pattern index. The given tree is frozen.
+     *
+     * @param processor the pattern processor
+     * @param rootNode  the root of the initial pattern tree
+     */
+    public PatternIndex(final PatternProcessor processor, final PatternNode rootNode) {
+        this(processor, rootNode, false);
+    }
+
+    /**
+     * Instantiates a new Pattern index. The given tree is frozen.
+     * With a no match filter, every version carries the filter of its patterns,
+     * built by the change publishing it, so the lookups never build it.
+     *
+     * @param processor the pattern processor
+     * @param rootNode  the root of the initial pattern tree
+     * @param filtered  whether every version carries a no match filter
+     */
+    public PatternIndex(final PatternProcessor processor, final PatternNode rootNode,
+                        final boolean filtered) {
+        this.patProcessor = processor;
+        rootNode.freeze();
+        NoMatchFilter filter = null;
+        if (filtered) {
+            filter = NoMatchFilter.of(Collections.singletonList(rootNode));
+        }
+        this.current = new AtomicReference<>(new Version(0, rootNode, filter));
+    }
+
+    /**
+     * This method returns the matching pattern for a single path,
+     * against the current version of the pattern tree.
+     * If No Match found, it returns "NO MATCH"
+     *
+     * @param path the path
+     *
+     * @return the matching pattern
+     */
+    @Override
+    public String getMatchingPattern(final String path) {
+        return patProcessor.getMatchingPattern(current.get().getRoot(), path);
+    }
+
+    /**
+     * This method returns the matching patterns for a batch of paths,
+     * against the current version of the pattern tree, in the order of the paths.
+     * The paths sharing their first blocks share the walk of the tree for them.
+     * If No Match found, it returns "NO MATCH"
+     *
+     * @param paths the paths
+     *
+     * @return the list
+     */
+    @Override
+    public List<String> getMatchingPatterns(final List<String> paths) {
+        return patProcessor.getMatchingPatterns(current.get().getRoot(), paths);
+    }
+
+    /**
+     * Adds a pattern, and publishes the new version of the pattern tree.
+     *
+     * @param pattern the pattern
+     *
+     * @return false if the pattern has a blank block and was ignored
+     */
+    @Override
+    public boolean add(final String pattern) {
+        return update(rootNode -> patProcessor.addPattern(rootNode, pattern),
+                filter -> filter.with(patProcessor.splitPattern(pattern)));
+    }
+
+    /**
+     * Removes a pattern, and publishes the new version of the pattern tree.
+     *
+     * @param pattern the pattern
+     *
+     * @return false if the pattern was not in the tree
+     */
+    @Override
+    public boolean remove(final String pattern) {
+        // The filter of the previous patterns still lets every match through.
+        return update(rootNode -> patProcessor.removePattern(rootNode, pattern),
+                UnaryOperator.identity());
+    }
+
+    /**
+     * Gets the root of the current version of the pattern tree.
+     * The returned tree never changes.
+     *
+     * @return the root node
+     */
+    public PatternNode getRoot() {
+        return current.get().getRoot();
+    }
+
+    /**
+     * Gets the current version of the pattern tree.
+     *
+     * @return the version
+     */
+    public Version getVersion() {
+        return current.get();
+    }
+
+    /**
+     * Gets the number of the current version of the pattern tree.
+     *
+     * @return the version number
+     */
+    @Override
+    public long getVersionNumber() {
+        return current.get().getNumber();
+    }
+
+    /**
+     * Gets the no match filter of the current version of the pattern tree.
+     *
+     * @return the filter, null when the index keeps none
+     */
+    @Override
+    public NoMatchFilter getFilter() {
+        return current.get().getFilter();
+    }
+
+    /**
+     * Gets the root of the current version of the pattern tree, as a single root.
+     *
+     * @return the root nodes
+     */
+    @Override
+    public Collection<PatternNode> getRoots() {
+        return Collections.singletonList(getRoot());
+    }
+
+    /**
+     * Matches a path against the current version of the pattern tree,
+     * recording the nodes reached and the alternates followed.
+     *
+     * @param pathList the path list
+     *
+     * @return the trace of the match
+     */
+    @Override
+    public MatchTrace traceMatch(final String[] pathList) {
+        return patProcessor.traceMatch(getRoot(), pathList);
+    }
+
+    /**
+     * Applies a change to the current version of the pattern tree, and swaps
+     * the new version in. When another change was published meanwhile,
+     * the change is applied again to that newer version.
+     *
+     * @param change       the change, returning the same root when nothing changes
+     * @param filterChange the change of the no match filter, when kept
+     *
+     * @return false if nothing changed
+     */
+    private boolean update(final UnaryOperator<PatternNode> change,
+                           final UnaryOperator<NoMatchFilter> filterChange) {
+        while (true) {
+            Version version = current.get();
+            PatternNode newRoot = change.apply(version.getRoot());
+            if (newRoot == version.getRoot()) {
+                return false;
+            }
+            newRoot.freeze();
+            NoMatchFilter filter = version.getFilter();
+            if (filter != null) {
+                filter = filterChange.apply(filter);
+            }
+            Version next = new Version(version.getNumber() + 1, newRoot, filter);
+            if (current.compareAndSet(version, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * A published version of the pattern tree, which never changes.
+     */
+    public static final class Version {
+
+        /**
+         * The version number, starting at 0 and increased by every change.
+         */
+        private final long number;
+
+        /**
+         * The root of the frozen pattern tree.
+         */
+        private final PatternNode root;
+
+        /**
+         * The no match filter of the patterns, null when not kept.
+         */
+        private final NoMatchFilter filter;
+
+        /**
+         * Instantiates a new Version.
+         *
+         * @param versionNumber the version number
+         * @param rootNode      the root of the frozen pattern tree
+         * @param noMatchFilter the no match filter of the patterns, may be null
+         */
+        Version(final long versionNumber, final PatternNode rootNode,
+                final NoMatchFilter noMatchFilter) {
+            this.number = versionNumber;
+            this.root = rootNode;
+            this.filter = noMatchFilter;
+        }
+
+        /**
+         * Gets the version number.
+         *
+         * @return the number
+         */
+        public long getNumber() {
+            return number;
+        }
+
+        /**
+         * Gets the root of the pattern tree.
+         *
+         * @return the root node
+         */
+        public PatternNode getRoot() {
+            return root;
+        }
+
+        /**
+         * Gets the no match filter of the patterns.
+         *
+         * @return the filter, null when the index keeps none
+         */
+        public NoMatchFilter getFilter() {
+            return filter;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.processor;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
+
+/**
+ * A built pattern index, ready to match paths.
+ * Implementations are only read once built, so they can be shared by
+ * several matching threads.
+ */
+public interface PatternMatcher {
+
+    /**
+     * This method returns the matching pattern for a single path.
+     * If No Match found, it returns "NO MATCH"
+     *
+     * @param path the path
+     *
+     * @return the matching pattern
+     */
+    String getMatchingPattern(String path);
+
+    /**
+     * This method returns the matching pattern for a path held as UTF-8 bytes.
+     * By default, the path is decoded and matched as a string.
+     *
+     * @param path the buffer holding the path
+     * @param from the start of the path, inclusive
+     * @param to   the end of the path, exclusive
+     *
+     * @return the matching pattern
+     */
+    default String getMatchingPattern(final ByteBuffer path, final int from,
+                                      final int to) {
+        return getMatchingPattern(ByteLines.decode(path, from, to));
+    }
+
+    /**
+     * This method returns the matching patterns for a batch of paths,
+     * in the order of the paths.
+     * If No Match found, it returns "NO MATCH"
+     * By default, every path is matched on its own.
+     *
+     * @param paths the paths
+     *
+     * @return the list
+     */
+    default List<String> getMatchingPatterns(final List<String> paths) {
+        List<String> matches = newArrayListWithCapacity(paths.size());
+        for (String path : paths) {
+            matches.add(getMatchingPattern(path));
+        }
+        return matches;
+    }
+}
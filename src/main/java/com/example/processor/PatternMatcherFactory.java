@@ -0,0 +1,235 @@
+package com.example.processor;
+
+import com.example.constant.CacheEviction;
+import com.example.constant.MatchingEngine;
+import com.example.exception.FileHandlingException;
+import com.example.model.CompiledPatternTree;
+import com.example.model.MappedPatternTree;
+import com.example.model.PatternAutomaton;
+import com.example.model.PatternNode;
+import com.example.model.PatternTreeLayout;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.apache.commons.lang3.StringUtils.isBlank;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Builds the pattern index of the configured matching engine.
+ */
+@Service
+public class PatternMatcherFactory {
+
+    /**
+     * The constant LOG.
+     */
+    private static final Logger LOG = getLogger(PatternMatcherFactory.class);
+
+    /**
+     * The Pattern processor.
+     */
+    @Autowired
+    private PatternProcessor patProcessor;
+
+    /**
+     * The Compiled pattern processor.
+     */
+    @Autowired
+    private CompiledPatternProcessor compiledProcessor;
+
+    /**
+     * The Automaton processor.
+     */
+    @Autowired
+    private AutomatonProcessor automatonProcessor;
+
+    /**
+     * The Snapshot processor.
+     */
+    @Autowired
+    private SnapshotProcessor snapshotProcessor;
+
+    /**
+     * The matching engine.
+     */
+    @Value("${matching.engine:TREE}")
+    private MatchingEngine engine;
+
+    /**
+     * The maximum number of paths whose match is cached, zero for no cache.
+     */
+    @Value("${matching.cache-size:0}")
+    private int cacheSize;
+
+    /**
+     * The eviction policy of the match cache.
+     */
+    @Value("${matching.cache-eviction:LRU}")
+    private CacheEviction cacheEviction;
+
+    /**
+     * Whether the shards of the sharded engine are split by first block,
+     * besides their number of blocks.
+     */
+    @Value("${matching.shard-by-first-block:true}")
+    private boolean shardByFirstBlock;
+
+    /**
+     * Whether the paths no pattern can match are rejected by a filter,
+     * before being matched.
+     */
+    @Value("${matching.no-match-filter:false}")
+    private boolean noMatchFilter;
+
+    /**
+     * The directory of the mapped pattern files, the temporary directory when blank.
+     */
+    @Value("${matching.off-heap-directory:}")
+    private String offHeapDirectory;
+
+    /**
+     * Builds the pattern tree, and the index of the matching engine on top of it.
+     * The pattern tree itself is a PatternIndex, whose patterns can be changed.
+     * The off heap index is written to a mapped file, and the tree built on the heap
+     * to get there is dropped once written.
+     * The sharded index builds its shard trees straight from the patterns.
+     * The automaton is compiled from the tree, which is matched instead
+     * when the automaton would have too many states.
+     * With a cache size, the matches are cached on top of the index,
+     * and with the no match filter, the paths are filtered before both.
+     *
+     * @param patterns the patterns
+     *
+     * @return the pattern matcher
+     */
+    public PatternMatcher build(final List<String> patterns) {
+        if (engine == MatchingEngine.SHARDED) {
+            // The index keeps the filter of every version of its shards.
+            ShardedPatternIndex index = new ShardedPatternIndex(patProcessor, patterns,
+                    shardByFirstBlock, noMatchFilter);
+            if (!noMatchFilter) {
+                return cached(index);
+            }
+            return new FilteredPatternMatcher(cached(index), index);
+        }
+        final PatternNode rootNode = patProcessor.buildPatternTree(patterns);
+        Supplier<NoMatchFilter> filter =
+                () -> NoMatchFilter.of(Collections.singletonList(rootNode));
+        if (engine == MatchingEngine.COMPILED) {
+            return filtered(cached(new CompiledPatternMatcher(compiledProcessor,
+                    compiledProcessor.compile(rootNode))), filter);
+        }
+        if (engine == MatchingEngine.OFF_HEAP) {
+            return filtered(cached(new CompiledPatternMatcher(compiledProcessor,
+                    mapped(compiledProcessor.compile(rootNode)))), filter);
+        }
+        if (engine == MatchingEngine.AUTOMATON) {
+            PatternAutomaton automaton = automatonProcessor.compile(rootNode);
+            if (automaton != null) {
+                return filtered(cached(new AutomatonPatternMatcher(automatonProcessor,
+                        automaton)), filter);
+            }
+            LOG.warn("The pattern automaton has too many states, "
+                    + "matching the pattern tree instead");
+        }
+        // The index keeps the filter of every version of its patterns.
+        PatternIndex index = new PatternIndex(patProcessor, rootNode, noMatchFilter);
+        if (!noMatchFilter) {
+            return cached(index);
+        }
+        return new FilteredPatternMatcher(cached(index), index);
+    }
+
+    /**
+     * Loads a pattern snapshot. The snapshot holds a compiled pattern tree,
+     * so its paths are matched by the compiled engine, unless the off heap engine
+     * is configured, which maps the snapshot in place.
+     *
+     * @param snapshotFile the snapshot file
+     *
+     * @return the pattern matcher
+     */
+    public PatternMatcher load(final String snapshotFile) {
+        PatternTreeLayout tree;
+        if (engine == MatchingEngine.OFF_HEAP) {
+            tree = snapshotProcessor.map(snapshotFile);
+        } else {
+            tree = snapshotProcessor.load(snapshotFile);
+        }
+        return filtered(cached(new CompiledPatternMatcher(compiledProcessor, tree)),
+                () -> NoMatchFilter.of(tree));
+    }
+
+    /**
+     * Writes a compiled pattern tree to a file and maps it outside of the heap.
+     * The file is deleted once mapped, its pages stay until the mapping is dropped.
+     *
+     * @param tree the compiled pattern tree
+     *
+     * @return the mapped pattern tree
+     */
+    private MappedPatternTree mapped(final CompiledPatternTree tree) {
+        Path file;
+        try {
+            if (isBlank(offHeapDirectory)) {
+                file = Files.createTempFile("patterns", ".snapshot");
+            } else {
+                file = Files.createTempFile(Paths.get(offHeapDirectory), "patterns",
+                        ".snapshot");
+            }
+        } catch (IOException ex) {
+            LOG.error("Issues with creating the mapped pattern file " + ex.getMessage());
+            throw new FileHandlingException();
+        }
+        try {
+            snapshotProcessor.write(tree, file.toString());
+            return snapshotProcessor.map(file.toString());
+        } finally {
+            if (!file.toFile().delete()) {
+                file.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Filters the paths of a pattern matcher over fixed patterns,
+     * when the no match filter is enabled.
+     *
+     * @param matcher the pattern matcher
+     * @param filter  builds the filter of its patterns
+     *
+     * @return the filtered pattern matcher, or the given one without the filter
+     */
+    private PatternMatcher filtered(final PatternMatcher matcher,
+                                    final Supplier<NoMatchFilter> filter) {
+        if (!noMatchFilter) {
+            return matcher;
+        }
+        return new FilteredPatternMatcher(matcher, filter.get());
+    }
+
+    /**
+     * Caches the matches of a pattern matcher, when a cache size is configured.
+     *
+     * @param matcher the pattern matcher
+     *
+     * @return the cached pattern matcher, or the given one without a cache size
+     */
+    private PatternMatcher cached(final PatternMatcher matcher) {
+        if (cacheSize <= 0) {
+            return matcher;
+        }
+        MatchCache cache = new MatchCache(cacheSize, cacheEviction);
+        return new CachedPatternMatcher(matcher, cache);
+    }
+}
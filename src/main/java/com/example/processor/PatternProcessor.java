@@ -1,18 +1,23 @@
 package com.example.processor;
 
+import com.example.constant.Messages;
 import com.example.model.PatternNode;
+import com.example.model.SegmentPool;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+import static com.example.model.SegmentDictionary.WILDCARD;
 import static com.google.common.collect.Lists.newArrayList;
 import static org.apache.commons.lang3.ArrayUtils.isNotEmpty;
 import static org.apache.commons.lang3.StringUtils.isBlank;
-import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static org.apache.commons.lang3.StringUtils.split;
 import static org.apache.commons.lang3.StringUtils.splitByWholeSeparatorPreserveAllTokens;
 
@@ -23,6 +28,29 @@ import static org.apache.commons.lang3.StringUtils.splitByWholeSeparatorPreserve
 @Service
 public class PatternProcessor {
 
+    /**
+     * The number of parts of the patterns per worker of a parallel build,
+     * so a part with many patterns does not keep the other workers waiting.
+     */
+    private static final int PARTS_PER_BUILD_WORKER = 8;
+
+    /**
+     * The multiplier of the first block hash, as String.hashCode.
+     */
+    private static final int HASH_MULTIPLIER = 31;
+
+    /**
+     * The number of threads building the pattern tree. One means building it
+     * on the calling thread.
+     */
+    @Value("${matching.build-workers:1}")
+    private int buildWorkers;
+
+    /**
+     * The fewest patterns built on several threads.
+     */
+    @Value("${matching.parallel-build-threshold:100000}")
+    private int parallelBuildThreshold;
 
     /**
      * This method returns the list of matching pattern for the given paths.
@@ -41,18 +69,30 @@ public class PatternProcessor {
         List<String> pathPatterns = newArrayList();
 
         for (String path : paths) {
-            String[] pathList = splitPath(path);
-            String pattern = findTheNearestMatch(patternNode, pathList);
-            if (isBlank(pattern)) {
-                pathPatterns.add("NO MATCH");
-            } else {
-                pathPatterns.add(pattern);
-            }
+            pathPatterns.add(getMatchingPattern(patternNode, path));
         }
 
         return pathPatterns;
     }
 
+    /**
+     * This method returns the matching pattern for a single path
+     * against an already built pattern tree.
+     * If No Match found, it returns "NO MATCH"
+     *
+     * @param patternNode the root of the pattern tree
+     * @param path        the path
+     *
+     * @return the matching pattern
+     */
+    public String getMatchingPattern(final PatternNode patternNode, final String path) {
+        String pattern = findTheNearestMatch(patternNode, splitPath(path));
+        if (isBlank(pattern)) {
+            return Messages.NO_MATCH;
+        }
+        return pattern;
+    }
+
     /**
      * Find the pattern.
      *
@@ -63,62 +103,290 @@ public class PatternProcessor {
      */
     public String findTheNearestMatch(final PatternNode patternNode,
                                       final String[] pathList) {
+        PatternNode matchingNode = findTheNearestNode(patternNode, pathList);
+        if (matchingNode == null) {
+            return null;
+        }
+        return matchingNode.getPattern();
+    }
 
-        String matchingPattern = null;
-        int pos = patternNode.getPosition();
-
-        if (pathList.length > pos) {
-            int wildCardsInPattern = 0;
-
-            List<PatternNode> alternateMatches = newArrayList();
-            Map<String, PatternNode> patternMap = patternNode.getChildPatterns();
-
-            for (String pathBlock : Arrays.copyOfRange(pathList, pos, pathList.length)) {
-                if (isNotBlank(pathBlock)) {
-                    if (patternMap.containsKey(pathBlock)) {
-                        matchingPattern = patternMap.get(pathBlock).getPattern();
-                        if (patternMap.containsKey("*")) {
-                            // Look and Record any possible alternates
-                            alternateMatches.add(0, patternMap.get("*"));
-                        }
-                        patternMap = patternMap.get(pathBlock).getChildPatterns();
-                    } else if (patternMap.containsKey("*")) {
-                        matchingPattern = patternMap.get("*").getPattern();
-                        patternMap = patternMap.get("*").getChildPatterns();
-                        wildCardsInPattern++;
-                    } else {
-                        break;
-                    }
-                }
+    /**
+     * Find the node where the nearest matching pattern ends.
+     *
+     * @param patternNode the pattern model
+     * @param pathList    the path list
+     *
+     * @return the matching node, null if no pattern matches
+     */
+    public PatternNode findTheNearestNode(final PatternNode patternNode,
+                                          final String[] pathList) {
+        return findTheNearestNode(patternNode, pathList, null);
+    }
+
+    /**
+     * Counts the alternate nodes followed at once while matching a path,
+     * that is the most nodes matching the same blocks of the path.
+     * It is 1 as long as a single pattern branch matches the path.
+     *
+     * @param patternNode the pattern model
+     * @param pathList    the path list
+     *
+     * @return the widest set of matching nodes
+     */
+    public int countAlternates(final PatternNode patternNode, final String[] pathList) {
+        return traceMatch(patternNode, pathList).getAlternates();
+    }
+
+    /**
+     * Matches a path, recording the nodes reached and the alternates followed.
+     * This is slower than findTheNearestMatch, and meant for the paths
+     * worth looking into.
+     *
+     * @param patternNode the pattern model
+     * @param pathList    the path list
+     *
+     * @return the trace of the match
+     */
+    public MatchTrace traceMatch(final PatternNode patternNode,
+                                 final String[] pathList) {
+        MatchTrace trace = new MatchTrace();
+        PatternNode matchingNode = findTheNearestNode(patternNode, pathList, trace);
+        if (matchingNode != null) {
+            trace.setPattern(matchingNode.getPattern());
+        }
+        return trace;
+    }
+
+    /**
+     * Find the node where the nearest matching pattern ends.
+     * <p>
+     * The path is read block by block, keeping every node matching the blocks
+     * read so far. A node can be reached only once, from its parent, so the
+     * search visits at most the nodes matching a prefix of the path, that is
+     * O(path length * pattern tree width), whatever the wildcards in the patterns.
+     * <p>
+     * The matching nodes are kept with the literal child before the wildcard one,
+     * so among the matches with the same wildcards, the first one has its
+     * wildcards the furthest to the right.
+     *
+     * @param patternNode the pattern model
+     * @param pathList    the path list
+     * @param trace       records the matching nodes of every block, may be null
+     *
+     * @return the matching node, null if no pattern matches
+     */
+    PatternNode findTheNearestNode(final PatternNode patternNode,
+                                   final String[] pathList,
+                                   final MatchTrace trace) {
+
+        List<PatternNode> matchingNodes = newArrayList(patternNode);
+        List<PatternNode> nextNodes = newArrayList();
+
+        for (int index = patternNode.getPosition();
+             index < pathList.length && !matchingNodes.isEmpty(); index++) {
+            String pathBlock = pathList[index];
+            if (isBlank(pathBlock)) {
+                continue;
+            }
+            matchBlock(matchingNodes, pathBlock, nextNodes);
+            List<PatternNode> readNodes = matchingNodes;
+            matchingNodes = nextNodes;
+            nextNodes = readNodes;
+            nextNodes.clear();
+            if (trace != null) {
+                trace.visit(matchingNodes.size());
             }
+        }
+
+        return bestMatch(matchingNodes);
+    }
+
+    /**
+     * This method returns the matching patterns for a batch of paths
+     * against an already built pattern tree, in the order of the paths.
+     * If No Match found, it returns "NO MATCH"
+     * <p>
+     * The paths are matched in the order of their blocks, sorting them unless
+     * they already are. The nodes matching every block of a path are kept,
+     * so the next path starts from the nodes matching the blocks it shares with it,
+     * and only walks the tree from the first block they differ at.
+     * Sorted paths with long common prefixes skip most of the tree walk.
+     *
+     * @param rootNode the root of the pattern tree
+     * @param paths    the paths
+     *
+     * @return the list
+     */
+    public List<String> getMatchingPatterns(final PatternNode rootNode,
+                                            final List<String> paths) {
+        String[][] pathBlocks = new String[paths.size()][];
+        for (int index = 0; index < pathBlocks.length; index++) {
+            pathBlocks[index] = nonBlankBlocks(splitPath(paths.get(index)));
+        }
+        Integer[] order = new Integer[pathBlocks.length];
+        for (int index = 0; index < order.length; index++) {
+            order[index] = index;
+        }
+        if (!isSorted(pathBlocks)) {
+            // A stable sort, the matches being written back at the index of their path.
+            Arrays.sort(order, (first, second) ->
+                    compareBlocks(pathBlocks[first], pathBlocks[second]));
+        }
+
+        // The nodes matching the first blocks of the previous path, by number of blocks.
+        List<List<PatternNode>> levels = newArrayList();
+        levels.add(newArrayList(rootNode));
+        String[] previous = new String[0];
+        int matchedLevels = 0;
 
-            // 1. If No match found or
-            // 2. Wildcards in the solution greater than 1
-            // Find the better solution if any alternatives exists.
-            if (isBlank(matchingPattern) || wildCardsInPattern > 1) {
-                if (CollectionUtils.isNotEmpty(alternateMatches)) {
-                    String alternatePatternWithLessWildcards = null;
-                    int minWildCardsInAlternate = Integer.MAX_VALUE;
-
-                    for (PatternNode model : alternateMatches) {
-                        String alternatePattern = findTheNearestMatch(model, pathList);
-                        if (isNotBlank(alternatePattern)) {
-                            int wildCardNum = calculateWildCards(alternatePattern, "*");
-                            if (wildCardNum < minWildCardsInAlternate) {
-                                minWildCardsInAlternate = wildCardNum;
-                                alternatePatternWithLessWildcards = alternatePattern;
-                            }
-                        }
-                    }
-
-                    if (wildCardsInPattern > minWildCardsInAlternate
-                            || isBlank(matchingPattern)) {
-                        matchingPattern = alternatePatternWithLessWildcards;
-                    }
+        String[] matches = new String[pathBlocks.length];
+        for (int index : order) {
+            String[] blocks = pathBlocks[index];
+            int level = 0;
+            while (level < matchedLevels && level < blocks.length
+                    && blocks[level].equals(previous[level])) {
+                level++;
+            }
+            while (level < blocks.length && !levels.get(level).isEmpty()) {
+                if (levels.size() == level + 1) {
+                    levels.add(newArrayList());
                 }
+                List<PatternNode> nextNodes = levels.get(level + 1);
+                nextNodes.clear();
+                matchBlock(levels.get(level), blocks[level], nextNodes);
+                level++;
+            }
+            PatternNode matchingNode = null;
+            if (level == blocks.length) {
+                matchingNode = bestMatch(levels.get(level));
+            }
+            if (matchingNode == null || isBlank(matchingNode.getPattern())) {
+                matches[index] = Messages.NO_MATCH;
+            } else {
+                matches[index] = matchingNode.getPattern();
+            }
+            previous = blocks;
+            matchedLevels = level;
+        }
+        return Arrays.asList(matches);
+    }
+
+    /**
+     * Follows a path block from matching nodes, the literal child before the wildcard.
+     *
+     * @param matchingNodes the nodes matching the previous blocks
+     * @param pathBlock     the path block
+     * @param nextNodes     receives the nodes matching the path block too
+     */
+    public static void matchBlock(final List<PatternNode> matchingNodes,
+                                  final String pathBlock,
+                                  final List<PatternNode> nextNodes) {
+        for (PatternNode node : matchingNodes) {
+            Map<String, PatternNode> patternMap = node.getChildPatterns();
+            PatternNode literal = patternMap.get(pathBlock);
+            PatternNode wildcard = patternMap.get(WILDCARD);
+            if (literal != null) {
+                nextNodes.add(literal);
+            }
+            if (wildcard != null && wildcard != literal) {
+                nextNodes.add(wildcard);
+            }
+        }
+    }
+
+    /**
+     * Gets the best pattern ending at nodes matching a whole path.
+     *
+     * @param matchingNodes the nodes matching the whole path
+     *
+     * @return the matching node, null if no pattern ends there
+     */
+    public PatternNode bestMatch(final List<PatternNode> matchingNodes) {
+        PatternNode matchingNode = null;
+        for (PatternNode node : matchingNodes) {
+            if (node.hasPattern()
+                    && (matchingNode == null || isBetterMatch(node, matchingNode))) {
+                matchingNode = node;
+            }
+        }
+        return matchingNode;
+    }
+
+    /**
+     * Drops the blank blocks of a path, which are never matched.
+     *
+     * @param blocks the path blocks, may be null
+     *
+     * @return the non blank blocks
+     */
+    public static String[] nonBlankBlocks(final String[] blocks) {
+        if (blocks == null) {
+            return new String[0];
+        }
+        List<String> nonBlank = newArrayList();
+        for (String block : blocks) {
+            if (!isBlank(block)) {
+                nonBlank.add(block);
             }
         }
-        return matchingPattern;
+        if (nonBlank.size() == blocks.length) {
+            return blocks;
+        }
+        return nonBlank.toArray(new String[nonBlank.size()]);
+    }
+
+    /**
+     * Whether paths are in the order of their blocks.
+     *
+     * @param pathBlocks the blocks of the paths
+     *
+     * @return true if sorted
+     */
+    private static boolean isSorted(final String[][] pathBlocks) {
+        for (int index = 1; index < pathBlocks.length; index++) {
+            if (compareBlocks(pathBlocks[index - 1], pathBlocks[index]) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares the blocks of two paths, block by block.
+     *
+     * @param first  the blocks of the first path
+     * @param second the blocks of the second path
+     *
+     * @return a negative number, zero or a positive number as the first path
+     *         comes before, with or after the second one
+     */
+    private static int compareBlocks(final String[] first, final String[] second) {
+        int length = Math.min(first.length, second.length);
+        for (int index = 0; index < length; index++) {
+            int order = first[index].compareTo(second[index]);
+            if (order != 0) {
+                return order;
+            }
+        }
+        return Integer.compare(first.length, second.length);
+    }
+
+    /**
+     * Whether a matching pattern is better than another one.
+     * Fewer wildcards are better, and for the same number of wildcards,
+     * the leftmost wildcard further to the right is better.
+     * Past that, the first matching node found stays the best one.
+     *
+     * @param candidate the candidate node
+     * @param best      the best node so far
+     *
+     * @return true if the candidate is better
+     */
+    public boolean isBetterMatch(final PatternNode candidate, final PatternNode best) {
+        if (candidate.getWildcards() != best.getWildcards()) {
+            return candidate.getWildcards() < best.getWildcards();
+        }
+        return candidate.getFirstWildcard() > best.getFirstWildcard();
     }
 
     /**
@@ -127,7 +395,11 @@ public class PatternProcessor {
      * for Eg. the pattern "a,b,c" will have three nodes with root as "a"
      * Every other pattern either will be unique or shares
      * some part of the tree branch as per common blocks.
-     * It also records the position from the root.
+     * It also records the position from the root, and on the node where
+     * a pattern ends, its number of wildcards and the position of the leftmost one.
+     * The blocks are interned in the global segment pool: the nodes are keyed
+     * by the pooled segment strings, and the node where a pattern ends keeps
+     * the pooled segments of the pattern instead of its text.
      * <p>
      * For "a,b,c" and "a,b,d"
      * <p>
@@ -139,53 +411,268 @@ public class PatternProcessor {
      *               -c 3
      *               -d 3
      * <p>
-     * This is one time process.
+     * This is one time process. With several build workers and enough patterns,
+     * it runs on several cores, and builds the same tree.
      *
      * @param patterns the list of patterns
      *
      * @return pattern model
      */
     public PatternNode buildPatternTree(final List<String> patterns) {
+        if (buildWorkers > 1 && patterns != null
+                && patterns.size() >= parallelBuildThreshold) {
+            return buildInParallel(patterns);
+        }
+        if (CollectionUtils.isEmpty(patterns)) {
+            return new PatternNode(0);
+        }
+        return buildPart(patterns);
+    }
+
+    /**
+     * Builds the pattern tree on several cores. The patterns are split by their first
+     * block, so the subtrees of a first block are all built by the same task, from its
+     * patterns in their original order. The subtrees are then put under the root,
+     * and the tree is the same as the one built pattern by pattern.
+     *
+     * @param patterns the list of patterns
+     *
+     * @return pattern model
+     */
+    private PatternNode buildInParallel(final List<String> patterns) {
+        int partCount = buildWorkers * PARTS_PER_BUILD_WORKER;
+        List<List<String>> parts = newArrayList();
+        for (int part = 0; part < partCount; part++) {
+            parts.add(newArrayList());
+        }
+        for (String pattern : patterns) {
+            parts.get(Math.floorMod(firstBlockHash(pattern), partCount)).add(pattern);
+        }
+
+        PatternNode[] partRoots = buildPatternTrees(parts);
+
         PatternNode rootNode = new PatternNode(0);
+        for (PatternNode partRoot : partRoots) {
+            rootNode.getChildPatterns().putAll(partRoot.getChildPatterns());
+        }
+        return rootNode;
+    }
 
-        if (CollectionUtils.isNotEmpty(patterns)) {
-            for (int index = 0; index < patterns.size(); index++) {
-                String pattern = patterns.get(index);
-                String[] splitedPattern = splitPattern(pattern);
-                if (isNotEmpty(splitedPattern)) {
-
-                    PatternNode patternNode = null;
-                    Map<String, PatternNode> patternMap =
-                            rootNode.getChildPatterns();
-
-                    boolean validStatus = true;
-                    int position = 0;
-                    for (String patKey : splitedPattern) {
-                        if (StringUtils.isBlank(patKey)) {
-                            validStatus = false;
-                            break;
-                        }
-                        position++;
-                        if (!patternMap.containsKey(patKey)) {
-                            patternNode = new PatternNode(position);
-                            patternMap.put(patKey, patternNode);
-                            patternMap = patternNode.getChildPatterns();
-                        } else {
-                            patternNode = patternMap.get(patKey);
-                            patternMap = patternNode.getChildPatterns();
-                        }
-                    }
-                    //Blank Entry in Pattern. Ignore and Move to next pattern.
-                    if (!validStatus) {
-                        continue;
-                    }
-                    patternNode.setPattern(pattern);
-                }
+    /**
+     * Builds a pattern tree of every list of patterns, each on its own.
+     * With several build workers and enough patterns in all, the trees are
+     * built on several cores.
+     *
+     * @param parts the lists of patterns
+     *
+     * @return the roots of the trees, in the order of their lists
+     */
+    public PatternNode[] buildPatternTrees(final List<List<String>> parts) {
+        PatternNode[] roots = new PatternNode[parts.size()];
+        long patternCount = 0;
+        for (List<String> part : parts) {
+            patternCount += part.size();
+        }
+        if (buildWorkers > 1 && parts.size() > 1
+                && patternCount >= parallelBuildThreshold) {
+            ForkJoinPool pool = new ForkJoinPool(buildWorkers);
+            try {
+                pool.invoke(new BuildTask(parts, roots, 0, parts.size()));
+            } finally {
+                pool.shutdown();
             }
+            return roots;
+        }
+        for (int part = 0; part < parts.size(); part++) {
+            roots[part] = buildPart(parts.get(part));
+        }
+        return roots;
+    }
+
+    /**
+     * Builds the pattern tree of a list of patterns, pattern by pattern.
+     *
+     * @param patterns the list of patterns
+     *
+     * @return pattern model
+     */
+    private PatternNode buildPart(final List<String> patterns) {
+        PatternNode rootNode = new PatternNode(0);
+        SegmentPool segments = SegmentPool.global();
+        for (String pattern : patterns) {
+            insertPattern(rootNode, pattern, segments);
         }
         return rootNode;
     }
 
+    /**
+     * Hashes the first block of a pattern, without splitting it.
+     *
+     * @param pattern the pattern
+     *
+     * @return the hash of the text up to the first separator
+     */
+    private static int firstBlockHash(final String pattern) {
+        int hash = 0;
+        if (pattern != null) {
+            for (int index = 0; index < pattern.length(); index++) {
+                char character = pattern.charAt(index);
+                if (character == ',') {
+                    break;
+                }
+                hash = HASH_MULTIPLIER * hash + character;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Inserts a pattern into a pattern tree being built.
+     * A pattern inserted again replaces the previous one, and counts one more reference.
+     * A pattern with a blank block is ignored, past the nodes of its leading blocks.
+     *
+     * @param rootNode the root of the pattern tree
+     * @param pattern  the pattern
+     * @param segments the segment pool
+     */
+    private void insertPattern(final PatternNode rootNode, final String pattern,
+                               final SegmentPool segments) {
+        String[] splitedPattern = splitPattern(pattern);
+        if (!isNotEmpty(splitedPattern)) {
+            return;
+        }
+        PatternNode patternNode = null;
+        Map<String, PatternNode> patternMap = rootNode.getChildPatterns();
+
+        String[] patternSegments = new String[splitedPattern.length];
+        int position = 0;
+        int wildcards = 0;
+        int firstWildcard = 0;
+        for (String patKey : splitedPattern) {
+            if (isBlank(patKey)) {
+                //Blank Entry in Pattern. Ignore and Move to next pattern.
+                return;
+            }
+            patternSegments[position] = segments.intern(patKey);
+            position++;
+            if (WILDCARD.equals(patKey)) {
+                wildcards++;
+                if (firstWildcard == 0) {
+                    firstWildcard = position;
+                }
+            }
+            if (!patternMap.containsKey(patKey)) {
+                patternNode = new PatternNode(position);
+                // Keyed by the pooled segment, shared by all the trees.
+                patternMap.put(patternSegments[position - 1], patternNode);
+                patternMap = patternNode.getChildPatterns();
+            } else {
+                patternNode = patternMap.get(patKey);
+                patternMap = patternNode.getChildPatterns();
+            }
+        }
+        patternNode.setPatternSegments(patternSegments);
+        patternNode.setWildcards(wildcards);
+        patternNode.setFirstWildcard(firstWildcard);
+        patternNode.setReferences(patternNode.getReferences() + 1);
+    }
+
+    /**
+     * Adds a pattern to a pattern tree, without changing the tree.
+     * The nodes on the way to the pattern are copied, the other ones are shared,
+     * so the returned tree is a new version and the given one stays as it was.
+     * Adding a pattern again only counts one more reference to it.
+     * Patterns with a blank block are ignored, as when building the tree.
+     *
+     * @param rootNode the root of the pattern tree
+     * @param pattern  the pattern
+     *
+     * @return the root of the new pattern tree, or the given one if unchanged
+     */
+    public PatternNode addPattern(final PatternNode rootNode, final String pattern) {
+        String[] blocks = splitPatternBlocks(pattern);
+        if (blocks == null) {
+            return rootNode;
+        }
+        String[] patternSegments = SegmentPool.global().intern(blocks);
+        PatternNode newRoot = rootNode.copy();
+        PatternNode patternNode = newRoot;
+        int wildcards = 0;
+        int firstWildcard = 0;
+        for (int index = 0; index < blocks.length; index++) {
+            if (WILDCARD.equals(blocks[index])) {
+                wildcards++;
+                if (firstWildcard == 0) {
+                    firstWildcard = index + 1;
+                }
+            }
+            PatternNode child = patternNode.getChildPatterns().get(blocks[index]);
+            if (child == null) {
+                child = new PatternNode(index + 1);
+            } else {
+                child = child.copy();
+            }
+            patternNode.getChildPatterns().put(patternSegments[index], child);
+            patternNode = child;
+        }
+        patternNode.setPatternSegments(patternSegments);
+        patternNode.setWildcards(wildcards);
+        patternNode.setFirstWildcard(firstWildcard);
+        patternNode.setReferences(patternNode.getReferences() + 1);
+        return newRoot;
+    }
+
+    /**
+     * Removes a pattern from a pattern tree, without changing the tree.
+     * The nodes on the way to the pattern are copied, the other ones are shared.
+     * The pattern is only removed once its last reference is removed,
+     * then the branches left without any pattern are pruned.
+     *
+     * @param rootNode the root of the pattern tree
+     * @param pattern  the pattern
+     *
+     * @return the root of the new pattern tree, or the given one if the pattern
+     *         is not in the tree
+     */
+    public PatternNode removePattern(final PatternNode rootNode, final String pattern) {
+        String[] blocks = splitPatternBlocks(pattern);
+        if (blocks == null) {
+            return rootNode;
+        }
+        PatternNode[] branch = new PatternNode[blocks.length + 1];
+        branch[0] = rootNode;
+        for (int index = 0; index < blocks.length; index++) {
+            branch[index + 1] = branch[index].getChildPatterns().get(blocks[index]);
+            if (branch[index + 1] == null) {
+                return rootNode;
+            }
+        }
+        if (!branch[blocks.length].hasPattern()) {
+            return rootNode;
+        }
+
+        // Keyed by the pooled segments, as when adding the pattern.
+        String[] patternSegments = SegmentPool.global().intern(blocks);
+        PatternNode child = branch[blocks.length].copy();
+        child.setReferences(child.getReferences() - 1);
+        if (child.getReferences() <= 0) {
+            child.setPatternSegments(null);
+            child.setWildcards(0);
+            child.setFirstWildcard(0);
+            child.setReferences(0);
+        }
+        for (int index = blocks.length - 1; index >= 0; index--) {
+            PatternNode parent = branch[index].copy();
+            if (!child.hasPattern() && child.getChildPatterns().isEmpty()) {
+                parent.getChildPatterns().remove(patternSegments[index]);
+            } else {
+                parent.getChildPatterns().put(patternSegments[index], child);
+            }
+            child = parent;
+        }
+        return child;
+    }
+
     /**
      * Split the pattern line by comma separated.
      * If unnecessary comma comes, it considers as "".
@@ -200,6 +687,26 @@ public class PatternProcessor {
 
     }
 
+    /**
+     * Splits a pattern into its blocks, if none of them is blank.
+     *
+     * @param pattern the pattern
+     *
+     * @return the pattern blocks, or null for a blank pattern or block
+     */
+    public String[] splitPatternBlocks(final String pattern) {
+        String[] blocks = splitPattern(pattern);
+        if (!isNotEmpty(blocks)) {
+            return null;
+        }
+        for (String block : blocks) {
+            if (isBlank(block)) {
+                return null;
+            }
+        }
+        return blocks;
+    }
+
     /**
      * Split the path by "/". If additional "/" comes,
      * just ignore it as path may come with "///"
@@ -235,5 +742,62 @@ public class PatternProcessor {
         return wildCards;
     }
 
+    /**
+     * Builds the pattern trees of a range of the pattern parts,
+     * splitting it in halves down to a single part.
+     */
+    private final class BuildTask extends RecursiveAction {
+
+        /**
+         * The serial version uid.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The pattern parts.
+         */
+        private final List<List<String>> parts;
+
+        /**
+         * The roots of the trees, at the index of their part.
+         */
+        private final PatternNode[] roots;
 
+        /**
+         * The first part index, inclusive.
+         */
+        private final int from;
+
+        /**
+         * The last part index, exclusive.
+         */
+        private final int to;
+
+        /**
+         * Instantiates a new Build task.
+         *
+         * @param patternParts the pattern parts
+         * @param partRoots    the roots of the trees, at the index of their part
+         * @param fromIndex    the first part index, inclusive
+         * @param toIndex      the last part index, exclusive
+         */
+        BuildTask(final List<List<String>> patternParts, final PatternNode[] partRoots,
+                  final int fromIndex, final int toIndex) {
+            this.parts = patternParts;
+            this.roots = partRoots;
+            this.from = fromIndex;
+            this.to = toIndex;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new BuildTask(parts, roots, from, middle),
+                        new BuildTask(parts, roots, middle, to));
+                return;
+            }
+            roots[from] = buildPart(parts.get(from));
+        }
+    }
 }
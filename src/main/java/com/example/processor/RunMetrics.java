@@ -0,0 +1,776 @@
+package com.example.processor;
+
+import com.example.constant.MatchingPhase;
+import com.example.constant.Messages;
+import com.example.model.PatternAutomaton;
+import com.example.model.PatternNode;
+import com.example.model.PatternTreeLayout;
+import com.example.model.SegmentDictionary;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static com.google.common.collect.Maps.newHashMap;
+
+/**
+ * The metrics of a single matching run: the time of every phase, the size of
+ * the pattern index, and what the paths matched. The summary is written at
+ * the end of the run, and the metrics are reported to the metrics registry.
+ * <p>
+ * A run is measured by a single thread. The server measures each connection
+ * on its own, and reports to the shared registry.
+ * <p>
+ * Once latency tracing is on, the time of every path matched on its own is
+ * counted in a latency histogram, and the slowest paths are matched again
+ * to trace the nodes and alternates they went through. Until then,
+ * recording a latency is a single check.
+ */
+public class RunMetrics {
+
+    /**
+     * One path out of SAMPLE_MASK + 1 is matched again to count its alternates.
+     */
+    private static final int SAMPLE_MASK = 63;
+
+    /**
+     * Nanoseconds per millisecond.
+     */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /**
+     * Nanoseconds per second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * The latency percentiles in the summary and the report.
+     */
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    /**
+     * The approximate heap bytes of a pattern node, besides its children.
+     */
+    private static final long NODE_BYTES = 40;
+
+    /**
+     * The approximate heap bytes of a child map, besides its table and entries.
+     */
+    private static final long MAP_BYTES = 48;
+
+    /**
+     * The approximate heap bytes of a child map entry.
+     */
+    private static final long ENTRY_BYTES = 32;
+
+    /**
+     * The approximate heap bytes of a reference.
+     */
+    private static final long REFERENCE_BYTES = 4;
+
+    /**
+     * The smallest table of a child map, once it holds a child.
+     */
+    private static final int MIN_TABLE = 16;
+
+    /**
+     * The Pattern processor.
+     */
+    private final PatternProcessor patProcessor;
+
+    /**
+     * When the run started, in nanoseconds.
+     */
+    private final long startTime = System.nanoTime();
+
+    /**
+     * The time of every phase, in nanoseconds.
+     */
+    private final long[] phaseNanos = new long[MatchingPhase.values().length];
+
+    /**
+     * The time of the whole run, once finished.
+     */
+    private long totalNanos;
+
+    /**
+     * The number of patterns in the pattern index.
+     */
+    private long patterns;
+
+    /**
+     * The number of nodes in the pattern index.
+     */
+    private long nodes;
+
+    /**
+     * The approximate heap bytes of the pattern index.
+     */
+    private long heapBytes;
+
+    /**
+     * The pattern index the alternates are counted on, null if none.
+     */
+    private VersionedPatternIndex sampledIndex;
+
+    /**
+     * The compiled pattern tree the slow paths are traced on, null if none.
+     */
+    private CompiledPatternMatcher sampledTree;
+
+    /**
+     * The no match filter in front of the pattern index, null if none.
+     */
+    private FilteredPatternMatcher filter;
+
+    /**
+     * The latencies of the paths, null unless tracing.
+     */
+    private LatencyHistogram latencies;
+
+    /**
+     * The slowest paths, null unless tracing.
+     */
+    private SlowPaths slowPaths;
+
+    /**
+     * The number of paths matched.
+     */
+    private long paths;
+
+    /**
+     * The number of paths without a match.
+     */
+    private long noMatches;
+
+    /**
+     * The number of matches, by number of wildcards of the matching pattern.
+     */
+    private long[] wildcardMatches = new long[1];
+
+    /**
+     * The number of sampled paths, by number of alternates followed at once.
+     */
+    private long[] alternates = new long[1];
+
+    /**
+     * The number of wildcards of every matching pattern seen, counted once per pattern.
+     */
+    private final Map<String, Integer> patternWildcards = newHashMap();
+
+    /**
+     * Instantiates a new Run metrics.
+     *
+     * @param processor the pattern processor
+     */
+    public RunMetrics(final PatternProcessor processor) {
+        this.patProcessor = processor;
+    }
+
+    /**
+     * Adds to the time of a phase.
+     *
+     * @param phase the phase
+     * @param nanos the time, in nanoseconds
+     */
+    public void addTime(final MatchingPhase phase, final long nanos) {
+        phaseNanos[phase.ordinal()] += nanos;
+    }
+
+    /**
+     * Starts counting the latency of the paths and tracing the slowest ones.
+     *
+     * @param slowPathCount the number of slowest paths kept
+     */
+    public void traceLatencies(final int slowPathCount) {
+        latencies = new LatencyHistogram();
+        slowPaths = new SlowPaths(slowPathCount);
+    }
+
+    /**
+     * Measures the size of a pattern index, and counts the alternates on it
+     * when it is a pattern tree.
+     *
+     * @param matcher the pattern matcher
+     */
+    public void measure(final PatternMatcher matcher) {
+        PatternMatcher index = sample(matcher);
+        if (index instanceof VersionedPatternIndex) {
+            measureTrees(((VersionedPatternIndex) index).getRoots());
+        } else if (index instanceof AutomatonPatternMatcher) {
+            PatternAutomaton automaton = ((AutomatonPatternMatcher) index).getAutomaton();
+            nodes = automaton.getStateCount();
+            heapBytes = automaton.getHeapBytes();
+            patterns = automaton.getPatternCount();
+        } else if (index instanceof CompiledPatternMatcher) {
+            PatternTreeLayout tree = ((CompiledPatternMatcher) index).getTree();
+            nodes = tree.getNodeCount();
+            heapBytes = tree.getHeapBytes();
+            patterns = 0;
+            for (int node = 0; node < tree.getNodeCount(); node++) {
+                if (tree.hasPattern(node)) {
+                    patterns++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts the alternates of the sampled paths on a pattern matcher,
+     * when it is a pattern tree, and traces the slow paths on it,
+     * without measuring it.
+     *
+     * @param matcher the pattern matcher
+     *
+     * @return the pattern matcher, past its filter and cache
+     */
+    public PatternMatcher sample(final PatternMatcher matcher) {
+        PatternMatcher index = matcher;
+        if (index instanceof FilteredPatternMatcher) {
+            filter = (FilteredPatternMatcher) index;
+            index = filter.getMatcher();
+        }
+        if (index instanceof CachedPatternMatcher) {
+            index = ((CachedPatternMatcher) index).getMatcher();
+        }
+        if (index instanceof VersionedPatternIndex) {
+            sampledIndex = (VersionedPatternIndex) index;
+        } else if (index instanceof CompiledPatternMatcher) {
+            sampledTree = (CompiledPatternMatcher) index;
+        }
+        return index;
+    }
+
+    /**
+     * Counts a match.
+     *
+     * @param match the matching pattern, or "NO MATCH"
+     */
+    public void countMatch(final String match) {
+        paths++;
+        if (Messages.NO_MATCH.equals(match)) {
+            noMatches++;
+            return;
+        }
+        Integer wildcards = patternWildcards.get(match);
+        if (wildcards == null) {
+            wildcards = countWildcards(match);
+            patternWildcards.put(match, wildcards);
+        }
+        wildcardMatches = count(wildcardMatches, wildcards);
+    }
+
+    /**
+     * Whether the next path is timed. Every path is timed when tracing latencies,
+     * else one path out of SAMPLE_MASK + 1, its times standing for the other ones.
+     * The alternates are counted on the same paths.
+     *
+     * @return true if the next path is timed
+     */
+    public boolean timesNextPath() {
+        return latencies != null || ((paths + 1) & SAMPLE_MASK) == 1;
+    }
+
+    /**
+     * Adds the time of a timed path to a phase. Unless tracing latencies,
+     * the time stands for the untimed paths until the next timed one.
+     *
+     * @param phase the phase
+     * @param nanos the time of the path, in nanoseconds
+     */
+    public void addPathTime(final MatchingPhase phase, final long nanos) {
+        if (latencies == null) {
+            addTime(phase, nanos * (SAMPLE_MASK + 1));
+        } else {
+            addTime(phase, nanos);
+        }
+    }
+
+    /**
+     * Counts the alternates followed to match the last counted path,
+     * one path out of a few.
+     *
+     * @param path the path
+     */
+    public void sampleAlternates(final String path) {
+        if (sampledIndex != null && (paths & SAMPLE_MASK) == 1) {
+            alternates = count(alternates, sampledIndex.traceMatch(
+                    patProcessor.splitPath(path)).getAlternates());
+        }
+    }
+
+    /**
+     * Counts the alternates followed to match the last counted path,
+     * held as UTF-8 bytes, one path out of a few.
+     *
+     * @param path the buffer holding the path
+     * @param from the start of the path, inclusive
+     * @param to   the end of the path, exclusive
+     */
+    public void sampleAlternates(final ByteBuffer path, final int from, final int to) {
+        if (sampledIndex != null && (paths & SAMPLE_MASK) == 1) {
+            sampleAlternates(ByteLines.decode(path, from, to));
+        }
+    }
+
+    /**
+     * Records the time a path took to match, when tracing latencies.
+     * The path is traced if it is among the slowest ones.
+     *
+     * @param path  the path
+     * @param nanos the time of the match, in nanoseconds
+     */
+    public void recordLatency(final String path, final long nanos) {
+        if (latencies == null) {
+            return;
+        }
+        latencies.record(nanos);
+        if (slowPaths.isSlow(nanos)) {
+            traceSlowPath(path, nanos);
+        }
+    }
+
+    /**
+     * Records the time a path held as UTF-8 bytes took to match,
+     * when tracing latencies. The path is only decoded to be traced.
+     *
+     * @param path  the buffer holding the path
+     * @param from  the start of the path, inclusive
+     * @param to    the end of the path, exclusive
+     * @param nanos the time of the match, in nanoseconds
+     */
+    public void recordLatency(final ByteBuffer path, final int from, final int to,
+                              final long nanos) {
+        if (latencies == null) {
+            return;
+        }
+        latencies.record(nanos);
+        if (slowPaths.isSlow(nanos)) {
+            traceSlowPath(ByteLines.decode(path, from, to), nanos);
+        }
+    }
+
+    /**
+     * Ends the run. Unless timed on its own, the reading time is the time
+     * left once the other phases are taken out.
+     */
+    public void finish() {
+        totalNanos = System.nanoTime() - startTime;
+        int read = MatchingPhase.READ.ordinal();
+        if (phaseNanos[read] == 0) {
+            long others = 0;
+            for (long nanos : phaseNanos) {
+                others += nanos;
+            }
+            phaseNanos[read] = Math.max(totalNanos - others, 0);
+        }
+    }
+
+    /**
+     * Gets the number of paths matched.
+     *
+     * @return the paths
+     */
+    public long getPaths() {
+        return paths;
+    }
+
+    /**
+     * Gets the number of paths without a match.
+     *
+     * @return the paths without a match
+     */
+    public long getNoMatches() {
+        return noMatches;
+    }
+
+    /**
+     * Gets the time of a phase.
+     *
+     * @param phase the phase
+     *
+     * @return the time, in nanoseconds
+     */
+    public long getTime(final MatchingPhase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    /**
+     * Gets the number of nodes of the pattern index.
+     *
+     * @return the nodes
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Gets the number of matches, by number of wildcards of the matching pattern.
+     *
+     * @return the matches, indexed by number of wildcards
+     */
+    public long[] getWildcardMatches() {
+        return Arrays.copyOf(wildcardMatches, wildcardMatches.length);
+    }
+
+    /**
+     * Gets the number of sampled paths, by number of alternates followed at once.
+     *
+     * @return the sampled paths, indexed by number of alternates
+     */
+    public long[] getAlternates() {
+        return Arrays.copyOf(alternates, alternates.length);
+    }
+
+    /**
+     * Gets the latencies of the paths.
+     *
+     * @return the latency histogram, null unless tracing
+     */
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * Gets the slowest paths.
+     *
+     * @return the slowest paths, the slowest first, empty unless tracing
+     */
+    public List<SlowPaths.SlowPath> getSlowPaths() {
+        if (slowPaths == null) {
+            return Collections.emptyList();
+        }
+        return slowPaths.getSlowest();
+    }
+
+    /**
+     * Reports the metrics to a metrics registry.
+     *
+     * @param registry the metrics registry
+     */
+    public void report(final MetricsRegistry registry) {
+        for (MatchingPhase phase : MatchingPhase.values()) {
+            if (phaseNanos[phase.ordinal()] > 0) {
+                registry.recordTime(phaseName(phase), phaseNanos[phase.ordinal()]);
+            }
+        }
+        if (nodes > 0) {
+            registry.gauge("index.patterns", patterns);
+            registry.gauge("index.nodes", nodes);
+            registry.gauge("index.heap-bytes", heapBytes);
+        }
+        registry.increment("paths", paths);
+        registry.increment("paths.no-match", noMatches);
+        if (filter != null) {
+            registry.gauge("filter.rejected", filter.getRejected());
+        }
+        reportHistogram(registry, "match.wildcards", wildcardMatches);
+        reportHistogram(registry, "match.alternates", alternates);
+        if (latencies != null && latencies.getCount() > 0) {
+            for (double percentile : PERCENTILES) {
+                registry.gauge("match.latency." + percentileName(percentile) + "-ns",
+                        latencies.getValueAtPercentile(percentile));
+            }
+            registry.gauge("match.latency.max-ns", latencies.getMax());
+        }
+    }
+
+    /**
+     * Clears the times and the counts, keeping the size of the pattern index,
+     * the latencies and the slowest paths.
+     */
+    public void reset() {
+        Arrays.fill(phaseNanos, 0);
+        paths = 0;
+        noMatches = 0;
+        wildcardMatches = new long[1];
+        alternates = new long[1];
+    }
+
+    /**
+     * Gets the summary of the run, as a JSON object.
+     *
+     * @return the summary
+     */
+    public String summary() {
+        StringBuilder summary = new StringBuilder("{\"phasesMs\":{");
+        for (MatchingPhase phase : MatchingPhase.values()) {
+            summary.append('"').append(phase.name().toLowerCase(Locale.ROOT))
+                    .append("\":").append(millis(getTime(phase))).append(',');
+        }
+        summary.append("\"total\":").append(millis(totalNanos)).append('}');
+        long pathNanos = totalNanos - phaseNanos[MatchingPhase.BUILD.ordinal()];
+        summary.append(",\"patterns\":").append(patterns)
+                .append(",\"patternsPerSecond\":").append(perSecond(patterns,
+                        phaseNanos[MatchingPhase.BUILD.ordinal()]))
+                .append(",\"paths\":").append(paths)
+                .append(",\"pathsPerSecond\":").append(perSecond(paths, pathNanos))
+                .append(",\"indexNodes\":").append(nodes)
+                .append(",\"indexHeapBytes\":").append(heapBytes)
+                .append(",\"noMatchRate\":").append(String.format(Locale.ROOT, "%.4f",
+                        noMatches / (double) Math.max(paths, 1)))
+                .append(",\"matchesByWildcards\":").append(histogram(wildcardMatches))
+                .append(",\"sampledPathsByAlternates\":").append(histogram(alternates));
+        if (filter != null) {
+            summary.append(",\"filterRejected\":").append(filter.getRejected());
+        }
+        if (latencies != null) {
+            summary.append(',').append(latencySummary());
+        }
+        return summary.append('}').toString();
+    }
+
+    /**
+     * Gets the latency percentiles and the slowest paths, as JSON members.
+     *
+     * @return the latency summary, empty unless tracing
+     */
+    public String latencySummary() {
+        if (latencies == null) {
+            return "";
+        }
+        StringBuilder summary = new StringBuilder("\"latencyNs\":{\"count\":")
+                .append(latencies.getCount());
+        for (double percentile : PERCENTILES) {
+            summary.append(",\"").append(percentileName(percentile)).append("\":")
+                    .append(latencies.getValueAtPercentile(percentile));
+        }
+        summary.append(",\"max\":").append(latencies.getMax())
+                .append("},\"slowestPaths\":[");
+        List<SlowPaths.SlowPath> slowest = slowPaths.getSlowest();
+        for (int index = 0; index < slowest.size(); index++) {
+            SlowPaths.SlowPath slowPath = slowest.get(index);
+            MatchTrace trace = slowPath.getTrace();
+            if (index > 0) {
+                summary.append(',');
+            }
+            summary.append("{\"path\":").append(jsonString(slowPath.getPath()))
+                    .append(",\"ns\":").append(slowPath.getNanos())
+                    .append(",\"match\":").append(jsonString(trace.getPattern()))
+                    .append(",\"nodes\":").append(trace.getNodes())
+                    .append(",\"alternates\":").append(trace.getAlternates())
+                    .append('}');
+        }
+        return summary.append(']').toString();
+    }
+
+    /**
+     * Traces a slow path on the pattern index, and keeps it.
+     * Nothing is kept when the pattern index cannot be traced.
+     *
+     * @param path  the path
+     * @param nanos the time of the match, in nanoseconds
+     */
+    private void traceSlowPath(final String path, final long nanos) {
+        MatchTrace trace = null;
+        if (sampledIndex != null) {
+            trace = sampledIndex.traceMatch(patProcessor.splitPath(path));
+        } else if (sampledTree != null) {
+            trace = sampledTree.traceMatch(patProcessor.splitPath(path));
+        }
+        if (trace != null) {
+            slowPaths.add(path, nanos, trace);
+        }
+    }
+
+    /**
+     * Measures the nodes of pattern trees and estimates their heap bytes.
+     *
+     * @param roots the root nodes
+     */
+    private void measureTrees(final Collection<PatternNode> roots) {
+        nodes = 0;
+        heapBytes = 0;
+        patterns = 0;
+        Deque<PatternNode> pending = new ArrayDeque<>(roots);
+        while (!pending.isEmpty()) {
+            PatternNode node = pending.pop();
+            int children = node.getChildPatterns().size();
+            nodes++;
+            heapBytes += NODE_BYTES + MAP_BYTES + children * ENTRY_BYTES
+                    + tableSize(children) * REFERENCE_BYTES;
+            if (node.hasPattern()) {
+                patterns++;
+                heapBytes += SegmentDictionary.ARRAY_BYTES
+                        + SegmentDictionary.REFERENCE_BYTES
+                        * node.getPatternSegments().length;
+            }
+            for (PatternNode child : node.getChildPatterns().values()) {
+                pending.push(child);
+            }
+        }
+    }
+
+    /**
+     * Estimates the table size of a hash map holding a number of entries.
+     *
+     * @param entries the number of entries
+     *
+     * @return the table size
+     */
+    private static int tableSize(final int entries) {
+        if (entries == 0) {
+            return 0;
+        }
+        // Grown at 3/4 of the table size.
+        int needed = (int) Math.ceil(entries / 0.75);
+        return Math.max(MIN_TABLE, Integer.highestOneBit(needed - 1) << 1);
+    }
+
+    /**
+     * Counts the wildcard blocks of a pattern.
+     *
+     * @param pattern the pattern
+     *
+     * @return the number of wildcards
+     */
+    private static int countWildcards(final String pattern) {
+        int wildcards = 0;
+        int blockStart = 0;
+        for (int index = 0; index <= pattern.length(); index++) {
+            if (index == pattern.length() || pattern.charAt(index) == ',') {
+                if (index - blockStart == 1 && pattern.charAt(blockStart) == '*') {
+                    wildcards++;
+                }
+                blockStart = index + 1;
+            }
+        }
+        return wildcards;
+    }
+
+    /**
+     * Counts a value of a histogram, growing it as needed.
+     *
+     * @param histogram the counts, indexed by value
+     * @param value     the value
+     *
+     * @return the histogram
+     */
+    private static long[] count(final long[] histogram, final int value) {
+        long[] counts = histogram;
+        if (value >= counts.length) {
+            counts = Arrays.copyOf(counts, value + 1);
+        }
+        counts[value]++;
+        return counts;
+    }
+
+    /**
+     * Reports the values of a histogram.
+     *
+     * @param registry the metrics registry
+     * @param name     the histogram name
+     * @param counts   the counts, indexed by value
+     */
+    private static void reportHistogram(final MetricsRegistry registry, final String name,
+                                        final long[] counts) {
+        for (int value = 0; value < counts.length; value++) {
+            if (counts[value] > 0) {
+                registry.recordValue(name, value, counts[value]);
+            }
+        }
+    }
+
+    /**
+     * Writes a histogram as a JSON object, leaving out the empty values.
+     *
+     * @param counts the counts, indexed by value
+     *
+     * @return the JSON object
+     */
+    private static String histogram(final long[] counts) {
+        StringBuilder json = new StringBuilder("{");
+        for (int value = 0; value < counts.length; value++) {
+            if (counts[value] > 0) {
+                if (json.length() > 1) {
+                    json.append(',');
+                }
+                json.append('"').append(value).append("\":").append(counts[value]);
+            }
+        }
+        return json.append('}').toString();
+    }
+
+    /**
+     * Writes a string as a JSON string.
+     *
+     * @param value the string, may be null
+     *
+     * @return the JSON string, or null
+     */
+    private static String jsonString(final String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+        for (int index = 0; index < value.length(); index++) {
+            char current = value.charAt(index);
+            if (current == '"' || current == '\\') {
+                json.append('\\').append(current);
+            } else if (current < ' ') {
+                json.append(String.format(Locale.ROOT, "\\u%04x", (int) current));
+            } else {
+                json.append(current);
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    /**
+     * Gets the name of a percentile, such as p50 or p999.
+     *
+     * @param percentile the percentile
+     *
+     * @return the name
+     */
+    private static String percentileName(final double percentile) {
+        String digits = String.valueOf(percentile).replace(".", "");
+        if (percentile == Math.rint(percentile)) {
+            digits = String.valueOf((long) percentile);
+        }
+        return "p" + digits;
+    }
+
+    /**
+     * Gets the registry name of a phase timer.
+     *
+     * @param phase the phase
+     *
+     * @return the timer name
+     */
+    private static String phaseName(final MatchingPhase phase) {
+        return "phase." + phase.name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Converts nanoseconds to milliseconds.
+     *
+     * @param nanos the nanoseconds
+     *
+     * @return the milliseconds, with one decimal
+     */
+    private static String millis(final long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / NANOS_PER_MILLI);
+    }
+
+    /**
+     * Computes a rate.
+     *
+     * @param count the count
+     * @param nanos the time it took, in nanoseconds
+     *
+     * @return the count per second
+     */
+    private static long perSecond(final long count, final long nanos) {
+        if (nanos <= 0) {
+            return 0;
+        }
+        return Math.round(count * NANOS_PER_SECOND / nanos);
+    }
+}
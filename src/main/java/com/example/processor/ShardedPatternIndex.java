@@ -0,0 +1,485 @@
+package com.example.processor;
+
+import com.example.constant.Messages;
+import com.example.model.PatternNode;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+import static com.example.model.SegmentDictionary.WILDCARD;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Maps.newLinkedHashMap;
+
+/**
+ * A pattern index split in shards, one pattern tree for every number of blocks,
+ * and optionally for every first block. A pattern only matches a path with as many
+ * blocks, so a lookup goes straight to the shards of its number of blocks, and
+ * never walks the branches of the shorter or longer patterns.
+ * <p>
+ * Split by first block, a path is matched against the shard of its first block
+ * and the shard of the patterns starting with a wildcard, the best of both winning.
+ * Every shard is a frozen tree of its own. A change rebuilds or copies the shards
+ * it touches, and publishes a new version of the index at once, with the no match
+ * filter of its patterns when one is kept, so the other shards are matched
+ * meanwhile and a lookup always sees one whole version.
+ */
+public class ShardedPatternIndex implements VersionedPatternIndex {
+
+    /**
+     * The shard key of all the patterns of a number of blocks,
+     * when not split by first block.
+     */
+    public static final String ALL_BLOCKS = "";
+
+    /**
+     * The Pattern processor.
+     */
+    private final PatternProcessor patProcessor;
+
+    /**
+     * Whether the shards are split by first block.
+     */
+    private final boolean byFirstBlock;
+
+    /**
+     * The current version of the shards.
+     */
+    private final AtomicReference<Version> current;
+
+    /**
+     * Instantiates a new Sharded pattern index, building all its shards.
+     * The shard trees are built together, on several cores with several build workers.
+     *
+     * @param processor         the pattern processor
+     * @param patterns          the patterns
+     * @param splitByFirstBlock whether the shards are split by first block
+     */
+    public ShardedPatternIndex(final PatternProcessor processor,
+                               final List<String> patterns,
+                               final boolean splitByFirstBlock) {
+        this(processor, patterns, splitByFirstBlock, false);
+    }
+
+    /**
+     * Instantiates a new Sharded pattern index, building all its shards.
+     * The shard trees are built together, on several cores with several build workers.
+     * With a no match filter, every version carries the filter of its patterns,
+     * built by the change publishing it.
+     *
+     * @param processor         the pattern processor
+     * @param patterns          the patterns
+     * @param splitByFirstBlock whether the shards are split by first block
+     * @param filtered          whether every version carries a no match filter
+     */
+    public ShardedPatternIndex(final PatternProcessor processor,
+                               final List<String> patterns,
+                               final boolean splitByFirstBlock, final boolean filtered) {
+        this.patProcessor = processor;
+        this.byFirstBlock = splitByFirstBlock;
+
+        Map<Integer, Map<String, List<String>>> grouped = newLinkedHashMap();
+        if (patterns != null) {
+            for (String pattern : patterns) {
+                String[] blocks = patProcessor.splitPatternBlocks(pattern);
+                if (blocks != null) {
+                    grouped.computeIfAbsent(blocks.length, count -> newLinkedHashMap())
+                            .computeIfAbsent(shardBlock(blocks[0]),
+                                    block -> newArrayList()).add(pattern);
+                }
+            }
+        }
+        List<List<String>> parts = newArrayList();
+        for (Map<String, List<String>> byBlock : grouped.values()) {
+            parts.addAll(byBlock.values());
+        }
+        PatternNode[] roots = patProcessor.buildPatternTrees(parts);
+        Map<Integer, Map<String, PatternNode>> shards = newHashMap();
+        int part = 0;
+        for (Map.Entry<Integer, Map<String, List<String>>> byCount : grouped.entrySet()) {
+            Map<String, PatternNode> sameCount = newHashMap();
+            for (String block : byCount.getValue().keySet()) {
+                roots[part].freeze();
+                sameCount.put(block, roots[part]);
+                part++;
+            }
+            shards.put(byCount.getKey(), Collections.unmodifiableMap(sameCount));
+        }
+        Version first = new Version(0, Collections.unmodifiableMap(shards), null);
+        if (filtered) {
+            first = new Version(0, first.getShards(), NoMatchFilter.of(first.getRoots()));
+        }
+        this.current = new AtomicReference<>(first);
+    }
+
+    /**
+     * This method returns the matching pattern for a single path,
+     * against the shards of its number of blocks.
+     * If No Match found, it returns "NO MATCH"
+     *
+     * @param path the path
+     *
+     * @return the matching pattern
+     */
+    @Override
+    public String getMatchingPattern(final String path) {
+        PatternNode matchingNode = findTheNearestNode(current.get(),
+                PatternProcessor.nonBlankBlocks(patProcessor.splitPath(path)), null);
+        if (matchingNode == null) {
+            return Messages.NO_MATCH;
+        }
+        return matchingNode.getPattern();
+    }
+
+    /**
+     * Matches a path against the shards of its number of blocks, recording
+     * the nodes reached and the alternates followed in all of them.
+     *
+     * @param pathList the path list
+     *
+     * @return the trace of the match
+     */
+    @Override
+    public MatchTrace traceMatch(final String[] pathList) {
+        MatchTrace trace = new MatchTrace();
+        PatternNode matchingNode = findTheNearestNode(current.get(),
+                PatternProcessor.nonBlankBlocks(pathList), trace);
+        if (matchingNode != null) {
+            trace.setPattern(matchingNode.getPattern());
+        }
+        return trace;
+    }
+
+    /**
+     * Rebuilds a single shard from its patterns, and publishes it at once.
+     * The caller passes the patterns of the shard only, not the whole pattern set,
+     * so a reload costs the size of the shard. The patterns with a blank block are
+     * ignored, as when building, and a shard left without patterns is dropped.
+     * The no match filter, when kept, takes the blocks of the new patterns.
+     *
+     * @param blockCount the number of blocks of the shard
+     * @param firstBlock the first block of the shard, ALL_BLOCKS when not split by it
+     * @param patterns   the patterns of the shard
+     *
+     * @throws IllegalArgumentException if a pattern belongs to another shard
+     */
+    public void reload(final int blockCount, final String firstBlock,
+                       final List<String> patterns) {
+        List<String> shardPatterns = newArrayList();
+        List<String[]> shardBlocks = newArrayList();
+        for (String pattern : patterns) {
+            String[] blocks = patProcessor.splitPatternBlocks(pattern);
+            if (blocks == null) {
+                continue;
+            }
+            if (blocks.length != blockCount
+                    || !shardBlock(blocks[0]).equals(firstBlock)) {
+                throw new IllegalArgumentException("The pattern " + pattern
+                        + " is not in the shard of " + blockCount
+                        + " blocks and first block " + firstBlock);
+            }
+            shardPatterns.add(pattern);
+            shardBlocks.add(blocks);
+        }
+        PatternNode rootNode = new PatternNode(0);
+        if (!shardPatterns.isEmpty()) {
+            rootNode = patProcessor.buildPatternTree(shardPatterns);
+            rootNode.freeze();
+        }
+        final PatternNode newRoot = rootNode;
+        update(blockCount, firstBlock, root -> newRoot, filter -> {
+            NoMatchFilter withPatterns = filter;
+            for (String[] blocks : shardBlocks) {
+                withPatterns = withPatterns.with(blocks);
+            }
+            return withPatterns;
+        });
+    }
+
+    /**
+     * Adds a pattern to its shard, and publishes the new version.
+     *
+     * @param pattern the pattern
+     *
+     * @return false if the pattern has a blank block and was ignored
+     */
+    @Override
+    public boolean add(final String pattern) {
+        String[] blocks = patProcessor.splitPatternBlocks(pattern);
+        if (blocks == null) {
+            return false;
+        }
+        return update(blocks.length, shardBlock(blocks[0]),
+                root -> patProcessor.addPattern(root, pattern),
+                filter -> filter.with(blocks));
+    }
+
+    /**
+     * Removes a pattern from its shard, and publishes the new version.
+     *
+     * @param pattern the pattern
+     *
+     * @return false if the pattern was not in the index
+     */
+    @Override
+    public boolean remove(final String pattern) {
+        String[] blocks = patProcessor.splitPatternBlocks(pattern);
+        if (blocks == null) {
+            return false;
+        }
+        // The filter of the previous patterns still lets every match through.
+        return update(blocks.length, shardBlock(blocks[0]),
+                root -> patProcessor.removePattern(root, pattern),
+                UnaryOperator.identity());
+    }
+
+    /**
+     * Gets the number of shards.
+     *
+     * @return the number of shards
+     */
+    public int getShardCount() {
+        int count = 0;
+        for (Map<String, PatternNode> sameCount : current.get().getShards().values()) {
+            count += sameCount.size();
+        }
+        return count;
+    }
+
+    /**
+     * Gets the roots of the shard trees of the current version.
+     * The trees never change.
+     *
+     * @return the shard roots
+     */
+    @Override
+    public Collection<PatternNode> getRoots() {
+        return current.get().getRoots();
+    }
+
+    /**
+     * Gets the number of the current version, increased by every change.
+     *
+     * @return the version number
+     */
+    @Override
+    public long getVersionNumber() {
+        return current.get().getNumber();
+    }
+
+    /**
+     * Gets the no match filter of the current version.
+     *
+     * @return the filter, null when the index keeps none
+     */
+    @Override
+    public NoMatchFilter getFilter() {
+        return current.get().getFilter();
+    }
+
+    /**
+     * Applies a change to a shard of the current version, and swaps the new version
+     * in. A shard left without patterns is dropped. When another change was
+     * published meanwhile, the change is applied again to that newer version.
+     *
+     * @param blockCount   the number of blocks of the shard
+     * @param firstBlock   the first block of the shard
+     * @param change       the change of the shard root, an empty root for none,
+     *                     returning the same root when nothing changes
+     * @param filterChange the change of the no match filter, when kept
+     *
+     * @return false if nothing changed
+     */
+    private boolean update(final int blockCount, final String firstBlock,
+                           final UnaryOperator<PatternNode> change,
+                           final UnaryOperator<NoMatchFilter> filterChange) {
+        while (true) {
+            Version version = current.get();
+            Map<String, PatternNode> sameCount = version.getShards().get(blockCount);
+            PatternNode root = null;
+            if (sameCount != null) {
+                root = sameCount.get(firstBlock);
+            }
+            if (root == null) {
+                root = new PatternNode(0);
+            }
+            PatternNode newRoot = change.apply(root);
+            if (newRoot == root) {
+                return false;
+            }
+            newRoot.freeze();
+
+            Map<String, PatternNode> newSameCount = newHashMap();
+            if (sameCount != null) {
+                newSameCount.putAll(sameCount);
+            }
+            if (newRoot.getChildPatterns().isEmpty()) {
+                newSameCount.remove(firstBlock);
+            } else {
+                newSameCount.put(firstBlock, newRoot);
+            }
+            Map<Integer, Map<String, PatternNode>> shards =
+                    newHashMap(version.getShards());
+            if (newSameCount.isEmpty()) {
+                shards.remove(blockCount);
+            } else {
+                shards.put(blockCount, Collections.unmodifiableMap(newSameCount));
+            }
+            NoMatchFilter filter = version.getFilter();
+            if (filter != null) {
+                filter = filterChange.apply(filter);
+            }
+            Version next = new Version(version.getNumber() + 1,
+                    Collections.unmodifiableMap(shards), filter);
+            if (current.compareAndSet(version, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Finds the node of the best pattern matching the blocks of a path,
+     * in the shards of a version.
+     *
+     * @param version the version
+     * @param blocks  the non blank blocks of the path
+     * @param trace   the trace of the match, null when not traced
+     *
+     * @return the matching node, null if no pattern matches
+     */
+    private PatternNode findTheNearestNode(final Version version, final String[] blocks,
+                                           final MatchTrace trace) {
+        if (blocks.length == 0) {
+            return null;
+        }
+        Map<String, PatternNode> sameCount = version.getShards().get(blocks.length);
+        if (sameCount == null) {
+            return null;
+        }
+        PatternNode matchingNode = match(sameCount.get(shardBlock(blocks[0])), blocks,
+                trace);
+        // The wildcard shard only has patterns with a wildcard, never better than none.
+        if (byFirstBlock && !WILDCARD.equals(blocks[0])
+                && (matchingNode == null || matchingNode.getWildcards() > 0)) {
+            PatternNode wildcardNode = match(sameCount.get(WILDCARD), blocks, trace);
+            if (wildcardNode != null && (matchingNode == null
+                    || patProcessor.isBetterMatch(wildcardNode, matchingNode))) {
+                matchingNode = wildcardNode;
+            }
+        }
+        return matchingNode;
+    }
+
+    /**
+     * Matches the blocks of a path against a shard.
+     *
+     * @param rootNode the root of the shard tree, may be null
+     * @param blocks   the non blank blocks of the path
+     * @param trace    records the matching nodes of every block, shared by the shards
+     *                 of the path, null when not traced
+     *
+     * @return the matching node, null if no pattern matches
+     */
+    private PatternNode match(final PatternNode rootNode, final String[] blocks,
+                              final MatchTrace trace) {
+        if (rootNode == null) {
+            return null;
+        }
+        return patProcessor.findTheNearestNode(rootNode, blocks, trace);
+    }
+
+    /**
+     * Gets the shard key of a first block.
+     *
+     * @param firstBlock the first block of a pattern or path
+     *
+     * @return the first block, or ALL_BLOCKS when not split by it
+     */
+    private String shardBlock(final String firstBlock) {
+        if (byFirstBlock) {
+            return firstBlock;
+        }
+        return ALL_BLOCKS;
+    }
+
+    /**
+     * A published version of the shards, which never changes.
+     */
+    private static final class Version {
+
+        /**
+         * The version number, starting at 0 and increased by every change.
+         */
+        private final long number;
+
+        /**
+         * The shard trees, by number of blocks, then by first block.
+         */
+        private final Map<Integer, Map<String, PatternNode>> shards;
+
+        /**
+         * The no match filter of the patterns, null when not kept.
+         */
+        private final NoMatchFilter filter;
+
+        /**
+         * Instantiates a new Version.
+         *
+         * @param versionNumber the version number
+         * @param shardTrees    the frozen shard trees, by number of blocks
+         *                      then by first block
+         * @param noMatchFilter the no match filter of the patterns, may be null
+         */
+        private Version(final long versionNumber,
+                        final Map<Integer, Map<String, PatternNode>> shardTrees,
+                        final NoMatchFilter noMatchFilter) {
+            this.number = versionNumber;
+            this.shards = shardTrees;
+            this.filter = noMatchFilter;
+        }
+
+        /**
+         * Gets the version number.
+         *
+         * @return the number
+         */
+        private long getNumber() {
+            return number;
+        }
+
+        /**
+         * Gets the shard trees, by number of blocks then by first block.
+         *
+         * @return the shards
+         */
+        private Map<Integer, Map<String, PatternNode>> getShards() {
+            return shards;
+        }
+
+        /**
+         * Gets the roots of the shard trees.
+         *
+         * @return the shard roots
+         */
+        private List<PatternNode> getRoots() {
+            List<PatternNode> roots = newArrayList();
+            for (Map<String, PatternNode> sameCount : shards.values()) {
+                roots.addAll(sameCount.values());
+            }
+            return roots;
+        }
+
+        /**
+         * Gets the no match filter of the patterns.
+         *
+         * @return the filter, null when not kept
+         */
+        private NoMatchFilter getFilter() {
+            return filter;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.processor;
+
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.collect.Maps.newTreeMap;
+
+/**
+ * Keeps the metrics in memory, for the run summary and the server #METRICS line.
+ */
+@Service
+public class SimpleMetricsRegistry implements MetricsRegistry {
+
+    /**
+     * Nanoseconds per millisecond.
+     */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /**
+     * The counters, by name.
+     */
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    /**
+     * The gauges, by name.
+     */
+    private final ConcurrentMap<String, Double> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * The number of timed events, by timer name.
+     */
+    private final ConcurrentMap<String, LongAdder> timerCounts =
+            new ConcurrentHashMap<>();
+
+    /**
+     * The total time of the timed events in nanoseconds, by timer name.
+     */
+    private final ConcurrentMap<String, LongAdder> timerNanos = new ConcurrentHashMap<>();
+
+    /**
+     * The counts of every value, by histogram name.
+     */
+    private final ConcurrentMap<String, ConcurrentMap<Long, LongAdder>> histograms =
+            new ConcurrentHashMap<>();
+
+    @Override
+    public void increment(final String name, final long delta) {
+        adder(counters, name).add(delta);
+    }
+
+    @Override
+    public void gauge(final String name, final double value) {
+        gauges.put(name, value);
+    }
+
+    @Override
+    public void recordTime(final String name, final long nanos) {
+        adder(timerCounts, name).increment();
+        adder(timerNanos, name).add(nanos);
+    }
+
+    @Override
+    public void recordValue(final String name, final long value, final long count) {
+        ConcurrentMap<Long, LongAdder> histogram =
+                histograms.computeIfAbsent(name, key -> new ConcurrentHashMap<>());
+        histogram.computeIfAbsent(value, key -> new LongAdder()).add(count);
+    }
+
+    /**
+     * Gets a counter.
+     *
+     * @param name the counter name
+     *
+     * @return the count, 0 if never incremented
+     */
+    public long getCount(final String name) {
+        LongAdder counter = counters.get(name);
+        if (counter == null) {
+            return 0;
+        }
+        return counter.sum();
+    }
+
+    /**
+     * Gets a gauge.
+     *
+     * @param name the gauge name
+     *
+     * @return the value, null if never set
+     */
+    public Double getGauge(final String name) {
+        return gauges.get(name);
+    }
+
+    /**
+     * Gets the number of events of a timer.
+     *
+     * @param name the timer name
+     *
+     * @return the number of timed events
+     */
+    public long getTimerCount(final String name) {
+        LongAdder count = timerCounts.get(name);
+        if (count == null) {
+            return 0;
+        }
+        return count.sum();
+    }
+
+    /**
+     * Gets a histogram.
+     *
+     * @param name the histogram name
+     *
+     * @return the count of every value, by value
+     */
+    public SortedMap<Long, Long> getHistogram(final String name) {
+        SortedMap<Long, Long> counts = newTreeMap();
+        Map<Long, LongAdder> histogram = histograms.get(name);
+        if (histogram != null) {
+            for (Map.Entry<Long, LongAdder> entry : histogram.entrySet()) {
+                counts.put(entry.getKey(), entry.getValue().sum());
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Gets the metrics sorted by name, as "name=value" pairs.
+     * Timers give their count and total milliseconds,
+     * histograms their counts by value.
+     *
+     * @return the summary
+     */
+    @Override
+    public String summary() {
+        SortedMap<String, String> values = newTreeMap();
+        for (String name : counters.keySet()) {
+            values.put(name, String.valueOf(getCount(name)));
+        }
+        for (Map.Entry<String, Double> gauge : gauges.entrySet()) {
+            values.put(gauge.getKey(), String.valueOf(gauge.getValue()));
+        }
+        for (String name : timerCounts.keySet()) {
+            values.put(name + ".count", String.valueOf(getTimerCount(name)));
+            values.put(name + ".ms", String.format("%.1f",
+                    adder(timerNanos, name).sum() / NANOS_PER_MILLI));
+        }
+        for (String name : histograms.keySet()) {
+            values.put(name, getHistogram(name).toString());
+        }
+        StringBuilder summary = new StringBuilder();
+        for (Map.Entry<String, String> value : values.entrySet()) {
+            if (summary.length() > 0) {
+                summary.append(' ');
+            }
+            summary.append(value.getKey()).append('=').append(value.getValue());
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Gets the adder of a name, creating it if needed.
+     *
+     * @param adders the adders
+     * @param name   the name
+     *
+     * @return the adder
+     */
+    private static LongAdder adder(final ConcurrentMap<String, LongAdder> adders,
+                                   final String name) {
+        return adders.computeIfAbsent(name, key -> new LongAdder());
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.processor;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import static com.google.common.collect.Lists.newArrayList;
+
+/**
+ * Keeps the slowest paths matched, with the trace of their match.
+ * A path is only traced once it is known to be among the slowest ones,
+ * so the paths matched fast cost a single comparison.
+ * Used by a single thread.
+ */
+public class SlowPaths {
+
+    /**
+     * The number of paths kept.
+     */
+    private final int limit;
+
+    /**
+     * The slowest paths, the fastest of them first.
+     */
+    private final PriorityQueue<SlowPath> slowest;
+
+    /**
+     * Instantiates new Slow paths.
+     *
+     * @param size the number of paths kept
+     */
+    public SlowPaths(final int size) {
+        this.limit = size;
+        this.slowest = new PriorityQueue<>(Math.max(size, 1),
+                Comparator.comparingLong(SlowPath::getNanos));
+    }
+
+    /**
+     * Whether a path matched in some time would be among the slowest ones.
+     *
+     * @param nanos the time of the match, in nanoseconds
+     *
+     * @return true if the path is worth tracing
+     */
+    public boolean isSlow(final long nanos) {
+        if (limit <= 0) {
+            return false;
+        }
+        return slowest.size() < limit || nanos > slowest.peek().getNanos();
+    }
+
+    /**
+     * Adds a slow path, dropping the fastest one past the limit.
+     *
+     * @param path  the path
+     * @param nanos the time of the match, in nanoseconds
+     * @param trace the trace of the match
+     */
+    public void add(final String path, final long nanos, final MatchTrace trace) {
+        if (!isSlow(nanos)) {
+            return;
+        }
+        slowest.add(new SlowPath(path, nanos, trace));
+        if (slowest.size() > limit) {
+            slowest.poll();
+        }
+    }
+
+    /**
+     * Gets the slowest paths.
+     *
+     * @return the slowest paths, the slowest first
+     */
+    public List<SlowPath> getSlowest() {
+        List<SlowPath> paths = newArrayList(slowest);
+        Collections.sort(paths, Comparator.comparingLong(SlowPath::getNanos).reversed());
+        return paths;
+    }
+
+    /**
+     * Forgets the paths kept so far.
+     */
+    public void clear() {
+        slowest.clear();
+    }
+
+    /**
+     * A slow path and the trace of its match.
+     */
+    public static final class SlowPath {
+
+        /**
+         * The path.
+         */
+        private final String path;
+
+        /**
+         * The time of the match, in nanoseconds.
+         */
+        private final long nanos;
+
+        /**
+         * The trace of the match.
+         */
+        private final MatchTrace trace;
+
+        /**
+         * Instantiates a new Slow path.
+         *
+         * @param slowPath   the path
+         * @param matchNanos the time of the match, in nanoseconds
+         * @param matchTrace the trace of the match
+         */
+        private SlowPath(final String slowPath, final long matchNanos,
+                         final MatchTrace matchTrace) {
+            this.path = slowPath;
+            this.nanos = matchNanos;
+            this.trace = matchTrace;
+        }
+
+        /**
+         * Gets the path.
+         *
+         * @return the path
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Gets the time of the match.
+         *
+         * @return the time, in nanoseconds
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * Gets the trace of the match.
+         *
+         * @return the trace
+         */
+        public MatchTrace getTrace() {
+            return trace;
+        }
+    }
+}
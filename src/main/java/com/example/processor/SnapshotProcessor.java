@@ -0,0 +1,527 @@
+package com.example.processor;
+
+import com.example.exception.FileHandlingException;
+import com.example.exception.InvalidDataException;
+import com.example.model.CompiledPatternTree;
+import com.example.model.MappedPatternTree;
+import com.example.model.SegmentDictionary;
+import org.slf4j.Logger;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Writes the compiled pattern tree to a binary snapshot, and loads it back
+ * without building the tree again.
+ * <p>
+ * The snapshot is a header followed by the int arrays of the compiled tree,
+ * then the segments and the patterns as UTF-8 text with their offsets:
+ * <pre>
+ * magic, version, nodes, children, segments, segment text size, pattern text size
+ * childOffsets[nodes + 1], childSegments[children], childNodes[children],
+ * wildcardChildren[nodes], positions[nodes], wildcards[nodes], firstWildcards[nodes],
+ * segmentOffsets[segments + 1], segment text, patternOffsets[nodes + 1], pattern text
+ * </pre>
+ * Every section is memory mapped on load. The int arrays are copied as they are,
+ * and the patterns are only decoded once matched. A snapshot can also be mapped
+ * as a whole, its sections then being read in place, outside of the heap.
+ */
+@Service
+public class SnapshotProcessor {
+
+    /**
+     * The first bytes of a snapshot, "PMTS".
+     */
+    public static final int MAGIC = 0x504D5453;
+
+    /**
+     * The snapshot format version, to be bumped on any layout change.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The constant LOG.
+     */
+    private static final Logger LOG = getLogger(SnapshotProcessor.class);
+
+    /**
+     * The number of ints in the header.
+     */
+    private static final int HEADER_INTS = 7;
+
+    /**
+     * The size of the write buffer.
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Writes a compiled pattern tree to a snapshot file.
+     * The snapshot is written to a part file next to it, then moved in its place,
+     * so a snapshot being mapped is never truncated under its readers.
+     *
+     * @param tree         the compiled pattern tree
+     * @param snapshotFile the snapshot file
+     */
+    public void write(final CompiledPatternTree tree, final String snapshotFile) {
+        int nodeCount = tree.getNodeCount();
+        int childCount = tree.getChildCount();
+        SegmentDictionary segments = tree.getSegments();
+
+        int[] childOffsets = new int[nodeCount + 1];
+        int[] childSegments = new int[childCount];
+        int[] childNodes = new int[childCount];
+        int[] wildcardChildren = new int[nodeCount];
+        int[] positions = new int[nodeCount];
+        int[] wildcards = new int[nodeCount];
+        int[] firstWildcards = new int[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            childOffsets[node] = tree.getChildStart(node);
+            wildcardChildren[node] = tree.getWildcardChild(node);
+            positions[node] = tree.getPosition(node);
+            wildcards[node] = tree.getWildcards(node);
+            firstWildcards[node] = tree.getFirstWildcard(node);
+        }
+        childOffsets[nodeCount] = childCount;
+        for (int child = 0; child < childCount; child++) {
+            childSegments[child] = tree.getChildSegment(child);
+            childNodes[child] = tree.getChildNode(child);
+        }
+
+        byte[][] segmentText = new byte[segments.size()][];
+        for (int segment = 0; segment < segmentText.length; segment++) {
+            segmentText[segment] = segments.getSegment(segment)
+                    .getBytes(StandardCharsets.UTF_8);
+        }
+        byte[][] patternText = new byte[nodeCount][];
+        for (int node = 0; node < nodeCount; node++) {
+            if (tree.hasPattern(node)) {
+                patternText[node] = tree.getPattern(node)
+                        .getBytes(StandardCharsets.UTF_8);
+            }
+        }
+        int[] segmentOffsets = offsets(segmentText);
+        int[] patternOffsets = offsets(patternText);
+
+        try {
+            // Written next to the snapshot file, which is only replaced once complete.
+            Path output = OutputProcessor.resolveOutput(snapshotFile);
+            Path part = OutputProcessor.partFile(output);
+            try {
+                try (FileChannel channel = OutputProcessor.openPart(output, part)) {
+                    ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+                    int[] header = {MAGIC, VERSION, nodeCount, childCount,
+                        segmentText.length, segmentOffsets[segmentText.length],
+                        patternOffsets[nodeCount]};
+                    for (int[] values : new int[][] {header, childOffsets, childSegments,
+                        childNodes, wildcardChildren, positions, wildcards,
+                        firstWildcards, segmentOffsets}) {
+                        putInts(channel, buffer, values);
+                    }
+                    putText(channel, buffer, segmentText);
+                    putInts(channel, buffer, patternOffsets);
+                    putText(channel, buffer, patternText);
+                    flush(channel, buffer);
+                }
+                OutputWriter.replace(part, output);
+            } finally {
+                Files.deleteIfExists(part);
+            }
+        } catch (IOException ex) {
+            LOG.error("Issues with dealing snapshot file" + ex.getMessage());
+            throw new FileHandlingException();
+        }
+    }
+
+    /**
+     * Loads a compiled pattern tree from a snapshot file.
+     *
+     * @param snapshotFile the snapshot file
+     *
+     * @return the compiled pattern tree
+     */
+    public CompiledPatternTree load(final String snapshotFile) {
+        try (FileChannel channel = FileChannel.open(Paths.get(snapshotFile),
+                StandardOpenOption.READ)) {
+            SnapshotSections sections = openSections(channel, snapshotFile);
+            int nodeCount = sections.nodeCount;
+            int childCount = sections.childCount;
+            int segmentCount = sections.segmentCount;
+
+            int[] childOffsets = sections.ints(nodeCount + 1);
+            int[] childSegments = sections.ints(childCount);
+            int[] childNodes = sections.ints(childCount);
+            int[] wildcardChildren = sections.ints(nodeCount);
+            int[] positions = sections.ints(nodeCount);
+            int[] wildcards = sections.ints(nodeCount);
+            int[] firstWildcards = sections.ints(nodeCount);
+            int[] segmentOffsets = sections.ints(segmentCount + 1);
+            ByteBuffer segmentText = sections.bytes(sections.segmentTextSize);
+            int[] patternOffsets = sections.ints(nodeCount + 1);
+            ByteBuffer patternText = sections.bytes(sections.patternTextSize);
+            checkEnd(channel, sections, snapshotFile);
+
+            List<String> segments = newArrayListWithCapacity(segmentCount);
+            for (int segment = 0; segment < segmentCount; segment++) {
+                segments.add(ByteLines.decode(segmentText, segmentOffsets[segment],
+                        segmentOffsets[segment + 1]));
+            }
+            return new CompiledPatternTree(new SegmentDictionary(segments), childOffsets,
+                    childSegments, childNodes, wildcardChildren, positions, patternText,
+                    patternOffsets, wildcards, firstWildcards);
+        } catch (IOException ex) {
+            LOG.error("Issues with dealing snapshot file" + ex.getMessage());
+            throw new FileHandlingException();
+        }
+    }
+
+    /**
+     * Maps a snapshot file as a pattern tree held outside of the heap.
+     * Nothing is copied: the sections are read in place, and stay mapped
+     * as long as the tree is reachable.
+     *
+     * @param snapshotFile the snapshot file
+     *
+     * @return the mapped pattern tree
+     */
+    public MappedPatternTree map(final String snapshotFile) {
+        try (FileChannel channel = FileChannel.open(Paths.get(snapshotFile),
+                StandardOpenOption.READ)) {
+            SnapshotSections sections = openSections(channel, snapshotFile);
+            int nodeCount = sections.nodeCount;
+            int childCount = sections.childCount;
+
+            IntBuffer childOffsets = sections.intBuffer(nodeCount + 1);
+            IntBuffer childSegments = sections.intBuffer(childCount);
+            IntBuffer childNodes = sections.intBuffer(childCount);
+            IntBuffer wildcardChildren = sections.intBuffer(nodeCount);
+            IntBuffer positions = sections.intBuffer(nodeCount);
+            IntBuffer wildcards = sections.intBuffer(nodeCount);
+            IntBuffer firstWildcards = sections.intBuffer(nodeCount);
+            IntBuffer segmentOffsets = sections.intBuffer(sections.segmentCount + 1);
+            ByteBuffer segmentText = sections.bytes(sections.segmentTextSize);
+            IntBuffer patternOffsets = sections.intBuffer(nodeCount + 1);
+            ByteBuffer patternText = sections.bytes(sections.patternTextSize);
+            checkEnd(channel, sections, snapshotFile);
+
+            return new MappedPatternTree(childOffsets, childSegments, childNodes,
+                    wildcardChildren, positions, wildcards, firstWildcards,
+                    segmentOffsets, segmentText, patternOffsets, patternText);
+        } catch (IOException ex) {
+            LOG.error("Issues with dealing snapshot file" + ex.getMessage());
+            throw new FileHandlingException();
+        }
+    }
+
+    /**
+     * Whether a file is a snapshot, by its first bytes.
+     *
+     * @param file the file
+     *
+     * @return true for a snapshot
+     */
+    public boolean isSnapshot(final String file) {
+        try (FileChannel channel = FileChannel.open(Paths.get(file),
+                StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                continue;
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads and checks the header of a snapshot.
+     *
+     * @param channel      the file channel
+     * @param snapshotFile the snapshot file
+     *
+     * @return the sections, starting after the header
+     *
+     * @throws IOException the iO exception
+     */
+    private static SnapshotSections openSections(final FileChannel channel,
+                                                 final String snapshotFile)
+            throws IOException {
+        if (channel.size() < HEADER_INTS * Integer.BYTES) {
+            throw invalidSnapshot(snapshotFile);
+        }
+        int[] header = new int[HEADER_INTS];
+        map(channel, 0, header.length * Integer.BYTES).asIntBuffer().get(header);
+        if (header[0] != MAGIC || header[1] != VERSION || header[2] < 1
+                || header[3] < 0 || header[4] < 1 || header[5] < 0 || header[6] < 0) {
+            throw invalidSnapshot(snapshotFile);
+        }
+        return new SnapshotSections(channel, snapshotFile, header);
+    }
+
+    /**
+     * Checks the sections read end with the snapshot.
+     *
+     * @param channel      the file channel
+     * @param sections     the sections read
+     * @param snapshotFile the snapshot file
+     *
+     * @throws IOException the iO exception
+     */
+    private static void checkEnd(final FileChannel channel,
+                                 final SnapshotSections sections,
+                                 final String snapshotFile) throws IOException {
+        if (sections.end() != channel.size()) {
+            throw invalidSnapshot(snapshotFile);
+        }
+    }
+
+    /**
+     * Logs and creates the error of a file which is not a snapshot of this version.
+     *
+     * @param snapshotFile the snapshot file
+     *
+     * @return the exception
+     */
+    private static InvalidDataException invalidSnapshot(final String snapshotFile) {
+        LOG.error("Invalid snapshot file " + snapshotFile
+                + ". It should be a pattern snapshot of version " + VERSION + ".");
+        return new InvalidDataException();
+    }
+
+    /**
+     * Computes the offsets of texts laid one after the other.
+     *
+     * @param texts the texts, null for none
+     *
+     * @return the start of each text, plus the end of the last one
+     */
+    private static int[] offsets(final byte[][] texts) {
+        int[] offsets = new int[texts.length + 1];
+        long offset = 0;
+        for (int index = 0; index < texts.length; index++) {
+            offsets[index] = (int) offset;
+            if (texts[index] != null) {
+                offset += texts[index].length;
+            }
+        }
+        if (offset > Integer.MAX_VALUE) {
+            LOG.error("The patterns are too large for a snapshot.");
+            throw new InvalidDataException();
+        }
+        offsets[texts.length] = (int) offset;
+        return offsets;
+    }
+
+    /**
+     * Writes ints through the buffer.
+     *
+     * @param channel the file channel
+     * @param buffer  the buffer
+     * @param values  the ints
+     *
+     * @throws IOException the iO exception
+     */
+    private static void putInts(final FileChannel channel, final ByteBuffer buffer,
+                                final int[] values) throws IOException {
+        for (int value : values) {
+            if (buffer.remaining() < Integer.BYTES) {
+                flush(channel, buffer);
+            }
+            buffer.putInt(value);
+        }
+    }
+
+    /**
+     * Writes texts through the buffer.
+     *
+     * @param channel the file channel
+     * @param buffer  the buffer
+     * @param texts   the texts, null for none
+     *
+     * @throws IOException the iO exception
+     */
+    private static void putText(final FileChannel channel, final ByteBuffer buffer,
+                                final byte[][] texts) throws IOException {
+        for (byte[] text : texts) {
+            if (text == null) {
+                continue;
+            }
+            int offset = 0;
+            while (offset < text.length) {
+                if (!buffer.hasRemaining()) {
+                    flush(channel, buffer);
+                }
+                int length = Math.min(buffer.remaining(), text.length - offset);
+                buffer.put(text, offset, length);
+                offset += length;
+            }
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the file.
+     *
+     * @param channel the file channel
+     * @param buffer  the buffer
+     *
+     * @throws IOException the iO exception
+     */
+    private static void flush(final FileChannel channel, final ByteBuffer buffer)
+            throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Maps a section of the snapshot.
+     *
+     * @param channel the file channel
+     * @param start   the start of the section
+     * @param size    the size of the section
+     *
+     * @return the mapped section
+     *
+     * @throws IOException the iO exception
+     */
+    private static ByteBuffer map(final FileChannel channel, final long start,
+                                  final long size) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+    }
+
+    /**
+     * Maps the sections of a snapshot one after the other.
+     */
+    private static final class SnapshotSections {
+
+        /**
+         * The file channel.
+         */
+        private final FileChannel channel;
+
+        /**
+         * The snapshot file.
+         */
+        private final String file;
+
+        /**
+         * The number of nodes.
+         */
+        private final int nodeCount;
+
+        /**
+         * The number of literal children.
+         */
+        private final int childCount;
+
+        /**
+         * The number of segments.
+         */
+        private final int segmentCount;
+
+        /**
+         * The size of the segment text.
+         */
+        private final int segmentTextSize;
+
+        /**
+         * The size of the pattern text.
+         */
+        private final int patternTextSize;
+
+        /**
+         * The start of the next section.
+         */
+        private long offset;
+
+        /**
+         * Instantiates new Snapshot sections.
+         *
+         * @param fileChannel  the file channel
+         * @param snapshotFile the snapshot file
+         * @param header       the snapshot header
+         */
+        private SnapshotSections(final FileChannel fileChannel, final String snapshotFile,
+                                 final int[] header) {
+            this.channel = fileChannel;
+            this.file = snapshotFile;
+            this.nodeCount = header[2];
+            this.childCount = header[3];
+            this.segmentCount = header[4];
+            this.segmentTextSize = header[5];
+            this.patternTextSize = header[6];
+            this.offset = HEADER_INTS * Integer.BYTES;
+        }
+
+        /**
+         * Reads the next section as ints.
+         *
+         * @param count the number of ints
+         *
+         * @return the ints
+         *
+         * @throws IOException the iO exception
+         */
+        private int[] ints(final int count) throws IOException {
+            IntBuffer section = intBuffer(count);
+            int[] values = new int[count];
+            section.get(values);
+            return values;
+        }
+
+        /**
+         * Maps the next section as ints, read in place.
+         *
+         * @param count the number of ints
+         *
+         * @return the mapped ints
+         *
+         * @throws IOException the iO exception
+         */
+        private IntBuffer intBuffer(final int count) throws IOException {
+            return bytes((long) count * Integer.BYTES).asIntBuffer();
+        }
+
+        /**
+         * Maps the next section. A section going past the end of the file,
+         * as in a truncated or corrupt snapshot, is invalid.
+         *
+         * @param size the size of the section
+         *
+         * @return the mapped section
+         *
+         * @throws IOException the iO exception
+         */
+        private ByteBuffer bytes(final long size) throws IOException {
+            if (size < 0 || size > Integer.MAX_VALUE
+                    || offset + size > channel.size()) {
+                throw invalidSnapshot(file);
+            }
+            ByteBuffer section = map(channel, offset, size);
+            offset += size;
+            return section;
+        }
+
+        /**
+         * Gets the end of the last section.
+         *
+         * @return the end
+         */
+        private long end() {
+            return offset;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package com.example.processor;
+
+import com.example.constant.MatchingPhase;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
+
+/**
+ * Runs the whole input to output pipeline in a single pass.
+ * The pattern block is read and turned into the pattern index first,
+ * then every path is read, matched and written before the next one is read.
+ * The heap use depends on the number of patterns only, not on the number of paths.
+ * <p>
+ * With more than one worker, the paths are collected in batches. A batch is
+ * matched by the workers while the next one is read, and written in order.
+ * The heap then also holds up to two batches of paths.
+ */
+@Service
+public class StreamingProcessor {
+
+    /**
+     * The Pattern matcher factory.
+     */
+    @Autowired
+    private PatternMatcherFactory matcherFactory;
+
+    /**
+     * The Pattern processor.
+     */
+    @Autowired
+    private PatternProcessor patProcessor;
+
+    /**
+     * The Input processor.
+     */
+    @Autowired
+    private InputProcessor inProcessor;
+
+    /**
+     * The Output processor.
+     */
+    @Autowired
+    private OutputProcessor outProcessor;
+
+    /**
+     * The Parallel match processor.
+     */
+    @Autowired
+    private ParallelMatchProcessor parallelProcessor;
+
+    /**
+     * The number of paths collected before handing them to the workers.
+     */
+    @Value("${matching.batch-size:65536}")
+    private int batchSize;
+
+    /**
+     * Reads the input file, and writes the matching pattern of every path
+     * to the output file.
+     *
+     * @param inputFile  the input file
+     * @param outputFile the output file
+     *
+     * @throws IOException the iO exception
+     */
+    public void process(final String inputFile, final String outputFile)
+            throws IOException {
+        process(inputFile, outputFile, new RunMetrics(patProcessor));
+    }
+
+    /**
+     * Reads the input file, and writes the matching pattern of every path
+     * to the output file, measuring the run.
+     *
+     * @param inputFile  the input file
+     * @param outputFile the output file
+     * @param metrics    the metrics of the run
+     *
+     * @throws IOException the iO exception
+     */
+    public void process(final String inputFile, final String outputFile,
+                        final RunMetrics metrics) throws IOException {
+        MatchingHandler handler = new MatchingHandler(outputFile, metrics);
+        try {
+            inProcessor.processInputFile(inputFile, handler);
+            handler.flush();
+            handler.commit();
+        } finally {
+            handler.close();
+        }
+    }
+
+    /**
+     * Builds the pattern index once the patterns are read,
+     * then matches and writes every incoming path.
+     */
+    private final class MatchingHandler implements InputHandler {
+
+        /**
+         * The output file.
+         */
+        private final String outputFile;
+
+        /**
+         * The metrics of the run.
+         */
+        private final RunMetrics metrics;
+
+        /**
+         * The pattern matcher.
+         */
+        private PatternMatcher matcher;
+
+        /**
+         * The output writer, opened once the pattern block is valid.
+         */
+        private OutputWriter writer;
+
+        /**
+         * The paths read and not matched yet, when matching in parallel.
+         */
+        private List<String> batch;
+
+        /**
+         * The batch being matched by the workers.
+         */
+        private ForkJoinTask<List<String>> pending;
+
+        /**
+         * Instantiates a new Matching handler.
+         *
+         * @param output     the output file
+         * @param runMetrics the metrics of the run
+         */
+        private MatchingHandler(final String output, final RunMetrics runMetrics) {
+            this.outputFile = output;
+            this.metrics = runMetrics;
+        }
+
+        /**
+         * Builds the pattern index and opens the output file.
+         *
+         * @param patterns the patterns
+         */
+        @Override
+        public void onPatterns(final List<String> patterns) {
+            long buildStart = System.nanoTime();
+            matcher = matcherFactory.build(patterns);
+            metrics.addTime(MatchingPhase.BUILD, System.nanoTime() - buildStart);
+            metrics.measure(matcher);
+            writer = outProcessor.openOutput(outputFile);
+        }
+
+        /**
+         * Loads the pattern snapshot and opens the output file.
+         *
+         * @param snapshotFile the snapshot file
+         */
+        @Override
+        public void onSnapshot(final String snapshotFile) {
+            long loadStart = System.nanoTime();
+            matcher = matcherFactory.load(snapshotFile);
+            metrics.addTime(MatchingPhase.BUILD, System.nanoTime() - loadStart);
+            metrics.measure(matcher);
+            writer = outProcessor.openOutput(outputFile);
+        }
+
+        /**
+         * Matches and writes a single path.
+         *
+         * @param path the path
+         */
+        @Override
+        public void onPath(final String path) {
+            if (!parallelProcessor.isParallel()) {
+                if (!metrics.timesNextPath()) {
+                    write(matcher.getMatchingPattern(path));
+                    return;
+                }
+                long matchStart = System.nanoTime();
+                long nanos = write(matchStart, matcher.getMatchingPattern(path));
+                metrics.sampleAlternates(path);
+                metrics.recordLatency(path, nanos);
+                return;
+            }
+            if (batch == null) {
+                batch = newArrayListWithCapacity(Math.max(batchSize, 1));
+            }
+            batch.add(path);
+            if (batch.size() >= batchSize) {
+                submitBatch();
+            }
+        }
+
+        /**
+         * Matches and writes a single path straight from the input bytes,
+         * or decodes it for the workers.
+         *
+         * @param buffer the buffer holding the path
+         * @param from   the start of the path, inclusive
+         * @param to     the end of the path, exclusive
+         */
+        @Override
+        public void onPath(final ByteBuffer buffer, final int from, final int to) {
+            if (!parallelProcessor.isParallel()) {
+                if (!metrics.timesNextPath()) {
+                    write(matcher.getMatchingPattern(buffer, from, to));
+                    return;
+                }
+                long matchStart = System.nanoTime();
+                String match = matcher.getMatchingPattern(buffer, from, to);
+                long nanos = write(matchStart, match);
+                metrics.sampleAlternates(buffer, from, to);
+                metrics.recordLatency(buffer, from, to, nanos);
+                return;
+            }
+            onPath(ByteLines.decode(buffer, from, to));
+        }
+
+        /**
+         * Hands the current batch to the workers,
+         * then writes the matches of the previous batch.
+         */
+        private void submitBatch() {
+            ForkJoinTask<List<String>> previous = pending;
+            pending = parallelProcessor.submit(matcher, batch);
+            batch = null;
+            write(previous);
+        }
+
+        /**
+         * Waits for a batch being matched, and writes its matches.
+         *
+         * @param task the batch being matched, may be null
+         */
+        private void write(final ForkJoinTask<List<String>> task) {
+            if (task != null) {
+                long joinStart = System.nanoTime();
+                List<String> matches = task.join();
+                metrics.addTime(MatchingPhase.MATCH, System.nanoTime() - joinStart);
+                long writeStart = System.nanoTime();
+                for (String match : matches) {
+                    writer.write(match);
+                    metrics.countMatch(match);
+                }
+                metrics.addTime(MatchingPhase.WRITE, System.nanoTime() - writeStart);
+            }
+        }
+
+        /**
+         * Writes the match of a single untimed path.
+         *
+         * @param match the matching pattern
+         */
+        private void write(final String match) {
+            writer.write(match);
+            metrics.countMatch(match);
+        }
+
+        /**
+         * Writes the match of a single timed path, and measures it.
+         *
+         * @param matchStart when the matching started, in nanoseconds
+         * @param match      the matching pattern
+         *
+         * @return the time of the match, in nanoseconds
+         */
+        private long write(final long matchStart, final String match) {
+            long writeStart = System.nanoTime();
+            writer.write(match);
+            metrics.addPathTime(MatchingPhase.MATCH, writeStart - matchStart);
+            metrics.addPathTime(MatchingPhase.WRITE, System.nanoTime() - writeStart);
+            metrics.countMatch(match);
+            return writeStart - matchStart;
+        }
+
+        /**
+         * Matches and writes the remaining paths, once the whole input is read.
+         */
+        private void flush() {
+            if (batch != null) {
+                submitBatch();
+            }
+            write(pending);
+            pending = null;
+        }
+
+        /**
+         * Replaces the output file with the lines written, once the whole input is valid.
+         *
+         * @throws IOException the iO exception
+         */
+        private void commit() throws IOException {
+            if (writer != null) {
+                writer.commit();
+            }
+        }
+
+        /**
+         * Closes the output file, if it was opened, dropping it unless committed.
+         *
+         * @throws IOException the iO exception
+         */
+        private void close() throws IOException {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.processor;
+
+import com.example.model.PatternNode;
+
+import java.util.Collection;
+
+/**
+ * A pattern index whose patterns can change while the paths are being matched.
+ * Every change publishes a new version of the index at once, with a higher number,
+ * and the no match filter of its patterns when the index keeps one, so the caches
+ * and filters on top of the index know when to follow it.
+ */
+public interface VersionedPatternIndex extends PatternMatcher {
+
+    /**
+     * Gets the number of the current version, increased by every change.
+     *
+     * @return the version number
+     */
+    long getVersionNumber();
+
+    /**
+     * Gets the no match filter of the current version of the patterns.
+     *
+     * @return the filter, null when the index keeps none
+     */
+    NoMatchFilter getFilter();
+
+    /**
+     * Gets the roots of the pattern trees of the current version.
+     * The returned trees never change.
+     *
+     * @return the root nodes
+     */
+    Collection<PatternNode> getRoots();
+
+    /**
+     * Matches a path against the current version, recording the nodes reached
+     * and the alternates followed.
+     *
+     * @param pathList the path list
+     *
+     * @return the trace of the match
+     */
+    MatchTrace traceMatch(String[] pathList);
+
+    /**
+     * Adds a pattern, and publishes the new version.
+     *
+     * @param pattern the pattern
+     *
+     * @return false if the pattern has a blank block and was ignored
+     */
+    boolean add(String pattern);
+
+    /**
+     * Removes a pattern, and publishes the new version.
+     *
+     * @param pattern the pattern
+     *
+     * @return false if the pattern was not in the index
+     */
+    boolean remove(String pattern);
+}
@@ -0,0 +1,27 @@
+package com.example.benchmark;
+
+import com.example.processor.TestApplicationConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Starts the application context once per benchmark fork,
+ * so the benchmarks use the processors as they are wired in the application.
+ */
+public final class BenchmarkContext {
+
+    private static ConfigurableApplicationContext context;
+
+    private BenchmarkContext() {
+    }
+
+    public static synchronized <T> T getBean(final Class<T> type) {
+        if (context == null) {
+            context = new SpringApplicationBuilder(TestApplicationConfiguration.class)
+                    .web(false)
+                    .showBanner(false)
+                    .run();
+        }
+        return context.getBean(type);
+    }
+}
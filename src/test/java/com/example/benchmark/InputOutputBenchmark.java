@@ -0,0 +1,133 @@
+package com.example.benchmark;
+
+import com.example.processor.InputHandler;
+import com.example.processor.InputProcessor;
+import com.example.processor.OutputProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
+
+/**
+ * Reads and writes synthetic input and output files,
+ * to follow the file handling apart from the matching.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InputOutputBenchmark {
+
+    @Param({"1000"})
+    public int patternCount;
+
+    @Param({"6"})
+    public int patternDepth;
+
+    @Param({"100000", "1000000"})
+    public int pathCount;
+
+    private InputProcessor inputProcessor;
+
+    private OutputProcessor outputProcessor;
+
+    private File inputFile;
+
+    private File outputFile;
+
+    private List<String> lines;
+
+    private List<String> matches;
+
+    @Setup
+    public void setUp() throws IOException {
+        inputProcessor = BenchmarkContext.getBean(InputProcessor.class);
+        outputProcessor = BenchmarkContext.getBean(OutputProcessor.class);
+
+        SyntheticData data = new SyntheticData(42);
+        List<String> patterns = data.patterns(patternCount, patternDepth, 0.5);
+        lines = data.paths(pathCount, patternDepth);
+        inputFile = SyntheticData.writeInput(patterns, lines);
+        matches = newArrayListWithCapacity(pathCount);
+        for (int index = 0; index < pathCount; index++) {
+            matches.add(patterns.get(index % 64));
+        }
+        outputFile = File.createTempFile("benchmark-output", ".txt");
+    }
+
+    @TearDown
+    public void tearDown() {
+        inputFile.delete();
+        outputFile.delete();
+    }
+
+    @Benchmark
+    public void readInput(final Blackhole blackhole) throws IOException {
+        inputProcessor.processInputFile(inputFile.getPath(), new InputHandler() {
+            @Override
+            public void onPatterns(final List<String> patterns) {
+                blackhole.consume(patterns);
+            }
+
+            @Override
+            public void onPath(final String path) {
+                blackhole.consume(path);
+            }
+        });
+    }
+
+    /**
+     * Reads the paths as bytes, the way the streaming matcher does.
+     */
+    @Benchmark
+    public void readInputBytes(final Blackhole blackhole) throws IOException {
+        inputProcessor.processInputFile(inputFile.getPath(), new InputHandler() {
+            @Override
+            public void onPatterns(final List<String> patterns) {
+                blackhole.consume(patterns);
+            }
+
+            @Override
+            public void onPath(final String path) {
+                blackhole.consume(path);
+            }
+
+            @Override
+            public void onPath(final ByteBuffer buffer, final int from, final int to) {
+                blackhole.consume(to - from);
+            }
+        });
+    }
+
+    @Benchmark
+    public void writeOutput() throws IOException {
+        outputProcessor.processOutput(outputFile.getPath(), lines);
+    }
+
+    /**
+     * Writes match lines, the same few patterns over and over.
+     */
+    @Benchmark
+    public void writeMatches() throws IOException {
+        outputProcessor.processOutput(outputFile.getPath(), matches);
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.benchmark;
+
+import com.example.processor.MatchServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looks paths up against a running match server, one path per round trip
+ * and in batches of paths sent together.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchServerBenchmark {
+
+    private static final int BATCH = 1000;
+
+    private MatchServer matchServer;
+
+    private Socket socket;
+
+    private Writer writer;
+
+    private BufferedReader reader;
+
+    private List<String> paths;
+
+    private String batch;
+
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        matchServer = BenchmarkContext.getBean(MatchServer.class);
+        ReflectionTestUtils.setField(matchServer, "port", 0);
+
+        SyntheticData data = new SyntheticData(42);
+        int port = matchServer.start(data.patterns(10000, 6, 0.5));
+        paths = data.paths(BATCH, 6);
+        StringBuilder lines = new StringBuilder();
+        for (String path : paths) {
+            lines.append(path).append('\n');
+        }
+        batch = lines.toString();
+
+        socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        socket.setTcpNoDelay(true);
+        writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(),
+                StandardCharsets.UTF_8));
+        reader = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                StandardCharsets.UTF_8));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        socket.close();
+        matchServer.stop();
+    }
+
+    @Benchmark
+    public String roundTrip() throws IOException {
+        writer.write(paths.get(next));
+        writer.write('\n');
+        writer.flush();
+        next = (next + 1) % BATCH;
+        return reader.readLine();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void batch(final Blackhole blackhole) throws IOException {
+        writer.write(batch);
+        writer.flush();
+        for (int index = 0; index < BATCH; index++) {
+            blackhole.consume(reader.readLine());
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.benchmark;
+
+import com.example.constant.CacheEviction;
+import com.example.model.CompiledPatternTree;
+import com.example.model.PatternNode;
+import com.example.processor.CachedPatternMatcher;
+import com.example.processor.CompiledPatternProcessor;
+import com.example.processor.MatchCache;
+import com.example.processor.PatternIndex;
+import com.example.processor.PatternProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.collect.Lists.newArrayList;
+
+/**
+ * Matches whole path lines, splitting included, the way the input is matched.
+ * Run with "-prof gc" to see the bytes allocated per path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathLookupBenchmark {
+
+    private static final int PATHS = 4096;
+
+    private PatternProcessor patternProcessor;
+
+    private CompiledPatternProcessor compiledProcessor;
+
+    private PatternNode rootNode;
+
+    private CompiledPatternTree tree;
+
+    private CachedPatternMatcher cachedMatcher;
+
+    private String[] paths;
+
+    @Setup
+    public void setUp() {
+        patternProcessor = BenchmarkContext.getBean(PatternProcessor.class);
+        compiledProcessor = BenchmarkContext.getBean(CompiledPatternProcessor.class);
+
+        Random random = new Random(42);
+        List<String> patterns = newArrayList();
+        for (int index = 0; index < 20000; index++) {
+            StringBuilder pattern = new StringBuilder();
+            int size = 2 + random.nextInt(5);
+            for (int segment = 0; segment < size; segment++) {
+                if (segment > 0) {
+                    pattern.append(',');
+                }
+                if (random.nextInt(4) == 0) {
+                    pattern.append('*');
+                } else {
+                    pattern.append("seg").append(random.nextInt(40));
+                }
+            }
+            patterns.add(pattern.toString());
+        }
+        rootNode = patternProcessor.buildPatternTree(patterns);
+        tree = compiledProcessor.compile(rootNode);
+        // Large enough for every path, the repeated lookups are all hits.
+        cachedMatcher = new CachedPatternMatcher(new PatternIndex(patternProcessor, rootNode),
+                new MatchCache(2 * PATHS, CacheEviction.LRU));
+
+        paths = new String[PATHS];
+        for (int index = 0; index < PATHS; index++) {
+            StringBuilder path = new StringBuilder();
+            int size = 2 + random.nextInt(5);
+            for (int segment = 0; segment < size; segment++) {
+                path.append('/').append("seg").append(random.nextInt(40));
+            }
+            paths[index] = path.append('/').toString();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PATHS)
+    public void treeLookup(final Blackhole blackhole) {
+        for (String path : paths) {
+            blackhole.consume(patternProcessor.getMatchingPattern(rootNode, path));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PATHS)
+    public void compiledLookup(final Blackhole blackhole) {
+        for (String path : paths) {
+            blackhole.consume(compiledProcessor.getMatchingPattern(tree, path));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PATHS)
+    public void cachedLookup(final Blackhole blackhole) {
+        for (String path : paths) {
+            blackhole.consume(cachedMatcher.getMatchingPattern(path));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.benchmark;
+
+import com.example.processor.CompiledPatternProcessor;
+import com.example.processor.PatternProcessor;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the heap kept by the pattern index, in bytes per pattern,
+ * reported as the bytesPerPattern secondary result. The patterns are generated
+ * on every invocation and dropped once the index is built, as when reading
+ * an input file, so only what the index keeps is counted.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class PatternMemoryBenchmark {
+
+    @Param({"1000000"})
+    public int patternCount;
+
+    @Param({"8"})
+    public int patternDepth;
+
+    private PatternProcessor patternProcessor;
+
+    private CompiledPatternProcessor compiledProcessor;
+
+    /**
+     * The heap kept by the last built index.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class HeapCounters {
+
+        public long bytesPerPattern;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            bytesPerPattern = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        patternProcessor = BenchmarkContext.getBean(PatternProcessor.class);
+        compiledProcessor = BenchmarkContext.getBean(CompiledPatternProcessor.class);
+    }
+
+    @Benchmark
+    public Object tree(final HeapCounters counters) {
+        long before = usedHeap();
+        Object index = patternProcessor.buildPatternTree(patterns());
+        counters.bytesPerPattern = (usedHeap() - before) / patternCount;
+        return index;
+    }
+
+    @Benchmark
+    public Object compiled(final HeapCounters counters) {
+        long before = usedHeap();
+        Object index = compiledProcessor.compile(
+                patternProcessor.buildPatternTree(patterns()));
+        counters.bytesPerPattern = (usedHeap() - before) / patternCount;
+        return index;
+    }
+
+    private List<String> patterns() {
+        return new SyntheticData(42).patterns(patternCount, patternDepth, 0.3);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int index = 0; index < 3; index++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.benchmark;
+
+import com.example.model.PatternNode;
+import com.example.processor.PatternProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the pattern tree and matches paths against it, over synthetic
+ * pattern sets. Narrow the parameters with -p, e.g. -p patternCount=10000.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PatternProcessorBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int patternCount;
+
+    @Param({"3", "6", "10"})
+    public int patternDepth;
+
+    @Param({"0.1", "0.5"})
+    public double wildcardDensity;
+
+    @Param({"10000"})
+    public int pathCount;
+
+    private PatternProcessor patternProcessor;
+
+    private List<String> patterns;
+
+    private List<String> paths;
+
+    private PatternNode rootNode;
+
+    private String[][] splitPaths;
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        patternProcessor = BenchmarkContext.getBean(PatternProcessor.class);
+
+        SyntheticData data = new SyntheticData(42);
+        patterns = data.patterns(patternCount, patternDepth, wildcardDensity);
+        paths = data.paths(pathCount, patternDepth);
+        rootNode = patternProcessor.buildPatternTree(patterns);
+
+        splitPaths = new String[pathCount][];
+        for (int index = 0; index < pathCount; index++) {
+            splitPaths[index] = patternProcessor.splitPath(paths.get(index));
+        }
+    }
+
+    @Benchmark
+    public PatternNode buildPatternTree() {
+        return patternProcessor.buildPatternTree(patterns);
+    }
+
+    /**
+     * Adds a pattern then removes it, each building a new version of the tree.
+     */
+    @Benchmark
+    public PatternNode addAndRemovePattern() {
+        String pattern = patterns.get(next);
+        next = (next + 1) % patterns.size();
+        PatternNode added = patternProcessor.addPattern(rootNode, pattern + ",x");
+        return patternProcessor.removePattern(added, pattern + ",x");
+    }
+
+    /**
+     * One path per operation, cycling through the paths.
+     */
+    @Benchmark
+    public String findTheNearestMatch() {
+        String[] path = splitPaths[next % splitPaths.length];
+        next = (next + 1) % splitPaths.length;
+        return patternProcessor.findTheNearestMatch(rootNode, path);
+    }
+
+    /**
+     * Builds the tree and matches all the paths, as the application does.
+     */
+    @Benchmark
+    public List<String> getMatchingPatterns() {
+        return patternProcessor.getMatchingPatterns(patterns, paths);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.benchmark;
+
+import com.example.model.PatternNode;
+import com.example.processor.PatternProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matches a batch of paths one by one, and as a batch sharing the walk of their
+ * common first blocks, over sorted and shuffled paths.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrefixBatchBenchmark {
+
+    private static final int PATHS = 16384;
+
+    private static final int DEPTH = 6;
+
+    @Param({"SORTED", "SHUFFLED"})
+    public String order;
+
+    @Param({"0.1", "0.5"})
+    public double wildcardDensity;
+
+    private PatternProcessor patternProcessor;
+
+    private PatternNode rootNode;
+
+    private List<String> paths;
+
+    @Setup
+    public void setUp() {
+        patternProcessor = BenchmarkContext.getBean(PatternProcessor.class);
+
+        SyntheticData data = new SyntheticData(42);
+        rootNode = patternProcessor.buildPatternTree(
+                data.patterns(20000, DEPTH, wildcardDensity));
+        paths = data.paths(PATHS, DEPTH);
+        if ("SORTED".equals(order)) {
+            Collections.sort(paths);
+        } else {
+            Collections.shuffle(paths, new Random(42));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PATHS)
+    public void perPath(final Blackhole blackhole) {
+        for (String path : paths) {
+            blackhole.consume(patternProcessor.getMatchingPattern(rootNode, path));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PATHS)
+    public List<String> prefixBatch() {
+        return patternProcessor.getMatchingPatterns(rootNode, paths);
+    }
+}
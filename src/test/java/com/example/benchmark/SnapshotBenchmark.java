@@ -0,0 +1,76 @@
+package com.example.benchmark;
+
+import com.example.model.CompiledPatternTree;
+import com.example.processor.CompiledPatternProcessor;
+import com.example.processor.PatternProcessor;
+import com.example.processor.SnapshotProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares building the compiled pattern tree from the patterns
+ * with loading it from a snapshot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SnapshotBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int patternCount;
+
+    private PatternProcessor patternProcessor;
+
+    private CompiledPatternProcessor compiledProcessor;
+
+    private SnapshotProcessor snapshotProcessor;
+
+    private List<String> patterns;
+
+    private File snapshot;
+
+    @Setup
+    public void setUp() throws IOException {
+        patternProcessor = BenchmarkContext.getBean(PatternProcessor.class);
+        compiledProcessor = BenchmarkContext.getBean(CompiledPatternProcessor.class);
+        snapshotProcessor = BenchmarkContext.getBean(SnapshotProcessor.class);
+
+        patterns = new SyntheticData(42).patterns(patternCount, 8, 0.3);
+        snapshot = File.createTempFile("benchmark", ".snapshot");
+        snapshotProcessor.write(compiledProcessor.compile(
+                patternProcessor.buildPatternTree(patterns)), snapshot.getPath());
+    }
+
+    @TearDown
+    public void tearDown() {
+        snapshot.delete();
+    }
+
+    @Benchmark
+    public CompiledPatternTree build() {
+        return compiledProcessor.compile(patternProcessor.buildPatternTree(patterns));
+    }
+
+    @Benchmark
+    public CompiledPatternTree load() {
+        return snapshotProcessor.load(snapshot.getPath());
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+import static com.google.common.collect.Lists.newArrayList;
+
+/**
+ * Generates synthetic patterns, paths and input files for the benchmarks.
+ * The data only depends on the seed, so every run measures the same input.
+ */
+public final class SyntheticData {
+
+    private static final int SEGMENTS = 16;
+
+    private final Random random;
+
+    public SyntheticData(final long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Patterns of the given depth, each block being a wildcard
+     * with the given probability.
+     */
+    public List<String> patterns(final int count, final int depth,
+                                 final double wildcardDensity) {
+        List<String> patterns = newArrayList();
+        for (int index = 0; index < count; index++) {
+            StringBuilder pattern = new StringBuilder();
+            for (int block = 0; block < depth; block++) {
+                if (block > 0) {
+                    pattern.append(',');
+                }
+                if (random.nextDouble() < wildcardDensity) {
+                    pattern.append('*');
+                } else {
+                    pattern.append(segment());
+                }
+            }
+            patterns.add(pattern.toString());
+        }
+        return patterns;
+    }
+
+    /**
+     * Paths of the given depth over the same segments as the patterns.
+     */
+    public List<String> paths(final int count, final int depth) {
+        List<String> paths = newArrayList();
+        for (int index = 0; index < count; index++) {
+            StringBuilder path = new StringBuilder();
+            for (int block = 0; block < depth; block++) {
+                path.append('/').append(segment());
+            }
+            paths.add(path.append('/').toString());
+        }
+        return paths;
+    }
+
+    /**
+     * Writes an input file in the format read by the input processor.
+     */
+    public static File writeInput(final List<String> patterns, final List<String> paths)
+            throws IOException {
+        File file = File.createTempFile("benchmark-input", ".txt");
+        file.deleteOnExit();
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(),
+                StandardCharsets.UTF_8)) {
+            writeBlock(writer, patterns);
+            writeBlock(writer, paths);
+        }
+        return file;
+    }
+
+    private static void writeBlock(final BufferedWriter writer, final List<String> lines)
+            throws IOException {
+        writer.write(String.valueOf(lines.size()));
+        writer.newLine();
+        for (String line : lines) {
+            writer.write(line);
+            writer.newLine();
+        }
+    }
+
+    private String segment() {
+        return "s" + random.nextInt(SEGMENTS);
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.benchmark;
+
+import com.example.model.CompiledPatternTree;
+import com.example.model.PatternAutomaton;
+import com.example.model.PatternNode;
+import com.example.processor.AutomatonProcessor;
+import com.example.processor.CompiledPatternProcessor;
+import com.example.processor.PatternProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.collect.Lists.newArrayList;
+
+/**
+ * Matches paths against wildcard heavy pattern sets, where most lookups
+ * have to compare alternate matches by their number of wildcards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WildcardMatchBenchmark {
+
+    private static final int PATHS = 4096;
+
+    @Param({"0.25", "0.5", "0.75"})
+    public double wildcardDensity;
+
+    private PatternProcessor patternProcessor;
+
+    private CompiledPatternProcessor compiledProcessor;
+
+    private PatternNode rootNode;
+
+    private CompiledPatternTree tree;
+
+    private AutomatonProcessor automatonProcessor;
+
+    private PatternAutomaton automaton;
+
+    private String[][] paths;
+
+    @Setup
+    public void setUp() {
+        patternProcessor = BenchmarkContext.getBean(PatternProcessor.class);
+        compiledProcessor = BenchmarkContext.getBean(CompiledPatternProcessor.class);
+
+        Random random = new Random(42);
+        List<String> patterns = newArrayList();
+        for (int index = 0; index < 20000; index++) {
+            StringBuilder pattern = new StringBuilder();
+            for (int segment = 0; segment < 6; segment++) {
+                if (segment > 0) {
+                    pattern.append(',');
+                }
+                if (random.nextDouble() < wildcardDensity) {
+                    pattern.append('*');
+                } else {
+                    pattern.append('s').append(random.nextInt(6));
+                }
+            }
+            patterns.add(pattern.toString());
+        }
+        rootNode = patternProcessor.buildPatternTree(patterns);
+        tree = compiledProcessor.compile(rootNode);
+        automatonProcessor = BenchmarkContext.getBean(AutomatonProcessor.class);
+        automaton = automatonProcessor.compile(rootNode);
+
+        paths = new String[PATHS][];
+        for (int index = 0; index < PATHS; index++) {
+            StringBuilder path = new StringBuilder();
+            for (int segment = 0; segment < 6; segment++) {
+                path.append('/').append('s').append(random.nextInt(6));
+            }
+            paths[index] = patternProcessor.splitPath(path.toString());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PATHS)
+    public void treeMatch(final Blackhole blackhole) {
+        for (String[] path : paths) {
+            blackhole.consume(patternProcessor.findTheNearestMatch(rootNode, path));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PATHS)
+    public void compiledMatch(final Blackhole blackhole) {
+        for (String[] path : paths) {
+            blackhole.consume(compiledProcessor.findTheNearestMatch(tree,
+                    CompiledPatternTree.ROOT, path));
+        }
+    }
+
+    /**
+     * Matches the tree instead, as the AUTOMATON engine does,
+     * when the automaton has too many states.
+     */
+    @Benchmark
+    @OperationsPerInvocation(PATHS)
+    public void automatonMatch(final Blackhole blackhole) {
+        if (automaton == null) {
+            treeMatch(blackhole);
+            return;
+        }
+        for (String[] path : paths) {
+            blackhole.consume(automatonProcessor.findTheNearestMatch(automaton, path));
+        }
+    }
+}
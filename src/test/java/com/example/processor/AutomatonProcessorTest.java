@@ -0,0 +1,186 @@
+package com.example.processor;
+
+import com.example.constant.MatchingEngine;
+import com.example.model.PatternAutomaton;
+import com.example.model.PatternNode;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.example.processor.RandomBlocks.randomJoin;
+import static com.google.common.collect.Lists.newArrayList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the pattern automaton gives the same matches as the pattern tree.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = TestApplicationConfiguration.class)
+public class AutomatonProcessorTest {
+
+    @Autowired
+    private PatternProcessor patternProcessor;
+
+    @Autowired
+    private AutomatonProcessor automatonProcessor;
+
+    @Autowired
+    private PatternMatcherFactory matcherFactory;
+
+    @After
+    public void tearDown() {
+        ReflectionTestUtils.setField(matcherFactory, "engine", MatchingEngine.TREE);
+        ReflectionTestUtils.setField(automatonProcessor, "maxStates", 100000);
+    }
+
+    @Test
+    public void testByTheConditionGivenAtREADME() {
+        ReflectionTestUtils.setField(matcherFactory, "engine", MatchingEngine.AUTOMATON);
+        PatternMatcher matcher = matcherFactory.build(newArrayList("*,b,*", "a,*,*",
+                "*,*,c", "foo,bar,baz", "w,x,*,*", "*,x,y,z"));
+
+        assertTrue(matcher instanceof AutomatonPatternMatcher);
+        assertEquals("*,x,y,z", matcher.getMatchingPattern("/w/x/y/z/"));
+        assertEquals("a,*,*", matcher.getMatchingPattern("a/b/c"));
+        assertEquals("NO MATCH", matcher.getMatchingPattern("foo/"));
+        assertEquals("NO MATCH", matcher.getMatchingPattern("foo/bar/"));
+        assertEquals("foo,bar,baz", matcher.getMatchingPattern("foo/bar/baz/"));
+        assertEquals("NO MATCH", matcher.getMatchingPattern(null));
+    }
+
+    @Test
+    public void testCompileTheStates() {
+        PatternAutomaton automaton = automatonProcessor.compile(
+                patternProcessor.buildPatternTree(newArrayList("a,*", "*,b")));
+
+        // {root}, {a, *}, {*}, {a-*, *-b}, {a-*}, {*-b}
+        assertEquals(6, automaton.getStateCount());
+        assertNull(automaton.getPattern(PatternAutomaton.START));
+        int both = automaton.next(PatternAutomaton.START, "a");
+        assertEquals("a,*", automaton.getPattern(automaton.next(both, "b")));
+        assertEquals("a,*", automaton.getPattern(automaton.next(both, "c")));
+        int other = automaton.next(PatternAutomaton.START, "c");
+        assertEquals(other, automaton.next(PatternAutomaton.START, "*"));
+        assertEquals("*,b", automaton.getPattern(automaton.next(other, "b")));
+        assertEquals(PatternAutomaton.DEAD, automaton.next(other, "c"));
+    }
+
+    @Test
+    public void testSameMatchesAsThePatternTree() {
+        Random random = new Random(29);
+        String[] blocks = {"a", "b", "c", "d", "*", " ", ""};
+
+        for (int round = 0; round < 50; round++) {
+            List<String> patterns = newArrayList();
+            for (int index = 0; index < 40; index++) {
+                patterns.add(randomJoin(random, blocks, ",", 4));
+            }
+            PatternNode rootNode = patternProcessor.buildPatternTree(patterns);
+            PatternAutomaton automaton = automatonProcessor.compile(rootNode);
+
+            for (int index = 0; index < 200; index++) {
+                String path = randomJoin(random, blocks, "/", 4);
+                assertEquals(path, patternProcessor.getMatchingPattern(rootNode, path),
+                        automatonProcessor.getMatchingPattern(automaton, path));
+            }
+        }
+    }
+
+    @Test
+    public void testFallBackToThePatternTree() {
+        List<String> patterns = newArrayList("a,*,*,*", "*,b,*,*", "*,*,c,*", "*,*,*,d");
+        assertNotNull(automatonProcessor.compile(patternProcessor.buildPatternTree(patterns)));
+
+        ReflectionTestUtils.setField(automatonProcessor, "maxStates", 4);
+        assertNull(automatonProcessor.compile(patternProcessor.buildPatternTree(patterns)));
+
+        ReflectionTestUtils.setField(matcherFactory, "engine", MatchingEngine.AUTOMATON);
+        PatternMatcher matcher = matcherFactory.build(patterns);
+        assertTrue(matcher instanceof PatternIndex);
+        assertEquals("a,*,*,*", matcher.getMatchingPattern("a/b/c/d"));
+        assertEquals("*,*,*,d", matcher.getMatchingPattern("x/y/z/d"));
+    }
+
+    @Test
+    public void testStopAtTheMaximumStates() {
+        List<String> patterns = newArrayList("a,*", "*,b");
+        ReflectionTestUtils.setField(automatonProcessor, "maxStates", 6);
+        assertNotNull(automatonProcessor.compile(patternProcessor.buildPatternTree(patterns)));
+        ReflectionTestUtils.setField(automatonProcessor, "maxStates", 5);
+        assertNull(automatonProcessor.compile(patternProcessor.buildPatternTree(patterns)));
+    }
+
+    @Test(timeout = 10000)
+    public void testGiveUpOnExponentialStates() {
+        // The states remember which of the last blocks were "a": 2^24 of them.
+        List<String> patterns = newArrayList();
+        for (int position = 0; position < 24; position++) {
+            StringBuilder pattern = new StringBuilder();
+            for (int index = 0; index < 24; index++) {
+                if (index > 0) {
+                    pattern.append(',');
+                }
+                if (index == position) {
+                    pattern.append('a');
+                } else {
+                    pattern.append('*');
+                }
+            }
+            patterns.add(pattern.toString());
+        }
+        ReflectionTestUtils.setField(automatonProcessor, "maxStates", 1000);
+        assertNull(automatonProcessor.compile(patternProcessor.buildPatternTree(patterns)));
+    }
+
+    @Test(timeout = 10000)
+    public void testGiveUpWithinTheFirstState() {
+        // Every literal child of the root is a new state.
+        List<String> patterns = newArrayList("*,end");
+        for (int index = 0; index < 100000; index++) {
+            patterns.add("k" + index + ",end");
+        }
+        ReflectionTestUtils.setField(automatonProcessor, "maxStates", 10);
+        assertNull(automatonProcessor.compile(patternProcessor.buildPatternTree(patterns)));
+    }
+
+    @Test
+    public void testCompileAnEmptyTree() {
+        PatternAutomaton automaton = automatonProcessor.compile(
+                patternProcessor.buildPatternTree(newArrayList()));
+        assertEquals(1, automaton.getStateCount());
+        assertEquals(PatternAutomaton.DEAD, automaton.next(PatternAutomaton.START, "a"));
+        assertEquals("NO MATCH", automatonProcessor.getMatchingPattern(automaton, "a"));
+        assertEquals("NO MATCH", automatonProcessor.getMatchingPattern(automaton, ""));
+    }
+
+    @Test
+    public void testSkipTheBlankBlocksOfAPath() {
+        PatternAutomaton automaton = automatonProcessor.compile(
+                patternProcessor.buildPatternTree(newArrayList("a,b", "*,c")));
+        assertEquals("a,b", automatonProcessor.getMatchingPattern(automaton, "a//b"));
+        assertEquals("a,b", automatonProcessor.getMatchingPattern(automaton, "/ /a/ /b/"));
+        assertEquals("*,c", automatonProcessor.getMatchingPattern(automaton, "// /q/c"));
+        assertEquals("NO MATCH", automatonProcessor.getMatchingPattern(automaton, "// /"));
+    }
+
+    @Test
+    public void testTiesAsThePatternTree() {
+        PatternNode rootNode = patternProcessor.buildPatternTree(
+                newArrayList("*,b,*", "*,*,c", "a,*,*", "x,*,c"));
+        PatternAutomaton automaton = automatonProcessor.compile(rootNode);
+        for (String path : newArrayList("q/b/c", "a/b/c", "x/b/c", "x/y/c")) {
+            assertEquals(path, patternProcessor.getMatchingPattern(rootNode, path),
+                    automatonProcessor.getMatchingPattern(automaton, path));
+        }
+    }
+}
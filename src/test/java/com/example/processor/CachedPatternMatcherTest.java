@@ -0,0 +1,172 @@
+package com.example.processor;
+
+import com.example.constant.CacheEviction;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.example.processor.RandomBlocks.randomJoin;
+import static com.google.common.collect.Lists.newArrayList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the cached matches are the same as the uncached ones.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = TestApplicationConfiguration.class)
+public class CachedPatternMatcherTest {
+
+    private static final String[] BLOCKS = {"a", "b", "c", "*", " ", ""};
+
+    @Autowired
+    private PatternProcessor patternProcessor;
+
+    @Test
+    public void testNormalizeThePath() {
+        assertEquals("a/b", PathKeys.normalize("a/b"));
+        assertEquals("a/b", PathKeys.normalize("/a/b/"));
+        assertEquals("a/b", PathKeys.normalize("//a// /b//"));
+        assertEquals(" a/b ", PathKeys.normalize(" a/b "));
+        assertEquals("", PathKeys.normalize(""));
+        assertEquals("", PathKeys.normalize("/ /\t/"));
+        String path = "a/b/c";
+        assertTrue(path == PathKeys.normalize(path));
+    }
+
+    @Test
+    public void testSameMatchesAsWithoutCache() {
+        Random random = new Random(3);
+        for (CacheEviction eviction : CacheEviction.values()) {
+            List<String> patterns = newArrayList();
+            for (int index = 0; index < 30; index++) {
+                patterns.add(randomJoin(random, BLOCKS, ",", 3).replace(",,", ",a,"));
+            }
+            PatternIndex index = new PatternIndex(patternProcessor,
+                    patternProcessor.buildPatternTree(patterns));
+            MatchCache cache = new MatchCache(16, eviction);
+            CachedPatternMatcher matcher = new CachedPatternMatcher(index, cache);
+
+            for (int lookup = 0; lookup < 2000; lookup++) {
+                String path = randomJoin(random, BLOCKS, "/", 3);
+                assertEquals(path, index.getMatchingPattern(path),
+                        matcher.getMatchingPattern(path));
+                assertTrue(cache.size() <= 16);
+            }
+            assertEquals(2000, cache.getHits() + cache.getMisses());
+            assertTrue(cache.getHits() > 0);
+        }
+    }
+
+    @Test
+    public void testCountHitsAndMisses() {
+        PatternIndex index = new PatternIndex(patternProcessor,
+                patternProcessor.buildPatternTree(newArrayList("a,*", "a,b")));
+        MatchCache cache = new MatchCache(10, CacheEviction.LRU);
+        CachedPatternMatcher matcher = new CachedPatternMatcher(index, cache);
+
+        assertEquals("a,b", matcher.getMatchingPattern("a/b"));
+        assertEquals("a,b", matcher.getMatchingPattern("/a/b/"));
+        assertEquals("a,b", matcher.getMatchingPattern("a// /b"));
+        assertEquals("a,*", matcher.getMatchingPattern("a/c"));
+        assertEquals("NO MATCH", matcher.getMatchingPattern("b"));
+        assertEquals("NO MATCH", matcher.getMatchingPattern("b/"));
+
+        assertEquals(3, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        assertEquals(3, cache.size());
+        assertEquals("size=3 hits=3 misses=3", cache.stats());
+    }
+
+    @Test
+    public void testInvalidateWhenThePatternsChange() {
+        PatternIndex index = new PatternIndex(patternProcessor,
+                patternProcessor.buildPatternTree(newArrayList("a,*")));
+        MatchCache cache = new MatchCache(10, CacheEviction.LFU);
+        CachedPatternMatcher matcher = new CachedPatternMatcher(index, cache);
+
+        assertEquals("a,*", matcher.getMatchingPattern("a/b"));
+        assertEquals("a,*", matcher.getMatchingPattern("a/b"));
+        assertTrue(index.add("a,b"));
+        assertEquals("a,b", matcher.getMatchingPattern("a/b"));
+        assertEquals(1, cache.size());
+        assertTrue(index.remove("a,b"));
+        assertEquals("a,*", matcher.getMatchingPattern("a/b"));
+
+        // A match of an older version is never returned.
+        cache.put("a/c", 0, "x,y");
+        assertNull(cache.get("a/c", index.getVersion().getNumber()));
+        assertEquals("a,*", matcher.getMatchingPattern("a/c"));
+    }
+
+    @Test
+    public void testLfuKeepsTheHotPaths() {
+        MatchCache cache = new MatchCache(8, CacheEviction.LFU);
+        for (int hot = 0; hot < 4; hot++) {
+            cache.put("hot" + hot, 0, "h");
+            for (int use = 0; use < 10; use++) {
+                cache.get("hot" + hot, 0);
+            }
+        }
+        for (int cold = 0; cold < 1000; cold++) {
+            cache.put("cold" + cold, 0, "c");
+            assertTrue(cache.size() <= 8);
+        }
+        for (int hot = 0; hot < 4; hot++) {
+            assertEquals("h", cache.get("hot" + hot, 0));
+        }
+    }
+
+    @Test
+    public void testConcurrentLookupsAndChanges() throws Exception {
+        Random random = new Random(9);
+        List<String> paths = newArrayList();
+        for (int index = 0; index < 50; index++) {
+            paths.add(randomJoin(random, BLOCKS, "/", 3));
+        }
+        PatternIndex index = new PatternIndex(patternProcessor,
+                patternProcessor.buildPatternTree(newArrayList("*,*")));
+        MatchCache cache = new MatchCache(20, CacheEviction.LFU);
+        CachedPatternMatcher matcher = new CachedPatternMatcher(index, cache);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        List<Thread> threads = newArrayList();
+        for (int reader = 0; reader < 4; reader++) {
+            Random readerRandom = new Random(reader);
+            threads.add(new Thread(() -> {
+                for (int lookup = 0; lookup < 20000; lookup++) {
+                    String path = paths.get(readerRandom.nextInt(paths.size()));
+                    // Patterns are only added, a path matching "*,*" keeps a match.
+                    String match = matcher.getMatchingPattern(path);
+                    if (PathKeys.normalize(path).split("/").length == 2) {
+                        assertTrue(path, !"NO MATCH".equals(match));
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.setUncaughtExceptionHandler((t, e) -> failure.set(e));
+            thread.start();
+        }
+        for (int change = 0; change < 200; change++) {
+            index.add(randomJoin(random, BLOCKS, ",", 3).replace(" ", "a").replace(",,", ",b,"));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure.get());
+
+        // Once the changes are over, the cache gives the current matches.
+        for (String path : paths) {
+            assertEquals(index.getMatchingPattern(path), matcher.getMatchingPattern(path));
+        }
+        assertTrue(cache.size() <= 20);
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.processor;
+
+import com.example.constant.MatchingEngine;
+import com.example.model.CompiledPatternTree;
+import com.example.model.MappedPatternTree;
+import com.example.model.PatternNode;
+import com.example.model.SegmentDictionary;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+import static com.example.processor.RandomBlocks.randomJoinRarelyLast;
+import static com.example.model.CompiledPatternTree.NO_NODE;
+import static com.example.model.CompiledPatternTree.ROOT;
+import static com.google.common.collect.Lists.newArrayList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the compiled pattern tree gives the same matches as the pattern tree.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = TestApplicationConfiguration.class)
+public class CompiledPatternProcessorTest {
+
+    @Autowired
+    private PatternProcessor patternProcessor;
+
+    @Autowired
+    private CompiledPatternProcessor compiledProcessor;
+
+    @Autowired
+    private PatternMatcherFactory matcherFactory;
+
+    @After
+    public void tearDown() {
+        ReflectionTestUtils.setField(matcherFactory, "engine", MatchingEngine.TREE);
+    }
+
+    @Test
+    public void testCompileThePatternTree() {
+        List<String> patterns = newArrayList();
+        patterns.add("*,b,*");
+        patterns.add("a,b,c");
+        patterns.add("d,b,a");
+        patterns.add("*,c,*");
+
+        CompiledPatternTree tree = compiledProcessor.compile(
+                patternProcessor.buildPatternTree(patterns));
+
+        // root, a, d, *, a-b, d-b, *-b, *-c, a-b-c, d-b-a, *-b-*, *-c-*
+        assertEquals(12, tree.getNodeCount());
+        assertEquals(0, tree.getPosition(ROOT));
+        assertNull(tree.getPattern(ROOT));
+
+        SegmentDictionary segments = tree.getSegments();
+        assertEquals(SegmentDictionary.WILDCARD_ID, segments.getId("*"));
+        assertEquals(SegmentDictionary.NO_SEGMENT, segments.getId("x"));
+
+        int star = tree.getWildcardChild(ROOT);
+        assertTrue(star != NO_NODE);
+        assertEquals(star, tree.getChild(ROOT, SegmentDictionary.WILDCARD_ID));
+        assertEquals(1, tree.getPosition(star));
+        assertEquals(NO_NODE, tree.getChild(ROOT, segments.getId("b")));
+
+        int starB = tree.getChild(star, segments.getId("b"));
+        assertEquals(2, tree.getPosition(starB));
+        assertNull(tree.getPattern(starB));
+
+        int starBStar = tree.getWildcardChild(starB);
+        assertEquals(3, tree.getPosition(starBStar));
+        assertEquals("*,b,*", tree.getPattern(starBStar));
+
+        int abc = tree.getChild(tree.getChild(tree.getChild(ROOT,
+                segments.getId("a")), segments.getId("b")), segments.getId("c"));
+        assertEquals("a,b,c", tree.getPattern(abc));
+    }
+
+    @Test
+    public void testCompileEmptyTree() {
+        CompiledPatternTree tree = compiledProcessor.compile(
+                patternProcessor.buildPatternTree(null));
+        assertEquals(1, tree.getNodeCount());
+        assertEquals("NO MATCH", compiledProcessor.getMatchingPattern(tree, "a/b"));
+    }
+
+    @Test
+    public void testByTheConditionGivenAtREADME() {
+        List<String> patterns = newArrayList();
+        patterns.add("*,b,*");
+        patterns.add("a,*,*");
+        patterns.add("*,*,c");
+        patterns.add("foo,bar,baz");
+        patterns.add("w,x,*,*");
+        patterns.add("*,x,y,z");
+
+        CompiledPatternTree tree = compiledProcessor.compile(
+                patternProcessor.buildPatternTree(patterns));
+
+        assertEquals("*,x,y,z", compiledProcessor.getMatchingPattern(tree, "/w/x/y/z/"));
+        assertEquals("a,*,*", compiledProcessor.getMatchingPattern(tree, "a/b/c"));
+        assertEquals("NO MATCH", compiledProcessor.getMatchingPattern(tree, "foo/"));
+        assertEquals("NO MATCH", compiledProcessor.getMatchingPattern(tree, "foo/bar/"));
+        assertEquals("foo,bar,baz",
+                compiledProcessor.getMatchingPattern(tree, "foo/bar/baz/"));
+    }
+
+    @Test
+    public void testOffHeapEngine() {
+        ReflectionTestUtils.setField(matcherFactory, "engine", MatchingEngine.OFF_HEAP);
+        PatternMatcher matcher = matcherFactory.build(newArrayList("*,b,*", "a,*,*",
+                "*,*,c", "foo,bar,baz", "w,x,*,*", "*,x,y,z"));
+
+        assertTrue(((CompiledPatternMatcher) matcher).getTree() instanceof MappedPatternTree);
+        assertEquals("*,x,y,z", matcher.getMatchingPattern("/w/x/y/z/"));
+        assertEquals("a,*,*", matcher.getMatchingPattern("a/b/c"));
+        assertEquals("NO MATCH", matcher.getMatchingPattern("foo/"));
+        assertEquals("NO MATCH", matcher.getMatchingPattern("foo/bar/"));
+        assertEquals("foo,bar,baz", matcher.getMatchingPattern("foo/bar/baz/"));
+    }
+
+    @Test
+    public void testSameMatchesAsThePatternTree() {
+        Random random = new Random(7);
+        String[] blocks = {"a", "b", "c", "d", "*", " "};
+
+        for (int round = 0; round < 50; round++) {
+            List<String> patterns = newArrayList();
+            for (int index = 0; index < 40; index++) {
+                patterns.add(randomJoinRarelyLast(random, blocks, ",", 5));
+            }
+            PatternNode rootNode = patternProcessor.buildPatternTree(patterns);
+            CompiledPatternTree tree = compiledProcessor.compile(rootNode);
+
+            for (int index = 0; index < 200; index++) {
+                String path = randomJoinRarelyLast(random, blocks, "/", 5);
+                assertEquals(path, patternProcessor.getMatchingPattern(rootNode, path),
+                        compiledProcessor.getMatchingPattern(tree, path));
+            }
+        }
+    }
+
+    @Test
+    public void testScanThePathInPlace() {
+        List<String> patterns = newArrayList();
+        patterns.add("a,b");
+        patterns.add("a,*");
+        patterns.add("*,*,c");
+
+        CompiledPatternTree tree = compiledProcessor.compile(
+                patternProcessor.buildPatternTree(patterns));
+
+        String[] paths = {"a/b", "/a/b/", "//a//b//", "a/ /b", " a/b", "a/*",
+            "*/*/c", "a/x", "a/b/c", "a", "", "/", " / ", "ab", "a/bb"};
+        for (String path : paths) {
+            assertEquals(path,
+                    compiledProcessor.findTheNearestMatch(tree, ROOT,
+                            patternProcessor.splitPath(path)),
+                    compiledProcessor.findTheNearestMatch(tree, path));
+        }
+        assertEquals("a,b", compiledProcessor.getMatchingPattern(tree, "//a/\t/b/"));
+        assertEquals("a,*", compiledProcessor.getMatchingPattern(tree, "a/*"));
+        assertEquals(NO_NODE, compiledProcessor.findTheNearestMatch(tree, (String) null));
+    }
+
+    @Test
+    public void testMatchThePathBytes() {
+        List<String> patterns = newArrayList();
+        patterns.add("a,b");
+        patterns.add("a,*");
+        patterns.add("\u00e9t\u00e9,*");
+
+        CompiledPatternTree tree = compiledProcessor.compile(
+                patternProcessor.buildPatternTree(patterns));
+
+        String[] paths = {"a/b", "/a/b/", "a/ /b", "a/*", "a/x", "a", "",
+            "\u00e9t\u00e9/b", "a/\u00e9", "a/\u2003/b"};
+        for (String path : paths) {
+            byte[] bytes = ("xx" + path + "yy").getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            assertEquals(path, compiledProcessor.getMatchingPattern(tree, path),
+                    compiledProcessor.getMatchingPattern(tree, buffer, 2,
+                            bytes.length - 2));
+        }
+    }
+}
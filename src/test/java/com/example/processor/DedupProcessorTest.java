@@ -0,0 +1,152 @@
+package com.example.processor;
+
+import com.example.exception.InvalidDataException;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+import static com.example.processor.RandomBlocks.randomJoin;
+import static com.google.common.collect.Lists.newArrayList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the distinct paths pipeline writes the same matches as the streaming one.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = TestApplicationConfiguration.class)
+public class DedupProcessorTest {
+
+    /**
+     * Temporary folder for the input and output files.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Autowired
+    private DedupProcessor dedupProcessor;
+
+    @Autowired
+    private StreamingProcessor streamingProcessor;
+
+    private String filePath = "./src/test/resources/";
+
+    @After
+    public void tearDown() {
+        ReflectionTestUtils.setField(dedupProcessor, "memoryPaths", 1048576);
+        ReflectionTestUtils.setField(dedupProcessor, "partitions", 64);
+        ReflectionTestUtils.setField(dedupProcessor, "spillRoot", "");
+    }
+
+    @Test
+    public void testProcessHappy() throws Exception {
+        File output = new File(folder.getRoot(), "output.txt");
+        dedupProcessor.process(filePath + "input-happy.txt", output.getPath());
+
+        List<String> lines = Files.readAllLines(output.toPath(), StandardCharsets.UTF_8);
+        assertEquals(5, lines.size());
+        assertEquals("*,x,y,z", lines.get(0));
+        assertEquals("a,*,*", lines.get(1));
+        assertEquals("NO MATCH", lines.get(2));
+        assertEquals("NO MATCH", lines.get(3));
+        assertEquals("foo,bar,baz", lines.get(4));
+    }
+
+    @Test
+    public void testProcessLateBlankPathDoesNotCreateOutput() throws Exception {
+        File output = new File(folder.getRoot(), "output.txt");
+        try {
+            dedupProcessor.process(filePath + "input-late-blank-path.txt",
+                    output.getPath());
+            fail("The blank path is invalid");
+        } catch (InvalidDataException ex) {
+            assertFalse(output.exists());
+            assertEquals(0, folder.getRoot().list().length);
+        }
+    }
+
+    @Test
+    public void testSameMatchesInMemory() throws Exception {
+        assertSameMatchesAsStreaming(writeRepeatedInput(new Random(1)));
+    }
+
+    @Test
+    public void testSameMatchesWhenSpilling() throws Exception {
+        // Only a few distinct paths in memory, the others go through the partitions.
+        ReflectionTestUtils.setField(dedupProcessor, "memoryPaths", 5);
+        ReflectionTestUtils.setField(dedupProcessor, "partitions", 3);
+        File spillRoot = folder.newFolder();
+        ReflectionTestUtils.setField(dedupProcessor, "spillRoot", spillRoot.getPath());
+        assertSameMatchesAsStreaming(writeRepeatedInput(new Random(2)));
+        // The spill files are deleted once merged.
+        assertEquals(0, spillRoot.list().length);
+    }
+
+    @Test
+    public void testSameMatchesWhenAPartitionIsSplitAgain() throws Exception {
+        // Every partition holds more distinct paths than fit in memory.
+        ReflectionTestUtils.setField(dedupProcessor, "memoryPaths", 2);
+        ReflectionTestUtils.setField(dedupProcessor, "partitions", 2);
+        File spillRoot = folder.newFolder();
+        ReflectionTestUtils.setField(dedupProcessor, "spillRoot", spillRoot.getPath());
+        assertSameMatchesAsStreaming(writeRepeatedInput(new Random(3)));
+        assertEquals(0, spillRoot.list().length);
+    }
+
+    @Test
+    public void testSameMatchesWhenAPartitionCanNotBeSplit() throws Exception {
+        // A single partition can not spread its paths, it is matched in memory.
+        ReflectionTestUtils.setField(dedupProcessor, "memoryPaths", 2);
+        ReflectionTestUtils.setField(dedupProcessor, "partitions", 1);
+        assertSameMatchesAsStreaming(writeRepeatedInput(new Random(4)));
+    }
+
+    private void assertSameMatchesAsStreaming(final File input) throws Exception {
+        File expected = new File(folder.getRoot(), "expected.txt");
+        File output = new File(folder.getRoot(), "output.txt");
+        streamingProcessor.process(input.getPath(), expected.getPath());
+        dedupProcessor.process(input.getPath(), output.getPath());
+
+        List<String> expectedLines = Files.readAllLines(expected.toPath(),
+                StandardCharsets.UTF_8);
+        assertEquals(2000, expectedLines.size());
+        assertEquals(expectedLines, Files.readAllLines(output.toPath(),
+                StandardCharsets.UTF_8));
+    }
+
+    private File writeRepeatedInput(final Random random) throws Exception {
+        String[] blocks = {"a", "b", "c", "*"};
+        List<String> lines = newArrayList();
+        lines.add("30");
+        for (int index = 0; index < 30; index++) {
+            lines.add(randomJoin(random, blocks, ",", 3));
+        }
+        // The same few paths, written in different ways.
+        String[] separators = {"/", "//", "/ /"};
+        lines.add("2000");
+        for (int index = 0; index < 2000; index++) {
+            String path = randomJoin(random, new String[] {"a", "b", "c", "d"},
+                    separators[random.nextInt(separators.length)], 3);
+            if (random.nextBoolean()) {
+                path = "/" + path + "/";
+            }
+            lines.add(path);
+        }
+        File input = folder.newFile();
+        Files.write(input.toPath(), lines, StandardCharsets.UTF_8);
+        return input;
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.processor;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the latency histogram.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsKeepTheValuesWithinTheirPrecision() {
+        Random random = new Random(1);
+        for (int index = 0; index < 100000; index++) {
+            long value = (random.nextLong() >>> 1) >>> random.nextInt(Long.SIZE - 1);
+            long highest = LatencyHistogram.highestValue(LatencyHistogram.bucket(value));
+            assertTrue(value + " " + highest, highest >= value);
+            assertTrue(value + " " + highest, highest - value <= value / 64);
+        }
+        assertEquals(127, LatencyHistogram.highestValue(LatencyHistogram.bucket(127)));
+        assertEquals(129, LatencyHistogram.highestValue(LatencyHistogram.bucket(128)));
+        assertEquals(Long.MAX_VALUE,
+                LatencyHistogram.highestValue(LatencyHistogram.bucket(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value * 1000);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000000, histogram.getMax());
+        assertWithin(500000, histogram.getValueAtPercentile(50));
+        assertWithin(990000, histogram.getValueAtPercentile(99));
+        assertEquals(1000000, histogram.getValueAtPercentile(100));
+        assertWithin(1000, histogram.getValueAtPercentile(0));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+
+    private static void assertWithin(final long expected, final long actual) {
+        assertTrue(expected + " " + actual,
+                actual >= expected && actual - expected <= expected / 64);
+    }
+}
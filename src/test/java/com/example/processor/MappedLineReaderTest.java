@@ -0,0 +1,86 @@
+package com.example.processor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the mapped lines are the lines read by a BufferedReader,
+ * whatever the window size.
+ */
+public class MappedLineReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSameLinesAsTheBufferedReader() throws IOException {
+        String[] contents = {"", "a", "a\n", "a\r\nb", "a\rb\r", "\n\n", "\r\n\r\n",
+            "abc/def\r\n\r\nxyz\n", "été\n/a/ /\n"};
+        for (String content : contents) {
+            assertSameLines(content);
+        }
+
+        Random random = new Random(3);
+        String[] pieces = {"a", "bc", "/", " ", "\n", "\r", "\r\n", "é", "long-block"};
+        for (int round = 0; round < 200; round++) {
+            StringBuilder content = new StringBuilder();
+            int size = random.nextInt(40);
+            for (int index = 0; index < size; index++) {
+                content.append(pieces[random.nextInt(pieces.length)]);
+            }
+            assertSameLines(content.toString());
+        }
+    }
+
+    @Test
+    public void testCountLines() throws IOException {
+        String[] lines = {"5", "0", "10", "007", "12x", "123456789", "1234567890", " 1"};
+        int[] counts = {5, 0, 10, -1, -1, 123456789, -1, -1};
+        for (int index = 0; index < lines.length; index++) {
+            File file = write(lines[index]);
+            try (MappedLineReader reader = new MappedLineReader(file.toPath(), 4)) {
+                reader.nextLine();
+                assertEquals(lines[index], counts[index], ByteLines.parseDigits(
+                        reader.buffer(), reader.lineStart(), reader.lineEnd()));
+            }
+        }
+    }
+
+    private void assertSameLines(final String content) throws IOException {
+        File file = write(content);
+        List<String> expected = newArrayList();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(),
+                StandardCharsets.UTF_8)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                expected.add(line);
+            }
+        }
+        for (int window = 1; window <= 8; window++) {
+            List<String> lines = newArrayList();
+            try (MappedLineReader reader = new MappedLineReader(file.toPath(), window)) {
+                while (reader.nextLine()) {
+                    lines.add(reader.line());
+                }
+            }
+            assertEquals(content + " / " + window, expected, lines);
+        }
+    }
+
+    private File write(final String content) throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,250 @@
+package com.example.processor;
+
+import com.example.constant.ServerIo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the path lookups answered over a local socket.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = TestApplicationConfiguration.class)
+public class MatchServerTest {
+
+    @Autowired
+    private MatchServer matchServer;
+
+    @Autowired
+    private SimpleMetricsRegistry metricsRegistry;
+
+    private int port;
+
+    private List<String> patterns;
+
+    @Before
+    public void setUp() throws Exception {
+        patterns = newArrayList();
+        patterns.add("*,b,*");
+        patterns.add("a,*,*");
+        patterns.add("*,*,c");
+        patterns.add("foo,bar,baz");
+        patterns.add("w,x,*,*");
+        patterns.add("*,x,y,z");
+
+        ReflectionTestUtils.setField(matchServer, "port", 0);
+        port = matchServer.start(patterns);
+    }
+
+    @After
+    public void tearDown() {
+        matchServer.stop();
+        ReflectionTestUtils.setField(matchServer, "io", ServerIo.BLOCKING);
+        ReflectionTestUtils.setField(matchServer, "threads", 4);
+        ReflectionTestUtils.setField(matchServer, "maxPending", 64);
+        ReflectionTestUtils.setField(matchServer, "maxLineBytes", 65536);
+    }
+
+    @Test
+    public void testAnswerThePathsInOrder() throws Exception {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            Writer writer = new OutputStreamWriter(socket.getOutputStream(),
+                    StandardCharsets.UTF_8);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    socket.getInputStream(), StandardCharsets.UTF_8));
+
+            // A whole batch first, answered in the same order.
+            writer.write("/w/x/y/z/\na/b/c\nfoo/\nfoo/bar/\nfoo/bar/baz/\n");
+            writer.flush();
+            assertEquals("*,x,y,z", reader.readLine());
+            assertEquals("a,*,*", reader.readLine());
+            assertEquals("NO MATCH", reader.readLine());
+            assertEquals("NO MATCH", reader.readLine());
+            assertEquals("foo,bar,baz", reader.readLine());
+
+            // Then a single lookup.
+            writer.write("x/b/y\n");
+            writer.flush();
+            assertEquals("*,b,*", reader.readLine());
+
+            writer.write(MatchServer.STATS + "\n");
+            writer.flush();
+            String stats = reader.readLine();
+            assertTrue(stats, stats.startsWith("paths=6 connections=1 "));
+        }
+    }
+
+    @Test
+    public void testServeSeveralConnections() throws Exception {
+        try (Socket first = new Socket(InetAddress.getLoopbackAddress(), port);
+             Socket second = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            assertEquals("a,*,*", lookup(first, "a/b/c"));
+            assertEquals("*,*,c", lookup(second, "x/y/c"));
+            assertEquals("foo,bar,baz", lookup(first, "foo/bar/baz"));
+        }
+    }
+
+    @Test
+    public void testRefuseTheConnectionsPastTheWaitingOnes() throws Exception {
+        matchServer.stop();
+        ReflectionTestUtils.setField(matchServer, "threads", 1);
+        ReflectionTestUtils.setField(matchServer, "maxPending", 1);
+        port = matchServer.start(patterns);
+
+        try (Socket served = new Socket(InetAddress.getLoopbackAddress(), port);
+             Socket waiting = new Socket(InetAddress.getLoopbackAddress(), port);
+             Socket refused = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            // The only server thread is busy with the first connection.
+            assertEquals("a,*,*", lookup(served, "a/b/c"));
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    refused.getInputStream(), StandardCharsets.UTF_8));
+            assertEquals(MatchServer.BUSY, reader.readLine());
+            assertNull(reader.readLine());
+
+            // The waiting one is served once the first one closes.
+            served.close();
+            assertEquals("*,*,c", lookup(waiting, "x/y/c"));
+            // The refused one is not counted.
+            String stats = lookup(waiting, MatchServer.STATS);
+            assertTrue(stats, stats.contains(" connections=2 "));
+        }
+    }
+
+    @Test
+    public void testChangeThePatterns() throws Exception {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            assertEquals("NO MATCH", lookup(socket, "foo/bar"));
+            assertEquals(MatchServer.OK, lookup(socket, MatchServer.ADD + "foo,*"));
+            assertEquals("foo,*", lookup(socket, "foo/bar"));
+            assertEquals(MatchServer.OK, lookup(socket, MatchServer.REMOVE + "foo,*"));
+            assertEquals("NO MATCH", lookup(socket, "foo/bar"));
+            assertEquals(MatchServer.UNCHANGED,
+                    lookup(socket, MatchServer.REMOVE + "foo,*"));
+        }
+    }
+
+    @Test
+    public void testReportTheMetrics() throws Exception {
+        long paths = metricsRegistry.getCount("paths");
+        long noMatches = metricsRegistry.getCount("paths.no-match");
+        assertEquals(6.0, metricsRegistry.getGauge("index.patterns"), 0.0);
+        assertTrue(metricsRegistry.getTimerCount("phase.build") > 0);
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            assertEquals("a,*,*", lookup(socket, "a/b/c"));
+            assertEquals("NO MATCH", lookup(socket, "foo"));
+            String metrics = lookup(socket, MatchServer.METRICS);
+            assertTrue(metrics, metrics.contains("paths=" + (paths + 2)));
+            assertTrue(metrics, metrics.contains("match.wildcards="));
+        }
+        assertEquals(paths + 2, metricsRegistry.getCount("paths"));
+        assertEquals(noMatches + 1, metricsRegistry.getCount("paths.no-match"));
+    }
+
+    @Test
+    public void testServeManyConnectionsOnTheEventLoop() throws Exception {
+        matchServer.stop();
+        ReflectionTestUtils.setField(matchServer, "io", ServerIo.EVENT_LOOP);
+        port = matchServer.start(patterns);
+
+        List<Socket> sockets = newArrayList();
+        try {
+            for (int index = 0; index < 200; index++) {
+                sockets.add(new Socket(InetAddress.getLoopbackAddress(), port));
+            }
+            // Every connection sends its batch before any answer is read.
+            StringBuilder batch = new StringBuilder();
+            for (int index = 0; index < 100; index++) {
+                batch.append("/w/x/y/z/\r\na/b/c\nfoo/\n");
+            }
+            for (Socket socket : sockets) {
+                Writer writer = new OutputStreamWriter(socket.getOutputStream(),
+                        StandardCharsets.UTF_8);
+                writer.write(batch.toString());
+                writer.flush();
+            }
+            for (Socket socket : sockets) {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(
+                        socket.getInputStream(), StandardCharsets.UTF_8));
+                for (int index = 0; index < 100; index++) {
+                    assertEquals("*,x,y,z", reader.readLine());
+                    assertEquals("a,*,*", reader.readLine());
+                    assertEquals("NO MATCH", reader.readLine());
+                }
+            }
+            assertEquals(MatchServer.OK, lookup(sockets.get(0), MatchServer.ADD + "foo"));
+            assertEquals("foo", lookup(sockets.get(1), "foo/"));
+            String stats = lookup(sockets.get(2), MatchServer.STATS);
+            assertTrue(stats, stats.contains(" connections=200 "));
+
+            // The last line is answered once the client stops sending.
+            Socket last = sockets.get(3);
+            last.getOutputStream().write("foo/bar/baz".getBytes(StandardCharsets.UTF_8));
+            last.shutdownOutput();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    last.getInputStream(), StandardCharsets.UTF_8));
+            assertEquals("foo,bar,baz", reader.readLine());
+            assertEquals(null, reader.readLine());
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+
+    @Test
+    public void testCloseAConnectionSendingATooLongLine() throws Exception {
+        matchServer.stop();
+        ReflectionTestUtils.setField(matchServer, "io", ServerIo.EVENT_LOOP);
+        ReflectionTestUtils.setField(matchServer, "maxLineBytes", 64);
+        port = matchServer.start(patterns);
+
+        try (Socket flooding = new Socket(InetAddress.getLoopbackAddress(), port);
+             Socket other = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            byte[] line = new byte[10000];
+            Arrays.fill(line, (byte) 'a');
+            flooding.getOutputStream().write(line);
+            flooding.getOutputStream().flush();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    flooding.getInputStream(), StandardCharsets.UTF_8));
+            try {
+                assertNull(reader.readLine());
+            } catch (SocketException ex) {
+                // Closed with the rest of the line unread, the connection is reset.
+            }
+
+            // The other connections are still served.
+            assertEquals("a,*,*", lookup(other, "a/b/c"));
+        }
+    }
+
+    private static String lookup(final Socket socket, final String path) throws Exception {
+        Writer writer = new OutputStreamWriter(socket.getOutputStream(),
+                StandardCharsets.UTF_8);
+        writer.write(path + "\n");
+        writer.flush();
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                StandardCharsets.UTF_8)).readLine();
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.processor;
+
+import com.example.model.PatternNode;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static com.example.processor.RandomBlocks.randomJoin;
+import static com.google.common.collect.Lists.newArrayList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the no match filter only rejects the paths without a match.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = TestApplicationConfiguration.class)
+public class NoMatchFilterTest {
+
+    @Autowired
+    private PatternProcessor patternProcessor;
+
+    @Autowired
+    private CompiledPatternProcessor compiledProcessor;
+
+    @Test
+    public void testRejectTheImpossiblePaths() {
+        NoMatchFilter filter = NoMatchFilter.of(Collections.singletonList(
+                patternProcessor.buildPatternTree(newArrayList("a,b", "*,c", "x,y,*"))));
+
+        assertTrue(filter.mayMatch("a/b"));
+        assertTrue(filter.mayMatch("/q/c/"));
+        assertTrue(filter.mayMatch("x/ /y/z"));
+        // No pattern of 1 or 4 blocks.
+        assertFalse(filter.mayMatch("a"));
+        assertFalse(filter.mayMatch("x/y/z/w"));
+        assertFalse(filter.mayMatch(""));
+        // No pattern of 2 blocks ends with "d", none of 3 starts with "q".
+        assertFalse(filter.mayMatch("a/d"));
+        assertFalse(filter.mayMatch("q/y/z"));
+    }
+
+    @Test
+    public void testNeverRejectAMatch() {
+        Random random = new Random(23);
+        String[] blocks = {"a", "b", "c", "d", "été", "*", " "};
+
+        for (int round = 0; round < 50; round++) {
+            List<String> patterns = newArrayList();
+            for (int index = 0; index < 20; index++) {
+                patterns.add(randomJoin(random, blocks, ",", 4));
+            }
+            PatternNode rootNode = patternProcessor.buildPatternTree(patterns);
+            NoMatchFilter filter = NoMatchFilter.of(Collections.singletonList(rootNode));
+            NoMatchFilter compiledFilter = NoMatchFilter.of(
+                    compiledProcessor.compile(rootNode));
+
+            for (int index = 0; index < 200; index++) {
+                String path = randomJoin(random, blocks, "/", 4);
+                byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+                boolean mayMatch = filter.mayMatch(path);
+                assertEquals(path, mayMatch, compiledFilter.mayMatch(path));
+                assertEquals(path, mayMatch,
+                        filter.mayMatch(ByteBuffer.wrap(bytes), 0, bytes.length));
+                if (!mayMatch) {
+                    assertEquals(path, "NO MATCH",
+                            patternProcessor.getMatchingPattern(rootNode, path));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFollowThePatternChanges() {
+        PatternIndex index = new PatternIndex(patternProcessor,
+                patternProcessor.buildPatternTree(newArrayList("a,b")), true);
+        FilteredPatternMatcher matcher = new FilteredPatternMatcher(index, index);
+        NoMatchFilter first = index.getVersion().getFilter();
+
+        assertEquals("NO MATCH", matcher.getMatchingPattern("a/c"));
+        assertEquals(1, matcher.getRejected());
+        assertTrue(index.add("a,c"));
+        assertEquals("a,c", matcher.getMatchingPattern("a/c"));
+        assertEquals("a,b", matcher.getMatchingPattern("a/b"));
+        assertEquals(1, matcher.getRejected());
+        assertEquals(3, matcher.getChecked());
+
+        // Every change publishes the filter of its version, the first one unchanged.
+        assertFalse(first.mayMatch("a/c"));
+        assertTrue(index.add("*,d,e"));
+        assertEquals("*,d,e", matcher.getMatchingPattern("q/d/e"));
+        assertFalse(index.getVersion().getFilter().mayMatch("q/e/e"));
+        // A removed pattern is still let through, and matched to no pattern.
+        assertTrue(index.remove("a,c"));
+        assertTrue(index.getVersion().getFilter().mayMatch("a/c"));
+        assertEquals("NO MATCH", matcher.getMatchingPattern("a/c"));
+    }
+
+    @Test
+    public void testAddPatternsToAFilter() {
+        Random random = new Random(31);
+        String[] blocks = {"a", "b", "c", "d", "*"};
+
+        for (int round = 0; round < 20; round++) {
+            List<String> patterns = newArrayList();
+            NoMatchFilter filter = NoMatchFilter.of(Collections.singletonList(
+                    patternProcessor.buildPatternTree(patterns)));
+            for (int index = 0; index < 30; index++) {
+                String pattern = randomJoin(random, blocks, ",", 4);
+                patterns.add(pattern);
+                filter = filter.with(patternProcessor.splitPattern(pattern));
+            }
+            NoMatchFilter built = NoMatchFilter.of(Collections.singletonList(
+                    patternProcessor.buildPatternTree(patterns)));
+            for (int index = 0; index < 200; index++) {
+                String path = randomJoin(random, blocks, "/", 4);
+                assertEquals(path, built.mayMatch(path), filter.mayMatch(path));
+            }
+        }
+    }
+
+    @Test
+    public void testRejectEveryPathWithoutPatterns() {
+        NoMatchFilter filter = NoMatchFilter.of(Collections.singletonList(
+                patternProcessor.buildPatternTree(newArrayList("a, ", ""))));
+        assertFalse(filter.mayMatch("a"));
+        assertFalse(filter.mayMatch("a/b"));
+        assertFalse(filter.mayMatch(""));
+        assertTrue(filter.with(new String[] {"*"}).mayMatch("q"));
+        assertFalse(filter.mayMatch("q"));
+    }
+
+    @Test
+    public void testSkipTheBlankBlocksOfAPath() {
+        NoMatchFilter filter = NoMatchFilter.of(Collections.singletonList(
+                patternProcessor.buildPatternTree(newArrayList("a,b", "*,*"))));
+        assertTrue(filter.mayMatch("a/ /b"));
+        assertTrue(filter.mayMatch("//q//r//"));
+        assertFalse(filter.mayMatch("// /"));
+        assertFalse(filter.mayMatch("q/ /r/s"));
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.processor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Set;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests the output file holds every line, in order, whatever the buffering.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = TestApplicationConfiguration.class)
+public class OutputProcessorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Autowired
+    private OutputProcessor outputProcessor;
+
+    @Test
+    public void testKeepThePermissionsOfTheOutput() throws Exception {
+        assumeTrue(Files.getFileAttributeView(folder.getRoot().toPath(),
+                PosixFileAttributeView.class) != null);
+        // A new output file gets the usual permissions of a new file.
+        Path usual = folder.newFile().toPath();
+        Path created = folder.getRoot().toPath().resolve("created.txt");
+        outputProcessor.processOutput(created.toString(), newArrayList("a,*"));
+        assertEquals(Files.getPosixFilePermissions(usual),
+                Files.getPosixFilePermissions(created));
+
+        // An existing one keeps its own.
+        Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-r-----");
+        Path existing = folder.newFile().toPath();
+        Files.setPosixFilePermissions(existing, permissions);
+        outputProcessor.processOutput(existing.toString(), newArrayList("a,*"));
+        assertEquals(permissions, Files.getPosixFilePermissions(existing));
+        assertEquals(newArrayList("a,*"),
+                Files.readAllLines(existing, StandardCharsets.UTF_8));
+        assertEquals(3, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void testReplaceTheTargetOfALink() throws Exception {
+        Path target = folder.newFile().toPath();
+        Path link = folder.getRoot().toPath().resolve("link.txt");
+        try {
+            Files.createSymbolicLink(link, target);
+        } catch (UnsupportedOperationException | IOException ex) {
+            assumeTrue(false);
+        }
+        outputProcessor.processOutput(link.toString(), newArrayList("a,*"));
+        assertTrue(Files.isSymbolicLink(link));
+        assertEquals(newArrayList("a,*"), Files.readAllLines(target, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testWriteTheLinesInOrder() throws Exception {
+        StringBuilder longLine = new StringBuilder();
+        while (longLine.length() < 3 << 20) {
+            longLine.append("a,b,*,");
+        }
+
+        List<String> lines = newArrayList();
+        for (int index = 0; index < 50000; index++) {
+            lines.add("NO MATCH");
+            lines.add("a,*,c");
+            lines.add("path-" + index);
+            lines.add("été,*," + (index % 100));
+        }
+        lines.add(longLine.toString());
+        lines.add("");
+        lines.add("a,*,c");
+
+        File file = folder.newFile();
+        outputProcessor.processOutput(file.getPath(), lines);
+
+        StringBuilder expected = new StringBuilder();
+        for (String line : lines) {
+            expected.append(line).append(System.lineSeparator());
+        }
+        assertEquals(expected.toString(),
+                new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testOverwriteTheOutputFile() throws Exception {
+        File file = folder.newFile();
+        Files.write(file.toPath(), "a much longer previous content".getBytes());
+
+        outputProcessor.processOutput(file.getPath(), newArrayList("a,b"));
+
+        assertEquals("a,b" + System.lineSeparator(),
+                new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    }
+}
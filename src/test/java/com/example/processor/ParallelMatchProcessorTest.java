@@ -0,0 +1,84 @@
+package com.example.processor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the parallel matching keeps the order of the paths.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = TestApplicationConfiguration.class)
+public class ParallelMatchProcessorTest {
+
+    @Autowired
+    private PatternProcessor patternProcessor;
+
+    @Autowired
+    private PatternMatcherFactory matcherFactory;
+
+    private ParallelMatchProcessor parallelProcessor;
+
+    @Before
+    public void setUp() {
+        parallelProcessor = new ParallelMatchProcessor();
+        ReflectionTestUtils.setField(parallelProcessor, "workers", 4);
+        ReflectionTestUtils.setField(parallelProcessor, "chunkSize", 7);
+        parallelProcessor.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() {
+        parallelProcessor.destroy();
+    }
+
+    @Test
+    public void testMatchesKeepThePathOrder() {
+        List<String> patterns = newArrayList();
+        patterns.add("*,b,*");
+        patterns.add("a,*,*");
+        patterns.add("*,*,c");
+        patterns.add("foo,bar,baz");
+        patterns.add("w,x,*,*");
+        patterns.add("*,x,y,z");
+
+        List<String> paths = newArrayList();
+        for (int index = 0; index < 1000; index++) {
+            paths.add("/w/x/y/z/");
+            paths.add("a/b/c");
+            paths.add("foo/");
+            paths.add("foo/bar/baz/");
+            paths.add("x/b/" + index);
+        }
+
+        PatternMatcher matcher = matcherFactory.build(patterns);
+        assertTrue(parallelProcessor.isParallel());
+        List<String> matches = parallelProcessor.getMatchingPatterns(matcher, paths);
+
+        assertEquals(paths.size(), matches.size());
+        assertEquals(patternProcessor.getMatchingPatterns(patterns, paths), matches);
+        assertEquals("*,x,y,z", matches.get(0));
+        assertEquals("a,*,*", matches.get(1));
+        assertEquals("NO MATCH", matches.get(2));
+        assertEquals("foo,bar,baz", matches.get(3));
+        assertEquals("*,b,*", matches.get(4));
+    }
+
+    @Test
+    public void testEmptyPaths() {
+        PatternMatcher matcher = matcherFactory.build(newArrayList("a,b"));
+        List<String> paths = newArrayList();
+        assertTrue(parallelProcessor.getMatchingPatterns(matcher, paths).isEmpty());
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.processor;
+
+import com.example.model.PatternNode;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.example.processor.RandomBlocks.randomJoin;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the pattern index can be read while its patterns change.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = TestApplicationConfiguration.class)
+public class PatternIndexTest {
+
+    private static final String[] BLOCKS = {"a", "b", "c", "*"};
+
+    @Autowired
+    private PatternProcessor patternProcessor;
+
+    @Test
+    public void testPublishedNodesAreFrozen() {
+        PatternIndex index = new PatternIndex(patternProcessor,
+                patternProcessor.buildPatternTree(newArrayList("a,b", "a,*")));
+        assertTrue(index.add("b,c"));
+        PatternNode rootNode = index.getRoot();
+        PatternNode node = rootNode.getChildPatterns().get("a").getChildPatterns().get("b");
+        assertTrue(rootNode.isFrozen());
+        assertTrue(node.isFrozen());
+        assertTrue(rootNode.getChildPatterns().get("b").isFrozen());
+
+        try {
+            node.setPattern("x,y");
+            fail("A published node was changed");
+        } catch (IllegalStateException e) {
+            assertEquals("a,b", node.getPattern());
+        }
+        try {
+            rootNode.getChildPatterns().remove("a");
+            fail("A published node was changed");
+        } catch (UnsupportedOperationException e) {
+            assertTrue(rootNode.getChildPatterns().containsKey("a"));
+        }
+
+        // The changes copy the frozen nodes, the next version is frozen in turn.
+        assertTrue(index.remove("a,b"));
+        assertEquals(2, index.getVersion().getNumber());
+        assertEquals("a,b", node.getPattern());
+        assertEquals("a,*", index.getMatchingPattern("a/b"));
+        assertFalse(index.remove("a,b"));
+        assertEquals(2, index.getVersion().getNumber());
+    }
+
+    @Test
+    public void testFreezeADeepTree() {
+        // Deeper than the thread stack would allow a recursive walk.
+        PatternNode rootNode = new PatternNode(0);
+        PatternNode node = rootNode;
+        for (int position = 1; position <= 200000; position++) {
+            PatternNode child = new PatternNode(position);
+            node.getChildPatterns().put("b" + position, child);
+            node = child;
+        }
+        node.setPattern("deep");
+        new PatternIndex(patternProcessor, rootNode);
+
+        assertTrue(rootNode.isFrozen());
+        assertTrue(node.isFrozen());
+    }
+
+    @Test
+    public void testReadersSeeAPublishedVersion() throws Exception {
+        Random random = new Random(11);
+        List<String> patterns = newArrayList();
+        for (int index = 0; index < 20; index++) {
+            patterns.add(randomJoin(random, BLOCKS, ",", 3));
+        }
+        PatternIndex index = new PatternIndex(patternProcessor,
+                patternProcessor.buildPatternTree(patterns));
+
+        // The patterns of every published version, by version number.
+        Map<Long, List<String>> versions = new ConcurrentHashMap<>();
+        versions.put(0L, newArrayList(patterns));
+
+        int readers = 6;
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch started = new CountDownLatch(readers);
+        List<List<Answer>> answers = newArrayList();
+        List<Thread> threads = newArrayList();
+        for (int reader = 0; reader < readers; reader++) {
+            List<Answer> readerAnswers = newArrayList();
+            answers.add(readerAnswers);
+            Random readerRandom = new Random(reader);
+            threads.add(new Thread(() -> {
+                started.countDown();
+                do {
+                    String path = randomJoin(readerRandom, BLOCKS, "/", 3);
+                    PatternIndex.Version version = index.getVersion();
+                    String match = patternProcessor.findTheNearestMatch(version.getRoot(),
+                            patternProcessor.splitPath(path));
+                    readerAnswers.add(new Answer(version.getNumber(), path, match));
+                } while (writing.get() || readerAnswers.size() < 1000);
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.setUncaughtExceptionHandler((t, e) -> failure.set(e));
+            thread.start();
+        }
+
+        started.await();
+        for (int change = 0; change < 3000; change++) {
+            if (random.nextInt(2) == 0 || patterns.isEmpty()) {
+                String pattern = randomJoin(random, BLOCKS, ",", 3);
+                assertTrue(index.add(pattern));
+                patterns.add(pattern);
+            } else {
+                String pattern = patterns.get(random.nextInt(patterns.size()));
+                assertTrue(index.remove(pattern));
+                patterns.remove(pattern);
+            }
+            versions.put(index.getVersion().getNumber(), newArrayList(patterns));
+        }
+        writing.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure.get());
+        assertEquals(3000, index.getVersion().getNumber());
+
+        // Every answer is the one of a tree built from scratch for its version.
+        Map<Long, PatternNode> expectedTrees = newHashMap();
+        for (List<Answer> readerAnswers : answers) {
+            for (Answer answer : readerAnswers) {
+                PatternNode expected = expectedTrees.computeIfAbsent(answer.version,
+                        number -> patternProcessor.buildPatternTree(versions.get(number)));
+                assertEquals(answer.path, patternProcessor.findTheNearestMatch(expected,
+                        patternProcessor.splitPath(answer.path)), answer.match);
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentWritersKeepEveryChange() throws Exception {
+        PatternIndex index = new PatternIndex(patternProcessor,
+                patternProcessor.buildPatternTree(null));
+        List<Thread> writers = newArrayList();
+        for (int writer = 0; writer < 4; writer++) {
+            String block = "w" + writer;
+            writers.add(new Thread(() -> {
+                for (int pattern = 0; pattern < 500; pattern++) {
+                    index.add(block + "," + pattern);
+                }
+            }));
+        }
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        assertEquals(2000, index.getVersion().getNumber());
+        for (int writer = 0; writer < 4; writer++) {
+            for (int pattern = 0; pattern < 500; pattern++) {
+                assertEquals("w" + writer + "," + pattern,
+                        index.getMatchingPattern("w" + writer + "/" + pattern));
+            }
+        }
+    }
+
+    /**
+     * An answer read by a reader thread.
+     */
+    private static final class Answer {
+
+        private final long version;
+
+        private final String path;
+
+        private final String match;
+
+        Answer(final long version, final String path, final String match) {
+            this.version = version;
+            this.path = path;
+            this.match = match;
+        }
+    }
+}
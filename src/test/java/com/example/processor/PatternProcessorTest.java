@@ -1,7 +1,9 @@
 package com.example.processor;
 
 import com.example.model.PatternNode;
+import com.example.model.SegmentPool;
 import org.apache.commons.lang3.ArrayUtils;
+import org.junit.After;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -9,16 +11,22 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.SpringApplicationConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
+import static com.example.processor.RandomBlocks.randomJoin;
 import static com.google.common.collect.Lists.newArrayList;
 import static org.apache.commons.collections4.MapUtils.isEmpty;
 import static org.apache.commons.collections4.MapUtils.isNotEmpty;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -87,6 +95,33 @@ public class PatternProcessorTest {
         assertTrue(starCStarPattern.getChildPatterns().size() == 0);
     }
 
+    @Test
+    public void testProcessPatternRecordsWildcards() {
+        List<String> patterns = newArrayList();
+
+        patterns.add("a,b,c");
+        patterns.add("a,*,c,*");
+        patterns.add("*,*");
+
+        PatternNode masterPattern = patternProcessor.buildPatternTree(patterns);
+
+        PatternNode abc = masterPattern.getChildPatterns().get("a")
+                .getChildPatterns().get("b").getChildPatterns().get("c");
+        assertEquals(abc.getWildcards(), 0);
+        assertEquals(abc.getFirstWildcard(), 0);
+
+        PatternNode aStarCStar = masterPattern.getChildPatterns().get("a")
+                .getChildPatterns().get("*").getChildPatterns().get("c")
+                .getChildPatterns().get("*");
+        assertEquals(aStarCStar.getWildcards(), 2);
+        assertEquals(aStarCStar.getFirstWildcard(), 2);
+
+        PatternNode starStar = masterPattern.getChildPatterns().get("*")
+                .getChildPatterns().get("*");
+        assertEquals(starStar.getWildcards(), 2);
+        assertEquals(starStar.getFirstWildcard(), 1);
+    }
+
     @Test
     public void testProcessPatternBadPatterns() {
 
@@ -322,6 +357,72 @@ public class PatternProcessorTest {
         assertEquals(match.get(0), "NO MATCH");
     }
 
+    @Test
+    public void testMatchThePatternNeedsTheWholePath() {
+        List<String> patterns = newArrayList();
+        patterns.add("a,b");
+        patterns.add("b");
+
+        List<String> paths = newArrayList();
+        paths.add("a/b/c");
+        paths.add("b/b");
+        paths.add("a/b");
+        List<String> match = patternProcessor.getMatchingPatterns(patterns, paths);
+
+        assertEquals(match.get(0), "NO MATCH");
+        assertEquals(match.get(1), "NO MATCH");
+        assertEquals(match.get(2), "a,b");
+    }
+
+    @Test
+    public void testMatchTheWildcardEndingThePath() {
+        List<String> patterns = newArrayList();
+        patterns.add("a,a,b");
+        patterns.add("*");
+
+        List<String> paths = newArrayList();
+        paths.add("a");
+        List<String> match = patternProcessor.getMatchingPatterns(patterns, paths);
+
+        assertEquals(match.get(0), "*");
+
+        patterns = newArrayList();
+        patterns.add("*,*");
+        patterns.add("a,*");
+        patterns.add("a,a,a,a");
+
+        paths = newArrayList();
+        paths.add("a/a");
+        match = patternProcessor.getMatchingPatterns(patterns, paths);
+
+        assertEquals(match.get(0), "a,*");
+    }
+
+    @Test
+    public void testMatchThePatternManyWildcardPrefixes() {
+        // Every combination of "a" and "*" over 12 blocks, none matching the last block.
+        List<String> patterns = newArrayList();
+        for (int mask = 0; mask < (1 << 12); mask++) {
+            StringBuilder pattern = new StringBuilder();
+            for (int block = 0; block < 12; block++) {
+                pattern.append((mask & (1 << block)) == 0 ? "a," : "*,");
+            }
+            patterns.add(pattern.append("x").toString());
+        }
+        patterns.add("*,*,*,*,*,*,*,*,*,*,*,a,*");
+        patterns.add("*,*,*,*,*,*,*,*,*,*,*,*,*");
+
+        List<String> paths = newArrayList();
+        paths.add("a/a/a/a/a/a/a/a/a/a/a/a/a");
+        paths.add("a/a/a/a/a/a/a/a/a/a/a/a/x");
+        paths.add("a/a/a/a/a/a/a/a/a/a/a/b/c");
+        List<String> match = patternProcessor.getMatchingPatterns(patterns, paths);
+
+        assertEquals(match.get(0), "*,*,*,*,*,*,*,*,*,*,*,a,*");
+        assertEquals(match.get(1), "a,a,a,a,a,a,a,a,a,a,a,a,x");
+        assertEquals(match.get(2), "*,*,*,*,*,*,*,*,*,*,*,*,*");
+    }
+
     @Test
     public void testByTheConditionGivenAtREADME() {
 
@@ -353,6 +454,190 @@ public class PatternProcessorTest {
 
     }
 
+    @Test
+    public void testAddAndRemovePatterns() {
+        Random random = new Random(5);
+        String[] blocks = {"a", "b", "c", "*"};
+        List<String> paths = newArrayList();
+        for (int index = 0; index < 300; index++) {
+            paths.add(randomJoin(random, blocks, "/", 4));
+        }
+
+        List<String> patterns = newArrayList();
+        PatternNode rootNode = patternProcessor.buildPatternTree(patterns);
+        for (int change = 0; change < 400; change++) {
+            String pattern = randomJoin(random, blocks, ",", 4);
+            PatternNode previous = rootNode;
+            List<String> previousMatches = matches(previous, paths);
+            if (random.nextInt(3) == 0 || patterns.isEmpty()) {
+                patterns.add(pattern);
+                rootNode = patternProcessor.addPattern(rootNode, pattern);
+            } else {
+                pattern = patterns.get(random.nextInt(patterns.size()));
+                patterns.remove(pattern);
+                rootNode = patternProcessor.removePattern(rootNode, pattern);
+            }
+            // Same matches as a tree built from scratch, the previous version unchanged.
+            assertEquals(matches(patternProcessor.buildPatternTree(patterns), paths),
+                    matches(rootNode, paths));
+            assertEquals(previousMatches, matches(previous, paths));
+        }
+    }
+
+    @Test
+    public void testRemoveCountsReferencesAndPrunes() {
+        PatternNode rootNode = patternProcessor.buildPatternTree(
+                newArrayList("a,b,c", "a,b,c", "a,*"));
+
+        PatternNode removed = patternProcessor.removePattern(rootNode, "a,b,c");
+        assertEquals("a,b,c", patternProcessor.getMatchingPattern(removed, "a/b/c"));
+
+        removed = patternProcessor.removePattern(removed, "a,b,c");
+        assertEquals("NO MATCH", patternProcessor.getMatchingPattern(removed, "a/b/c"));
+        assertNull(removed.getChildPatterns().get("a").getChildPatterns().get("b"));
+        assertEquals("a,b,c", patternProcessor.getMatchingPattern(rootNode, "a/b/c"));
+
+        removed = patternProcessor.removePattern(removed, "a,*");
+        assertTrue(isEmpty(removed.getChildPatterns()));
+
+        assertTrue(removed == patternProcessor.removePattern(removed, "x,y"));
+        assertTrue(removed == patternProcessor.addPattern(removed, "x,,y"));
+    }
+
+    private List<String> matches(final PatternNode rootNode, final List<String> paths) {
+        List<String> matches = newArrayList();
+        for (String path : paths) {
+            matches.add(patternProcessor.getMatchingPattern(rootNode, path));
+        }
+        return matches;
+    }
+
+    @Test
+    public void testShareTheSegmentsAcrossTrees() {
+        PatternNode first = patternProcessor.buildPatternTree(
+                newArrayList(new String("seg-a,seg-b"), "*,seg-b"));
+        PatternNode second = patternProcessor.addPattern(new PatternNode(0),
+                new String("seg-b,seg-a"));
+
+        PatternNode firstEnd = first.getChildPatterns().get("seg-a")
+                .getChildPatterns().get("seg-b");
+        PatternNode secondEnd = second.getChildPatterns().get("seg-b")
+                .getChildPatterns().get("seg-a");
+        // Both trees are keyed by the same segment strings.
+        assertSame(key(first.getChildPatterns(), "seg-a"),
+                key(second.getChildPatterns().get("seg-b").getChildPatterns(), "seg-a"));
+        assertSame(key(first.getChildPatterns().get("*").getChildPatterns(), "seg-b"),
+                key(second.getChildPatterns(), "seg-b"));
+
+        // The patterns are kept as the pooled segments, and rebuilt as text every time, never kept.
+        SegmentPool segments = SegmentPool.global();
+        assertSame(segments.intern(new String("seg-a")), firstEnd.getPatternSegments()[0]);
+        assertSame(key(first.getChildPatterns(), "seg-a"), firstEnd.getPatternSegments()[0]);
+        assertEquals("seg-a,seg-b", firstEnd.getPattern());
+        assertNotSame(firstEnd.getPattern(), firstEnd.getPattern());
+        assertEquals("seg-b,seg-a", secondEnd.getPattern());
+
+        // Removing a pattern keeps the pooled segments as the keys of the copies.
+        PatternNode both = patternProcessor.addPattern(second, "seg-b,seg-c");
+        PatternNode removed = patternProcessor.removePattern(both,
+                new String("seg-b,seg-c"));
+        assertSame(segments.intern("seg-b"), key(removed.getChildPatterns(), "seg-b"));
+        assertSame(segments.intern("seg-a"), key(removed.getChildPatterns().get("seg-b")
+                .getChildPatterns(), "seg-a"));
+        assertNull(removed.getChildPatterns().get("seg-b").getChildPatterns().get("seg-c"));
+    }
+
+    @Test
+    public void testBuildTheSameTreeInParallel() {
+        Random random = new Random(17);
+        String[] blocks = {"a", "b", "c", "d", "e", "*", " ", ""};
+        List<String> patterns = newArrayList();
+        for (int index = 0; index < 5000; index++) {
+            StringBuilder pattern = new StringBuilder();
+            int size = 1 + random.nextInt(5);
+            for (int block = 0; block < size; block++) {
+                if (block > 0) {
+                    pattern.append(',');
+                }
+                pattern.append(blocks[random.nextInt(blocks.length)]);
+            }
+            patterns.add(pattern.toString());
+        }
+        patterns.add(null);
+        patterns.add("");
+        PatternNode sequential = patternProcessor.buildPatternTree(patterns);
+
+        ReflectionTestUtils.setField(patternProcessor, "buildWorkers", 4);
+        ReflectionTestUtils.setField(patternProcessor, "parallelBuildThreshold", 1);
+        PatternNode parallel = patternProcessor.buildPatternTree(patterns);
+
+        assertSameTree(sequential, parallel);
+    }
+
+    @Test
+    public void testMatchABatchOfPathsInTheirOrder() {
+        Random random = new Random(23);
+        String[] blocks = {"a", "b", "c", "*", " ", ""};
+        for (int round = 0; round < 20; round++) {
+            List<String> patterns = newArrayList();
+            for (int index = 0; index < 60; index++) {
+                patterns.add(randomJoin(random, blocks, ",", 4));
+            }
+            PatternNode rootNode = patternProcessor.buildPatternTree(patterns);
+
+            List<String> paths = newArrayList();
+            List<String> expected = newArrayList();
+            for (int index = 0; index < 300; index++) {
+                String path = randomJoin(random, blocks, "/", 4);
+                paths.add(path);
+                expected.add(patternProcessor.getMatchingPattern(rootNode, path));
+            }
+            // Shuffled, then sorted by the batch.
+            assertEquals(expected, patternProcessor.getMatchingPatterns(rootNode, paths));
+
+            // Already sorted, matched in their order.
+            List<String> sorted = newArrayList(paths);
+            Collections.sort(sorted);
+            List<String> sortedExpected = newArrayList();
+            for (String path : sorted) {
+                sortedExpected.add(patternProcessor.getMatchingPattern(rootNode, path));
+            }
+            assertEquals(sortedExpected,
+                    patternProcessor.getMatchingPatterns(rootNode, sorted));
+        }
+        assertEquals(newArrayList(), patternProcessor.getMatchingPatterns(
+                patternProcessor.buildPatternTree(newArrayList("a")), newArrayList()));
+    }
+
+    @After
+    public void tearDown() {
+        ReflectionTestUtils.setField(patternProcessor, "buildWorkers", 1);
+        ReflectionTestUtils.setField(patternProcessor, "parallelBuildThreshold", 100000);
+    }
+
+    private static void assertSameTree(final PatternNode expected, final PatternNode actual) {
+        assertEquals(expected.getPattern(), actual.getPattern());
+        assertEquals(expected.getPosition(), actual.getPosition());
+        assertEquals(expected.getWildcards(), actual.getWildcards());
+        assertEquals(expected.getFirstWildcard(), actual.getFirstWildcard());
+        assertEquals(expected.getReferences(), actual.getReferences());
+        assertEquals(expected.getChildPatterns().keySet(),
+                actual.getChildPatterns().keySet());
+        for (Map.Entry<String, PatternNode> child : expected.getChildPatterns().entrySet()) {
+            assertSameTree(child.getValue(), actual.getChildPatterns().get(child.getKey()));
+        }
+    }
+
+    private static String key(final Map<String, PatternNode> children,
+                              final String segment) {
+        for (String key : children.keySet()) {
+            if (key.equals(segment)) {
+                return key;
+            }
+        }
+        return null;
+    }
+
     @Test
     public void calculateWildCardFromPattern() {
         assertTrue(patternProcessor.calculateWildCards(null, null) == 0);
@@ -368,4 +653,19 @@ public class PatternProcessorTest {
 
 
     }
+
+    @Test
+    public void testMatchABatchWithTiesBlanksAndRepeats() {
+        PatternNode rootNode = patternProcessor.buildPatternTree(
+                newArrayList("*,b,*", "*,*,c", "a,*,*", "a,b"));
+        List<String> paths = newArrayList("q/b/c", "", "a//b", "q/b/c", "// /",
+                "/ /a/b/", "a/b/c", "a/b");
+        List<String> expected = newArrayList();
+        for (String path : paths) {
+            expected.add(patternProcessor.getMatchingPattern(rootNode, path));
+        }
+        assertEquals(expected, patternProcessor.getMatchingPatterns(rootNode, paths));
+        assertEquals("a,b", expected.get(2));
+        assertEquals("NO MATCH", expected.get(4));
+    }
 }
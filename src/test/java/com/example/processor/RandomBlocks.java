@@ -0,0 +1,64 @@
+package com.example.processor;
+
+import java.util.Random;
+
+/**
+ * Random patterns and paths for the tests comparing a matcher with the pattern tree.
+ * The blocks only depend on the random seed, so a failing case can be replayed.
+ */
+final class RandomBlocks {
+
+    private RandomBlocks() {
+    }
+
+    /**
+     * Joins 1 to maxBlocks blocks, each picked at random.
+     *
+     * @param random    the random source
+     * @param blocks    the blocks to pick from
+     * @param separator the separator, "," for a pattern and "/" for a path
+     * @param maxBlocks the most blocks joined
+     *
+     * @return the pattern or path
+     */
+    static String randomJoin(final Random random, final String[] blocks,
+                             final String separator, final int maxBlocks) {
+        StringBuilder builder = new StringBuilder();
+        int size = 1 + random.nextInt(maxBlocks);
+        for (int index = 0; index < size; index++) {
+            if (index > 0) {
+                builder.append(separator);
+            }
+            builder.append(blocks[random.nextInt(blocks.length)]);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Joins 1 to maxBlocks blocks, picking the last block, usually a blank one,
+     * far less often than the others.
+     *
+     * @param random    the random source
+     * @param blocks    the blocks to pick from, the rare one last
+     * @param separator the separator, "," for a pattern and "/" for a path
+     * @param maxBlocks the most blocks joined
+     *
+     * @return the pattern or path
+     */
+    static String randomJoinRarelyLast(final Random random, final String[] blocks,
+                                       final String separator, final int maxBlocks) {
+        StringBuilder builder = new StringBuilder();
+        int size = 1 + random.nextInt(maxBlocks);
+        for (int index = 0; index < size; index++) {
+            if (index > 0) {
+                builder.append(separator);
+            }
+            int block = random.nextInt(blocks.length * 4);
+            if (block >= blocks.length) {
+                block = block % (blocks.length - 1);
+            }
+            builder.append(blocks[block]);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.processor;
+
+import com.example.constant.MatchingPhase;
+import com.example.model.PatternNode;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the metrics of a matching run.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = TestApplicationConfiguration.class)
+public class RunMetricsTest {
+
+    @Autowired
+    private PatternProcessor patternProcessor;
+
+    @Autowired
+    private CompiledPatternProcessor compiledProcessor;
+
+    private List<String> patterns() {
+        return newArrayList("*,b,*", "a,*,*", "*,*,c", "foo,bar,baz");
+    }
+
+    @Test
+    public void testCountTheAlternates() {
+        PatternNode rootNode = patternProcessor.buildPatternTree(patterns());
+        // "a" and "*" match the first block, then "a,*", "*,b" and "*,*".
+        assertEquals(3, patternProcessor.countAlternates(rootNode,
+                patternProcessor.splitPath("a/b/c")));
+        assertEquals(2, patternProcessor.countAlternates(rootNode,
+                patternProcessor.splitPath("foo/bar/baz")));
+        assertEquals(1, patternProcessor.countAlternates(rootNode,
+                patternProcessor.splitPath("x/y")));
+    }
+
+    @Test
+    public void testMeasureTheRun() {
+        PatternIndex index = new PatternIndex(patternProcessor,
+                patternProcessor.buildPatternTree(patterns()));
+        RunMetrics metrics = new RunMetrics(patternProcessor);
+        metrics.addTime(MatchingPhase.BUILD, 1000);
+        metrics.measure(index);
+        // root, a, *, foo, a-*, *-b, *-*, foo-bar, and the four patterns.
+        assertEquals(12, metrics.getNodes());
+
+        String[] paths = {"a/b/c", "x/b/y", "foo/bar/baz", "x/y", "x/y/c"};
+        for (String path : paths) {
+            metrics.countMatch(index.getMatchingPattern(path));
+            metrics.sampleAlternates(path);
+        }
+        metrics.finish();
+
+        assertEquals(5, metrics.getPaths());
+        assertEquals(1, metrics.getNoMatches());
+        assertArrayEquals(new long[] {1, 0, 3}, metrics.getWildcardMatches());
+        // Only the first path is sampled.
+        assertArrayEquals(new long[] {0, 0, 0, 1}, metrics.getAlternates());
+        assertTrue(metrics.getTime(MatchingPhase.READ) > 0);
+
+        String summary = metrics.summary();
+        assertTrue(summary, summary.startsWith("{\"phasesMs\":{\"read\":"));
+        assertTrue(summary, summary.contains("\"patterns\":4,"));
+        assertTrue(summary, summary.contains("\"paths\":5,"));
+        assertTrue(summary, summary.contains("\"indexNodes\":12,"));
+        assertTrue(summary, summary.contains("\"noMatchRate\":0.2000,"));
+        assertTrue(summary, summary.contains("\"matchesByWildcards\":{\"0\":1,\"2\":3}"));
+        assertTrue(summary, summary.contains("\"sampledPathsByAlternates\":{\"3\":1}"));
+    }
+
+    @Test
+    public void testTimeOnePathOutOfASample() {
+        RunMetrics metrics = new RunMetrics(patternProcessor);
+        int timed = 0;
+        for (int path = 0; path < 128; path++) {
+            if (metrics.timesNextPath()) {
+                timed++;
+                metrics.addPathTime(MatchingPhase.MATCH, 10);
+            }
+            metrics.countMatch("a,*,*");
+        }
+        // The first path, and the first one of every 64 after it.
+        assertEquals(2, timed);
+        assertEquals(1280, metrics.getTime(MatchingPhase.MATCH));
+
+        metrics.traceLatencies(1);
+        assertTrue(metrics.timesNextPath());
+        metrics.addPathTime(MatchingPhase.MATCH, 10);
+        assertEquals(1290, metrics.getTime(MatchingPhase.MATCH));
+    }
+
+    @Test
+    public void testMeasureTheCompiledTree() {
+        RunMetrics metrics = new RunMetrics(patternProcessor);
+        metrics.measure(new CompiledPatternMatcher(compiledProcessor,
+                compiledProcessor.compile(patternProcessor.buildPatternTree(patterns()))));
+        assertEquals(12, metrics.getNodes());
+        assertTrue(metrics.summary().contains("\"patterns\":4,"));
+    }
+
+    @Test
+    public void testTraceTheMatch() {
+        PatternNode rootNode = patternProcessor.buildPatternTree(patterns());
+        MatchTrace trace = patternProcessor.traceMatch(rootNode,
+                patternProcessor.splitPath("/a//b/c"));
+        // root, then a and *, then a-*, *-b and *-*, then the three patterns.
+        assertEquals(9, trace.getNodes());
+        assertEquals(3, trace.getAlternates());
+        assertEquals("a,*,*", trace.getPattern());
+
+        MatchTrace compiledTrace = new CompiledPatternMatcher(compiledProcessor,
+                compiledProcessor.compile(rootNode))
+                .traceMatch(patternProcessor.splitPath("/a//b/c"));
+        assertEquals(9, compiledTrace.getNodes());
+        assertEquals(3, compiledTrace.getAlternates());
+        assertEquals("a,*,*", compiledTrace.getPattern());
+
+        MatchTrace noMatch = patternProcessor.traceMatch(rootNode,
+                patternProcessor.splitPath("x/y"));
+        assertEquals(3, noMatch.getNodes());
+        assertEquals(null, noMatch.getPattern());
+    }
+
+    @Test
+    public void testTraceTheSlowestPaths() {
+        PatternIndex index = new PatternIndex(patternProcessor,
+                patternProcessor.buildPatternTree(patterns()));
+        RunMetrics metrics = new RunMetrics(patternProcessor);
+        metrics.measure(index);
+        // Not tracing, nothing is kept.
+        metrics.recordLatency("a/b/c", 1000);
+        assertEquals(null, metrics.getLatencies());
+        assertTrue(metrics.getSlowPaths().isEmpty());
+        assertEquals("", metrics.latencySummary());
+
+        metrics.traceLatencies(2);
+        metrics.recordLatency("foo/bar/baz", 5000);
+        metrics.recordLatency("a/b/c", 9000);
+        metrics.recordLatency("x/y", 100);
+        metrics.recordLatency(ByteBuffer.wrap("x/\"y\"/c".getBytes(StandardCharsets.UTF_8)),
+                0, 7, 7000);
+        metrics.reset();
+
+        assertEquals(4, metrics.getLatencies().getCount());
+        assertEquals(9000, metrics.getLatencies().getMax());
+        List<SlowPaths.SlowPath> slowest = metrics.getSlowPaths();
+        assertEquals(2, slowest.size());
+        assertEquals("a/b/c", slowest.get(0).getPath());
+        assertEquals(3, slowest.get(0).getTrace().getAlternates());
+        assertEquals("x/\"y\"/c", slowest.get(1).getPath());
+        assertEquals("*,*,c", slowest.get(1).getTrace().getPattern());
+
+        String summary = metrics.summary();
+        assertTrue(summary, summary.contains(",\"latencyNs\":{\"count\":4,\"p50\":"));
+        assertTrue(summary, summary.contains("\"max\":9000},\"slowestPaths\":[{\"path\":"
+                + "\"a/b/c\",\"ns\":9000,\"match\":\"a,*,*\",\"nodes\":9,"
+                + "\"alternates\":3},{\"path\":\"x/\\\"y\\\"/c\",\"ns\":7000,"));
+        assertTrue(summary, summary.endsWith("}]}"));
+
+        SimpleMetricsRegistry registry = new SimpleMetricsRegistry();
+        metrics.report(registry);
+        assertEquals(9000.0, registry.getGauge("match.latency.max-ns"), 0.0);
+        // The highest value of the bucket of 5000.
+        assertEquals(5055.0, registry.getGauge("match.latency.p50-ns"), 0.0);
+        assertTrue(registry.getGauge("match.latency.p999-ns") >= 9000);
+    }
+
+    @Test
+    public void testReportToTheRegistry() {
+        SimpleMetricsRegistry registry = new SimpleMetricsRegistry();
+        RunMetrics metrics = new RunMetrics(patternProcessor);
+        metrics.addTime(MatchingPhase.MATCH, 2000000);
+        metrics.countMatch("a,*,*");
+        metrics.countMatch("NO MATCH");
+        metrics.report(registry);
+        metrics.reset();
+        metrics.countMatch("a,b,c");
+        metrics.report(registry);
+
+        assertEquals(3, registry.getCount("paths"));
+        assertEquals(1, registry.getCount("paths.no-match"));
+        assertEquals(1, registry.getTimerCount("phase.match"));
+        assertEquals("{0=1, 2=1}", registry.getHistogram("match.wildcards").toString());
+        assertEquals("match.wildcards={0=1, 2=1} paths=3 paths.no-match=1"
+                + " phase.match.count=1 phase.match.ms=2.0", registry.summary());
+    }
+}
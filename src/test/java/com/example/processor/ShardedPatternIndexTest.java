@@ -0,0 +1,229 @@
+package com.example.processor;
+
+import com.example.constant.MatchingEngine;
+import com.example.model.PatternNode;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.example.processor.RandomBlocks.randomJoin;
+import static com.google.common.collect.Lists.newArrayList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the sharded pattern index gives the same matches as the pattern tree.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = TestApplicationConfiguration.class)
+public class ShardedPatternIndexTest {
+
+    @Autowired
+    private PatternProcessor patternProcessor;
+
+    @Autowired
+    private PatternMatcherFactory matcherFactory;
+
+    @After
+    public void tearDown() {
+        ReflectionTestUtils.setField(matcherFactory, "engine", MatchingEngine.TREE);
+        ReflectionTestUtils.setField(matcherFactory, "cacheSize", 0);
+        ReflectionTestUtils.setField(matcherFactory, "noMatchFilter", false);
+    }
+
+    @Test
+    public void testByTheConditionGivenAtREADME() {
+        List<String> patterns = newArrayList("*,b,*", "a,*,*", "*,*,c", "foo,bar,baz",
+                "w,x,*,*", "*,x,y,z");
+        ShardedPatternIndex index = new ShardedPatternIndex(patternProcessor, patterns,
+                true);
+
+        // 3 blocks: a, foo and *, 4 blocks: w and *.
+        assertEquals(5, index.getShardCount());
+        assertEquals("*,x,y,z", index.getMatchingPattern("/w/x/y/z/"));
+        assertEquals("a,*,*", index.getMatchingPattern("a/b/c"));
+        assertEquals("NO MATCH", index.getMatchingPattern("foo/"));
+        assertEquals("NO MATCH", index.getMatchingPattern("foo/bar/"));
+        assertEquals("foo,bar,baz", index.getMatchingPattern("foo/bar/baz/"));
+    }
+
+    @Test
+    public void testSameMatchesAsThePatternTree() {
+        Random random = new Random(19);
+        String[] blocks = {"a", "b", "c", "*", " ", ""};
+
+        for (int round = 0; round < 50; round++) {
+            List<String> patterns = newArrayList();
+            for (int index = 0; index < 40; index++) {
+                patterns.add(randomJoin(random, blocks, ",", 4));
+            }
+            PatternNode rootNode = patternProcessor.buildPatternTree(patterns);
+            ShardedPatternIndex byFirstBlock = new ShardedPatternIndex(patternProcessor,
+                    patterns, true);
+            ShardedPatternIndex byBlockCount = new ShardedPatternIndex(patternProcessor,
+                    patterns, false);
+
+            for (int index = 0; index < 200; index++) {
+                String path = randomJoin(random, blocks, "/", 4);
+                String expected = patternProcessor.getMatchingPattern(rootNode, path);
+                assertEquals(path, expected, byFirstBlock.getMatchingPattern(path));
+                assertEquals(path, expected, byBlockCount.getMatchingPattern(path));
+            }
+        }
+    }
+
+    @Test
+    public void testReloadAShard() {
+        ShardedPatternIndex index = new ShardedPatternIndex(patternProcessor,
+                newArrayList("a,b", "a,*", "*,c", "a,b,c"), true);
+        assertEquals("a,b", index.getMatchingPattern("a/b"));
+        assertEquals("a,*", index.getMatchingPattern("a/c"));
+
+        // Only the patterns of the shard are passed, a blank one is ignored.
+        index.reload(2, "a", newArrayList("a,c", "a, "));
+        assertEquals("NO MATCH", index.getMatchingPattern("a/b"));
+        assertEquals("a,c", index.getMatchingPattern("a/c"));
+        assertEquals("*,c", index.getMatchingPattern("b/c"));
+        assertEquals("a,b,c", index.getMatchingPattern("a/b/c"));
+        assertEquals("NO MATCH", index.getMatchingPattern("a/b/d"));
+
+        // A shard left without patterns is dropped.
+        assertEquals(3, index.getShardCount());
+        index.reload(2, "a", newArrayList());
+        assertEquals("*,c", index.getMatchingPattern("a/c"));
+        assertEquals(2, index.getShardCount());
+    }
+
+    @Test
+    public void testReloadRejectsThePatternsOfOtherShards() {
+        ShardedPatternIndex index = new ShardedPatternIndex(patternProcessor,
+                newArrayList("a,b", "*,c"), true);
+        try {
+            index.reload(2, "a", newArrayList("a,c", "b,c"));
+            fail("The pattern b,c is in another shard");
+        } catch (IllegalArgumentException ex) {
+            // The shard is left as it was.
+            assertEquals("a,b", index.getMatchingPattern("a/b"));
+        }
+        try {
+            index.reload(2, "a", newArrayList("a,b,d"));
+            fail("The pattern a,b,d is in another shard");
+        } catch (IllegalArgumentException ex) {
+            assertEquals("NO MATCH", index.getMatchingPattern("a/b/d"));
+        }
+    }
+
+    @Test
+    public void testALiteralMatchBeatsTheWildcardShard() {
+        ShardedPatternIndex index = new ShardedPatternIndex(patternProcessor,
+                newArrayList("a,b", "*,b", "a,*", "*,c"), true);
+        assertEquals("a,b", index.getMatchingPattern("a/b"));
+        // With a wildcard in the literal match, the wildcard shard is still walked.
+        assertEquals("a,*", index.getMatchingPattern("a/c"));
+        assertEquals("*,b", index.getMatchingPattern("x/b"));
+    }
+
+    @Test
+    public void testNoShards() {
+        List<List<String>> patternSets = newArrayList();
+        patternSets.add(null);
+        patternSets.add(newArrayList());
+        patternSets.add(newArrayList("a, ", " ,b", ""));
+        for (List<String> patterns : patternSets) {
+            ShardedPatternIndex index = new ShardedPatternIndex(patternProcessor,
+                    patterns, true);
+            assertEquals(0, index.getShardCount());
+            assertEquals("NO MATCH", index.getMatchingPattern("a/b"));
+            assertEquals("NO MATCH", index.getMatchingPattern(""));
+        }
+    }
+
+    @Test
+    public void testSkipTheBlankBlocksOfAPath() {
+        ShardedPatternIndex index = new ShardedPatternIndex(patternProcessor,
+                newArrayList("a,b", "*,c"), true);
+        assertEquals("a,b", index.getMatchingPattern("a//b"));
+        assertEquals("a,b", index.getMatchingPattern("/ /a/ /b/"));
+        assertEquals("*,c", index.getMatchingPattern("// /q/c"));
+        assertEquals("NO MATCH", index.getMatchingPattern("// /"));
+    }
+
+    @Test
+    public void testTiesAsThePatternTree() {
+        List<String> patterns = newArrayList("*,b,*", "*,*,c", "a,*,*", "x,*,c");
+        PatternNode rootNode = patternProcessor.buildPatternTree(patterns);
+        ShardedPatternIndex byFirstBlock = new ShardedPatternIndex(patternProcessor,
+                patterns, true);
+        ShardedPatternIndex byBlockCount = new ShardedPatternIndex(patternProcessor,
+                patterns, false);
+        for (String path : newArrayList("q/b/c", "a/b/c", "x/b/c", "x/y/c")) {
+            String expected = patternProcessor.getMatchingPattern(rootNode, path);
+            assertEquals(path, expected, byFirstBlock.getMatchingPattern(path));
+            assertEquals(path, expected, byBlockCount.getMatchingPattern(path));
+        }
+    }
+
+    @Test
+    public void testAddAndRemoveAPattern() {
+        ShardedPatternIndex index = new ShardedPatternIndex(patternProcessor,
+                newArrayList("a,b", "*,c"), true);
+        assertEquals(0, index.getVersionNumber());
+
+        assertTrue(index.add("d,c"));
+        assertEquals(1, index.getVersionNumber());
+        assertEquals(3, index.getShardCount());
+        assertEquals("d,c", index.getMatchingPattern("d/c"));
+
+        assertFalse(index.add("d, "));
+        assertFalse(index.remove("d,e"));
+        assertEquals(1, index.getVersionNumber());
+
+        // The shard left without patterns is dropped.
+        assertTrue(index.remove("d,c"));
+        assertEquals(2, index.getVersionNumber());
+        assertEquals(2, index.getShardCount());
+        assertEquals("*,c", index.getMatchingPattern("d/c"));
+    }
+
+    @Test
+    public void testTraceAsThePatternTree() {
+        List<String> patterns = newArrayList("a,b,*", "a,*,c", "*,b,c", "*,*,*");
+        PatternNode rootNode = patternProcessor.buildPatternTree(patterns);
+        ShardedPatternIndex index = new ShardedPatternIndex(patternProcessor, patterns,
+                false);
+
+        String[] path = patternProcessor.splitPath("a/b/c");
+        MatchTrace expected = patternProcessor.traceMatch(rootNode, path);
+        MatchTrace trace = index.traceMatch(path);
+        assertEquals(expected.getPattern(), trace.getPattern());
+        assertEquals(expected.getAlternates(), trace.getAlternates());
+        assertEquals(expected.getNodes(), trace.getNodes());
+    }
+
+    @Test
+    public void testFollowAReloadThroughTheFilterAndTheCache() {
+        ReflectionTestUtils.setField(matcherFactory, "engine", MatchingEngine.SHARDED);
+        ReflectionTestUtils.setField(matcherFactory, "cacheSize", 16);
+        ReflectionTestUtils.setField(matcherFactory, "noMatchFilter", true);
+        PatternMatcher matcher = matcherFactory.build(newArrayList("a,b", "*,c"));
+        assertEquals("NO MATCH", matcher.getMatchingPattern("d/e"));
+        assertEquals("*,c", matcher.getMatchingPattern("d/c"));
+
+        PatternMatcher cached = ((FilteredPatternMatcher) matcher).getMatcher();
+        ShardedPatternIndex index =
+                (ShardedPatternIndex) ((CachedPatternMatcher) cached).getMatcher();
+        // The new literal is let through the filter, and the cached answers dropped.
+        index.reload(2, "d", newArrayList("d,e", "d,c"));
+        assertEquals("d,e", matcher.getMatchingPattern("d/e"));
+        assertEquals("d,c", matcher.getMatchingPattern("d/c"));
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.processor;
+
+import com.example.exception.InvalidDataException;
+import com.example.model.CompiledPatternTree;
+import com.example.model.MappedPatternTree;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static com.example.processor.RandomBlocks.randomJoin;
+import static com.google.common.collect.Lists.newArrayList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the pattern snapshots match the same way as the trees they were written from.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = TestApplicationConfiguration.class)
+public class SnapshotProcessorTest {
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Autowired
+    private PatternProcessor patternProcessor;
+
+    @Autowired
+    private CompiledPatternProcessor compiledProcessor;
+
+    @Autowired
+    private SnapshotProcessor snapshotProcessor;
+
+    @Autowired
+    private StreamingProcessor streamingProcessor;
+
+    @Test
+    public void testLoadTheSameMatches() throws Exception {
+        Random random = new Random(11);
+        String[] blocks = {"a", "b", "c", "été", "*"};
+
+        for (int round = 0; round < 20; round++) {
+            List<String> patterns = newArrayList();
+            for (int index = 0; index < 60; index++) {
+                patterns.add(randomJoin(random, blocks, ",", 4));
+            }
+            CompiledPatternTree tree = compiledProcessor.compile(
+                    patternProcessor.buildPatternTree(patterns));
+            File snapshot = folder.newFile();
+            snapshotProcessor.write(tree, snapshot.getPath());
+
+            assertTrue(snapshotProcessor.isSnapshot(snapshot.getPath()));
+            CompiledPatternTree loaded = snapshotProcessor.load(snapshot.getPath());
+            assertEquals(tree.getNodeCount(), loaded.getNodeCount());
+            for (int index = 0; index < 200; index++) {
+                String path = randomJoin(random, blocks, "/", 4);
+                assertEquals(path, compiledProcessor.getMatchingPattern(tree, path),
+                        compiledProcessor.getMatchingPattern(loaded, path));
+            }
+        }
+    }
+
+    @Test
+    public void testMapTheSameMatches() throws Exception {
+        Random random = new Random(13);
+        String[] blocks = {"a", "b", "c", "\u00e9t\u00e9", "*"};
+
+        for (int round = 0; round < 20; round++) {
+            List<String> patterns = newArrayList();
+            for (int index = 0; index < 60; index++) {
+                patterns.add(randomJoin(random, blocks, ",", 4));
+            }
+            CompiledPatternTree tree = compiledProcessor.compile(
+                    patternProcessor.buildPatternTree(patterns));
+            File snapshot = folder.newFile();
+            snapshotProcessor.write(tree, snapshot.getPath());
+
+            MappedPatternTree mapped = snapshotProcessor.map(snapshot.getPath());
+            assertEquals(tree.getNodeCount(), mapped.getNodeCount());
+            assertTrue(mapped.getOffHeapBytes() > 0);
+            for (int index = 0; index < 200; index++) {
+                String path = randomJoin(random, blocks, "/", 4);
+                String expected = compiledProcessor.getMatchingPattern(tree, path);
+                assertEquals(path, expected,
+                        compiledProcessor.getMatchingPattern(mapped, path));
+                byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+                assertEquals(path, expected, compiledProcessor.getMatchingPattern(mapped,
+                        ByteBuffer.wrap(bytes), 0, bytes.length));
+            }
+        }
+    }
+
+    @Test
+    public void testRejectAnotherVersion() throws Exception {
+        File snapshot = folder.newFile();
+        snapshotProcessor.write(compiledProcessor.compile(
+                patternProcessor.buildPatternTree(newArrayList("a,b"))), snapshot.getPath());
+        byte[] bytes = Files.readAllBytes(snapshot.toPath());
+        ByteBuffer.wrap(bytes).putInt(Integer.BYTES, SnapshotProcessor.VERSION + 1);
+        Files.write(snapshot.toPath(), bytes);
+
+        exception.expect(InvalidDataException.class);
+        snapshotProcessor.load(snapshot.getPath());
+    }
+
+    @Test
+    public void testReplaceASnapshotBeingMapped() throws Exception {
+        File snapshot = folder.newFile();
+        snapshotProcessor.write(compiledProcessor.compile(
+                patternProcessor.buildPatternTree(newArrayList("a,b"))), snapshot.getPath());
+        MappedPatternTree mapped = snapshotProcessor.map(snapshot.getPath());
+
+        snapshotProcessor.write(compiledProcessor.compile(
+                patternProcessor.buildPatternTree(newArrayList("c,*"))), snapshot.getPath());
+        // The mapped tree still reads the snapshot it was mapped from.
+        assertEquals("a,b", compiledProcessor.getMatchingPattern(mapped, "a/b"));
+        assertEquals("c,*", compiledProcessor.getMatchingPattern(
+                snapshotProcessor.map(snapshot.getPath()), "c/d"));
+        assertEquals(1, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void testRejectATruncatedSnapshot() throws Exception {
+        File snapshot = folder.newFile();
+        snapshotProcessor.write(compiledProcessor.compile(
+                patternProcessor.buildPatternTree(newArrayList("a,b"))), snapshot.getPath());
+        byte[] bytes = Files.readAllBytes(snapshot.toPath());
+        Files.write(snapshot.toPath(), Arrays.copyOf(bytes, bytes.length - 3));
+
+        exception.expect(InvalidDataException.class);
+        snapshotProcessor.map(snapshot.getPath());
+    }
+
+    @Test
+    public void testRejectACorruptSectionSize() throws Exception {
+        File snapshot = folder.newFile();
+        snapshotProcessor.write(compiledProcessor.compile(
+                patternProcessor.buildPatternTree(newArrayList("a,b"))), snapshot.getPath());
+        byte[] bytes = Files.readAllBytes(snapshot.toPath());
+        // The node count, far more than the file holds.
+        ByteBuffer.wrap(bytes).putInt(2 * Integer.BYTES, Integer.MAX_VALUE);
+        Files.write(snapshot.toPath(), bytes);
+
+        exception.expect(InvalidDataException.class);
+        snapshotProcessor.load(snapshot.getPath());
+    }
+
+    @Test
+    public void testNotASnapshot() throws Exception {
+        assertFalse(snapshotProcessor.isSnapshot("./src/test/resources/input-happy.txt"));
+        assertFalse(snapshotProcessor.isSnapshot("./src/test/resources/xxxxxx"));
+    }
+
+    @Test
+    public void testInputPointingAtASnapshot() throws Exception {
+        List<String> patterns = newArrayList("*,b,*", "a,*,*", "*,*,c", "foo,bar,baz",
+                "w,x,*,*", "*,x,y,z");
+        File snapshot = folder.newFile("patterns.snapshot");
+        snapshotProcessor.write(compiledProcessor.compile(
+                patternProcessor.buildPatternTree(patterns)), snapshot.getPath());
+
+        File input = folder.newFile("input.txt");
+        Files.write(input.toPath(), ("@patterns.snapshot\n5\n/w/x/y/z/\na/b/c\nfoo/\n"
+                + "foo/bar/\nfoo/bar/baz/\n").getBytes(StandardCharsets.UTF_8));
+        File output = new File(folder.getRoot(), "output.txt");
+        streamingProcessor.process(input.getPath(), output.getPath());
+
+        List<String> lines = Files.readAllLines(output.toPath(), StandardCharsets.UTF_8);
+        assertEquals(newArrayList("*,x,y,z", "a,*,*", "NO MATCH", "NO MATCH",
+                "foo,bar,baz"), lines);
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.processor;
+
+import com.example.exception.InvalidDataException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Tests the single pass input to output pipeline.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = TestApplicationConfiguration.class)
+public class StreamingProcessorTest {
+
+    /**
+     * Expected exception.
+     */
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    /**
+     * Temporary folder for the output files.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Autowired
+    private StreamingProcessor streamingProcessor;
+
+    private String filePath = "./src/test/resources/";
+
+    @Test
+    public void testProcessHappy() throws Exception {
+        File output = new File(folder.getRoot(), "output.txt");
+        streamingProcessor.process(filePath + "input-happy.txt", output.getPath());
+
+        List<String> lines = Files.readAllLines(output.toPath(), StandardCharsets.UTF_8);
+        assertEquals(5, lines.size());
+        assertEquals("*,x,y,z", lines.get(0));
+        assertEquals("a,*,*", lines.get(1));
+        assertEquals("NO MATCH", lines.get(2));
+        assertEquals("NO MATCH", lines.get(3));
+        assertEquals("foo,bar,baz", lines.get(4));
+    }
+
+    @Test
+    public void testProcessBadPatternsDoesNotCreateOutput() throws Exception {
+        File output = new File(folder.getRoot(), "output.txt");
+        try {
+            exception.expect(InvalidDataException.class);
+            streamingProcessor.process(filePath + "input-blank-pattern.txt",
+                    output.getPath());
+        } finally {
+            assertFalse(output.exists());
+        }
+    }
+
+    @Test
+    public void testProcessLateBlankPathKeepsTheOutput() throws Exception {
+        File output = folder.newFile("output.txt");
+        Files.write(output.toPath(), "previous".getBytes(StandardCharsets.UTF_8));
+        try {
+            exception.expect(InvalidDataException.class);
+            streamingProcessor.process(filePath + "input-late-blank-path.txt",
+                    output.getPath());
+        } finally {
+            // Neither the output file nor a part file is left half written.
+            assertEquals(newArrayList("previous"),
+                    Files.readAllLines(output.toPath(), StandardCharsets.UTF_8));
+            assertArrayEquals(new String[] {"output.txt"}, folder.getRoot().list());
+        }
+    }
+}